@@ -109,6 +109,12 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
 
   @Nullable private final FieldAccessDescriptor fieldAccessDescriptor;
 
+  /**
+   * The context used for the next element, to avoid allocating a context and output receivers per
+   * element. Null while the context is in use, so a reentrant call creates its own.
+   */
+  @Nullable private DoFnProcessContext reusableProcessContext;
+
   // This constructor exists for backwards compatibility with the Dataflow runner.
   // Once the Dataflow runner has been updated to use the new constructor, remove this one.
   public SimpleDoFnRunner(
@@ -270,11 +276,20 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
   }
 
   private void invokeProcessElement(WindowedValue<InputT> elem) {
+    DoFnProcessContext context = reusableProcessContext;
+    if (context == null) {
+      context = new DoFnProcessContext(elem);
+    } else {
+      reusableProcessContext = null;
+      context.reset(elem);
+    }
     // This can contain user code. Wrap it in case it throws an exception.
     try {
-      invoker.invokeProcessElement(new DoFnProcessContext(elem));
+      invoker.invokeProcessElement(context);
     } catch (Exception ex) {
       throw wrapUserCodeException(ex);
+    } finally {
+      reusableProcessContext = context;
     }
   }
 
@@ -305,7 +320,8 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
   }
 
   private <T> void outputWindowedValue(TupleTag<T> tag, WindowedValue<T> windowedElem) {
-    checkArgument(outputTags.contains(tag), "Unknown output tag %s", tag);
+    checkArgument(
+        tag == mainOutputTag || outputTags.contains(tag), "Unknown output tag %s", tag);
     outputManager.output(tag, windowedElem);
   }
 
@@ -553,10 +569,15 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
    */
   private class DoFnProcessContext extends DoFn<InputT, OutputT>.ProcessContext
       implements DoFnInvoker.ArgumentProvider<InputT, OutputT> {
-    final WindowedValue<InputT> elem;
+    WindowedValue<InputT> elem;
     /** Lazily initialized; should only be accessed via {@link #getNamespace()}. */
     @Nullable private StateNamespace namespace;
 
+    // The receivers only refer to this context, so they remain valid when it is reset.
+    @Nullable private OutputReceiver<OutputT> outputReceiver;
+    @Nullable private OutputReceiver<Row> outputRowReceiver;
+    @Nullable private MultiOutputReceiver taggedOutputReceiver;
+
     /**
      * The state namespace for this context.
      *
@@ -576,6 +597,12 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
       this.elem = elem;
     }
 
+    /** Prepares this context to process the provided element. */
+    private void reset(WindowedValue<InputT> elem) {
+      this.elem = elem;
+      this.namespace = null;
+    }
+
     @Override
     public PipelineOptions getPipelineOptions() {
       return options;
@@ -625,8 +652,12 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
     public <T> void outputWithTimestamp(TupleTag<T> tag, T output, Instant timestamp) {
       checkNotNull(tag, "Tag passed to outputWithTimestamp cannot be null");
       checkTimestamp(timestamp);
-      outputWindowedValue(
-          tag, WindowedValue.of(output, timestamp, elem.getWindows(), elem.getPane()));
+      if (timestamp.isEqual(elem.getTimestamp())) {
+        outputWindowedValue(tag, elem.withValue(output));
+      } else {
+        outputWindowedValue(
+            tag, WindowedValue.of(output, timestamp, elem.getWindows(), elem.getPane()));
+      }
     }
 
     @Override
@@ -711,17 +742,27 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
 
     @Override
     public OutputReceiver<OutputT> outputReceiver(DoFn<InputT, OutputT> doFn) {
-      return DoFnOutputReceivers.windowedReceiver(this, mainOutputTag);
+      if (outputReceiver == null) {
+        outputReceiver = DoFnOutputReceivers.windowedReceiver(this, mainOutputTag);
+      }
+      return outputReceiver;
     }
 
     @Override
     public OutputReceiver<Row> outputRowReceiver(DoFn<InputT, OutputT> doFn) {
-      return DoFnOutputReceivers.rowReceiver(this, mainOutputTag, mainOutputSchemaCoder);
+      if (outputRowReceiver == null) {
+        outputRowReceiver =
+            DoFnOutputReceivers.rowReceiver(this, mainOutputTag, mainOutputSchemaCoder);
+      }
+      return outputRowReceiver;
     }
 
     @Override
     public MultiOutputReceiver taggedOutputReceiver(DoFn<InputT, OutputT> doFn) {
-      return DoFnOutputReceivers.windowedMultiReceiver(this, outputCoders);
+      if (taggedOutputReceiver == null) {
+        taggedOutputReceiver = DoFnOutputReceivers.windowedMultiReceiver(this, outputCoders);
+      }
+      return taggedOutputReceiver;
     }
 
     @Override
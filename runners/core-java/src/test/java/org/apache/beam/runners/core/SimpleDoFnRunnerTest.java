@@ -40,6 +40,8 @@ import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.transforms.windowing.WindowFn;
 import org.apache.beam.sdk.util.UserCodeException;
 import org.apache.beam.sdk.util.WindowedValue;
@@ -350,6 +352,93 @@ public class SimpleDoFnRunnerTest {
             BoundedWindow.TIMESTAMP_MAX_VALUE));
   }
 
+  /**
+   * Tests that each element observes its own timestamp and windows, regardless of the elements
+   * processed before it.
+   */
+  @Test
+  public void testProcessSuccessiveElements() {
+    ListOutputManager outputManager = new ListOutputManager();
+    TupleTag<String> mainOutputTag = new TupleTag<>();
+    DoFnRunner<String, String> runner =
+        new SimpleDoFnRunner<>(
+            null,
+            new PrefixingDoFn(),
+            NullSideInputReader.empty(),
+            outputManager,
+            mainOutputTag,
+            Collections.emptyList(),
+            mockStepContext,
+            null,
+            Collections.emptyMap(),
+            WindowingStrategy.of(new GlobalWindows()));
+
+    IntervalWindow window = new IntervalWindow(new Instant(0), new Instant(10));
+    runner.startBundle();
+    runner.processElement(WindowedValue.timestampedValueInGlobalWindow("foo", new Instant(1)));
+    runner.processElement(WindowedValue.of("bar", new Instant(2), window, PaneInfo.NO_FIRING));
+    runner.finishBundle();
+
+    assertThat(
+        outputManager.outputs.get(mainOutputTag),
+        contains(
+            WindowedValue.timestampedValueInGlobalWindow("out-foo", new Instant(1)),
+            WindowedValue.timestampedValueInGlobalWindow("late-foo", new Instant(1)),
+            WindowedValue.of("out-bar", new Instant(2), window, PaneInfo.NO_FIRING),
+            WindowedValue.of("late-bar", new Instant(2), window, PaneInfo.NO_FIRING)));
+  }
+
+  /**
+   * Tests that an element processed while another element is being processed, such as by an {@link
+   * OutputManager} that feeds outputs back to the runner, does not affect the outer element.
+   */
+  @Test
+  public void testProcessElementReentrant() {
+    TupleTag<String> mainOutputTag = new TupleTag<>();
+    List<WindowedValue<String>> outputs = new ArrayList<>();
+    List<DoFnRunner<String, String>> runnerHolder = new ArrayList<>();
+    OutputManager reentrantOutputManager =
+        new OutputManager() {
+          @Override
+          @SuppressWarnings("unchecked")
+          public <T> void output(TupleTag<T> tag, WindowedValue<T> output) {
+            WindowedValue<String> value = (WindowedValue<String>) output;
+            outputs.add(value);
+            if (value.getValue().equals("out-foo")) {
+              runnerHolder
+                  .get(0)
+                  .processElement(
+                      WindowedValue.timestampedValueInGlobalWindow("bar", new Instant(2)));
+            }
+          }
+        };
+    DoFnRunner<String, String> runner =
+        new SimpleDoFnRunner<>(
+            null,
+            new PrefixingDoFn(),
+            NullSideInputReader.empty(),
+            reentrantOutputManager,
+            mainOutputTag,
+            Collections.emptyList(),
+            mockStepContext,
+            null,
+            Collections.emptyMap(),
+            WindowingStrategy.of(new GlobalWindows()));
+    runnerHolder.add(runner);
+
+    runner.startBundle();
+    runner.processElement(WindowedValue.timestampedValueInGlobalWindow("foo", new Instant(1)));
+    runner.finishBundle();
+
+    assertThat(
+        outputs,
+        contains(
+            WindowedValue.timestampedValueInGlobalWindow("out-foo", new Instant(1)),
+            WindowedValue.timestampedValueInGlobalWindow("out-bar", new Instant(2)),
+            WindowedValue.timestampedValueInGlobalWindow("late-bar", new Instant(2)),
+            WindowedValue.timestampedValueInGlobalWindow("late-foo", new Instant(1))));
+  }
+
   static class ThrowingDoFn extends DoFn<String, String> {
     final Exception exceptionToThrow = new UnsupportedOperationException("Expected exception");
 
@@ -435,6 +524,19 @@ public class SimpleDoFnRunnerTest {
     }
   }
 
+  /**
+   * A {@link DoFn} that outputs each element twice, through an {@link DoFn.OutputReceiver} and with
+   * the timestamp of the input.
+   */
+  private static class PrefixingDoFn extends DoFn<String, String> {
+    @ProcessElement
+    public void processElement(
+        @Element String element, @Timestamp Instant timestamp, OutputReceiver<String> receiver) {
+      receiver.output("out-" + element);
+      receiver.outputWithTimestamp("late-" + element, timestamp);
+    }
+  }
+
   private static class ListOutputManager implements OutputManager {
     private ListMultimap<TupleTag<?>, WindowedValue<?>> outputs = ArrayListMultimap.create();
 
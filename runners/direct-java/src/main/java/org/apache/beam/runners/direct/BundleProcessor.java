@@ -31,4 +31,13 @@ interface BundleProcessor<
    * CompletionCallback} when execution completes.
    */
   void process(BundleT bundle, ExecutableT consumer, CompletionCallback onComplete);
+
+  /**
+   * Returns whether bundles of the provided collection are evaluated by the thread that produced
+   * them. Such bundles are passed to {@link #process} from within the {@link CompletionCallback} of
+   * their producer rather than being scheduled later.
+   */
+  default boolean isFused(CollectionT collection) {
+    return false;
+  }
 }
@@ -63,6 +63,33 @@ public interface DirectOptions extends PipelineOptions, ApplicationNameOptions {
 
   void setTargetParallelism(int target);
 
+  /** The profiles the {@link DirectRunner} can execute a {@link org.apache.beam.sdk.Pipeline} with. */
+  enum ExecutionProfile {
+    /**
+     * Execute with the checks requested by {@link #isEnforceImmutability()} and {@link
+     * #isEnforceEncodability()}.
+     */
+    VALIDATING,
+
+    /**
+     * Execute without model enforcements, handing elements between transforms without copying them
+     * and reusing evaluators across bundles where possible. Chains of stateless ParDos are fused and
+     * executed on a work-stealing pool. Intended for pipelines whose behavior is already trusted,
+     * such as local load tests.
+     */
+    PERFORMANCE
+  }
+
+  @Default.Enum("VALIDATING")
+  @Description(
+      "Controls the profile the DirectRunner executes with. VALIDATING performs the enabled "
+          + "immutability and encodability checks. PERFORMANCE disables all of these checks, "
+          + "passes elements between transforms without copying them, reuses evaluators "
+          + "across bundles, and fuses chains of stateless ParDos.")
+  ExecutionProfile getExecutionProfile();
+
+  void setExecutionProfile(ExecutionProfile profile);
+
   /**
    * A {@link DefaultValueFactory} that returns the result of {@link Runtime#availableProcessors()}
    * from the {@link #create(PipelineOptions)} method. Uses {@link Runtime#getRuntime()} to obtain
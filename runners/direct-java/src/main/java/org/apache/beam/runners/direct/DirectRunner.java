@@ -36,6 +36,7 @@ import org.apache.beam.runners.core.SplittableParDoViaKeyedWorkItems;
 import org.apache.beam.runners.core.construction.PTransformMatchers;
 import org.apache.beam.runners.core.construction.PTransformTranslation;
 import org.apache.beam.runners.core.construction.SplittableParDo;
+import org.apache.beam.runners.direct.DirectOptions.ExecutionProfile;
 import org.apache.beam.runners.direct.DirectRunner.DirectPipelineResult;
 import org.apache.beam.runners.direct.TestStreamEvaluatorFactory.DirectTestStreamFactory;
 import org.apache.beam.sdk.Pipeline;
@@ -91,6 +92,9 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
     // Utilities for creating enforcements
     static Set<Enforcement> enabled(DirectOptions options) {
       EnumSet<Enforcement> enabled = EnumSet.noneOf(Enforcement.class);
+      if (options.getExecutionProfile() == ExecutionProfile.PERFORMANCE) {
+        return Collections.unmodifiableSet(enabled);
+      }
       if (options.isEnforceEncodability()) {
         enabled.add(ENCODABILITY);
       }
@@ -172,10 +176,14 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
                   .setNameFormat("direct-metrics-counter-committer")
                   .build());
       DirectGraph graph = graphVisitor.getGraph();
+      BundleFactory bundleFactory =
+          options.getExecutionProfile() == ExecutionProfile.PERFORMANCE
+              ? ImmutableListBundleFactory.create()
+              : Enforcement.bundleFactoryFor(enabledEnforcements, graph);
       EvaluationContext context =
           EvaluationContext.create(
               clockSupplier.get(),
-              Enforcement.bundleFactoryFor(enabledEnforcements, graph),
+              bundleFactory,
               graph,
               keyedPValueVisitor.getKeyedPValues(),
               metricsPool);
@@ -183,12 +191,19 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
       TransformEvaluatorRegistry registry =
           TransformEvaluatorRegistry.javaSdkNativeRegistry(context, options);
       PipelineExecutor executor =
-          ExecutorServiceParallelExecutor.create(
-              options.getTargetParallelism(),
-              registry,
-              Enforcement.defaultModelEnforcements(enabledEnforcements),
-              context,
-              metricsPool);
+          options.getExecutionProfile() == ExecutionProfile.PERFORMANCE
+              ? ExecutorServiceParallelExecutor.createFused(
+                  options.getTargetParallelism(),
+                  registry,
+                  Enforcement.defaultModelEnforcements(enabledEnforcements),
+                  context,
+                  metricsPool)
+              : ExecutorServiceParallelExecutor.create(
+                  options.getTargetParallelism(),
+                  registry,
+                  Enforcement.defaultModelEnforcements(enabledEnforcements),
+                  context,
+                  metricsPool);
       executor.start(graph, RootProviderRegistry.javaNativeRegistry(context, options));
 
       DirectPipelineResult result = new DirectPipelineResult(executor, context);
@@ -22,16 +22,24 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -70,6 +78,20 @@ final class ExecutorServiceParallelExecutor
   private final TransformExecutorFactory executorFactory;
   private final TransformExecutorService parallelExecutorService;
   private final LoadingCache<StepAndKey, TransformExecutorService> serialExecutorServices;
+  /**
+   * If nonempty, keyed work is evaluated by the serial stripe its {@link StepAndKey} hashes to
+   * instead of by the {@link #serialExecutorServices}.
+   */
+  private final List<TransformExecutorService> keyedStripes;
+
+  private final boolean fuseStatelessParDos;
+  private volatile Set<PCollection<?>> fusedCollections = Collections.emptySet();
+  /**
+   * Fused evaluations waiting for the current thread, or {@code null} if the thread is not
+   * evaluating fused bundles. Evaluations are queued rather than run recursively so that the stack
+   * does not grow with the length of a fused chain.
+   */
+  private final ThreadLocal<Deque<Runnable>> pendingFusedEvaluations = new ThreadLocal<>();
 
   private final QueueMessageReceiver visibleUpdates;
 
@@ -83,27 +105,79 @@ final class ExecutorServiceParallelExecutor
       Map<String, Collection<ModelEnforcementFactory>> transformEnforcements,
       EvaluationContext context,
       ExecutorService metricsExecutor) {
+    // Don't use Daemon threads for workers. The Pipeline should continue to execute even if there
+    // are no other active threads (for example, because waitUntilFinish was not called)
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(
+            targetParallelism,
+            new ThreadFactoryBuilder()
+                .setThreadFactory(MoreExecutors.platformThreadFactory())
+                .setNameFormat("direct-runner-worker")
+                .build());
+    return new ExecutorServiceParallelExecutor(
+        targetParallelism,
+        executorService,
+        0,
+        false,
+        registry,
+        transformEnforcements,
+        context,
+        metricsExecutor);
+  }
+
+  /**
+   * Create an executor that evaluates bundles on a work-stealing {@link ForkJoinPool}.
+   *
+   * <p>Bundles consumed only by a stateless {@link org.apache.beam.sdk.transforms.ParDo} are
+   * evaluated by the thread that produced them, as determined by {@link GreedyParDoFuser}. Keyed
+   * work is evaluated serially on one of a fixed number of stripes rather than on an executor per
+   * step and key.
+   */
+  public static ExecutorServiceParallelExecutor createFused(
+      int targetParallelism,
+      TransformEvaluatorRegistry registry,
+      Map<String, Collection<ModelEnforcementFactory>> transformEnforcements,
+      EvaluationContext context,
+      ExecutorService metricsExecutor) {
+    ExecutorService executorService =
+        new ForkJoinPool(
+            targetParallelism,
+            pool -> {
+              ForkJoinWorkerThread thread =
+                  ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+              // As above, workers must not be Daemon threads
+              thread.setDaemon(false);
+              thread.setName("direct-runner-worker-" + thread.getPoolIndex());
+              return thread;
+            },
+            null,
+            true);
     return new ExecutorServiceParallelExecutor(
-        targetParallelism, registry, transformEnforcements, context, metricsExecutor);
+        targetParallelism,
+        executorService,
+        KEYED_STRIPES_PER_THREAD * targetParallelism,
+        true,
+        registry,
+        transformEnforcements,
+        context,
+        metricsExecutor);
   }
 
+  private static final int KEYED_STRIPES_PER_THREAD = 4;
+
   private ExecutorServiceParallelExecutor(
       int targetParallelism,
+      ExecutorService executorService,
+      int numKeyedStripes,
+      boolean fuseStatelessParDos,
       TransformEvaluatorRegistry registry,
       Map<String, Collection<ModelEnforcementFactory>> transformEnforcements,
       EvaluationContext context,
       ExecutorService metricsExecutor) {
     this.targetParallelism = targetParallelism;
     this.metricsExecutor = metricsExecutor;
-    // Don't use Daemon threads for workers. The Pipeline should continue to execute even if there
-    // are no other active threads (for example, because waitUntilFinish was not called)
-    this.executorService =
-        Executors.newFixedThreadPool(
-            targetParallelism,
-            new ThreadFactoryBuilder()
-                .setThreadFactory(MoreExecutors.platformThreadFactory())
-                .setNameFormat("direct-runner-worker")
-                .build());
+    this.executorService = executorService;
+    this.fuseStatelessParDos = fuseStatelessParDos;
     this.registry = registry;
     this.evaluationContext = context;
 
@@ -115,6 +189,11 @@ final class ExecutorServiceParallelExecutor
             .weakValues()
             .removalListener(shutdownExecutorServiceListener())
             .build(serialTransformExecutorServiceCacheLoader());
+    ImmutableList.Builder<TransformExecutorService> stripes = ImmutableList.builder();
+    for (int i = 0; i < numKeyedStripes; i++) {
+      stripes.add(TransformExecutorServices.serial(executorService));
+    }
+    keyedStripes = stripes.build();
 
     this.visibleUpdates = new QueueMessageReceiver();
 
@@ -160,6 +239,9 @@ final class ExecutorServiceParallelExecutor
       pendingRootBundles.put(root, pending);
     }
     evaluationContext.initialize(pendingRootBundles.build());
+    if (fuseStatelessParDos) {
+      fusedCollections = GreedyParDoFuser.fusedCollections(graph, evaluationContext);
+    }
     final ExecutionDriver executionDriver =
         QuiescenceDriver.create(
             evaluationContext, graph, this, visibleUpdates, pendingRootBundles.build());
@@ -201,6 +283,11 @@ final class ExecutorServiceParallelExecutor
     evaluateBundle(consumer, bundle, onComplete);
   }
 
+  @Override
+  public boolean isFused(PCollection<?> collection) {
+    return fusedCollections.contains(collection);
+  }
+
   private <T> void evaluateBundle(
       final AppliedPTransform<?, ?, ?> transform,
       final CommittedBundle<T> bundle,
@@ -214,18 +301,70 @@ final class ExecutorServiceParallelExecutor
       // a reference to the scheduled DirectTransformExecutor callable. Follow-up TransformExecutors
       // (scheduled due to the completion of another DirectTransformExecutor) are provided to the
       // ExecutorService before the Earlier DirectTransformExecutor callable completes.
-      transformExecutor = serialExecutorServices.getUnchecked(stepAndKey);
+      if (keyedStripes.isEmpty()) {
+        transformExecutor = serialExecutorServices.getUnchecked(stepAndKey);
+      } else {
+        transformExecutor =
+            keyedStripes.get(Math.floorMod(stepAndKey.hashCode(), keyedStripes.size()));
+      }
     } else {
       transformExecutor = parallelExecutorService;
     }
 
-    TransformExecutor callable =
-        executorFactory.create(bundle, transform, onComplete, transformExecutor);
-    if (!pipelineState.get().isTerminal()) {
+    if (isFused(bundle.getPCollection())) {
+      FailureTrackingCallback trackingCallback = new FailureTrackingCallback(onComplete);
+      TransformExecutor callable =
+          executorFactory.create(bundle, transform, trackingCallback, transformExecutor);
+      if (pipelineState.get().isTerminal()) {
+        return;
+      }
+      evaluateFused(
+          () -> {
+            try {
+              callable.run();
+            } catch (RuntimeException e) {
+              if (trackingCallback.failureReported) {
+                // Rethrowing would report the failure again as a failure of the producer.
+                LOG.debug("Fused evaluation of {} failed", transform.getFullName(), e);
+              } else {
+                LOG.warn(
+                    "Fused evaluation of {} failed after completing", transform.getFullName(), e);
+              }
+            }
+          });
+    } else {
+      TransformExecutor callable =
+          executorFactory.create(bundle, transform, onComplete, transformExecutor);
+      if (pipelineState.get().isTerminal()) {
+        return;
+      }
       transformExecutor.schedule(callable);
     }
   }
 
+  /**
+   * Evaluates a fused bundle on the current thread. If the thread is already evaluating a fused
+   * bundle further up its stack, the evaluation is queued and runs once that one completes.
+   */
+  private void evaluateFused(Runnable evaluation) {
+    Deque<Runnable> pending = pendingFusedEvaluations.get();
+    if (pending != null) {
+      pending.add(evaluation);
+      return;
+    }
+    pending = new ArrayDeque<>();
+    pending.add(evaluation);
+    pendingFusedEvaluations.set(pending);
+    try {
+      Runnable next;
+      while ((next = pending.poll()) != null) {
+        next.run();
+      }
+    } finally {
+      pendingFusedEvaluations.remove();
+    }
+  }
+
   private boolean isKeyed(PValue pvalue) {
     return evaluationContext.isKeyed(pvalue);
   }
@@ -297,6 +436,13 @@ final class ExecutorServiceParallelExecutor
     } catch (final RuntimeException re) {
       errors.add(re);
     }
+    for (TransformExecutorService stripe : keyedStripes) {
+      try {
+        stripe.shutdown();
+      } catch (final RuntimeException re) {
+        errors.add(re);
+      }
+    }
     try {
       parallelExecutorService.shutdown();
     } catch (final RuntimeException re) {
@@ -367,6 +513,38 @@ final class ExecutorServiceParallelExecutor
     }
   }
 
+  /** A {@link CompletionCallback} which records whether a failure was reported to it. */
+  private static class FailureTrackingCallback implements CompletionCallback {
+    private final CompletionCallback delegate;
+    private boolean failureReported = false;
+
+    private FailureTrackingCallback(CompletionCallback delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public CommittedResult handleResult(CommittedBundle<?> inputBundle, TransformResult<?> result) {
+      return delegate.handleResult(inputBundle, result);
+    }
+
+    @Override
+    public void handleEmpty(AppliedPTransform<?, ?, ?> transform) {
+      delegate.handleEmpty(transform);
+    }
+
+    @Override
+    public void handleException(CommittedBundle<?> inputBundle, Exception t) {
+      failureReported = true;
+      delegate.handleException(inputBundle, t);
+    }
+
+    @Override
+    public void handleError(Error err) {
+      failureReported = true;
+      delegate.handleError(err);
+    }
+  }
+
   private static class QueueMessageReceiver implements PipelineMessageReceiver {
     // If the type of BlockingQueue changes, ensure the findbugs filter is updated appropriately
     private final BlockingQueue<VisibleExecutorUpdate> updates = new LinkedBlockingQueue<>();
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import org.apache.beam.runners.core.construction.PTransformTranslation;
+import org.apache.beam.runners.core.construction.ParDoTranslation;
+import org.apache.beam.sdk.runners.AppliedPTransform;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PValue;
+
+/**
+ * Determines the {@link PCollection PCollections} of a {@link DirectGraph} whose bundles can be
+ * evaluated by the thread that produced them, fusing the consuming {@link
+ * org.apache.beam.sdk.transforms.ParDo} into the stage of its producer.
+ *
+ * <p>A {@link PCollection} is fused if it is not keyed and its only consumer is a {@link
+ * org.apache.beam.sdk.transforms.ParDo} without side inputs, state or timers. Chains of such {@link
+ * org.apache.beam.sdk.transforms.ParDo ParDos} are fused into a single stage. Each step of a stage
+ * still commits its output, so watermarks are tracked per step as usual.
+ */
+class GreedyParDoFuser {
+  private GreedyParDoFuser() {}
+
+  public static Set<PCollection<?>> fusedCollections(DirectGraph graph, EvaluationContext context) {
+    ImmutableSet.Builder<PCollection<?>> fused = ImmutableSet.builder();
+    for (AppliedPTransform<?, ?, ?> producer : graph.getExecutables()) {
+      for (PValue produced : graph.getProduced(producer)) {
+        if (!(produced instanceof PCollection) || context.isKeyed(produced)) {
+          continue;
+        }
+        List<AppliedPTransform<?, ?, ?>> consumers = graph.getPerElementConsumers(produced);
+        if (consumers.size() == 1 && isStatelessParDo(consumers.get(0))) {
+          fused.add((PCollection<?>) produced);
+        }
+      }
+    }
+    return fused.build();
+  }
+
+  private static boolean isStatelessParDo(AppliedPTransform<?, ?, ?> transform) {
+    if (!PTransformTranslation.PAR_DO_TRANSFORM_URN.equals(
+        PTransformTranslation.urnForTransformOrNull(transform.getTransform()))) {
+      return false;
+    }
+    try {
+      return ParDoTranslation.getSideInputs(transform).isEmpty()
+          && !ParDoTranslation.usesStateOrTimers(transform)
+          && !ParDoTranslation.isSplittable(transform);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Could not inspect %s %s", AppliedPTransform.class.getSimpleName(), transform),
+          e);
+    }
+  }
+}
@@ -22,7 +22,10 @@ import static com.google.common.base.Preconditions.checkState;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.apache.beam.runners.local.StructuralKey;
@@ -31,7 +34,12 @@ import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.PCollection;
 import org.joda.time.Instant;
 
-/** A factory that produces bundles that perform no additional validation. */
+/**
+ * A factory that produces bundles that perform no additional validation.
+ *
+ * <p>Elements are buffered in an array that grows as elements are added. Committing a bundle hands
+ * that array to the {@link CommittedBundle} as a read-only list without copying it.
+ */
 class ImmutableListBundleFactory implements BundleFactory {
   private static final ImmutableListBundleFactory FACTORY = new ImmutableListBundleFactory();
 
@@ -59,10 +67,14 @@ class ImmutableListBundleFactory implements BundleFactory {
 
   /** A {@link UncommittedBundle} that buffers elements in memory. */
   private static final class UncommittedImmutableListBundle<T> implements UncommittedBundle<T> {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final WindowedValue<?>[] EMPTY = new WindowedValue<?>[0];
+
     private final PCollection<T> pcollection;
     private final StructuralKey<?> key;
     private boolean committed = false;
-    private ImmutableList.Builder<WindowedValue<T>> elements;
+    private WindowedValue<?>[] elements = EMPTY;
+    private int size = 0;
     private Instant minSoFar = BoundedWindow.TIMESTAMP_MAX_VALUE;
 
     /**
@@ -76,7 +88,6 @@ class ImmutableListBundleFactory implements BundleFactory {
     private UncommittedImmutableListBundle(PCollection<T> pcollection, StructuralKey<?> key) {
       this.pcollection = pcollection;
       this.key = key;
-      this.elements = ImmutableList.builder();
     }
 
     @Override
@@ -96,7 +107,10 @@ class ImmutableListBundleFactory implements BundleFactory {
           "Can't add an element past the end of time (%s), got timestamp %s",
           BoundedWindow.TIMESTAMP_MAX_VALUE,
           element.getTimestamp());
-      elements.add(element);
+      if (size == elements.length) {
+        elements = Arrays.copyOf(elements, Math.max(INITIAL_CAPACITY, size * 2));
+      }
+      elements[size++] = element;
       if (element.getTimestamp().isBefore(minSoFar)) {
         minSoFar = element.getTimestamp();
       }
@@ -104,10 +118,15 @@ class ImmutableListBundleFactory implements BundleFactory {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public CommittedBundle<T> commit(final Instant synchronizedCompletionTime) {
       checkState(!committed, "Can't commit already committed bundle %s", this);
       committed = true;
-      final Iterable<WindowedValue<T>> committedElements = elements.build();
+      // The array is never written to again, so the committed bundle can share it.
+      List<WindowedValue<T>> committedElements =
+          Collections.unmodifiableList(
+              Arrays.asList((WindowedValue<T>[]) elements).subList(0, size));
+      elements = EMPTY;
       return CommittedImmutableListBundle.create(
           pcollection, key, committedElements, minSoFar, synchronizedCompletionTime);
     }
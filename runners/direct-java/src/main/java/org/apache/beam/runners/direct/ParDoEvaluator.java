@@ -146,6 +146,13 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
       EvaluationContext evaluationContext,
       StructuralKey<?> key,
       Map<TupleTag<?>, PCollection<?>> outputs) {
+    return BundleOutputManager.create(createOutputBundles(evaluationContext, key, outputs));
+  }
+
+  static Map<TupleTag<?>, UncommittedBundle<?>> createOutputBundles(
+      EvaluationContext evaluationContext,
+      StructuralKey<?> key,
+      Map<TupleTag<?>, PCollection<?>> outputs) {
     Map<TupleTag<?>, UncommittedBundle<?>> outputBundles = new HashMap<>();
     for (Map.Entry<TupleTag<?>, PCollection<?>> outputEntry : outputs.entrySet()) {
       // Just trust the context's decision as to whether the output should be keyed.
@@ -159,7 +166,7 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
             outputEntry.getKey(), evaluationContext.createBundle(outputEntry.getValue()));
       }
     }
-    return BundleOutputManager.create(outputBundles);
+    return outputBundles;
   }
 
   ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -169,7 +176,7 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
   private final BundleOutputManager outputManager;
   private final DirectStepContext stepContext;
 
-  private final ImmutableList.Builder<WindowedValue<InputT>> unprocessedElements;
+  private ImmutableList.Builder<WindowedValue<InputT>> unprocessedElements;
 
   private ParDoEvaluator(
       PushbackSideInputDoFnRunner<InputT, ?> fnRunner,
@@ -189,6 +196,23 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
     }
   }
 
+  /**
+   * Prepares this evaluator to evaluate another bundle after the previous bundle was finished,
+   * adding all output to the provided bundles.
+   *
+   * <p>The {@link DirectStepContext} of the first bundle is retained, so this may only be used if
+   * the {@link DoFn} does not use state or timers.
+   */
+  void reuse(Map<TupleTag<?>, UncommittedBundle<?>> outputBundles) {
+    outputManager.bundles = outputBundles;
+    unprocessedElements = ImmutableList.builder();
+    try {
+      fnRunner.startBundle();
+    } catch (Exception e) {
+      throw UserCodeException.wrap(e);
+    }
+  }
+
   public PushbackSideInputDoFnRunner<InputT, ?> getFnRunner() {
     return fnRunner;
   }
@@ -243,7 +267,7 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
   }
 
   static class BundleOutputManager implements OutputManager {
-    private final Map<TupleTag<?>, UncommittedBundle<?>> bundles;
+    private Map<TupleTag<?>, UncommittedBundle<?>> bundles;
 
     public static BundleOutputManager create(Map<TupleTag<?>, UncommittedBundle<?>> outputBundles) {
       return new BundleOutputManager(outputBundles);
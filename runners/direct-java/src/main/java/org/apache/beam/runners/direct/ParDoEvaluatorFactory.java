@@ -17,20 +17,25 @@
  */
 package org.apache.beam.runners.direct;
 
+import com.google.auto.value.AutoValue;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.beam.runners.core.construction.ParDoTranslation;
 import org.apache.beam.runners.direct.DirectExecutionContext.DirectStepContext;
+import org.apache.beam.runners.direct.DirectOptions.ExecutionProfile;
 import org.apache.beam.runners.direct.ParDoEvaluator.DoFnRunnerFactory;
 import org.apache.beam.runners.local.StructuralKey;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.runners.AppliedPTransform;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PCollectionView;
@@ -48,6 +53,15 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
   private final PipelineOptions options;
   private final ParDoEvaluator.DoFnRunnerFactory<InputT, OutputT> runnerFactory;
 
+  /**
+   * Whether {@link ParDoEvaluator ParDoEvaluators} of {@link DoFn DoFns} without state, timers, or
+   * side inputs are reused across bundles rather than created for each bundle.
+   */
+  private final boolean reuseEvaluators;
+
+  private final LoadingCache<AppliedPTransform<?, ?, ?>, Boolean> reusableApplications;
+  private final ConcurrentMap<EvaluatorKey, ParDoEvaluator<InputT>> idleEvaluators;
+
   ParDoEvaluatorFactory(
       EvaluationContext evaluationContext,
       DoFnRunnerFactory<InputT, OutputT> runnerFactory,
@@ -57,6 +71,20 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
     this.options = options;
     this.runnerFactory = runnerFactory;
     fnClones = CacheBuilder.newBuilder().build(doFnCacheLoader);
+    this.reuseEvaluators =
+        options.as(DirectOptions.class).getExecutionProfile() == ExecutionProfile.PERFORMANCE;
+    this.reusableApplications =
+        CacheBuilder.newBuilder()
+            .build(
+                new CacheLoader<AppliedPTransform<?, ?, ?>, Boolean>() {
+                  @Override
+                  public Boolean load(AppliedPTransform<?, ?, ?> application) throws Exception {
+                    return ParDoTranslation.getSideInputs(application).isEmpty()
+                        && !ParDoTranslation.usesStateOrTimers(application)
+                        && !ParDoTranslation.isSplittable(application);
+                  }
+                });
+    this.idleEvaluators = new ConcurrentHashMap<>();
   }
 
   static CacheLoader<AppliedPTransform<?, ?, ?>, DoFnLifecycleManager> basicDoFnCacheLoader() {
@@ -71,6 +99,16 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
   @Override
   public <T> TransformEvaluator<T> forApplication(
       AppliedPTransform<?, ?, ?> application, CommittedBundle<?> inputBundle) throws Exception {
+    if (reuseEvaluators && reusableApplications.getUnchecked(application)) {
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      TransformEvaluator<T> evaluator =
+          (TransformEvaluator<T>)
+              reusedEvaluator(
+                  (AppliedPTransform) application,
+                  (PCollection<InputT>) inputBundle.getPCollection(),
+                  inputBundle.getKey());
+      return evaluator;
+    }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
     TransformEvaluator<T> evaluator =
@@ -87,6 +125,7 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
 
   @Override
   public void cleanup() throws Exception {
+    idleEvaluators.clear();
     DoFnLifecycleManagers.removeAllFromManagers(fnClones.asMap().values());
   }
 
@@ -126,6 +165,102 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
         fnManager);
   }
 
+  /**
+   * Returns an evaluator for the provided application which reuses the {@link ParDoEvaluator} that
+   * evaluated the previous bundle of the application on this thread, if there is one.
+   *
+   * <p>{@link DoFn} instances are confined to a thread by the {@link DoFnLifecycleManager}, so
+   * evaluators are only reused by the thread that created them. An evaluator is only made available
+   * for reuse once its bundle finished successfully. The idle evaluators of threads which are no
+   * longer alive are dropped whenever a new evaluator is created, which happens at the latest when
+   * a replacement thread processes its first bundle of the application.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private TransformEvaluator<InputT> reusedEvaluator(
+      AppliedPTransform<PCollection<InputT>, PCollectionTuple, ?> application,
+      PCollection<InputT> mainInput,
+      StructuralKey<?> inputBundleKey)
+      throws Exception {
+    EvaluatorKey evaluatorKey = EvaluatorKey.of(application, Thread.currentThread());
+    DoFnLifecycleManager fnManager = fnClones.getUnchecked(application);
+    ParDoEvaluator<InputT> parDoEvaluator = idleEvaluators.remove(evaluatorKey);
+    if (parDoEvaluator == null) {
+      idleEvaluators.keySet().removeIf(key -> !key.getThread().isAlive());
+      parDoEvaluator =
+          createEvaluator(
+                  application,
+                  mainInput,
+                  inputBundleKey,
+                  ParDoTranslation.getSideInputs(application),
+                  (TupleTag<OutputT>) ParDoTranslation.getMainOutputTag(application),
+                  ParDoTranslation.getAdditionalOutputTags(application).getAll())
+              .getParDoEvaluator();
+    } else {
+      try {
+        parDoEvaluator.reuse(
+            ParDoEvaluator.createOutputBundles(
+                evaluationContext, inputBundleKey, pcollections(application.getOutputs())));
+      } catch (Exception e) {
+        try {
+          fnManager.remove();
+        } catch (Exception removalException) {
+          LOG.error(
+              "Exception encountered while cleaning up in ParDo evaluator reuse",
+              removalException);
+          e.addSuppressed(removalException);
+        }
+        throw e;
+      }
+    }
+    return new ReleasingTransformEvaluator(
+        evaluatorKey,
+        parDoEvaluator,
+        DoFnLifecycleManagerRemovingTransformEvaluator.wrapping(parDoEvaluator, fnManager));
+  }
+
+  /**
+   * A {@link TransformEvaluator} which makes its {@link ParDoEvaluator} available for reuse once
+   * the bundle has been finished.
+   */
+  private class ReleasingTransformEvaluator implements TransformEvaluator<InputT> {
+    private final EvaluatorKey evaluatorKey;
+    private final ParDoEvaluator<InputT> parDoEvaluator;
+    private final TransformEvaluator<InputT> underlying;
+
+    private ReleasingTransformEvaluator(
+        EvaluatorKey evaluatorKey,
+        ParDoEvaluator<InputT> parDoEvaluator,
+        TransformEvaluator<InputT> underlying) {
+      this.evaluatorKey = evaluatorKey;
+      this.parDoEvaluator = parDoEvaluator;
+      this.underlying = underlying;
+    }
+
+    @Override
+    public void processElement(WindowedValue<InputT> element) throws Exception {
+      underlying.processElement(element);
+    }
+
+    @Override
+    public TransformResult<InputT> finishBundle() throws Exception {
+      TransformResult<InputT> result = underlying.finishBundle();
+      idleEvaluators.put(evaluatorKey, parDoEvaluator);
+      return result;
+    }
+  }
+
+  /** Identifies the evaluators of an application that may be reused by a thread. */
+  @AutoValue
+  abstract static class EvaluatorKey {
+    static EvaluatorKey of(AppliedPTransform<?, ?, ?> application, Thread thread) {
+      return new AutoValue_ParDoEvaluatorFactory_EvaluatorKey(application, thread);
+    }
+
+    abstract AppliedPTransform<?, ?, ?> getApplication();
+
+    abstract Thread getThread();
+  }
+
   ParDoEvaluator<InputT> createParDoEvaluator(
       AppliedPTransform<PCollection<InputT>, PCollectionTuple, ?> application,
       StructuralKey<?> key,
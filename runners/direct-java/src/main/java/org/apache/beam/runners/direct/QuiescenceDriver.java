@@ -262,9 +262,17 @@ class QuiescenceDriver implements ExecutionDriver {
       CommittedResult<AppliedPTransform<?, ?, ?>> committedResult =
           evaluationContext.handleResult(inputBundle, timers, result);
       for (CommittedBundle<?> outputBundle : committedResult.getOutputs()) {
-        pendingWork.offer(
-            WorkUpdate.fromBundle(
-                outputBundle, graph.getPerElementConsumers(outputBundle.getPCollection())));
+        Collection<AppliedPTransform<?, ?, ?>> consumers =
+            graph.getPerElementConsumers(outputBundle.getPCollection());
+        if (bundleProcessor.isFused(outputBundle.getPCollection())) {
+          // The work is outstanding before this result is complete, so the executor can't quiesce
+          for (AppliedPTransform<?, ?, ?> consumer : consumers) {
+            outstandingWork.incrementAndGet();
+            bundleProcessor.process(outputBundle, consumer, defaultCompletionCallback);
+          }
+        } else {
+          pendingWork.offer(WorkUpdate.fromBundle(outputBundle, consumers));
+        }
       }
       Optional<? extends CommittedBundle<?>> unprocessedInputs =
           committedResult.getUnprocessedInputs();
@@ -35,9 +35,10 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.EnumMap;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -232,8 +233,8 @@ public class WatermarkManager<ExecutableT, CollectionT> {
     // a per-key-and-StateNamespace timer is set.
     private final Map<StructuralKey<?>, Table<StateNamespace, String, TimerData>> existingTimers;
 
-    // This per-key sorted set allows quick retrieval of timers that should fire for a key
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> objectTimers;
+    // The timers which have not yet fired, which allows quick retrieval of timers that should fire
+    private final KeyedTimers unfiredTimers;
 
     private AtomicReference<Instant> currentWatermark;
 
@@ -251,7 +252,7 @@ public class WatermarkManager<ExecutableT, CollectionT> {
           new BundleByElementTimestampComparator().compound(Ordering.arbitrary());
       this.pendingElements = TreeMultiset.create(pendingBundleComparator);
       this.pendingTimers = TreeMultiset.create();
-      this.objectTimers = new HashMap<>();
+      this.unfiredTimers = new KeyedTimers();
       this.existingTimers = new HashMap<>();
       currentWatermark = new AtomicReference<>(BoundedWindow.TIMESTAMP_MIN_VALUE);
     }
@@ -317,8 +318,6 @@ public class WatermarkManager<ExecutableT, CollectionT> {
 
     @VisibleForTesting
     synchronized void updateTimers(TimerUpdate update) {
-      NavigableSet<TimerData> keyTimers =
-          objectTimers.computeIfAbsent(update.key, k -> new TreeSet<>());
       Table<StateNamespace, String, TimerData> existingTimersForKey =
           existingTimers.computeIfAbsent(update.key, k -> HashBasedTable.create());
 
@@ -330,12 +329,12 @@ public class WatermarkManager<ExecutableT, CollectionT> {
 
           if (existingTimer == null) {
             pendingTimers.add(timer);
-            keyTimers.add(timer);
+            unfiredTimers.add(update.key, timer);
           } else if (!existingTimer.equals(timer)) {
             pendingTimers.remove(existingTimer);
-            keyTimers.remove(existingTimer);
+            unfiredTimers.remove(update.key, existingTimer);
             pendingTimers.add(timer);
-            keyTimers.add(timer);
+            unfiredTimers.add(update.key, timer);
           } // else the timer is already set identically, so noop
 
           existingTimersForKey.put(timer.getNamespace(), timer.getTimerId(), timer);
@@ -350,7 +349,7 @@ public class WatermarkManager<ExecutableT, CollectionT> {
 
           if (existingTimer != null) {
             pendingTimers.remove(existingTimer);
-            keyTimers.remove(existingTimer);
+            unfiredTimers.remove(update.key, existingTimer);
             existingTimersForKey.remove(existingTimer.getNamespace(), existingTimer.getTimerId());
           }
         }
@@ -358,7 +357,7 @@ public class WatermarkManager<ExecutableT, CollectionT> {
 
       for (TimerData timer : update.getCompletedTimers()) {
         if (TimeDomain.EVENT_TIME.equals(timer.getDomain())) {
-          keyTimers.remove(timer);
+          unfiredTimers.remove(update.key, timer);
           pendingTimers.remove(timer);
         }
       }
@@ -366,7 +365,7 @@ public class WatermarkManager<ExecutableT, CollectionT> {
 
     @VisibleForTesting
     synchronized Map<StructuralKey<?>, List<TimerData>> extractFiredEventTimeTimers() {
-      return extractFiredTimers(currentWatermark.get(), objectTimers);
+      return unfiredTimers.extractFiredTimers(currentWatermark.get());
     }
 
     @Override
@@ -476,9 +475,9 @@ public class WatermarkManager<ExecutableT, CollectionT> {
     private final String name;
 
     private final Collection<? extends Watermark> inputWms;
-    private final Collection<Bundle<?, ?>> pendingBundles;
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> processingTimers;
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> synchronizedProcessingTimers;
+    private final SortedMultiset<Bundle<?, ?>> pendingBundles;
+    private final KeyedTimers processingTimers;
+    private final KeyedTimers synchronizedProcessingTimers;
     private final Map<StructuralKey<?>, Table<StateNamespace, String, TimerData>> existingTimers;
 
     private final NavigableSet<TimerData> pendingTimers;
@@ -489,9 +488,12 @@ public class WatermarkManager<ExecutableT, CollectionT> {
         String name, Collection<? extends Watermark> inputWms) {
       this.name = name;
       this.inputWms = inputWms;
-      this.pendingBundles = new HashSet<>();
-      this.processingTimers = new HashMap<>();
-      this.synchronizedProcessingTimers = new HashMap<>();
+      // As with pending elements, the ordering must not compare two distinct bundles as equal.
+      Ordering<Bundle<?, ?>> pendingBundleComparator =
+          new BundleBySynchronizedProcessingTimeComparator().compound(Ordering.arbitrary());
+      this.pendingBundles = TreeMultiset.create(pendingBundleComparator);
+      this.processingTimers = new KeyedTimers();
+      this.synchronizedProcessingTimers = new KeyedTimers();
       this.existingTimers = new HashMap<>();
       this.pendingTimers = new TreeSet<>();
       Instant initialHold = BoundedWindow.TIMESTAMP_MAX_VALUE;
@@ -532,11 +534,14 @@ public class WatermarkManager<ExecutableT, CollectionT> {
       for (Watermark input : inputWms) {
         minTime = INSTANT_ORDERING.min(minTime, input.get());
       }
-      for (Bundle<?, ?> bundle : pendingBundles) {
+      if (!pendingBundles.isEmpty()) {
         // TODO: Track elements in the bundle by the processing time they were output instead of
         // entire bundles. Requried to support arbitrarily splitting and merging bundles between
         // steps
-        minTime = INSTANT_ORDERING.min(minTime, bundle.getSynchronizedProcessingOutputWatermark());
+        minTime =
+            INSTANT_ORDERING.min(
+                minTime,
+                pendingBundles.firstEntry().getElement().getSynchronizedProcessingOutputWatermark());
       }
       earliestHold.set(minTime);
       return updateAndTrace(getName(), oldHold, minTime);
@@ -556,17 +561,10 @@ public class WatermarkManager<ExecutableT, CollectionT> {
      * timestamp across timers that have been delivered but have not been completed.
      */
     public synchronized Instant getEarliestTimerTimestamp() {
-      Instant earliest = THE_END_OF_TIME.get();
-      for (NavigableSet<TimerData> timers : processingTimers.values()) {
-        if (!timers.isEmpty()) {
-          earliest = INSTANT_ORDERING.min(timers.first().getTimestamp(), earliest);
-        }
-      }
-      for (NavigableSet<TimerData> timers : synchronizedProcessingTimers.values()) {
-        if (!timers.isEmpty()) {
-          earliest = INSTANT_ORDERING.min(timers.first().getTimestamp(), earliest);
-        }
-      }
+      Instant earliest =
+          INSTANT_ORDERING.min(
+              processingTimers.getEarliestTimestamp(),
+              synchronizedProcessingTimers.getEarliestTimestamp());
       if (!pendingTimers.isEmpty()) {
         earliest = INSTANT_ORDERING.min(pendingTimers.first().getTimestamp(), earliest);
       }
@@ -574,12 +572,11 @@ public class WatermarkManager<ExecutableT, CollectionT> {
     }
 
     private synchronized void updateTimers(TimerUpdate update) {
-      Map<TimeDomain, NavigableSet<TimerData>> timerMap = timerMap(update.key);
       Table<StateNamespace, String, TimerData> existingTimersForKey =
           existingTimers.computeIfAbsent(update.key, k -> HashBasedTable.create());
 
       for (TimerData addedTimer : update.setTimers) {
-        NavigableSet<TimerData> timerQueue = timerMap.get(addedTimer.getDomain());
+        KeyedTimers timerQueue = timersForDomain(addedTimer.getDomain());
         if (timerQueue == null) {
           continue;
         }
@@ -588,17 +585,17 @@ public class WatermarkManager<ExecutableT, CollectionT> {
         TimerData existingTimer =
             existingTimersForKey.get(addedTimer.getNamespace(), addedTimer.getTimerId());
         if (existingTimer == null) {
-          timerQueue.add(addedTimer);
+          timerQueue.add(update.key, addedTimer);
         } else if (!existingTimer.equals(addedTimer)) {
-          timerQueue.remove(existingTimer);
-          timerQueue.add(addedTimer);
+          timerQueue.remove(update.key, existingTimer);
+          timerQueue.add(update.key, addedTimer);
         } // else the timer is already set identically, so noop.
 
         existingTimersForKey.put(addedTimer.getNamespace(), addedTimer.getTimerId(), addedTimer);
       }
 
       for (TimerData deletedTimer : update.deletedTimers) {
-        NavigableSet<TimerData> timerQueue = timerMap.get(deletedTimer.getDomain());
+        KeyedTimers timerQueue = timersForDomain(deletedTimer.getDomain());
         if (timerQueue == null) {
           continue;
         }
@@ -609,7 +606,7 @@ public class WatermarkManager<ExecutableT, CollectionT> {
 
         if (existingTimer != null) {
           pendingTimers.remove(deletedTimer);
-          timerQueue.remove(deletedTimer);
+          timerQueue.remove(update.key, deletedTimer);
           existingTimersForKey.remove(existingTimer.getNamespace(), existingTimer.getTimerId());
         }
       }
@@ -624,13 +621,12 @@ public class WatermarkManager<ExecutableT, CollectionT> {
       Map<StructuralKey<?>, List<TimerData>> firedTimers;
       switch (domain) {
         case PROCESSING_TIME:
-          firedTimers = extractFiredTimers(firingTime, processingTimers);
+          firedTimers = processingTimers.extractFiredTimers(firingTime);
           break;
         case SYNCHRONIZED_PROCESSING_TIME:
           firedTimers =
-              extractFiredTimers(
-                  INSTANT_ORDERING.min(firingTime, earliestHold.get()),
-                  synchronizedProcessingTimers);
+              synchronizedProcessingTimers.extractFiredTimers(
+                  INSTANT_ORDERING.min(firingTime, earliestHold.get()));
           break;
         default:
           throw new IllegalArgumentException(
@@ -645,15 +641,16 @@ public class WatermarkManager<ExecutableT, CollectionT> {
       return firedTimers;
     }
 
-    private Map<TimeDomain, NavigableSet<TimerData>> timerMap(StructuralKey<?> key) {
-      NavigableSet<TimerData> processingQueue =
-          processingTimers.computeIfAbsent(key, k -> new TreeSet<>());
-      NavigableSet<TimerData> synchronizedProcessingQueue =
-          synchronizedProcessingTimers.computeIfAbsent(key, k -> new TreeSet<>());
-      EnumMap<TimeDomain, NavigableSet<TimerData>> result = new EnumMap<>(TimeDomain.class);
-      result.put(TimeDomain.PROCESSING_TIME, processingQueue);
-      result.put(TimeDomain.SYNCHRONIZED_PROCESSING_TIME, synchronizedProcessingQueue);
-      return result;
+    @Nullable
+    private KeyedTimers timersForDomain(TimeDomain domain) {
+      switch (domain) {
+        case PROCESSING_TIME:
+          return processingTimers;
+        case SYNCHRONIZED_PROCESSING_TIME:
+          return synchronizedProcessingTimers;
+        default:
+          return null;
+      }
     }
 
     @Override
@@ -767,33 +764,78 @@ public class WatermarkManager<ExecutableT, CollectionT> {
   private static final Ordering<Instant> INSTANT_ORDERING = Ordering.natural();
 
   /**
-   * For each (Object, NavigableSet) pair in the provided map, remove each Timer that is before the
-   * latestTime argument and put in in the result with the same key, then remove all of the keys
-   * which have no more pending timers.
+   * The timers of an {@link AppliedPTransform} within a single time domain which have not yet
+   * fired, grouped by key.
    *
-   * <p>The result collection retains ordering of timers (from earliest to latest).
+   * <p>In addition to the per-key timers, all timers are kept ordered by timestamp so that the
+   * earliest timer is available, and steps without timers to fire can be skipped, without visiting
+   * every key.
    */
-  private static Map<StructuralKey<?>, List<TimerData>> extractFiredTimers(
-      Instant latestTime, Map<StructuralKey<?>, NavigableSet<TimerData>> objectTimers) {
-    Map<StructuralKey<?>, List<TimerData>> result = new HashMap<>();
-    Set<StructuralKey<?>> emptyKeys = new HashSet<>();
-    for (Map.Entry<StructuralKey<?>, NavigableSet<TimerData>> pendingTimers :
-        objectTimers.entrySet()) {
-      NavigableSet<TimerData> timers = pendingTimers.getValue();
-      if (!timers.isEmpty() && timers.first().getTimestamp().isBefore(latestTime)) {
-        ArrayList<TimerData> keyFiredTimers = new ArrayList<>();
-        result.put(pendingTimers.getKey(), keyFiredTimers);
-        while (!timers.isEmpty() && timers.first().getTimestamp().isBefore(latestTime)) {
-          keyFiredTimers.add(timers.first());
-          timers.remove(timers.first());
+  private static class KeyedTimers {
+    private final Map<StructuralKey<?>, NavigableSet<TimerData>> timersByKey;
+    // Timers for distinct keys may compare as equal, so this must be a multiset
+    private final SortedMultiset<TimerData> allTimers;
+
+    private KeyedTimers() {
+      this.timersByKey = new HashMap<>();
+      this.allTimers = TreeMultiset.create();
+    }
+
+    private void add(StructuralKey<?> key, TimerData timer) {
+      if (timersByKey.computeIfAbsent(key, k -> new TreeSet<>()).add(timer)) {
+        allTimers.add(timer);
+      }
+    }
+
+    private void remove(StructuralKey<?> key, TimerData timer) {
+      NavigableSet<TimerData> keyTimers = timersByKey.get(key);
+      if (keyTimers != null && keyTimers.remove(timer)) {
+        allTimers.remove(timer);
+        if (keyTimers.isEmpty()) {
+          timersByKey.remove(key);
         }
       }
-      if (timers.isEmpty()) {
-        emptyKeys.add(pendingTimers.getKey());
+    }
+
+    /** Returns the timestamp of the earliest timer, or THE_END_OF_TIME if there are none. */
+    private Instant getEarliestTimestamp() {
+      return allTimers.isEmpty()
+          ? THE_END_OF_TIME.get()
+          : allTimers.firstEntry().getElement().getTimestamp();
+    }
+
+    /**
+     * Removes each timer that is before the latestTime argument and puts it in the result with the
+     * same key.
+     *
+     * <p>The result collection retains ordering of timers (from earliest to latest).
+     */
+    private Map<StructuralKey<?>, List<TimerData>> extractFiredTimers(Instant latestTime) {
+      if (!getEarliestTimestamp().isBefore(latestTime)) {
+        return Collections.emptyMap();
       }
+      Map<StructuralKey<?>, List<TimerData>> result = new HashMap<>();
+      Iterator<Map.Entry<StructuralKey<?>, NavigableSet<TimerData>>> keyTimersIterator =
+          timersByKey.entrySet().iterator();
+      while (keyTimersIterator.hasNext()) {
+        Map.Entry<StructuralKey<?>, NavigableSet<TimerData>> pendingTimers =
+            keyTimersIterator.next();
+        NavigableSet<TimerData> timers = pendingTimers.getValue();
+        if (timers.first().getTimestamp().isBefore(latestTime)) {
+          ArrayList<TimerData> keyFiredTimers = new ArrayList<>();
+          result.put(pendingTimers.getKey(), keyFiredTimers);
+          while (!timers.isEmpty() && timers.first().getTimestamp().isBefore(latestTime)) {
+            TimerData firedTimer = timers.pollFirst();
+            allTimers.remove(firedTimer);
+            keyFiredTimers.add(firedTimer);
+          }
+        }
+        if (timers.isEmpty()) {
+          keyTimersIterator.remove();
+        }
+      }
+      return result;
     }
-    objectTimers.keySet().removeAll(emptyKeys);
-    return result;
   }
 
   ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -890,8 +932,11 @@ public class WatermarkManager<ExecutableT, CollectionT> {
           new SynchronizedProcessingTimeOutputWatermark(
               name + ".outProcessing", inputProcessingWatermark);
 
+      // All producers of the inputs have been created above, so the index orders each executable
+      // after every executable upstream of it.
       wms =
           new TransformWatermarks(
+              transformToWatermarks.size(),
               executable,
               inputWatermark,
               outputWatermark,
@@ -1103,34 +1148,33 @@ public class WatermarkManager<ExecutableT, CollectionT> {
     refreshLock.lock();
     try {
       applyAllPendingUpdates();
-      Set<ExecutableT> toRefresh = pendingRefreshes;
+      // Only the executables which were updated and those downstream of an advanced watermark
+      // need to be refreshed. Refreshing in topological order refreshes each of them at most once,
+      // after all of its upstream watermarks have been refreshed.
+      NavigableSet<TransformWatermarks> toRefresh =
+          new TreeSet<>(Comparator.comparingInt(wms -> wms.topologicalIndex));
+      for (ExecutableT executable : pendingRefreshes) {
+        toRefresh.add(transformToWatermarks.get(executable));
+      }
+      pendingRefreshes.clear();
       while (!toRefresh.isEmpty()) {
-        toRefresh = refreshAllOf(toRefresh);
+        refreshWatermarks(toRefresh.pollFirst(), toRefresh);
       }
     } finally {
       refreshLock.unlock();
     }
   }
 
-  private Set<ExecutableT> refreshAllOf(Set<ExecutableT> toRefresh) {
-    Set<ExecutableT> newRefreshes = new HashSet<>();
-    for (ExecutableT executable : toRefresh) {
-      newRefreshes.addAll(refreshWatermarks(executable));
-    }
-    return newRefreshes;
-  }
-
-  private Set<ExecutableT> refreshWatermarks(ExecutableT toRefresh) {
-    TransformWatermarks myWatermarks = transformToWatermarks.get(toRefresh);
+  private void refreshWatermarks(
+      TransformWatermarks myWatermarks, Collection<TransformWatermarks> toRefresh) {
     WatermarkUpdate updateResult = myWatermarks.refresh();
     if (updateResult.isAdvanced()) {
-      Set<ExecutableT> additionalRefreshes = new HashSet<>();
-      for (CollectionT outputPValue : graph.getProduced(toRefresh)) {
-        additionalRefreshes.addAll(graph.getPerElementConsumers(outputPValue));
+      for (CollectionT outputPValue : graph.getProduced(myWatermarks.executable)) {
+        for (ExecutableT consumer : graph.getPerElementConsumers(outputPValue)) {
+          toRefresh.add(transformToWatermarks.get(consumer));
+        }
       }
-      return additionalRefreshes;
     }
-    return Collections.emptySet();
   }
 
   /**
@@ -1251,6 +1295,7 @@ public class WatermarkManager<ExecutableT, CollectionT> {
 
   /** A reference to the input and output watermarks of an {@link AppliedPTransform}. */
   public class TransformWatermarks {
+    private final int topologicalIndex;
     private final ExecutableT executable;
 
     private final AppliedPTransformInputWatermark inputWatermark;
@@ -1263,11 +1308,13 @@ public class WatermarkManager<ExecutableT, CollectionT> {
     private Instant latestSynchronizedOutputWm;
 
     private TransformWatermarks(
+        int topologicalIndex,
         ExecutableT executable,
         AppliedPTransformInputWatermark inputWatermark,
         AppliedPTransformOutputWatermark outputWatermark,
         SynchronizedProcessingTimeInputWatermark inputSynchProcessingWatermark,
         SynchronizedProcessingTimeOutputWatermark outputSynchProcessingWatermark) {
+      this.topologicalIndex = topologicalIndex;
       this.executable = executable;
       this.inputWatermark = inputWatermark;
       this.outputWatermark = outputWatermark;
@@ -1592,6 +1639,18 @@ public class WatermarkManager<ExecutableT, CollectionT> {
     }
   }
 
+  private static class BundleBySynchronizedProcessingTimeComparator
+      extends Ordering<Bundle<?, ?>> implements Serializable {
+    @Override
+    public int compare(Bundle<?, ?> o1, Bundle<?, ?> o2) {
+      return ComparisonChain.start()
+          .compare(
+              o1.getSynchronizedProcessingOutputWatermark(),
+              o2.getSynchronizedProcessingOutputWatermark())
+          .result();
+    }
+  }
+
   @AutoValue
   abstract static class PendingWatermarkUpdate<ExecutableT, CollectionT> {
     abstract ExecutableT getExecutable();
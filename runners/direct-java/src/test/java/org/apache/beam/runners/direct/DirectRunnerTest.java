@@ -31,6 +31,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -43,6 +44,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.beam.runners.direct.DirectRunner.DirectPipelineResult;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.Pipeline.PipelineExecutionException;
 import org.apache.beam.sdk.PipelineResult;
 import org.apache.beam.sdk.PipelineResult.State;
 import org.apache.beam.sdk.PipelineRunner;
@@ -68,6 +70,8 @@ import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.SerializableFunction;
 import org.apache.beam.sdk.transforms.SimpleFunction;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.Values;
 import org.apache.beam.sdk.transforms.display.DisplayData;
 import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.IllegalMutationException;
@@ -75,6 +79,7 @@ import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionList;
 import org.apache.beam.sdk.values.TypeDescriptor;
+import org.apache.beam.sdk.values.TypeDescriptors;
 import org.hamcrest.Matchers;
 import org.joda.time.Duration;
 import org.junit.Rule;
@@ -367,6 +372,112 @@ public class DirectRunnerTest implements Serializable {
     p.run();
   }
 
+  /**
+   * Tests that a {@link Pipeline} with ParDo chains, a GroupByKey and a Combine produces correct
+   * results with the performance profile of the {@link DirectRunner}.
+   */
+  @Test
+  public void performanceProfileShouldSucceed() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    options.setRunner(DirectRunner.class);
+    options.as(DirectOptions.class).setExecutionProfile(DirectOptions.ExecutionProfile.PERFORMANCE);
+    Pipeline pipeline = Pipeline.create(options);
+
+    PCollection<Long> values =
+        pipeline
+            .apply(Read.from(MustSplitSource.of(CountingSource.upTo(1000))))
+            .apply("Increment", MapElements.into(TypeDescriptors.longs()).via(x -> x + 1))
+            .apply("Double", MapElements.into(TypeDescriptors.longs()).via(x -> x * 2));
+    PCollection<KV<Long, Long>> counts =
+        values
+            .apply(MapElements.into(TypeDescriptors.longs()).via(x -> x % 10))
+            .apply(Count.perElement());
+
+    PAssert.that(values.apply(Sum.longsGlobally())).containsInAnyOrder(1001000L);
+    PAssert.that(counts.apply(Values.create())).containsInAnyOrder(Collections.nCopies(5, 200L));
+
+    pipeline.run();
+  }
+
+  /**
+   * Tests that a long chain of fused {@link DoFn DoFns} succeeds with the performance profile of the
+   * {@link DirectRunner} without growing the stack with the length of the chain.
+   */
+  @Test
+  public void performanceProfileLongFusedChainShouldSucceed() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    options.setRunner(DirectRunner.class);
+    options.as(DirectOptions.class).setExecutionProfile(DirectOptions.ExecutionProfile.PERFORMANCE);
+    Pipeline pipeline = Pipeline.create(options);
+
+    PCollection<Integer> values = pipeline.apply(Create.of(1, 2, 3));
+    for (int i = 0; i < 1000; i++) {
+      values =
+          values.apply(
+              "Increment" + i, MapElements.into(TypeDescriptors.integers()).via(x -> x + 1));
+    }
+    PAssert.that(values).containsInAnyOrder(1001, 1002, 1003);
+
+    pipeline.run();
+  }
+
+  /**
+   * Tests that an exception thrown by a {@link DoFn} that is fused into the stage of its producer
+   * fails the {@link Pipeline} with the performance profile of the {@link DirectRunner}.
+   */
+  @Test
+  public void performanceProfileFusedExceptionShouldFail() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    options.setRunner(DirectRunner.class);
+    options.as(DirectOptions.class).setExecutionProfile(DirectOptions.ExecutionProfile.PERFORMANCE);
+    Pipeline pipeline = Pipeline.create(options);
+
+    pipeline
+        .apply(Create.of(1, 2, 3))
+        .apply("Increment", MapElements.into(TypeDescriptors.integers()).via(x -> x + 1))
+        .apply(
+            ParDo.of(
+                new DoFn<Integer, Integer>() {
+                  @ProcessElement
+                  public void processElement(ProcessContext c) {
+                    throw new IllegalArgumentException("fused failure");
+                  }
+                }));
+
+    thrown.expect(PipelineExecutionException.class);
+    thrown.expectCause(isA(IllegalArgumentException.class));
+    thrown.expectMessage("fused failure");
+    pipeline.run();
+  }
+
+  /**
+   * Tests that a {@link DoFn} that mutates its output succeeds with the performance profile of the
+   * {@link DirectRunner}, which disables all enforcements.
+   */
+  @Test
+  public void testMutatingOutputWithPerformanceProfileSucceeds() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    options.setRunner(DirectRunner.class);
+    options.as(DirectOptions.class).setExecutionProfile(DirectOptions.ExecutionProfile.PERFORMANCE);
+    Pipeline pipeline = Pipeline.create(options);
+
+    pipeline
+        .apply(Create.of(42))
+        .apply(
+            ParDo.of(
+                new DoFn<Integer, List<Integer>>() {
+                  @ProcessElement
+                  public void processElement(ProcessContext c) {
+                    List<Integer> outputList = Arrays.asList(1, 2, 3, 4);
+                    c.output(outputList);
+                    outputList.set(0, 37);
+                    c.output(outputList);
+                  }
+                }));
+
+    pipeline.run();
+  }
+
   /**
    * Tests that a {@link DoFn} that mutates an output with a good equals() fails in the {@link
    * DirectRunner}.
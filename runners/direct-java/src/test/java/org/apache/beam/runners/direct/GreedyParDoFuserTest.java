@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.Set;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.transforms.WithKeys;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link GreedyParDoFuser}. */
+@RunWith(JUnit4.class)
+public class GreedyParDoFuserTest {
+  @Rule public final TestPipeline p = TestPipeline.create().enableAbandonedNodeEnforcement(false);
+
+  @Test
+  public void fusesChainsOfStatelessParDos() {
+    PCollection<Integer> created = p.apply(Create.of(1, 2, 3));
+    PCollection<Integer> first = created.apply("First", ParDo.of(new IdentityFn<>()));
+    PCollection<Integer> second = first.apply("Second", ParDo.of(new IdentityFn<>()));
+    second.apply("FanOutA", ParDo.of(new IdentityFn<>()));
+    second.apply("FanOutB", ParDo.of(new IdentityFn<>()));
+
+    assertThat(fusedCollections(), containsInAnyOrder(created, first));
+  }
+
+  @Test
+  public void doesNotFuseParDosWithSideInputs() {
+    PCollection<Integer> created = p.apply(Create.of(1, 2, 3));
+    PCollectionView<Integer> view = p.apply("CreateView", Create.of(4)).apply(View.asSingleton());
+    created.apply(ParDo.of(new AddSideInputFn(view)).withSideInputs(view));
+
+    assertThat(fusedCollections(), not(hasItem(created)));
+  }
+
+  @Test
+  public void doesNotFuseKeyedCollections() {
+    PCollection<KV<String, Iterable<Integer>>> grouped =
+        p.apply(Create.of(1, 2, 3)).apply(WithKeys.of("foo")).apply(GroupByKey.create());
+    grouped.apply(ParDo.of(new IdentityFn<>()));
+
+    assertThat(fusedCollections(), not(hasItem(grouped)));
+  }
+
+  private Set<PCollection<?>> fusedCollections() {
+    DirectGraphs.performDirectOverrides(p);
+    KeyedPValueTrackingVisitor keyedPValues = KeyedPValueTrackingVisitor.create();
+    p.traverseTopologically(keyedPValues);
+    DirectGraph graph = DirectGraphs.getGraph(p);
+    EvaluationContext context =
+        EvaluationContext.create(
+            MockClock.fromInstant(new Instant(0)),
+            ImmutableListBundleFactory.create(),
+            graph,
+            keyedPValues.getKeyedPValues(),
+            MoreExecutors.newDirectExecutorService());
+    return GreedyParDoFuser.fusedCollections(graph, context);
+  }
+
+  private static class AddSideInputFn extends DoFn<Integer, Integer> {
+    private final PCollectionView<Integer> view;
+
+    private AddSideInputFn(PCollectionView<Integer> view) {
+      this.view = view;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      c.output(c.element() + c.sideInput(view));
+    }
+  }
+
+  private static class IdentityFn<T> extends DoFn<T, T> {
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      c.output(c.element());
+    }
+  }
+}
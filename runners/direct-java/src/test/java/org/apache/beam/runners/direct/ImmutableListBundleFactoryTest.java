@@ -17,6 +17,7 @@
  */
 package org.apache.beam.runners.direct;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.not;
@@ -138,6 +139,22 @@ public class ImmutableListBundleFactoryTest {
     afterCommitGetElementsShouldHaveAddedElements(ImmutableList.of(firstValue, secondValue));
   }
 
+  @Test
+  public void getElementsAfterAddingManyShouldReturnAddedElementsInOrder() {
+    UncommittedBundle<Integer> bundle = bundleFactory.createRootBundle();
+    ImmutableList.Builder<WindowedValue<Integer>> expected = ImmutableList.builder();
+    for (int i = 0; i < 1000; i++) {
+      WindowedValue<Integer> value =
+          WindowedValue.timestampedValueInGlobalWindow(i, new Instant(1000L - i));
+      bundle.add(value);
+      expected.add(value);
+    }
+
+    CommittedBundle<Integer> committed = bundle.commit(Instant.now());
+    assertThat(committed.getElements(), contains(expected.build().toArray()));
+    assertThat(committed.getMinimumTimestamp(), equalTo(new Instant(1L)));
+  }
+
   @Test
   public void addElementsAtEndOfTimeThrows() {
     Instant timestamp = BoundedWindow.TIMESTAMP_MAX_VALUE;
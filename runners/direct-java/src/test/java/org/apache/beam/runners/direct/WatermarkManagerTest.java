@@ -34,6 +34,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -47,6 +48,7 @@ import org.apache.beam.runners.direct.WatermarkManager.TimerUpdate.TimerUpdateBu
 import org.apache.beam.runners.direct.WatermarkManager.TransformWatermarks;
 import org.apache.beam.runners.direct.WatermarkManager.Watermark;
 import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarLongCoder;
@@ -1652,6 +1654,58 @@ public class WatermarkManagerTest implements Serializable {
     assertThat(built.getCompletedTimers(), emptyIterable());
   }
 
+  /**
+   * Demonstrates that in a wide graph, watermarks advance at every consumer of an updated step and
+   * that steps which have completed their input are held only by their upstream watermark.
+   */
+  @Test
+  public void updateWatermarksInWideGraph() {
+    Pipeline widePipeline = Pipeline.create();
+    PCollection<Integer> source = widePipeline.apply("source", Create.of(1, 2, 3));
+    List<PCollection<Integer>> branches = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      branches.add(source.apply("step" + i, Filter.greaterThan(0)));
+    }
+    DirectGraphs.performDirectOverrides(widePipeline);
+    DirectGraph wideGraph = DirectGraphs.getGraph(widePipeline);
+    WatermarkManager<AppliedPTransform<?, ?, ?>, ? super PCollection<?>> wideManager =
+        WatermarkManager.create(clock, wideGraph, AppliedPTransform::getFullName);
+
+    for (long round = 1; round <= 5; round++) {
+      Instant roundTime = new Instant(round * 1000L);
+      CommittedBundle<Integer> sourceOutput =
+          timestampedBundle(source, TimestampedValue.of(1, roundTime));
+      wideManager.updateWatermarks(
+          null,
+          TimerUpdate.empty(),
+          wideGraph.getProducer(source),
+          null,
+          Collections.singleton(sourceOutput),
+          roundTime);
+      wideManager.refreshAll();
+
+      // Only half of the branches complete their input, the remaining branches are held by it.
+      for (int i = 0; i < branches.size(); i += 2) {
+        wideManager.updateWatermarks(
+            sourceOutput,
+            TimerUpdate.empty(),
+            wideGraph.getProducer(branches.get(i)),
+            null,
+            Collections.emptyList(),
+            BoundedWindow.TIMESTAMP_MAX_VALUE);
+      }
+      wideManager.refreshAll();
+
+      for (int i = 0; i < branches.size(); i++) {
+        TransformWatermarks branchWatermarks =
+            wideManager.getWatermarks(wideGraph.getProducer(branches.get(i)));
+        // The odd branches have not completed the bundle output in the first round.
+        Instant expected = i % 2 == 0 ? roundTime : new Instant(1000L);
+        assertThat(branchWatermarks.getInputWatermark(), equalTo(expected));
+      }
+    }
+  }
+
   @SafeVarargs
   private final <T> CommittedBundle<T> timestampedBundle(
       PCollection<T> pc, TimestampedValue<T>... values) {
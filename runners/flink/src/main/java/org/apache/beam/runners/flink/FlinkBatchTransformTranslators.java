@@ -260,7 +260,8 @@ class FlinkBatchTransformTranslators {
           new CoderTypeInformation<>(
               WindowedValue.getFullCoder(
                   KvCoder.of(inputCoder.getKeyCoder(), accumulatorCoder),
-                  windowingStrategy.getWindowFn().windowCoder()));
+                  windowingStrategy.getWindowFn().windowCoder()),
+              context.getPipelineOptions());
 
       Grouping<WindowedValue<KV<K, InputT>>> inputGrouping =
           inputDataSet.groupBy(new KvKeySelector<>(inputCoder.getKeyCoder()));
@@ -271,11 +272,19 @@ class FlinkBatchTransformTranslators {
 
       FlinkPartialReduceFunction<K, InputT, List<InputT>, ?> partialReduceFunction =
           new FlinkPartialReduceFunction<>(
-              combineFn, boundedStrategy, Collections.emptyMap(), context.getPipelineOptions());
+              combineFn,
+              accumulatorCoder,
+              boundedStrategy,
+              Collections.emptyMap(),
+              context.getPipelineOptions());
 
       FlinkReduceFunction<K, List<InputT>, List<InputT>, ?> reduceFunction =
           new FlinkReduceFunction<>(
-              combineFn, boundedStrategy, Collections.emptyMap(), context.getPipelineOptions());
+              combineFn,
+              accumulatorCoder,
+              boundedStrategy,
+              Collections.emptyMap(),
+              context.getPipelineOptions());
 
       // Partially GroupReduce the values into the intermediate format AccumT (combine)
       String fullName = getCurrentTransformName(context);
@@ -415,11 +424,19 @@ class FlinkBatchTransformTranslators {
 
         FlinkPartialReduceFunction<K, InputT, AccumT, ?> partialReduceFunction =
             new FlinkPartialReduceFunction<>(
-                combineFn, boundedStrategy, sideInputStrategies, context.getPipelineOptions());
+                combineFn,
+                accumulatorCoder,
+                boundedStrategy,
+                sideInputStrategies,
+                context.getPipelineOptions());
 
         FlinkReduceFunction<K, AccumT, OutputT, ?> reduceFunction =
             new FlinkReduceFunction<>(
-                combineFn, boundedStrategy, sideInputStrategies, context.getPipelineOptions());
+                combineFn,
+                accumulatorCoder,
+                boundedStrategy,
+                sideInputStrategies,
+                context.getPipelineOptions());
 
         // Partially GroupReduce the values into the intermediate format AccumT (combine)
         GroupCombineOperator<WindowedValue<KV<K, InputT>>, WindowedValue<KV<K, AccumT>>>
@@ -555,7 +572,8 @@ class FlinkBatchTransformTranslators {
       TypeInformation<WindowedValue<RawUnionValue>> typeInformation =
           new CoderTypeInformation<>(
               WindowedValue.getFullCoder(
-                  unionCoder, windowingStrategy.getWindowFn().windowCoder()));
+                  unionCoder, windowingStrategy.getWindowFn().windowCoder()),
+              context.getPipelineOptions());
 
       List<PCollectionView<?>> sideInputs;
       try {
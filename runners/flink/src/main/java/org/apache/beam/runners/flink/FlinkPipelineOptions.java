@@ -109,6 +109,47 @@ public interface FlinkPipelineOptions
 
   void setObjectReuse(Boolean reuse);
 
+  @Description(
+      "Skips the deep copy of elements passed between chained operators. Elements are handed on "
+          + "as is, which is only safe if user code does not modify its inputs or outputs, as "
+          + "required by the Beam model.")
+  @Default.Boolean(false)
+  Boolean getFasterCopy();
+
+  void setFasterCopy(Boolean fasterCopy);
+
+  /**
+   * Memory budget for the accumulators of a single key when executing a batch {@link
+   * org.apache.beam.sdk.transforms.Combine}.
+   */
+  @Description(
+      "The maximum size in megabytes of the accumulators that a batch Combine over non-merging "
+          + "windows keeps in memory for a single key. Once exceeded, the pre-aggregated "
+          + "accumulators are spilled to local disk and merged after all input has been seen. "
+          + "A value of zero or less keeps all accumulators in memory.")
+  @Default.Integer(-1)
+  Integer getCombineSpillThresholdMb();
+
+  void setCombineSpillThresholdMb(Integer thresholdMb);
+
+  @Description(
+      "Reads map state of streaming pipelines lazily instead of copying it, which lets the RocksDB "
+          + "state backend fetch entries in batches while they are iterated.")
+  @Default.Boolean(false)
+  Boolean getLazyStateReads();
+
+  void setLazyStateReads(Boolean lazyStateReads);
+
+  @Description(
+      "The maximum number of accumulators of combining states per operator that are cached in "
+          + "streaming pipelines. Cached accumulators are only written to the state backend when "
+          + "they are evicted or the next checkpoint is taken. A value of zero or less disables "
+          + "the cache.")
+  @Default.Integer(0)
+  Integer getAccumulatorCacheSize();
+
+  void setAccumulatorCacheSize(Integer accumulatorCacheSize);
+
   /**
    * State backend to store Beam's state during computation. Note: Only applicable when executing in
    * streaming mode.
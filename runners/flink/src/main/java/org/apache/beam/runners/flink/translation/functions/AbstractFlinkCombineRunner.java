@@ -75,6 +75,14 @@ public abstract class AbstractFlinkCombineRunner<
         SideInputReader sideInputReader,
         Collection<? extends BoundedWindow> windows);
 
+    /** Merges accumulators that were built from disjoint parts of the input of a window. */
+    AccumT mergeAccumulators(
+        K key,
+        Iterable<AccumT> accumulators,
+        PipelineOptions options,
+        SideInputReader sideInputReader,
+        Collection<? extends BoundedWindow> windows);
+
     OutputT extractOutput(
         K key,
         AccumT accumulator,
@@ -118,6 +126,16 @@ public abstract class AbstractFlinkCombineRunner<
       return combineFnRunner.addInput(accumulator, value, options, sideInputReader, windows);
     }
 
+    @Override
+    public AccumT mergeAccumulators(
+        K key,
+        Iterable<AccumT> accumulators,
+        PipelineOptions options,
+        SideInputReader sideInputReader,
+        Collection<? extends BoundedWindow> windows) {
+      return combineFnRunner.mergeAccumulators(accumulators, options, sideInputReader, windows);
+    }
+
     @Override
     public OutputT extractOutput(
         K key,
@@ -161,6 +179,16 @@ public abstract class AbstractFlinkCombineRunner<
       return combineFnRunner.addInput(accumulator, value, options, sideInputReader, windows);
     }
 
+    @Override
+    public AccumT mergeAccumulators(
+        K key,
+        Iterable<AccumT> accumulators,
+        PipelineOptions options,
+        SideInputReader sideInputReader,
+        Collection<? extends BoundedWindow> windows) {
+      return combineFnRunner.mergeAccumulators(accumulators, options, sideInputReader, windows);
+    }
+
     @Override
     public AccumT extractOutput(
         K key,
@@ -204,6 +232,16 @@ public abstract class AbstractFlinkCombineRunner<
           ImmutableList.of(accumulator, value), options, sideInputReader, windows);
     }
 
+    @Override
+    public AccumT mergeAccumulators(
+        K key,
+        Iterable<AccumT> accumulators,
+        PipelineOptions options,
+        SideInputReader sideInputReader,
+        Collection<? extends BoundedWindow> windows) {
+      return combineFnRunner.mergeAccumulators(accumulators, options, sideInputReader, windows);
+    }
+
     @Override
     public OutputT extractOutput(
         K key,
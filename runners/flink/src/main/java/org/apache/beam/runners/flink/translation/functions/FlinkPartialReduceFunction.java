@@ -19,6 +19,8 @@ package org.apache.beam.runners.flink.translation.functions;
 
 import java.util.Map;
 import org.apache.beam.runners.core.construction.SerializablePipelineOptions;
+import org.apache.beam.runners.flink.FlinkPipelineOptions;
+import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.CombineFnBase;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
@@ -43,6 +45,8 @@ public class FlinkPartialReduceFunction<K, InputT, AccumT, W extends BoundedWind
 
   protected final CombineFnBase.GlobalCombineFn<InputT, AccumT, ?> combineFn;
 
+  protected final Coder<AccumT> accumulatorCoder;
+
   protected final WindowingStrategy<Object, W> windowingStrategy;
 
   protected final SerializablePipelineOptions serializedOptions;
@@ -52,11 +56,13 @@ public class FlinkPartialReduceFunction<K, InputT, AccumT, W extends BoundedWind
 
   public FlinkPartialReduceFunction(
       CombineFnBase.GlobalCombineFn<InputT, AccumT, ?> combineFn,
+      Coder<AccumT> accumulatorCoder,
       WindowingStrategy<Object, W> windowingStrategy,
       Map<PCollectionView<?>, WindowingStrategy<?, ?>> sideInputs,
       PipelineOptions pipelineOptions) {
 
     this.combineFn = combineFn;
+    this.accumulatorCoder = accumulatorCoder;
     this.windowingStrategy = windowingStrategy;
     this.sideInputs = sideInputs;
     this.serializedOptions = new SerializablePipelineOptions(pipelineOptions);
@@ -77,6 +83,13 @@ public class FlinkPartialReduceFunction<K, InputT, AccumT, W extends BoundedWind
     if (!windowingStrategy.getWindowFn().isNonMerging()
         && !windowingStrategy.getWindowFn().windowCoder().equals(IntervalWindow.getCoder())) {
       reduceRunner = new HashingFlinkCombineRunner<>();
+    } else if (windowingStrategy.getWindowFn().isNonMerging()
+        && options.as(FlinkPipelineOptions.class).getCombineSpillThresholdMb() > 0) {
+      reduceRunner =
+          new SpillingFlinkCombineRunner<>(
+              accumulatorCoder,
+              windowingStrategy.getWindowFn().windowCoder(),
+              options.as(FlinkPipelineOptions.class).getCombineSpillThresholdMb() * 1024L * 1024L);
     } else {
       reduceRunner = new SortingFlinkCombineRunner<>();
     }
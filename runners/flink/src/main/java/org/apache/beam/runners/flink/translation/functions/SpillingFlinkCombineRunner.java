@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.flink.translation.functions;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.runners.core.SideInputReader;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.InstantCoder;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.transforms.windowing.WindowFn;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.util.Collector;
+import org.joda.time.Instant;
+
+/**
+ * A Flink combine runner for non-merging windows that keeps one accumulator per window in a hash
+ * map, like {@link HashingFlinkCombineRunner}, but bounds the memory used for them.
+ *
+ * <p>The size of the accumulators is estimated by periodically encoding a sample of them. Once the
+ * estimate exceeds the configured budget, all accumulators are appended to a local spill file,
+ * grouped into partitions by window, and the map is cleared. After all input has been consumed,
+ * each partition is read back on its own and the accumulators of each window are merged as they
+ * are read, so a partition only needs memory for one accumulator per window. A partition whose
+ * accumulators still exceed the budget is spilled again into a file of its own with a different
+ * partitioning, up to {@link #MAX_SPILL_DEPTH} times. Input elements are never buffered, and at
+ * most one spill file per level is kept on disk for a key.
+ */
+public class SpillingFlinkCombineRunner<K, InputT, AccumT, OutputT, W extends BoundedWindow>
+    extends AbstractFlinkCombineRunner<K, InputT, AccumT, OutputT, W> {
+
+  /** Number of partitions of a spill file. Each partition is merged in memory on its own. */
+  private static final int NUM_PARTITIONS = 16;
+
+  /**
+   * Number of times a partition is spilled again when it exceeds the budget. Windows whose hash
+   * codes collide cannot be split further, so the last level is merged in memory regardless.
+   */
+  private static final int MAX_SPILL_DEPTH = 3;
+
+  /** Number of inputs after which the size of the accumulators is estimated again. */
+  private static final int ESTIMATE_INTERVAL = 1000;
+
+  private final Coder<AccumT> accumulatorCoder;
+  private final Coder<W> windowCoder;
+  private final long memoryBudgetBytes;
+
+  public SpillingFlinkCombineRunner(
+      Coder<AccumT> accumulatorCoder, Coder<W> windowCoder, long memoryBudgetBytes) {
+    checkArgument(memoryBudgetBytes > 0, "The memory budget must be positive.");
+    this.accumulatorCoder = accumulatorCoder;
+    this.windowCoder = windowCoder;
+    this.memoryBudgetBytes = memoryBudgetBytes;
+  }
+
+  @Override
+  public void combine(
+      FlinkCombiner<K, InputT, AccumT, OutputT> flinkCombiner,
+      WindowingStrategy<Object, W> windowingStrategy,
+      SideInputReader sideInputReader,
+      PipelineOptions options,
+      Iterable<WindowedValue<KV<K, InputT>>> elements,
+      Collector<WindowedValue<KV<K, OutputT>>> out)
+      throws Exception {
+
+    checkArgument(
+        windowingStrategy.getWindowFn().isNonMerging(),
+        "%s only supports non-merging windows.",
+        getClass().getSimpleName());
+
+    TimestampCombiner timestampCombiner = windowingStrategy.getTimestampCombiner();
+    WindowFn<Object, W> windowFn = windowingStrategy.getWindowFn();
+
+    Map<W, Tuple2<AccumT, Instant>> mapState = new HashMap<>();
+    SizeEstimate sizeEstimate = new SizeEstimate();
+    SpillFile spillFile = null;
+    K key = null;
+
+    try {
+      for (WindowedValue<KV<K, InputT>> currentValue : elements) {
+        key = currentValue.getValue().getKey();
+        W lastWindow = null;
+        Tuple2<AccumT, Instant> lastAccumAndInstant = null;
+        for (BoundedWindow w : currentValue.getWindows()) {
+          @SuppressWarnings("unchecked")
+          W currentWindow = (W) w;
+          Tuple2<AccumT, Instant> accumAndInstant = mapState.get(currentWindow);
+          Instant windowTimestamp =
+              timestampCombiner.assign(
+                  currentWindow, windowFn.getOutputTime(currentValue.getTimestamp(), currentWindow));
+          if (accumAndInstant == null) {
+            AccumT accumT =
+                flinkCombiner.firstInput(
+                    key,
+                    currentValue.getValue().getValue(),
+                    options,
+                    sideInputReader,
+                    Collections.singleton(currentWindow));
+            accumAndInstant = new Tuple2<>(accumT, windowTimestamp);
+            mapState.put(currentWindow, accumAndInstant);
+          } else {
+            accumAndInstant.f0 =
+                flinkCombiner.addInput(
+                    key,
+                    accumAndInstant.f0,
+                    currentValue.getValue().getValue(),
+                    options,
+                    sideInputReader,
+                    Collections.singleton(currentWindow));
+            accumAndInstant.f1 = timestampCombiner.combine(accumAndInstant.f1, windowTimestamp);
+          }
+          lastWindow = currentWindow;
+          lastAccumAndInstant = accumAndInstant;
+        }
+
+        if (lastWindow != null) {
+          sizeEstimate.sample(lastWindow, lastAccumAndInstant);
+        }
+        if (sizeEstimate.exceedsBudget(mapState.size())) {
+          if (spillFile == null) {
+            spillFile = new SpillFile(0);
+          }
+          spillFile.spill(mapState);
+          mapState.clear();
+        }
+      }
+
+      if (spillFile == null) {
+        emit(flinkCombiner, sideInputReader, options, key, mapState, out);
+        return;
+      }
+
+      spillFile.spill(mapState);
+      mapState.clear();
+      mergeSpilled(
+          spillFile, flinkCombiner, timestampCombiner, sideInputReader, options, key, out);
+    } finally {
+      if (spillFile != null) {
+        spillFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Reads back the partitions of a spill file one at a time, merging the accumulators of each
+   * window as they are read, and emits the results. A partition which exceeds the budget is
+   * spilled again into a file of the next level, which is merged before the next partition.
+   */
+  private void mergeSpilled(
+      SpillFile spillFile,
+      FlinkCombiner<K, InputT, AccumT, OutputT> flinkCombiner,
+      TimestampCombiner timestampCombiner,
+      SideInputReader sideInputReader,
+      PipelineOptions options,
+      K key,
+      Collector<WindowedValue<KV<K, OutputT>>> out)
+      throws IOException {
+    spillFile.finishWriting();
+    boolean canSpill = spillFile.depth < MAX_SPILL_DEPTH;
+
+    for (int partition = 0; partition < NUM_PARTITIONS; partition++) {
+      Map<W, Tuple2<AccumT, Instant>> merged = new HashMap<>();
+      SizeEstimate sizeEstimate = new SizeEstimate();
+      SpillFile respilled = null;
+      try {
+        for (Segment segment : spillFile.segments.get(partition)) {
+          try (InputStream input = spillFile.open(segment)) {
+            for (int i = 0; i < segment.count; i++) {
+              W window = windowCoder.decode(input);
+              AccumT accumulator = accumulatorCoder.decode(input);
+              Instant timestamp = InstantCoder.of().decode(input);
+              Tuple2<AccumT, Instant> existing = merged.get(window);
+              if (existing == null) {
+                existing = new Tuple2<>(accumulator, timestamp);
+                merged.put(window, existing);
+              } else {
+                existing.f0 =
+                    flinkCombiner.mergeAccumulators(
+                        key,
+                        Arrays.asList(existing.f0, accumulator),
+                        options,
+                        sideInputReader,
+                        Collections.singleton(window));
+                existing.f1 = timestampCombiner.combine(existing.f1, timestamp);
+              }
+
+              sizeEstimate.sample(window, existing);
+              if (canSpill && sizeEstimate.exceedsBudget(merged.size())) {
+                if (respilled == null) {
+                  respilled = new SpillFile(spillFile.depth + 1);
+                }
+                respilled.spill(merged);
+                merged.clear();
+              }
+            }
+          }
+        }
+
+        if (respilled == null) {
+          emit(flinkCombiner, sideInputReader, options, key, merged, out);
+        } else {
+          respilled.spill(merged);
+          merged.clear();
+          mergeSpilled(
+              respilled, flinkCombiner, timestampCombiner, sideInputReader, options, key, out);
+        }
+      } finally {
+        if (respilled != null) {
+          respilled.delete();
+        }
+      }
+    }
+  }
+
+  private void emit(
+      FlinkCombiner<K, InputT, AccumT, OutputT> flinkCombiner,
+      SideInputReader sideInputReader,
+      PipelineOptions options,
+      K key,
+      Map<W, Tuple2<AccumT, Instant>> accumulators,
+      Collector<WindowedValue<KV<K, OutputT>>> out) {
+    for (Map.Entry<W, Tuple2<AccumT, Instant>> entry : accumulators.entrySet()) {
+      AccumT accumulator = entry.getValue().f0;
+      Instant windowTimestamp = entry.getValue().f1;
+      out.collect(
+          WindowedValue.of(
+              KV.of(
+                  key,
+                  flinkCombiner.extractOutput(
+                      key,
+                      accumulator,
+                      options,
+                      sideInputReader,
+                      Collections.singleton(entry.getKey()))),
+              windowTimestamp,
+              entry.getKey(),
+              PaneInfo.NO_FIRING));
+    }
+  }
+
+  private void encode(W window, Tuple2<AccumT, Instant> accumAndInstant, OutputStream outStream)
+      throws IOException {
+    windowCoder.encode(window, outStream);
+    accumulatorCoder.encode(accumAndInstant.f0, outStream);
+    InstantCoder.of().encode(accumAndInstant.f1, outStream);
+  }
+
+  /** Estimates the memory used by a map of accumulators from the encoded size of samples. */
+  private class SizeEstimate {
+    private long bytesPerEntry = 0;
+    private int samplesSinceEstimate = 0;
+
+    void sample(W window, Tuple2<AccumT, Instant> accumAndInstant) throws IOException {
+      if (bytesPerEntry != 0 && ++samplesSinceEstimate < ESTIMATE_INTERVAL) {
+        return;
+      }
+      CountingOutputStream countingStream =
+          new CountingOutputStream(ByteStreams.nullOutputStream());
+      encode(window, accumAndInstant, countingStream);
+      long sampled = countingStream.getCount();
+      // keep a running average so that growing accumulators are accounted for
+      bytesPerEntry = bytesPerEntry == 0 ? sampled : (bytesPerEntry + sampled) / 2;
+      samplesSinceEstimate = 0;
+    }
+
+    boolean exceedsBudget(int entries) {
+      return bytesPerEntry * entries > memoryBudgetBytes;
+    }
+  }
+
+  /** The position and number of the accumulators of one partition written by one spill. */
+  private static class Segment {
+    private final long offset;
+    private final int count;
+
+    Segment(long offset, int count) {
+      this.offset = offset;
+      this.count = count;
+    }
+  }
+
+  /**
+   * A local file holding spilled accumulators. Each spill appends one segment per non-empty
+   * partition, so a partition can be read back without reading the others. Windows are assigned
+   * to partitions with a hash seeded by the spill depth, so that a partition which is spilled
+   * again is split differently.
+   */
+  private class SpillFile {
+    private final int depth;
+    private final HashFunction partitionHash;
+    private final File file;
+    private final CountingOutputStream output;
+    private final List<List<Segment>> segments = new ArrayList<>(NUM_PARTITIONS);
+
+    SpillFile(int depth) throws IOException {
+      this.depth = depth;
+      this.partitionHash = Hashing.murmur3_32(depth);
+      this.file = File.createTempFile("beam-flink-combine-spill-", ".bin");
+      try {
+        this.output = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      } catch (IOException e) {
+        file.delete();
+        throw e;
+      }
+      for (int i = 0; i < NUM_PARTITIONS; i++) {
+        segments.add(new ArrayList<>());
+      }
+    }
+
+    void spill(Map<W, Tuple2<AccumT, Instant>> accumulators) throws IOException {
+      List<List<Map.Entry<W, Tuple2<AccumT, Instant>>>> partitions =
+          new ArrayList<>(NUM_PARTITIONS);
+      for (int i = 0; i < NUM_PARTITIONS; i++) {
+        partitions.add(new ArrayList<>());
+      }
+      for (Map.Entry<W, Tuple2<AccumT, Instant>> entry : accumulators.entrySet()) {
+        partitions.get(partition(entry.getKey())).add(entry);
+      }
+      for (int i = 0; i < NUM_PARTITIONS; i++) {
+        List<Map.Entry<W, Tuple2<AccumT, Instant>>> partition = partitions.get(i);
+        if (partition.isEmpty()) {
+          continue;
+        }
+        segments.get(i).add(new Segment(output.getCount(), partition.size()));
+        for (Map.Entry<W, Tuple2<AccumT, Instant>> entry : partition) {
+          encode(entry.getKey(), entry.getValue(), output);
+        }
+      }
+    }
+
+    void finishWriting() throws IOException {
+      output.close();
+    }
+
+    InputStream open(Segment segment) throws IOException {
+      FileInputStream input = new FileInputStream(file);
+      try {
+        input.getChannel().position(segment.offset);
+      } catch (IOException e) {
+        input.close();
+        throw e;
+      }
+      return new BufferedInputStream(input);
+    }
+
+    void delete() {
+      try {
+        output.close();
+      } catch (IOException e) {
+        // the file is deleted anyway
+      }
+      file.delete();
+    }
+
+    private int partition(W window) {
+      return (partitionHash.hashInt(window.hashCode()).asInt() & Integer.MAX_VALUE)
+          % NUM_PARTITIONS;
+    }
+  }
+}
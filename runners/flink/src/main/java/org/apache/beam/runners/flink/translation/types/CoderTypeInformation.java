@@ -19,7 +19,9 @@ package org.apache.beam.runners.flink.translation.types;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import org.apache.beam.runners.flink.FlinkPipelineOptions;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.flink.api.common.ExecutionConfig;
 import org.apache.flink.api.common.typeinfo.AtomicType;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
@@ -33,10 +35,24 @@ import org.apache.flink.api.common.typeutils.TypeSerializer;
 public class CoderTypeInformation<T> extends TypeInformation<T> implements AtomicType<T> {
 
   private final Coder<T> coder;
+  private final boolean fasterCopy;
 
   public CoderTypeInformation(Coder<T> coder) {
     checkNotNull(coder);
     this.coder = coder;
+    this.fasterCopy = false;
+  }
+
+  /**
+   * Creates a type information whose serializers skip deep copies if {@link
+   * FlinkPipelineOptions#getFasterCopy()} is enabled. Only use this for elements flowing between
+   * operators, never for values that are mutated in place.
+   */
+  public CoderTypeInformation(Coder<T> coder, PipelineOptions options) {
+    checkNotNull(coder);
+    checkNotNull(options);
+    this.coder = coder;
+    this.fasterCopy = Boolean.TRUE.equals(options.as(FlinkPipelineOptions.class).getFasterCopy());
   }
 
   public Coder<T> getCoder() {
@@ -73,7 +89,7 @@ public class CoderTypeInformation<T> extends TypeInformation<T> implements Atomi
   @Override
   @SuppressWarnings("unchecked")
   public TypeSerializer<T> createSerializer(ExecutionConfig config) {
-    return new CoderTypeSerializer<>(coder);
+    return new CoderTypeSerializer<>(coder, fasterCopy);
   }
 
   @Override
@@ -92,12 +108,12 @@ public class CoderTypeInformation<T> extends TypeInformation<T> implements Atomi
 
     CoderTypeInformation that = (CoderTypeInformation) o;
 
-    return coder.equals(that.coder);
+    return fasterCopy == that.fasterCopy && coder.equals(that.coder);
   }
 
   @Override
   public int hashCode() {
-    return coder.hashCode();
+    return 31 * coder.hashCode() + Boolean.hashCode(fasterCopy);
   }
 
   @Override
@@ -34,13 +34,26 @@ import org.apache.flink.core.memory.DataOutputView;
 /**
  * Flink {@link org.apache.flink.api.common.typeutils.TypeSerializer} for Dataflow {@link
  * org.apache.beam.sdk.coders.Coder Coders}.
+ *
+ * <p>By default {@link #copy(Object)} performs a deep copy by encoding and decoding the value. If
+ * {@code fasterCopy} is set, the value is passed on as is, which relies on Beam's requirement that
+ * elements are not mutated once they have been output. This must not be used for values which are
+ * modified in place, e.g. state held by a state backend.
  */
 public class CoderTypeSerializer<T> extends TypeSerializer<T> {
 
   private Coder<T> coder;
 
+  /** Whether {@link #copy(Object)} returns its argument instead of a deep copy. */
+  private final boolean fasterCopy;
+
   public CoderTypeSerializer(Coder<T> coder) {
+    this(coder, false);
+  }
+
+  public CoderTypeSerializer(Coder<T> coder, boolean fasterCopy) {
     this.coder = coder;
+    this.fasterCopy = fasterCopy;
   }
 
   @Override
@@ -50,7 +63,7 @@ public class CoderTypeSerializer<T> extends TypeSerializer<T> {
 
   @Override
   public CoderTypeSerializer<T> duplicate() {
-    return new CoderTypeSerializer<>(coder);
+    return new CoderTypeSerializer<>(coder, fasterCopy);
   }
 
   @Override
@@ -60,6 +73,9 @@ public class CoderTypeSerializer<T> extends TypeSerializer<T> {
 
   @Override
   public T copy(T t) {
+    if (fasterCopy) {
+      return t;
+    }
     try {
       return CoderUtils.clone(coder, t);
     } catch (CoderException e) {
@@ -118,7 +134,7 @@ public class CoderTypeSerializer<T> extends TypeSerializer<T> {
     }
 
     CoderTypeSerializer that = (CoderTypeSerializer) o;
-    return coder.equals(that.coder);
+    return fasterCopy == that.fasterCopy && coder.equals(that.coder);
   }
 
   @Override
@@ -128,7 +144,7 @@ public class CoderTypeSerializer<T> extends TypeSerializer<T> {
 
   @Override
   public int hashCode() {
-    return coder.hashCode();
+    return Objects.hash(coder, fasterCopy);
   }
 
   @Override
@@ -28,6 +28,11 @@ import org.apache.flink.core.memory.MemorySegment;
 /**
  * Flink {@link org.apache.flink.api.common.typeutils.TypeComparator} for Beam values that have been
  * encoded to byte data by a {@link Coder}.
+ *
+ * <p>Values are ordered by comparing their encoded bytes as unsigned values, which is the same
+ * order Flink uses for normalized keys. This allows the managed memory sorter to compare records
+ * by a prefix of their encoded form and only fall back to a full comparison for equal prefixes.
+ * Since keys are encoded with deterministic coders, equal values always have equal encodings.
  */
 public class EncodedValueComparator extends TypeComparator<byte[]> {
 
@@ -52,16 +57,7 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
 
   @Override
   public boolean equalToReference(byte[] candidate) {
-    if (encodedReferenceKey.length != candidate.length) {
-      return false;
-    }
-    int len = candidate.length;
-    for (int i = 0; i < len; i++) {
-      if (encodedReferenceKey[i] != candidate[i]) {
-        return false;
-      }
-    }
-    return true;
+    return Arrays.equals(encodedReferenceKey, candidate);
   }
 
   @Override
@@ -76,9 +72,9 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
             encodedReferenceKey.length, otherEncodedValueComparator.encodedReferenceKey.length);
 
     for (int i = 0; i < len; i++) {
-      byte b1 = encodedReferenceKey[i];
-      byte b2 = otherEncodedValueComparator.encodedReferenceKey[i];
-      int result = (b1 < b2 ? -1 : (b1 == b2 ? 0 : 1));
+      int result =
+          compareUnsigned(
+              encodedReferenceKey[i], otherEncodedValueComparator.encodedReferenceKey[i]);
       if (result != 0) {
         return ascending ? -result : result;
       }
@@ -92,9 +88,7 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
   public int compare(byte[] first, byte[] second) {
     int len = Math.min(first.length, second.length);
     for (int i = 0; i < len; i++) {
-      byte b1 = first[i];
-      byte b2 = second[i];
-      int result = (b1 < b2 ? -1 : (b1 == b2 ? 0 : 1));
+      int result = compareUnsigned(first[i], second[i]);
       if (result != 0) {
         return ascending ? result : -result;
       }
@@ -111,9 +105,7 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
 
     int len = Math.min(lengthFirst, lengthSecond);
     for (int i = 0; i < len; i++) {
-      byte b1 = firstSource.readByte();
-      byte b2 = secondSource.readByte();
-      int result = (b1 < b2 ? -1 : (b1 == b2 ? 0 : 1));
+      int result = compareUnsigned(firstSource.readByte(), secondSource.readByte());
       if (result != 0) {
         return ascending ? result : -result;
       }
@@ -123,11 +115,13 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
     return ascending ? result : -result;
   }
 
+  private static int compareUnsigned(byte b1, byte b2) {
+    return (b1 & 0xFF) - (b2 & 0xFF);
+  }
+
   @Override
   public boolean supportsNormalizedKey() {
-    // disabled because this seems to not work with some coders,
-    // such as the AvroCoder
-    return false;
+    return true;
   }
 
   @Override
@@ -149,9 +143,10 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
   public void putNormalizedKey(byte[] record, MemorySegment target, int offset, int numBytes) {
     final int limit = offset + numBytes;
 
-    target.put(offset, record, 0, Math.min(numBytes, record.length));
+    int len = Math.min(numBytes, record.length);
+    target.put(offset, record, 0, len);
 
-    offset += record.length;
+    offset += len;
 
     while (offset < limit) {
       target.put(offset++, (byte) 0);
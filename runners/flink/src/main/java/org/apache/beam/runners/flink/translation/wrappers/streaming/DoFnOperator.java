@@ -316,7 +316,11 @@ public class DoFnOperator<InputT, OutputT> extends AbstractStreamOperator<Window
     // StatefulPardo or WindowDoFn
     if (keyCoder != null) {
       keyedStateInternals =
-          new FlinkStateInternals<>((KeyedStateBackend) getKeyedStateBackend(), keyCoder);
+          new FlinkStateInternals<>(
+              (KeyedStateBackend) getKeyedStateBackend(),
+              keyCoder,
+              options.getLazyStateReads(),
+              options.getAccumulatorCacheSize());
 
       if (timerService == null) {
         timerService =
@@ -669,6 +673,11 @@ public class DoFnOperator<InputT, OutputT> extends AbstractStreamOperator<Window
     invokeFinishBundle();
     outputManager.closeBuffer();
 
+    // cached accumulators have to be in the keyed state backend before it is snapshotted
+    if (keyedStateInternals != null) {
+      keyedStateInternals.flushAccumulatorCache();
+    }
+
     super.snapshotState(context);
   }
 
@@ -23,7 +23,11 @@ import com.google.common.collect.Lists;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
 import org.apache.beam.runners.core.StateInternals;
 import org.apache.beam.runners.core.StateNamespace;
 import org.apache.beam.runners.core.StateTag;
@@ -70,9 +74,51 @@ public class FlinkStateInternals<K> implements StateInternals {
   // know which watermark hold states there are in the Flink State Backend
   private final Map<String, Instant> watermarkHolds = new HashMap<>();
 
+  /** Whether reads of map state return views instead of copies. */
+  private final boolean lazyReads;
+
+  /** Write-back cache for the accumulators of combining states, {@code null} if disabled. */
+  @Nullable private final AccumulatorCache accumulatorCache;
+
   public FlinkStateInternals(KeyedStateBackend<ByteBuffer> flinkStateBackend, Coder<K> keyCoder) {
+    this(flinkStateBackend, keyCoder, false, 0);
+  }
+
+  /**
+   * Creates state internals that optionally read lazily and cache accumulators, which suits the
+   * RocksDB state backend.
+   *
+   * <p>With {@code lazyReads}, maps are returned as lazy views instead of copies, which lets map
+   * iteration fetch entries from RocksDB in batches. If {@code accumulatorCacheSize} is positive,
+   * accumulators of combining states are kept in a cache of up to that many entries and only
+   * written to the state backend when they are evicted or {@link #flushAccumulatorCache()} is
+   * called, which must happen before the keyed state backend is snapshotted.
+   *
+   * <p>Neither changes how state is stored, so checkpoints remain compatible.
+   */
+  public FlinkStateInternals(
+      KeyedStateBackend<ByteBuffer> flinkStateBackend,
+      Coder<K> keyCoder,
+      boolean lazyReads,
+      int accumulatorCacheSize) {
     this.flinkStateBackend = flinkStateBackend;
     this.keyCoder = keyCoder;
+    this.lazyReads = lazyReads;
+    this.accumulatorCache =
+        accumulatorCacheSize > 0
+            ? new AccumulatorCache(flinkStateBackend, accumulatorCacheSize)
+            : null;
+  }
+
+  /** Writes all accumulators that were modified in the cache to the state backend. */
+  public void flushAccumulatorCache() {
+    if (accumulatorCache != null) {
+      try {
+        accumulatorCache.flush();
+      } catch (Exception e) {
+        throw new RuntimeException("Error flushing cached accumulators.", e);
+      }
+    }
   }
 
   /** Returns the minimum over all watermark holds. */
@@ -112,7 +158,6 @@ public class FlinkStateInternals<K> implements StateInternals {
 
           @Override
           public <T2> BagState<T2> bindBag(StateTag<BagState<T2>> address, Coder<T2> elemCoder) {
-
             return new FlinkBagState<>(flinkStateBackend, address, namespace, elemCoder);
           }
 
@@ -127,7 +172,7 @@ public class FlinkStateInternals<K> implements StateInternals {
               Coder<KeyT> mapKeyCoder,
               Coder<ValueT> mapValueCoder) {
             return new FlinkMapState<>(
-                flinkStateBackend, address, namespace, mapKeyCoder, mapValueCoder);
+                flinkStateBackend, address, namespace, mapKeyCoder, mapValueCoder, lazyReads);
           }
 
           @Override
@@ -138,7 +183,7 @@ public class FlinkStateInternals<K> implements StateInternals {
                   Combine.CombineFn<InputT, AccumT, OutputT> combineFn) {
 
             return new FlinkCombiningState<>(
-                flinkStateBackend, address, combineFn, namespace, accumCoder);
+                flinkStateBackend, address, combineFn, namespace, accumCoder, accumulatorCache);
           }
 
           @Override
@@ -154,7 +199,8 @@ public class FlinkStateInternals<K> implements StateInternals {
                 namespace,
                 accumCoder,
                 FlinkStateInternals.this,
-                CombineContextFactory.createFromStateContext(context));
+                CombineContextFactory.createFromStateContext(context),
+                accumulatorCache);
           }
 
           @Override
@@ -362,29 +408,220 @@ public class FlinkStateInternals<K> implements StateInternals {
     }
   }
 
+  /**
+   * Access to the accumulator of a combining state for the current key, which goes through the
+   * {@link AccumulatorCache} if there is one.
+   */
+  private static class AccumulatorState<AccumT> {
+
+    private final KeyedStateBackend<ByteBuffer> flinkStateBackend;
+    private final StateNamespace namespace;
+    private final ValueStateDescriptor<AccumT> flinkStateDescriptor;
+    @Nullable private final AccumulatorCache cache;
+
+    AccumulatorState(
+        KeyedStateBackend<ByteBuffer> flinkStateBackend,
+        StateNamespace namespace,
+        ValueStateDescriptor<AccumT> flinkStateDescriptor,
+        @Nullable AccumulatorCache cache) {
+      this.flinkStateBackend = flinkStateBackend;
+      this.namespace = namespace;
+      this.flinkStateDescriptor = flinkStateDescriptor;
+      this.cache = cache;
+    }
+
+    AccumT value() throws Exception {
+      if (cache != null) {
+        return cache.get(namespace.stringKey(), flinkStateDescriptor);
+      }
+      return backendState().value();
+    }
+
+    void update(AccumT accum) throws Exception {
+      if (cache != null) {
+        cache.put(namespace.stringKey(), flinkStateDescriptor, accum);
+      } else {
+        backendState().update(accum);
+      }
+    }
+
+    void clear() throws Exception {
+      if (cache != null) {
+        cache.remove(namespace.stringKey(), flinkStateDescriptor);
+      }
+      backendState().clear();
+    }
+
+    private org.apache.flink.api.common.state.ValueState<AccumT> backendState() throws Exception {
+      return flinkStateBackend.getPartitionedState(
+          namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor);
+    }
+  }
+
+  /**
+   * A write-back cache of accumulators, keyed by the key, namespace and state they belong to. This
+   * avoids decoding and encoding an accumulator for every input. Modified accumulators are written
+   * to the state backend when they are evicted and when the cache is flushed.
+   */
+  private static class AccumulatorCache {
+
+    private final KeyedStateBackend<ByteBuffer> flinkStateBackend;
+    private final int maxSize;
+    private final LinkedHashMap<CacheKey, CachedAccumulator> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    AccumulatorCache(KeyedStateBackend<ByteBuffer> flinkStateBackend, int maxSize) {
+      this.flinkStateBackend = flinkStateBackend;
+      this.maxSize = maxSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    <AccumT> AccumT get(String namespace, ValueStateDescriptor<AccumT> descriptor)
+        throws Exception {
+      CacheKey key = currentKey(namespace, descriptor);
+      CachedAccumulator cached = entries.get(key);
+      if (cached == null) {
+        AccumT accum =
+            flinkStateBackend
+                .getPartitionedState(namespace, StringSerializer.INSTANCE, descriptor)
+                .value();
+        insert(key, new CachedAccumulator(descriptor, accum, false));
+        return accum;
+      }
+      return (AccumT) cached.accumulator;
+    }
+
+    <AccumT> void put(String namespace, ValueStateDescriptor<AccumT> descriptor, AccumT accum)
+        throws Exception {
+      insert(currentKey(namespace, descriptor), new CachedAccumulator(descriptor, accum, true));
+    }
+
+    void remove(String namespace, ValueStateDescriptor<?> descriptor) {
+      entries.remove(currentKey(namespace, descriptor));
+    }
+
+    void flush() throws Exception {
+      writeBack(entries.size(), false);
+    }
+
+    private void insert(CacheKey key, CachedAccumulator cached) throws Exception {
+      entries.put(key, cached);
+      if (entries.size() > maxSize) {
+        // evict in batches, so that switching the current key of the backend is amortized
+        writeBack(Math.max(1, maxSize / 10), true);
+      }
+    }
+
+    /** Writes back the given number of least recently used entries, optionally evicting them. */
+    @SuppressWarnings("unchecked")
+    private void writeBack(int count, boolean evict) throws Exception {
+      ByteBuffer currentKey = flinkStateBackend.getCurrentKey();
+      boolean keyChanged = false;
+      try {
+        Iterator<Map.Entry<CacheKey, CachedAccumulator>> iterator = entries.entrySet().iterator();
+        for (int i = 0; i < count && iterator.hasNext(); i++) {
+          Map.Entry<CacheKey, CachedAccumulator> entry = iterator.next();
+          CacheKey key = entry.getKey();
+          CachedAccumulator cached = entry.getValue();
+          if (cached.dirty) {
+            flinkStateBackend.setCurrentKey(key.key);
+            keyChanged = true;
+            flinkStateBackend
+                .getPartitionedState(
+                    key.namespace,
+                    StringSerializer.INSTANCE,
+                    (ValueStateDescriptor<Object>) cached.descriptor)
+                .update(cached.accumulator);
+            cached.dirty = false;
+          }
+          if (evict) {
+            iterator.remove();
+          }
+        }
+      } finally {
+        if (keyChanged && currentKey != null) {
+          flinkStateBackend.setCurrentKey(currentKey);
+        }
+      }
+    }
+
+    private CacheKey currentKey(String namespace, ValueStateDescriptor<?> descriptor) {
+      return new CacheKey(flinkStateBackend.getCurrentKey(), namespace, descriptor.getName());
+    }
+  }
+
+  private static class CacheKey {
+    private final ByteBuffer key;
+    private final String namespace;
+    private final String stateId;
+    private final int hash;
+
+    CacheKey(ByteBuffer key, String namespace, String stateId) {
+      this.key = key;
+      this.namespace = namespace;
+      this.stateId = stateId;
+      this.hash = Objects.hash(key, namespace, stateId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey that = (CacheKey) o;
+      return hash == that.hash
+          && key.equals(that.key)
+          && namespace.equals(that.namespace)
+          && stateId.equals(that.stateId);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static class CachedAccumulator {
+    private final ValueStateDescriptor<?> descriptor;
+    private final Object accumulator;
+    private boolean dirty;
+
+    CachedAccumulator(ValueStateDescriptor<?> descriptor, Object accumulator, boolean dirty) {
+      this.descriptor = descriptor;
+      this.accumulator = accumulator;
+      this.dirty = dirty;
+    }
+  }
+
   private static class FlinkCombiningState<K, InputT, AccumT, OutputT>
       implements CombiningState<InputT, AccumT, OutputT> {
 
     private final StateNamespace namespace;
     private final StateTag<CombiningState<InputT, AccumT, OutputT>> address;
     private final Combine.CombineFn<InputT, AccumT, OutputT> combineFn;
-    private final ValueStateDescriptor<AccumT> flinkStateDescriptor;
-    private final KeyedStateBackend<ByteBuffer> flinkStateBackend;
+    private final AccumulatorState<AccumT> accumulatorState;
 
     FlinkCombiningState(
         KeyedStateBackend<ByteBuffer> flinkStateBackend,
         StateTag<CombiningState<InputT, AccumT, OutputT>> address,
         Combine.CombineFn<InputT, AccumT, OutputT> combineFn,
         StateNamespace namespace,
-        Coder<AccumT> accumCoder) {
+        Coder<AccumT> accumCoder,
+        @Nullable AccumulatorCache accumulatorCache) {
 
       this.namespace = namespace;
       this.address = address;
       this.combineFn = combineFn;
-      this.flinkStateBackend = flinkStateBackend;
 
-      flinkStateDescriptor =
-          new ValueStateDescriptor<>(address.getId(), new CoderTypeSerializer<>(accumCoder));
+      accumulatorState =
+          new AccumulatorState<>(
+              flinkStateBackend,
+              namespace,
+              new ValueStateDescriptor<>(address.getId(), new CoderTypeSerializer<>(accumCoder)),
+              accumulatorCache);
     }
 
     @Override
@@ -395,16 +632,12 @@ public class FlinkStateInternals<K> implements StateInternals {
     @Override
     public void add(InputT value) {
       try {
-        org.apache.flink.api.common.state.ValueState<AccumT> state =
-            flinkStateBackend.getPartitionedState(
-                namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor);
-
-        AccumT current = state.value();
+        AccumT current = accumulatorState.value();
         if (current == null) {
           current = combineFn.createAccumulator();
         }
         current = combineFn.addInput(current, value);
-        state.update(current);
+        accumulatorState.update(current);
       } catch (Exception e) {
         throw new RuntimeException("Error adding to state.", e);
       }
@@ -413,16 +646,12 @@ public class FlinkStateInternals<K> implements StateInternals {
     @Override
     public void addAccum(AccumT accum) {
       try {
-        org.apache.flink.api.common.state.ValueState<AccumT> state =
-            flinkStateBackend.getPartitionedState(
-                namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor);
-
-        AccumT current = state.value();
+        AccumT current = accumulatorState.value();
         if (current == null) {
-          state.update(accum);
+          accumulatorState.update(accum);
         } else {
           current = combineFn.mergeAccumulators(Lists.newArrayList(current, accum));
-          state.update(current);
+          accumulatorState.update(current);
         }
       } catch (Exception e) {
         throw new RuntimeException("Error adding to state.", e);
@@ -432,10 +661,7 @@ public class FlinkStateInternals<K> implements StateInternals {
     @Override
     public AccumT getAccum() {
       try {
-        return flinkStateBackend
-            .getPartitionedState(
-                namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor)
-            .value();
+        return accumulatorState.value();
       } catch (Exception e) {
         throw new RuntimeException("Error reading state.", e);
       }
@@ -449,11 +675,7 @@ public class FlinkStateInternals<K> implements StateInternals {
     @Override
     public OutputT read() {
       try {
-        org.apache.flink.api.common.state.ValueState<AccumT> state =
-            flinkStateBackend.getPartitionedState(
-                namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor);
-
-        AccumT accum = state.value();
+        AccumT accum = accumulatorState.value();
         if (accum != null) {
           return combineFn.extractOutput(accum);
         } else {
@@ -470,11 +692,7 @@ public class FlinkStateInternals<K> implements StateInternals {
         @Override
         public Boolean read() {
           try {
-            return flinkStateBackend
-                    .getPartitionedState(
-                        namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor)
-                    .value()
-                == null;
+            return accumulatorState.value() == null;
           } catch (Exception e) {
             throw new RuntimeException("Error reading state.", e);
           }
@@ -490,10 +708,7 @@ public class FlinkStateInternals<K> implements StateInternals {
     @Override
     public void clear() {
       try {
-        flinkStateBackend
-            .getPartitionedState(
-                namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor)
-            .clear();
+        accumulatorState.clear();
       } catch (Exception e) {
         throw new RuntimeException("Error clearing state.", e);
       }
@@ -527,8 +742,7 @@ public class FlinkStateInternals<K> implements StateInternals {
     private final StateNamespace namespace;
     private final StateTag<CombiningState<InputT, AccumT, OutputT>> address;
     private final CombineWithContext.CombineFnWithContext<InputT, AccumT, OutputT> combineFn;
-    private final ValueStateDescriptor<AccumT> flinkStateDescriptor;
-    private final KeyedStateBackend<ByteBuffer> flinkStateBackend;
+    private final AccumulatorState<AccumT> accumulatorState;
     private final FlinkStateInternals<K> flinkStateInternals;
     private final CombineWithContext.Context context;
 
@@ -539,17 +753,21 @@ public class FlinkStateInternals<K> implements StateInternals {
         StateNamespace namespace,
         Coder<AccumT> accumCoder,
         FlinkStateInternals<K> flinkStateInternals,
-        CombineWithContext.Context context) {
+        CombineWithContext.Context context,
+        @Nullable AccumulatorCache accumulatorCache) {
 
       this.namespace = namespace;
       this.address = address;
       this.combineFn = combineFn;
-      this.flinkStateBackend = flinkStateBackend;
       this.flinkStateInternals = flinkStateInternals;
       this.context = context;
 
-      flinkStateDescriptor =
-          new ValueStateDescriptor<>(address.getId(), new CoderTypeSerializer<>(accumCoder));
+      accumulatorState =
+          new AccumulatorState<>(
+              flinkStateBackend,
+              namespace,
+              new ValueStateDescriptor<>(address.getId(), new CoderTypeSerializer<>(accumCoder)),
+              accumulatorCache);
     }
 
     @Override
@@ -560,16 +778,12 @@ public class FlinkStateInternals<K> implements StateInternals {
     @Override
     public void add(InputT value) {
       try {
-        org.apache.flink.api.common.state.ValueState<AccumT> state =
-            flinkStateBackend.getPartitionedState(
-                namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor);
-
-        AccumT current = state.value();
+        AccumT current = accumulatorState.value();
         if (current == null) {
           current = combineFn.createAccumulator(context);
         }
         current = combineFn.addInput(current, value, context);
-        state.update(current);
+        accumulatorState.update(current);
       } catch (Exception e) {
         throw new RuntimeException("Error adding to state.", e);
       }
@@ -578,16 +792,12 @@ public class FlinkStateInternals<K> implements StateInternals {
     @Override
     public void addAccum(AccumT accum) {
       try {
-        org.apache.flink.api.common.state.ValueState<AccumT> state =
-            flinkStateBackend.getPartitionedState(
-                namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor);
-
-        AccumT current = state.value();
+        AccumT current = accumulatorState.value();
         if (current == null) {
-          state.update(accum);
+          accumulatorState.update(accum);
         } else {
           current = combineFn.mergeAccumulators(Lists.newArrayList(current, accum), context);
-          state.update(current);
+          accumulatorState.update(current);
         }
       } catch (Exception e) {
         throw new RuntimeException("Error adding to state.", e);
@@ -597,10 +807,7 @@ public class FlinkStateInternals<K> implements StateInternals {
     @Override
     public AccumT getAccum() {
       try {
-        return flinkStateBackend
-            .getPartitionedState(
-                namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor)
-            .value();
+        return accumulatorState.value();
       } catch (Exception e) {
         throw new RuntimeException("Error reading state.", e);
       }
@@ -614,11 +821,7 @@ public class FlinkStateInternals<K> implements StateInternals {
     @Override
     public OutputT read() {
       try {
-        org.apache.flink.api.common.state.ValueState<AccumT> state =
-            flinkStateBackend.getPartitionedState(
-                namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor);
-
-        AccumT accum = state.value();
+        AccumT accum = accumulatorState.value();
         if (accum != null) {
           return combineFn.extractOutput(accum, context);
         } else {
@@ -635,11 +838,7 @@ public class FlinkStateInternals<K> implements StateInternals {
         @Override
         public Boolean read() {
           try {
-            return flinkStateBackend
-                    .getPartitionedState(
-                        namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor)
-                    .value()
-                == null;
+            return accumulatorState.value() == null;
           } catch (Exception e) {
             throw new RuntimeException("Error reading state.", e);
           }
@@ -655,10 +854,7 @@ public class FlinkStateInternals<K> implements StateInternals {
     @Override
     public void clear() {
       try {
-        flinkStateBackend
-            .getPartitionedState(
-                namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor)
-            .clear();
+        accumulatorState.clear();
       } catch (Exception e) {
         throw new RuntimeException("Error clearing state.", e);
       }
@@ -826,16 +1022,19 @@ public class FlinkStateInternals<K> implements StateInternals {
     private final StateTag<MapState<KeyT, ValueT>> address;
     private final MapStateDescriptor<KeyT, ValueT> flinkStateDescriptor;
     private final KeyedStateBackend<ByteBuffer> flinkStateBackend;
+    private final boolean lazyReads;
 
     FlinkMapState(
         KeyedStateBackend<ByteBuffer> flinkStateBackend,
         StateTag<MapState<KeyT, ValueT>> address,
         StateNamespace namespace,
         Coder<KeyT> mapKeyCoder,
-        Coder<ValueT> mapValueCoder) {
+        Coder<ValueT> mapValueCoder,
+        boolean lazyReads) {
       this.namespace = namespace;
       this.address = address;
       this.flinkStateBackend = flinkStateBackend;
+      this.lazyReads = lazyReads;
       this.flinkStateDescriptor =
           new MapStateDescriptor<>(
               address.getId(),
@@ -912,7 +1111,7 @@ public class FlinkStateInternals<K> implements StateInternals {
                     .getPartitionedState(
                         namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor)
                     .keys();
-            return result != null ? ImmutableList.copyOf(result) : Collections.emptyList();
+            return copyOrView(result);
           } catch (Exception e) {
             throw new RuntimeException("Error get map state keys.", e);
           }
@@ -936,7 +1135,7 @@ public class FlinkStateInternals<K> implements StateInternals {
                     .getPartitionedState(
                         namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor)
                     .values();
-            return result != null ? ImmutableList.copyOf(result) : Collections.emptyList();
+            return copyOrView(result);
           } catch (Exception e) {
             throw new RuntimeException("Error get map state values.", e);
           }
@@ -960,7 +1159,7 @@ public class FlinkStateInternals<K> implements StateInternals {
                     .getPartitionedState(
                         namespace.stringKey(), StringSerializer.INSTANCE, flinkStateDescriptor)
                     .entries();
-            return result != null ? ImmutableList.copyOf(result) : Collections.emptyList();
+            return copyOrView(result);
           } catch (Exception e) {
             throw new RuntimeException("Error get map state entries.", e);
           }
@@ -973,6 +1172,17 @@ public class FlinkStateInternals<K> implements StateInternals {
       };
     }
 
+    /**
+     * Copies the result of a read, unless reads are lazy. Lazy reads return a view which lets the
+     * RocksDB state backend fetch entries in batches while iterating.
+     */
+    private <T> Iterable<T> copyOrView(@Nullable Iterable<T> result) {
+      if (result == null) {
+        return Collections.emptyList();
+      }
+      return lazyReads ? Iterables.unmodifiableIterable(result) : ImmutableList.copyOf(result);
+    }
+
     @Override
     public void clear() {
       try {
@@ -59,7 +59,9 @@ public class EncodedValueComparatorTest extends ComparatorTestBase<byte[]> {
         CoderUtils.encodeToByteArray(coder, "abce"),
         CoderUtils.encodeToByteArray(coder, "abdd"),
         CoderUtils.encodeToByteArray(coder, "accd"),
-        CoderUtils.encodeToByteArray(coder, "bbcd")
+        CoderUtils.encodeToByteArray(coder, "bbcd"),
+        // encodes to bytes >= 0x80, which have to compare as unsigned values
+        CoderUtils.encodeToByteArray(coder, "\u00e9t\u00e9")
       };
     } catch (CoderException e) {
       throw new RuntimeException("Could not encode values.", e);
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.flink.streaming;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import org.apache.beam.runners.core.StateInternals;
+import org.apache.beam.runners.core.StateInternalsTest;
+import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.StateTag;
+import org.apache.beam.runners.core.StateTags;
+import org.apache.beam.runners.flink.translation.wrappers.streaming.state.FlinkStateInternals;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.state.CombiningState;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.JobID;
+import org.apache.flink.api.java.typeutils.GenericTypeInfo;
+import org.apache.flink.runtime.jobgraph.JobVertexID;
+import org.apache.flink.runtime.operators.testutils.DummyEnvironment;
+import org.apache.flink.runtime.query.KvStateRegistry;
+import org.apache.flink.runtime.state.AbstractKeyedStateBackend;
+import org.apache.flink.runtime.state.KeyGroupRange;
+import org.apache.flink.runtime.state.memory.MemoryStateBackend;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link FlinkStateInternals} with lazy reads and accumulator caching. The cache only
+ * holds a single entry so that evictions are exercised as well.
+ */
+@RunWith(JUnit4.class)
+public class FlinkStateInternalsLazyReadsTest extends StateInternalsTest {
+
+  private static final StateNamespace NAMESPACE = StateNamespaces.global();
+
+  private static final StateTag<CombiningState<Integer, int[], Integer>> SUM_ADDR =
+      StateTags.combiningValueFromInputInternal("sum", VarIntCoder.of(), Sum.ofIntegers());
+
+  @Override
+  protected StateInternals createStateInternals() {
+    AbstractKeyedStateBackend<ByteBuffer> keyedStateBackend = createBackend();
+    keyedStateBackend.setCurrentKey(key("Hello"));
+    return new FlinkStateInternals<>(keyedStateBackend, StringUtf8Coder.of(), true, 1);
+  }
+
+  @Test
+  public void testCachedAccumulatorsAreWrittenOnEvictionAndFlush() throws Exception {
+    AbstractKeyedStateBackend<ByteBuffer> keyedStateBackend = createBackend();
+    FlinkStateInternals<String> cached =
+        new FlinkStateInternals<>(keyedStateBackend, StringUtf8Coder.of(), true, 1);
+    FlinkStateInternals<String> uncached =
+        new FlinkStateInternals<>(keyedStateBackend, StringUtf8Coder.of());
+
+    keyedStateBackend.setCurrentKey(key("a"));
+    cached.state(NAMESPACE, SUM_ADDR).add(2);
+    cached.state(NAMESPACE, SUM_ADDR).add(3);
+    keyedStateBackend.setCurrentKey(key("b"));
+    // evicts the accumulator of "a"
+    cached.state(NAMESPACE, SUM_ADDR).add(7);
+
+    assertThat(uncached.state(NAMESPACE, SUM_ADDR).read(), equalTo(0));
+    keyedStateBackend.setCurrentKey(key("a"));
+    assertThat(uncached.state(NAMESPACE, SUM_ADDR).read(), equalTo(5));
+
+    cached.flushAccumulatorCache();
+    keyedStateBackend.setCurrentKey(key("b"));
+    assertThat(uncached.state(NAMESPACE, SUM_ADDR).read(), equalTo(7));
+    assertThat(cached.state(NAMESPACE, SUM_ADDR).read(), equalTo(7));
+  }
+
+  private static ByteBuffer key(String key) {
+    try {
+      return ByteBuffer.wrap(CoderUtils.encodeToByteArray(StringUtf8Coder.of(), key));
+    } catch (CoderException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static AbstractKeyedStateBackend<ByteBuffer> createBackend() {
+    MemoryStateBackend backend = new MemoryStateBackend();
+    try {
+      return backend.createKeyedStateBackend(
+          new DummyEnvironment("test", 1, 0),
+          new JobID(),
+          "test_op",
+          new GenericTypeInfo<>(ByteBuffer.class).createSerializer(new ExecutionConfig()),
+          1,
+          new KeyGroupRange(0, 0),
+          new KvStateRegistry().createTaskRegistry(new JobID(), new JobVertexID()));
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
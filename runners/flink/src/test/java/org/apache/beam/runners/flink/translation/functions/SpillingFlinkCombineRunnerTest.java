@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.flink.translation.functions;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.beam.runners.core.NullSideInputReader;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.SlidingWindows;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.apache.flink.util.Collector;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SpillingFlinkCombineRunner}. */
+@RunWith(JUnit4.class)
+public class SpillingFlinkCombineRunnerTest {
+
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private final PipelineOptions options = PipelineOptionsFactory.create();
+
+  private final Combine.BinaryCombineIntegerFn combineFn = Sum.ofIntegers();
+
+  @SuppressWarnings("unchecked")
+  private final WindowingStrategy<Object, IntervalWindow> slidingStrategy =
+      (WindowingStrategy)
+          WindowingStrategy.of(
+              SlidingWindows.of(Duration.millis(10)).every(Duration.millis(5)));
+
+  @Test
+  public void testSpillingProducesSameResultAsHashing() throws Exception {
+    List<WindowedValue<KV<String, Integer>>> input = slidingInput(500);
+
+    // a budget of one byte forces a spill after every input
+    List<WindowedValue<KV<String, Integer>>> spilled =
+        combine(new SpillingFlinkCombineRunner<>(accumulatorCoder(), windowCoder(), 1L), input);
+    List<WindowedValue<KV<String, Integer>>> expected =
+        combine(new HashingFlinkCombineRunner<>(), input);
+
+    assertThat(spilled, hasSize(expected.size()));
+    assertThat(spilled, containsInAnyOrder(expected.toArray()));
+  }
+
+  @Test
+  public void testWithinBudgetProducesSameResultAsHashing() throws Exception {
+    List<WindowedValue<KV<String, Integer>>> input = slidingInput(500);
+
+    List<WindowedValue<KV<String, Integer>>> combined =
+        combine(
+            new SpillingFlinkCombineRunner<>(accumulatorCoder(), windowCoder(), 1024L * 1024L),
+            input);
+    List<WindowedValue<KV<String, Integer>>> expected =
+        combine(new HashingFlinkCombineRunner<>(), input);
+
+    assertThat(combined, containsInAnyOrder(expected.toArray()));
+  }
+
+  @Test
+  public void testKeepsFewSpillFiles() throws Exception {
+    List<WindowedValue<KV<String, Integer>>> input = slidingInput(2000);
+    File tempDir = new File(System.getProperty("java.io.tmpdir"));
+    FileFilter spillFiles = file -> file.getName().startsWith("beam-flink-combine-spill-");
+    int existing = tempDir.listFiles(spillFiles).length;
+
+    // Every partition exceeds a budget of one byte, so it is spilled again up to the maximum
+    // depth. Only one file per level exists at a time.
+    List<Integer> openFiles = new ArrayList<>();
+    Collector<WindowedValue<KV<String, Integer>>> out =
+        new ListCollector<WindowedValue<KV<String, Integer>>>() {
+          @Override
+          public void collect(WindowedValue<KV<String, Integer>> record) {
+            openFiles.add(tempDir.listFiles(spillFiles).length - existing);
+            super.collect(record);
+          }
+        };
+    new SpillingFlinkCombineRunner<String, Integer, int[], Integer, IntervalWindow>(
+            accumulatorCoder(), windowCoder(), 1L)
+        .combine(
+            new AbstractFlinkCombineRunner.CompleteFlinkCombiner<>(combineFn),
+            slidingStrategy,
+            NullSideInputReader.empty(),
+            options,
+            input,
+            out);
+
+    assertThat(openFiles, hasSize(combine(new HashingFlinkCombineRunner<>(), input).size()));
+    assertThat(Collections.max(openFiles), lessThanOrEqualTo(4));
+    assertThat(tempDir.listFiles(spillFiles), arrayWithSize(existing));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testRejectsMergingWindows() throws Exception {
+    WindowingStrategy<Object, IntervalWindow> sessions =
+        (WindowingStrategy) WindowingStrategy.of(Sessions.withGapDuration(Duration.millis(10)));
+
+    thrown.expect(IllegalArgumentException.class);
+    new SpillingFlinkCombineRunner<String, Integer, int[], Integer, IntervalWindow>(
+            accumulatorCoder(), windowCoder(), 1L)
+        .combine(
+            new AbstractFlinkCombineRunner.CompleteFlinkCombiner<>(combineFn),
+            sessions,
+            NullSideInputReader.empty(),
+            options,
+            slidingInput(1),
+            new ListCollector<>());
+  }
+
+  private List<WindowedValue<KV<String, Integer>>> combine(
+      AbstractFlinkCombineRunner<String, Integer, int[], Integer, IntervalWindow> runner,
+      List<WindowedValue<KV<String, Integer>>> input)
+      throws Exception {
+    ListCollector<WindowedValue<KV<String, Integer>>> out = new ListCollector<>();
+    runner.combine(
+        new AbstractFlinkCombineRunner.CompleteFlinkCombiner<>(combineFn),
+        slidingStrategy,
+        NullSideInputReader.empty(),
+        options,
+        input,
+        out);
+    return out.values;
+  }
+
+  /** Elements of a single key, each assigned to the two sliding windows that contain it. */
+  private static List<WindowedValue<KV<String, Integer>>> slidingInput(int count) {
+    List<WindowedValue<KV<String, Integer>>> input = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      long timestamp = i * 3L;
+      long start = timestamp - timestamp % 5;
+      input.add(
+          WindowedValue.of(
+              KV.of("key", i),
+              new Instant(timestamp),
+              Arrays.asList(
+                  new IntervalWindow(new Instant(start - 5), new Instant(start + 5)),
+                  new IntervalWindow(new Instant(start), new Instant(start + 10))),
+              PaneInfo.NO_FIRING));
+    }
+    return input;
+  }
+
+  private Coder<int[]> accumulatorCoder() throws Exception {
+    return combineFn.getAccumulatorCoder(CoderRegistry.createDefault(), VarIntCoder.of());
+  }
+
+  private static Coder<IntervalWindow> windowCoder() {
+    return IntervalWindow.getCoder();
+  }
+
+  private static class ListCollector<T> implements Collector<T> {
+    private final List<T> values = new ArrayList<>();
+
+    @Override
+    public void collect(T record) {
+      values.add(record);
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -17,6 +17,9 @@
  */
 package org.apache.beam.runners.fnexecution.state;
 
+import com.google.protobuf.ByteString;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletionStage;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
@@ -37,6 +40,19 @@ public interface StateRequestHandler {
    */
   CompletionStage<StateResponse.Builder> handle(StateRequest request) throws Exception;
 
+  /**
+   * Returns the cache tokens which are sent to the SDK with each bundle that uses this handler.
+   *
+   * <p>An SDK may reuse side input values it received through the State API in earlier bundles
+   * which were sent with the same cache tokens. A handler must return different tokens once any
+   * side input it serves could have changed. The tokens do not cover user state, which the SDK
+   * does not cache across bundles. By default no cache tokens are supplied and the SDK does not
+   * cache state across bundles.
+   */
+  default List<ByteString> getCacheTokens() {
+    return Collections.emptyList();
+  }
+
   static StateRequestHandler unsupported() {
     return request -> {
       throw new UnsupportedOperationException(
@@ -22,9 +22,11 @@ import static com.google.common.base.Preconditions.checkState;
 
 import com.google.protobuf.ByteString;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
@@ -61,7 +63,9 @@ public class StateRequestHandlers {
      * Returns an {@link Iterable} of values representing the side input for the given key and
      * window.
      *
-     * <p>The key is interpreted according to the access pattern of side input.
+     * <p>The key is interpreted according to the access pattern of side input. The values returned
+     * for a key and window must not change during the lifetime of the handler, since the SDK may
+     * cache them across bundles.
      *
      * <p>TODO: Add support for side input chunking and caching if a {@link Reiterable} is returned.
      */
@@ -178,7 +182,8 @@ public class StateRequestHandlers {
    * contained.
    *
    * <p>Instances of {@link SideInputHandler}s returned by the {@link SideInputHandlerFactory} are
-   * cached.
+   * cached. The returned handler supplies a cache token which is unique to it, allowing the SDK to
+   * reuse side input values across all bundles which use the handler.
    */
   public static StateRequestHandler forSideInputHandlerFactory(
       Map<String, Map<String, SideInputSpec>> sideInputSpecs,
@@ -193,6 +198,7 @@ public class StateRequestHandlers {
     private final Map<String, Map<String, SideInputSpec>> sideInputSpecs;
     private final SideInputHandlerFactory sideInputHandlerFactory;
     private final ConcurrentHashMap<SideInputSpec, SideInputHandler> cache;
+    private final List<ByteString> cacheTokens;
 
     StateRequestHandlerToSideInputHandlerFactoryAdapter(
         Map<String, Map<String, SideInputSpec>> sideInputSpecs,
@@ -200,6 +206,13 @@ public class StateRequestHandlers {
       this.sideInputSpecs = sideInputSpecs;
       this.sideInputHandlerFactory = sideInputHandlerFactory;
       this.cache = new ConcurrentHashMap<>();
+      this.cacheTokens =
+          Collections.singletonList(ByteString.copyFromUtf8(UUID.randomUUID().toString()));
+    }
+
+    @Override
+    public List<ByteString> getCacheTokens() {
+      return cacheTokens;
     }
 
     @Override
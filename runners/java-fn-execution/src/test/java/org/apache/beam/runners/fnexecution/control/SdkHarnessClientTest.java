@@ -18,6 +18,7 @@
 package org.apache.beam.runners.fnexecution.control;
 
 import static com.google.common.collect.Iterables.getOnlyElement;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
@@ -28,22 +29,28 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.ByteString;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.InstructionResponse;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleDescriptor;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleResponse;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.RemoteGrpcPort;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.Target;
 import org.apache.beam.model.pipeline.v1.Endpoints;
 import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
@@ -82,6 +89,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -183,6 +191,56 @@ public class SdkHarnessClientTest {
     }
   }
 
+  @Test
+  public void testNewBundleSendsCacheTokensOfStateRequestHandler() throws Exception {
+    ProcessBundleDescriptor descriptor =
+        ProcessBundleDescriptor.newBuilder().setId("descriptor1").build();
+    CompletableFuture<InstructionResponse> processBundleResponseFuture = new CompletableFuture<>();
+    when(fnApiControlClient.handle(any(BeamFnApi.InstructionRequest.class)))
+        .thenReturn(new CompletableFuture<>())
+        .thenReturn(processBundleResponseFuture);
+
+    FullWindowedValueCoder<String> coder =
+        FullWindowedValueCoder.of(StringUtf8Coder.of(), Coder.INSTANCE);
+    StateDelegator mockStateDelegator = mock(StateDelegator.class);
+    when(mockStateDelegator.registerForProcessBundleInstructionId(any(), any()))
+        .thenReturn(mock(StateDelegator.Registration.class));
+    BundleProcessor<String> processor =
+        sdkHarnessClient.getProcessor(
+            descriptor,
+            RemoteInputDestination.of(coder, Target.getDefaultInstance()),
+            mockStateDelegator);
+    when(dataService.send(any(), eq(coder))).thenReturn(mock(CloseableFnDataReceiver.class));
+
+    ByteString cacheToken = ByteString.copyFromUtf8("token");
+    StateRequestHandler stateRequestHandler =
+        new StateRequestHandler() {
+          @Override
+          public CompletionStage<StateResponse.Builder> handle(StateRequest request) {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public List<ByteString> getCacheTokens() {
+            return Collections.singletonList(cacheToken);
+          }
+        };
+
+    try (ActiveBundle<String> activeBundle =
+        processor.newBundle(
+            Collections.emptyMap(), stateRequestHandler, BundleProgressHandler.unsupported())) {
+      processBundleResponseFuture.complete(
+          BeamFnApi.InstructionResponse.newBuilder()
+              .setProcessBundle(ProcessBundleResponse.getDefaultInstance())
+              .build());
+    }
+
+    ArgumentCaptor<BeamFnApi.InstructionRequest> requests =
+        ArgumentCaptor.forClass(BeamFnApi.InstructionRequest.class);
+    verify(fnApiControlClient, times(2)).handle(requests.capture());
+    assertThat(requests.getValue().getProcessBundle().getCacheTokensList(), contains(cacheToken));
+  }
+
   @Test
   public void testNewBundleAndProcessElements() throws Exception {
     ProcessBundleDescriptor processBundleDescriptor =
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.fnexecution.state;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import org.apache.beam.runners.fnexecution.state.StateRequestHandlers.SideInputHandlerFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link StateRequestHandlers}. */
+@RunWith(JUnit4.class)
+public class StateRequestHandlersTest {
+  @Test
+  public void testSideInputHandlerSuppliesCacheToken() {
+    StateRequestHandler handler =
+        StateRequestHandlers.forSideInputHandlerFactory(
+            Collections.emptyMap(), SideInputHandlerFactory.unsupported());
+    StateRequestHandler otherHandler =
+        StateRequestHandlers.forSideInputHandlerFactory(
+            Collections.emptyMap(), SideInputHandlerFactory.unsupported());
+
+    assertThat(handler.getCacheTokens(), hasSize(1));
+    // The same token is sent with every bundle using a handler, but not with other handlers.
+    assertEquals(handler.getCacheTokens(), handler.getCacheTokens());
+    assertThat(handler.getCacheTokens(), not(otherHandler.getCacheTokens()));
+  }
+}
@@ -63,4 +63,21 @@ public interface SamzaPipelineOptions extends PipelineOptions {
   int getStoreBatchGetSize();
 
   void setStoreBatchGetSize(int storeBatchGetSize);
+
+  @Description(
+      "The maximum number of event-time timers of a transform to buffer in memory. Other timers "
+          + "are kept in the state store and loaded as the watermark advances.")
+  @Default.Integer(50000)
+  int getTimerBufferSize();
+
+  void setTimerBufferSize(int timerBufferSize);
+
+  @Description(
+      "The maximum size in megabytes of the write-back cache of decoded state of each operator. "
+          + "Modified state is written to the store in batches after each message. "
+          + "Zero disables the cache.")
+  @Default.Integer(0)
+  int getStoreCacheSizeMb();
+
+  void setStoreCacheSizeMb(int storeCacheSizeMb);
 }
@@ -37,6 +37,7 @@ import org.apache.beam.runners.samza.SamzaPipelineOptions;
 import org.apache.beam.runners.samza.util.Base64Serializer;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.VoidCoder;
+import org.apache.beam.sdk.metrics.MetricsContainer;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.join.RawUnionValue;
 import org.apache.beam.sdk.transforms.reflect.DoFnInvoker;
@@ -59,6 +60,7 @@ import org.slf4j.LoggerFactory;
 /** Samza operator for {@link DoFn}. */
 public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
   private static final Logger LOG = LoggerFactory.getLogger(DoFnOp.class);
+  private static final String TIMER_STATE_ID = "beamTimer";
 
   private final TupleTag<FnOutT> mainOutputTag;
   private final DoFn<InT, FnOutT> doFn;
@@ -72,6 +74,7 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
   private final String stepName;
 
   private transient SamzaTimerInternalsFactory<?> timerInternalsFactory;
+  private transient SamzaStateCache stateCache;
   private transient DoFnRunner<InT, FnOutT> fnRunner;
   private transient PushbackSideInputDoFnRunner<InT, FnOutT> pushbackFnRunner;
   private transient SideInputHandler sideInputHandler;
@@ -128,17 +131,22 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
     this.inputWatermark = BoundedWindow.TIMESTAMP_MIN_VALUE;
     this.sideInputWatermark = BoundedWindow.TIMESTAMP_MIN_VALUE;
     this.pushbackWatermarkHold = BoundedWindow.TIMESTAMP_MAX_VALUE;
-    this.timerInternalsFactory = createTimerInternalsFactory(keyCoder, timerRegistry);
     this.context = context;
     this.signature = DoFnSignatures.getSignature(doFn.getClass());
 
-    // use non-keyed StateInternals for side input
+    final SamzaExecutionContext executionContext = (SamzaExecutionContext) context.getUserContext();
+    this.stateCache =
+        createStateCache(
+            pipelineOptions, executionContext.getMetricsContainer().getContainer(stepName));
+
+    // use non-keyed StateInternals for side input and timers
     final SamzaStoreStateInternals.Factory<?> nonKeyedStateInternalsFactory =
         createStateInternalFactory(null);
+    this.timerInternalsFactory =
+        createTimerInternalsFactory(keyCoder, timerRegistry, nonKeyedStateInternalsFactory);
     this.sideInputHandler =
         new SideInputHandler(sideInputs, nonKeyedStateInternalsFactory.stateInternalsForKey(null));
 
-    final SamzaExecutionContext executionContext = (SamzaExecutionContext) context.getUserContext();
     final SamzaStoreStateInternals.Factory<?> stateInternalsFactory =
         createStateInternalFactory(keyCoder);
 
@@ -180,6 +188,7 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
     }
 
     pushbackFnRunner.finishBundle();
+    flushStateCache();
   }
 
   @Override
@@ -196,17 +205,21 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
 
     timerInternalsFactory.setInputWatermark(actualInputWatermark);
 
-    pushbackFnRunner.startBundle();
-    for (KeyedTimerData<?> keyedTimerData : timerInternalsFactory.removeReadyTimers()) {
-      fireTimer(keyedTimerData);
+    Collection<? extends KeyedTimerData<?>> readyTimers;
+    while (!(readyTimers = timerInternalsFactory.removeReadyTimers()).isEmpty()) {
+      pushbackFnRunner.startBundle();
+      for (KeyedTimerData<?> keyedTimerData : readyTimers) {
+        fireTimer(keyedTimerData);
+      }
+      pushbackFnRunner.finishBundle();
     }
-    pushbackFnRunner.finishBundle();
 
     if (timerInternalsFactory.getOutputWatermark() == null
         || timerInternalsFactory.getOutputWatermark().isBefore(actualInputWatermark)) {
       timerInternalsFactory.setOutputWatermark(actualInputWatermark);
       emitter.emitWatermark(timerInternalsFactory.getOutputWatermark());
     }
+    flushStateCache();
   }
 
   @Override
@@ -231,7 +244,7 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
     }
 
     // We may be able to advance the output watermark since we may have played some pushed back
-    // events.
+    // events. This also flushes the state cache.
     processWatermark(this.inputWatermark, emitter);
   }
 
@@ -246,10 +259,15 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public void processTimer(KeyedTimerData<Void> keyedTimerData) {
+    ((SamzaTimerInternalsFactory<Void>) timerInternalsFactory)
+        .removeProcessingTimer(keyedTimerData);
+
     pushbackFnRunner.startBundle();
     fireTimer(keyedTimerData);
     pushbackFnRunner.finishBundle();
+    flushStateCache();
   }
 
   @Override
@@ -257,6 +275,24 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
     doFnInvoker.invokeTeardown();
   }
 
+  /**
+   * Writes the cached state to the stores. Samza only commits the stores between messages, so this
+   * is called before returning from each message.
+   */
+  private void flushStateCache() {
+    if (stateCache != null) {
+      stateCache.flush();
+    }
+  }
+
+  static SamzaStateCache createStateCache(
+      SamzaPipelineOptions pipelineOptions, MetricsContainer metricsContainer) {
+    final int storeCacheSizeMb = pipelineOptions.getStoreCacheSizeMb();
+    return storeCacheSizeMb > 0
+        ? new SamzaStateCache(storeCacheSizeMb * 1024L * 1024L, metricsContainer)
+        : null;
+  }
+
   @SuppressWarnings("unchecked")
   private SamzaStoreStateInternals.Factory createStateInternalFactory(Coder<?> keyCoder) {
     final int batchGetSize = pipelineOptions.getStoreBatchGetSize();
@@ -276,13 +312,21 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
       stateKeyCoder = VoidCoder.of();
     }
     return new SamzaStoreStateInternals.Factory<>(
-        mainOutputTag.getId(), stores, stateKeyCoder, batchGetSize);
+        mainOutputTag.getId(), stores, stateKeyCoder, batchGetSize, stateCache);
   }
 
   @SuppressWarnings("unchecked")
   private SamzaTimerInternalsFactory createTimerInternalsFactory(
-      Coder<?> keyCoder, TimerRegistry timerRegistry) {
-    return new SamzaTimerInternalsFactory<>(keyCoder, timerRegistry);
+      Coder<?> keyCoder,
+      TimerRegistry timerRegistry,
+      SamzaStoreStateInternals.Factory<?> nonKeyedStateInternalsFactory) {
+    return new SamzaTimerInternalsFactory<>(
+        keyCoder,
+        timerRegistry,
+        TIMER_STATE_ID,
+        nonKeyedStateInternalsFactory,
+        windowingStrategy.getWindowFn().windowCoder(),
+        pipelineOptions.getTimerBufferSize());
   }
 
   private void fireTimer(KeyedTimerData<?> keyedTimerData) {
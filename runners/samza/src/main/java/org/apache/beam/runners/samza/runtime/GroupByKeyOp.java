@@ -18,6 +18,7 @@
 
 package org.apache.beam.runners.samza.runtime;
 
+import java.util.Collection;
 import java.util.Collections;
 import org.apache.beam.runners.core.DoFnRunner;
 import org.apache.beam.runners.core.DoFnRunners;
@@ -38,6 +39,7 @@ import org.apache.beam.runners.samza.SamzaPipelineOptions;
 import org.apache.beam.runners.samza.metrics.DoFnRunnerWithMetrics;
 import org.apache.beam.runners.samza.util.Base64Serializer;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.VoidCoder;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
@@ -56,6 +58,7 @@ import org.slf4j.LoggerFactory;
 public class GroupByKeyOp<K, InputT, OutputT>
     implements Op<KeyedWorkItem<K, InputT>, KV<K, OutputT>, K> {
   private static final Logger LOG = LoggerFactory.getLogger(GroupByKeyOp.class);
+  private static final String TIMER_STATE_ID = "beamTimer";
 
   private final TupleTag<KV<K, OutputT>> mainOutputTag;
   private final KeyedWorkItemCoder<K, InputT> inputCoder;
@@ -67,6 +70,7 @@ public class GroupByKeyOp<K, InputT, OutputT>
 
   private transient StateInternalsFactory<K> stateInternalsFactory;
   private transient SamzaTimerInternalsFactory<K> timerInternalsFactory;
+  private transient SamzaStateCache stateCache;
   private transient DoFnRunner<KeyedWorkItem<K, InputT>, KV<K, OutputT>> fnRunner;
   private transient SamzaPipelineOptions pipelineOptions;
 
@@ -107,15 +111,35 @@ public class GroupByKeyOp<K, InputT, OutputT>
 
     final DoFnRunners.OutputManager outputManager = outputManagerFactory.create(emitter);
 
+    final SamzaExecutionContext executionContext = (SamzaExecutionContext) context.getUserContext();
+    this.stateCache =
+        DoFnOp.createStateCache(
+            pipelineOptions, executionContext.getMetricsContainer().getContainer(stepName));
+
     this.stateInternalsFactory =
         new SamzaStoreStateInternals.Factory<>(
             mainOutputTag.getId(),
             SamzaStoreStateInternals.getBeamStore(context),
             keyCoder,
-            pipelineOptions.getStoreBatchGetSize());
+            pipelineOptions.getStoreBatchGetSize(),
+            stateCache);
+
+    final StateInternalsFactory<Void> nonKeyedStateInternalsFactory =
+        new SamzaStoreStateInternals.Factory<>(
+            mainOutputTag.getId(),
+            SamzaStoreStateInternals.getBeamStore(context),
+            VoidCoder.of(),
+            pipelineOptions.getStoreBatchGetSize(),
+            stateCache);
 
     this.timerInternalsFactory =
-        new SamzaTimerInternalsFactory<>(inputCoder.getKeyCoder(), timerRegistry);
+        new SamzaTimerInternalsFactory<>(
+            inputCoder.getKeyCoder(),
+            timerRegistry,
+            TIMER_STATE_ID,
+            nonKeyedStateInternalsFactory,
+            windowingStrategy.getWindowFn().windowCoder(),
+            pipelineOptions.getTimerBufferSize());
 
     final DoFn<KeyedWorkItem<K, InputT>, KV<K, OutputT>> doFn =
         GroupAlsoByWindowViaWindowSetNewDoFn.create(
@@ -156,7 +180,6 @@ public class GroupByKeyOp<K, InputT, OutputT>
             Collections.emptyMap(),
             windowingStrategy);
 
-    final SamzaExecutionContext executionContext = (SamzaExecutionContext) context.getUserContext();
     this.fnRunner =
         DoFnRunnerWithMetrics.wrap(doFnRunner, executionContext.getMetricsContainer(), stepName);
   }
@@ -167,30 +190,45 @@ public class GroupByKeyOp<K, InputT, OutputT>
     fnRunner.startBundle();
     fnRunner.processElement(inputElement);
     fnRunner.finishBundle();
+    flushStateCache();
   }
 
   @Override
   public void processWatermark(Instant watermark, OpEmitter<KV<K, OutputT>> ctx) {
     timerInternalsFactory.setInputWatermark(watermark);
 
-    fnRunner.startBundle();
-    for (KeyedTimerData<K> keyedTimerData : timerInternalsFactory.removeReadyTimers()) {
-      fireTimer(keyedTimerData.getKey(), keyedTimerData.getTimerData());
+    Collection<KeyedTimerData<K>> readyTimers;
+    while (!(readyTimers = timerInternalsFactory.removeReadyTimers()).isEmpty()) {
+      fnRunner.startBundle();
+      for (KeyedTimerData<K> keyedTimerData : readyTimers) {
+        fireTimer(keyedTimerData.getKey(), keyedTimerData.getTimerData());
+      }
+      fnRunner.finishBundle();
     }
-    fnRunner.finishBundle();
 
     if (timerInternalsFactory.getOutputWatermark() == null
         || timerInternalsFactory.getOutputWatermark().isBefore(watermark)) {
       timerInternalsFactory.setOutputWatermark(watermark);
       ctx.emitWatermark(timerInternalsFactory.getOutputWatermark());
     }
+    flushStateCache();
   }
 
   @Override
   public void processTimer(KeyedTimerData<K> keyedTimerData) {
+    timerInternalsFactory.removeProcessingTimer(keyedTimerData);
+
     fnRunner.startBundle();
     fireTimer(keyedTimerData.getKey(), keyedTimerData.getTimerData());
     fnRunner.finishBundle();
+    flushStateCache();
+  }
+
+  /** Writes the cached state to the store before Samza can commit it. */
+  private void flushStateCache() {
+    if (stateCache != null) {
+      stateCache.flush();
+    }
   }
 
   private void fireTimer(K key, TimerData timer) {
@@ -18,8 +18,24 @@
 
 package org.apache.beam.runners.samza.runtime;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.List;
+import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.runners.core.StateNamespaces;
 import org.apache.beam.runners.core.TimerInternals;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.InstantCoder;
+import org.apache.beam.sdk.coders.NullableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.StructuredCoder;
+import org.apache.beam.sdk.state.TimeDomain;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.joda.time.Instant;
 
 /**
  * {@link TimerInternals.TimerData} with key, used by {@link SamzaTimerInternalsFactory}. Implements
@@ -103,4 +119,55 @@ public class KeyedTimerData<K> implements Comparable<KeyedTimerData<K>> {
     result = 31 * result + timerData.hashCode();
     return result;
   }
+
+  /**
+   * Coder for {@link KeyedTimerData}. The timestamp is encoded first with the order preserving
+   * {@link InstantCoder}, so encoded timers sort by timestamp in byte order.
+   */
+  static class KeyedTimerDataCoder<K> extends StructuredCoder<KeyedTimerData<K>> {
+    private static final Coder<byte[]> KEY_BYTES_CODER = NullableCoder.of(ByteArrayCoder.of());
+    private static final InstantCoder INSTANT_CODER = InstantCoder.of();
+    private static final StringUtf8Coder STRING_CODER = StringUtf8Coder.of();
+
+    private final Coder<K> keyCoder;
+    private final Coder<? extends BoundedWindow> windowCoder;
+
+    KeyedTimerDataCoder(Coder<K> keyCoder, Coder<? extends BoundedWindow> windowCoder) {
+      this.keyCoder = keyCoder;
+      this.windowCoder = windowCoder;
+    }
+
+    @Override
+    public void encode(KeyedTimerData<K> value, OutputStream outStream)
+        throws CoderException, IOException {
+      final TimerInternals.TimerData timerData = value.getTimerData();
+      INSTANT_CODER.encode(timerData.getTimestamp(), outStream);
+      STRING_CODER.encode(timerData.getTimerId(), outStream);
+      STRING_CODER.encode(timerData.getNamespace().stringKey(), outStream);
+      STRING_CODER.encode(timerData.getDomain().name(), outStream);
+      KEY_BYTES_CODER.encode(value.getKeyBytes(), outStream);
+    }
+
+    @Override
+    public KeyedTimerData<K> decode(InputStream inStream) throws CoderException, IOException {
+      final Instant timestamp = INSTANT_CODER.decode(inStream);
+      final String timerId = STRING_CODER.decode(inStream);
+      final StateNamespace namespace =
+          StateNamespaces.fromString(STRING_CODER.decode(inStream), windowCoder);
+      final TimeDomain domain = TimeDomain.valueOf(STRING_CODER.decode(inStream));
+      final byte[] keyBytes = KEY_BYTES_CODER.decode(inStream);
+      return new KeyedTimerData<>(
+          keyBytes,
+          TimerKey.decodeKey(keyCoder, keyBytes),
+          TimerInternals.TimerData.of(timerId, namespace, timestamp, domain));
+    }
+
+    @Override
+    public List<? extends Coder<?>> getCoderArguments() {
+      return Arrays.asList(keyCoder, windowCoder);
+    }
+
+    @Override
+    public void verifyDeterministic() throws NonDeterministicException {}
+  }
 }
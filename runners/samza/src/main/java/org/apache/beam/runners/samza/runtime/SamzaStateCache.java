@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.runners.samza.runtime;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.primitives.UnsignedBytes;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricsContainer;
+import org.apache.samza.storage.kv.Entry;
+import org.apache.samza.storage.kv.KeyValueStore;
+
+/**
+ * A write-back cache of decoded state values in Samza {@link KeyValueStore}s, shared by the {@link
+ * SamzaStoreStateInternals} of an operator.
+ *
+ * <p>Reads are served from the cache when possible, and writes only update the cache. Modified
+ * values are encoded and written to their store in batches when they are evicted, and when {@link
+ * #flush()} is called. Samza flushes the stores and checkpoints only between the messages of a
+ * task, so the operator needs to call {@link #flush()} before it returns from processing a
+ * message. Range scans of a store do not go through the cache; {@link #flush(KeyValueStore, byte[],
+ * byte[])} writes the modified values in the range first.
+ *
+ * <p>The cache is bounded by the size of the keys plus the size of the encoded values. The size of
+ * a value written to the cache is only known once it is encoded, until then the size of the value
+ * it replaced is used.
+ *
+ * <p>Like the in-memory state of other runners, cached values are not copied, so values read from
+ * state must not be mutated unless they are written back.
+ *
+ * <p>This class is not thread safe.
+ */
+public class SamzaStateCache {
+  // estimated size of a value that has not been encoded yet
+  private static final int DEFAULT_VALUE_SIZE = 64;
+
+  private final long maxWeight;
+  private final Counter hitCounter;
+  private final Counter missCounter;
+  private final Counter flushCounter;
+
+  // entries in least recently used order
+  private final LinkedHashMap<CachedEntry, CachedEntry> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  // entries of each store in key order
+  private final Map<KeyValueStore<byte[], byte[]>, NavigableMap<byte[], CachedEntry>> storeEntries =
+      new IdentityHashMap<>();
+  // entries with values that have not been written to their store yet
+  private final Set<CachedEntry> dirtyEntries = new HashSet<>();
+
+  private long weight;
+  private long hits;
+  private long misses;
+  private long flushes;
+
+  public SamzaStateCache(long maxWeight, MetricsContainer metricsContainer) {
+    checkArgument(maxWeight > 0, "Cache size must be positive: %s", maxWeight);
+    this.maxWeight = maxWeight;
+    this.hitCounter = metricsContainer.getCounter(MetricName.named(SamzaStateCache.class, "hits"));
+    this.missCounter =
+        metricsContainer.getCounter(MetricName.named(SamzaStateCache.class, "misses"));
+    this.flushCounter =
+        metricsContainer.getCounter(MetricName.named(SamzaStateCache.class, "flushes"));
+  }
+
+  /** Returns the decoded value of a key, or null if the key is not in the store. */
+  @Nullable
+  public <T> T get(KeyValueStore<byte[], byte[]> store, byte[] key, Coder<T> coder) {
+    CachedEntry entry = getEntry(store, key);
+    if (entry == null) {
+      misses++;
+      final byte[] bytes = store.get(key);
+      entry = new CachedEntry(store, key, bytes == null ? null : decode(coder, bytes), coder);
+      entry.valueSize = bytes == null ? 0 : bytes.length;
+      add(entry);
+    } else {
+      hits++;
+    }
+
+    @SuppressWarnings("unchecked")
+    final T value = (T) entry.value;
+    return value;
+  }
+
+  /**
+   * Returns whether a key has a value. Unlike {@link #get}, this does not decode or cache values
+   * which are only in the store, so it can be used for keys holding values of a different type.
+   */
+  public boolean containsKey(KeyValueStore<byte[], byte[]> store, byte[] key) {
+    final CachedEntry entry = getEntry(store, key);
+    if (entry != null) {
+      hits++;
+      return entry.value != null;
+    }
+    misses++;
+    return store.get(key) != null;
+  }
+
+  /**
+   * Returns the decoded values of the keys in order, or null for the keys which are not in the
+   * store. The keys missing in the cache are read from the store with one {@link
+   * KeyValueStore#getAll} call.
+   */
+  public <T> List<T> getAll(KeyValueStore<byte[], byte[]> store, List<byte[]> keys, Coder<T> coder) {
+    final List<CachedEntry> found = new ArrayList<>(keys.size());
+    final List<byte[]> missingKeys = new ArrayList<>();
+    for (byte[] key : keys) {
+      final CachedEntry entry = getEntry(store, key);
+      found.add(entry);
+      if (entry == null) {
+        missingKeys.add(key);
+      }
+    }
+    hits += keys.size() - missingKeys.size();
+    misses += missingKeys.size();
+
+    final NavigableMap<byte[], byte[]> loaded = new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+    if (!missingKeys.isEmpty()) {
+      for (Map.Entry<byte[], byte[]> entry : store.getAll(missingKeys).entrySet()) {
+        if (entry.getValue() != null) {
+          loaded.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+
+    final List<T> values = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      CachedEntry entry = found.get(i);
+      if (entry == null) {
+        final byte[] bytes = loaded.get(keys.get(i));
+        entry =
+            new CachedEntry(store, keys.get(i), bytes == null ? null : decode(coder, bytes), coder);
+        entry.valueSize = bytes == null ? 0 : bytes.length;
+        add(entry);
+      }
+
+      @SuppressWarnings("unchecked")
+      final T value = (T) entry.value;
+      values.add(value);
+    }
+    return values;
+  }
+
+  /** Sets the value of a key. The value is written to the store when it is flushed. */
+  public <T> void put(KeyValueStore<byte[], byte[]> store, byte[] key, T value, Coder<T> coder) {
+    final CachedEntry entry = getEntry(store, key);
+    if (entry != null) {
+      // the weight is updated once the new value is encoded
+      entry.setValue(value, coder);
+      dirtyEntries.add(entry);
+    } else {
+      final CachedEntry newEntry = new CachedEntry(store, key, value, coder);
+      dirtyEntries.add(newEntry);
+      add(newEntry);
+    }
+  }
+
+  /** Deletes a key. The key is deleted from the store when it is flushed. */
+  public void delete(KeyValueStore<byte[], byte[]> store, byte[] key) {
+    put(store, key, null, null);
+  }
+
+  /**
+   * Writes the modified values to the stores. Only the modified entries are visited, so flushing
+   * after every message is cheap when few values changed.
+   */
+  public void flush() {
+    if (!dirtyEntries.isEmpty()) {
+      writeBack(new ArrayList<>(dirtyEntries));
+    }
+    publishMetrics();
+  }
+
+  /** Writes the modified values of the keys in {@code [from, to)} to a store. */
+  public void flush(KeyValueStore<byte[], byte[]> store, byte[] from, byte[] to) {
+    final NavigableMap<byte[], CachedEntry> entriesOfStore = storeEntries.get(store);
+    if (entriesOfStore != null) {
+      writeBack(entriesOfStore.subMap(from, true, to, false).values());
+    }
+  }
+
+  /**
+   * Writes the modified values of the keys in {@code [from, to)} to a store, and removes the keys
+   * from the cache, e.g. before they are deleted from the store directly.
+   */
+  public void invalidate(KeyValueStore<byte[], byte[]> store, byte[] from, byte[] to) {
+    final NavigableMap<byte[], CachedEntry> entriesOfStore = storeEntries.get(store);
+    if (entriesOfStore != null) {
+      final Map<byte[], CachedEntry> range = entriesOfStore.subMap(from, true, to, false);
+      writeBack(range.values());
+      for (CachedEntry entry : new ArrayList<>(range.values())) {
+        remove(entry);
+      }
+    }
+  }
+
+  @Nullable
+  private CachedEntry getEntry(KeyValueStore<byte[], byte[]> store, byte[] key) {
+    final NavigableMap<byte[], CachedEntry> entriesOfStore = storeEntries.get(store);
+    final CachedEntry entry = entriesOfStore == null ? null : entriesOfStore.get(key);
+    if (entry != null) {
+      // moves the entry to the end of the access order
+      entries.get(entry);
+    }
+    return entry;
+  }
+
+  private void add(CachedEntry entry) {
+    entries.put(entry, entry);
+    storeEntries
+        .computeIfAbsent(
+            entry.store, store -> new TreeMap<>(UnsignedBytes.lexicographicalComparator()))
+        .put(entry.key, entry);
+    weight += entry.weight();
+
+    if (weight > maxWeight) {
+      evict();
+    }
+  }
+
+  private void remove(CachedEntry entry) {
+    entries.remove(entry);
+    storeEntries.get(entry.store).remove(entry.key);
+    weight -= entry.weight();
+  }
+
+  /** Evicts the least recently used tenth of the cache, writing back the modified values. */
+  private void evict() {
+    final long targetWeight = maxWeight - maxWeight / 10;
+    final List<CachedEntry> evicted = new ArrayList<>();
+    final Iterator<CachedEntry> iter = entries.keySet().iterator();
+    while (weight > targetWeight && iter.hasNext()) {
+      final CachedEntry entry = iter.next();
+      iter.remove();
+      storeEntries.get(entry.store).remove(entry.key);
+      weight -= entry.weight();
+      evicted.add(entry);
+    }
+    writeBack(evicted);
+  }
+
+  /** Writes the modified entries to their stores in batches, and marks them as clean. */
+  private void writeBack(Iterable<CachedEntry> entriesToWrite) {
+    final Map<KeyValueStore<byte[], byte[]>, List<Entry<byte[], byte[]>>> puts =
+        new IdentityHashMap<>();
+    final Map<KeyValueStore<byte[], byte[]>, List<byte[]>> deletes = new IdentityHashMap<>();
+
+    for (CachedEntry entry : entriesToWrite) {
+      if (!dirtyEntries.remove(entry)) {
+        continue;
+      }
+
+      final int valueSize;
+      if (entry.value == null) {
+        deletes.computeIfAbsent(entry.store, store -> new ArrayList<>()).add(entry.key);
+        valueSize = 0;
+      } else {
+        final byte[] bytes = entry.encode();
+        puts.computeIfAbsent(entry.store, store -> new ArrayList<>())
+            .add(new Entry<>(entry.key, bytes));
+        valueSize = bytes.length;
+      }
+      if (entries.containsKey(entry)) {
+        // evicted entries no longer count towards the weight
+        weight += valueSize - entry.valueSize;
+      }
+      entry.valueSize = valueSize;
+      flushes++;
+    }
+
+    puts.forEach(KeyValueStore::putAll);
+    deletes.forEach(KeyValueStore::deleteAll);
+  }
+
+  private void publishMetrics() {
+    hitCounter.inc(hits);
+    missCounter.inc(misses);
+    flushCounter.inc(flushes);
+    hits = 0;
+    misses = 0;
+    flushes = 0;
+  }
+
+  // same encoding as SamzaStoreStateInternals
+  private static <T> T decode(Coder<T> coder, byte[] bytes) {
+    try {
+      return coder.decode(new ByteArrayInputStream(bytes));
+    } catch (IOException e) {
+      throw new RuntimeException("Could not decode state", e);
+    }
+  }
+
+  /** A cached value. Entries are compared by identity. */
+  private static class CachedEntry {
+    private final KeyValueStore<byte[], byte[]> store;
+    private final byte[] key;
+    @Nullable private Object value;
+    @Nullable private Coder<Object> coder;
+    // size of the encoded value, or of the value it replaced if it has not been encoded yet
+    private int valueSize = DEFAULT_VALUE_SIZE;
+
+    @SuppressWarnings("unchecked")
+    private CachedEntry(
+        KeyValueStore<byte[], byte[]> store,
+        byte[] key,
+        @Nullable Object value,
+        @Nullable Coder<?> coder) {
+      this.store = store;
+      this.key = key;
+      this.value = value;
+      this.coder = (Coder<Object>) coder;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setValue(@Nullable Object value, @Nullable Coder<?> coder) {
+      this.value = value;
+      this.coder = (Coder<Object>) coder;
+    }
+
+    private long weight() {
+      return key.length + valueSize;
+    }
+
+    private byte[] encode() {
+      try {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        coder.encode(value, baos);
+        return baos.toByteArray();
+      } catch (IOException e) {
+        throw new RuntimeException("Could not encode state value: " + value, e);
+      }
+    }
+  }
+}
@@ -43,6 +43,7 @@ import org.apache.beam.runners.core.StateNamespace;
 import org.apache.beam.runners.core.StateTag;
 import org.apache.beam.runners.samza.state.SamzaMapState;
 import org.apache.beam.runners.samza.state.SamzaSetState;
+import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
 import org.apache.beam.sdk.coders.BooleanCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.InstantCoder;
@@ -70,6 +71,8 @@ import org.joda.time.Instant;
 /** {@link StateInternals} that uses Samza local {@link KeyValueStore} to manage state. */
 public class SamzaStoreStateInternals<K> implements StateInternals {
   private static final String BEAM_STORE = "beamStore";
+  // same encoding as Ints.toByteArray, which is used for bag sizes without a cache
+  private static final Coder<Integer> SIZE_CODER = BigEndianIntegerCoder.of();
 
   private static ThreadLocal<SoftReference<ByteArrayOutputStream>> threadLocalBaos =
       new ThreadLocal<>();
@@ -79,16 +82,19 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
   private final K key;
   private final byte[] keyBytes;
   private final int batchGetSize;
+  @Nullable private final SamzaStateCache cache;
 
   private SamzaStoreStateInternals(
       Map<String, KeyValueStore<byte[], byte[]>> stores,
       @Nullable K key,
       @Nullable byte[] keyBytes,
-      int batchGetSize) {
+      int batchGetSize,
+      @Nullable SamzaStateCache cache) {
     this.stores = stores;
     this.key = key;
     this.keyBytes = keyBytes;
     this.batchGetSize = batchGetSize;
+    this.cache = cache;
   }
 
   public static Map<String, KeyValueStore<byte[], byte[]>> getBeamStore(TaskContext context) {
@@ -182,16 +188,31 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
     private final Map<String, KeyValueStore<byte[], byte[]>> stores;
     private final Coder<K> keyCoder;
     private final int batchGetSize;
+    @Nullable private final SamzaStateCache cache;
 
     public Factory(
         String stageId,
         Map<String, KeyValueStore<byte[], byte[]>> stores,
         Coder<K> keyCoder,
         int batchGetSize) {
+      this(stageId, stores, keyCoder, batchGetSize, null);
+    }
+
+    /**
+     * Creates a factory whose states read and write through the given cache. The cache needs to
+     * be flushed before Samza commits the stores.
+     */
+    public Factory(
+        String stageId,
+        Map<String, KeyValueStore<byte[], byte[]>> stores,
+        Coder<K> keyCoder,
+        int batchGetSize,
+        @Nullable SamzaStateCache cache) {
       this.stageId = stageId;
       this.stores = stores;
       this.keyCoder = keyCoder;
       this.batchGetSize = batchGetSize;
+      this.cache = cache;
     }
 
     @Override
@@ -213,7 +234,7 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
         throw new RuntimeException("Cannot encode key for state store", e);
       }
 
-      return new SamzaStoreStateInternals<>(stores, key, baos.toByteArray(), batchGetSize);
+      return new SamzaStoreStateInternals<>(stores, key, baos.toByteArray(), batchGetSize, cache);
     }
   }
 
@@ -223,7 +244,7 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
   }
 
   private abstract class AbstractSamzaState<T> {
-    private final Coder<T> coder;
+    protected final Coder<T> coder;
     private final byte[] encodedStoreKey;
     private final String namespace;
     protected final KeyValueStore<byte[], byte[]> store;
@@ -253,14 +274,25 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
     }
 
     protected void clearInternal() {
-      store.delete(getEncodedStoreKey());
+      if (cache != null) {
+        cache.delete(store, getEncodedStoreKey());
+      } else {
+        store.delete(getEncodedStoreKey());
+      }
     }
 
     protected void writeInternal(T value) {
-      store.put(getEncodedStoreKey(), encodeValue(value));
+      if (cache != null) {
+        cache.put(store, getEncodedStoreKey(), value, coder);
+      } else {
+        store.put(getEncodedStoreKey(), encodeValue(value));
+      }
     }
 
     protected T readInternal() {
+      if (cache != null) {
+        return cache.get(store, getEncodedStoreKey(), coder);
+      }
       final byte[] valueBytes = store.get(getEncodedStoreKey());
       return decodeValue(valueBytes);
     }
@@ -269,6 +301,9 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
       return new ReadableState<Boolean>() {
         @Override
         public Boolean read() {
+          if (cache != null) {
+            return !cache.containsKey(store, getEncodedStoreKey());
+          }
           return store.get(getEncodedStoreKey()) == null;
         }
 
@@ -365,8 +400,13 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
       synchronized (store) {
         final int size = getSize();
         final byte[] encodedKey = encodeKey(size);
-        store.put(encodedKey, encodeValue(value));
-        store.put(getEncodedStoreKey(), Ints.toByteArray(size + 1));
+        if (cache != null) {
+          cache.put(store, encodedKey, value, coder);
+          cache.put(store, getEncodedStoreKey(), size + 1, SIZE_CODER);
+        } else {
+          store.put(encodedKey, encodeValue(value));
+          store.put(getEncodedStoreKey(), Ints.toByteArray(size + 1));
+        }
       }
     }
 
@@ -394,7 +434,11 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
           for (int i = start; i < end; i++) {
             keys.add(encodeKey(i));
           }
-          store.getAll(keys).values().forEach(value -> values.add(decodeValue(value)));
+          if (cache != null) {
+            values.addAll(cache.getAll(store, keys, coder));
+          } else {
+            store.getAll(keys).values().forEach(value -> values.add(decodeValue(value)));
+          }
 
           start += batchGetSize;
           keys.clear();
@@ -417,13 +461,22 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
           for (int i = 0; i < size; i++) {
             keys.add(encodeKey(i));
           }
-          store.deleteAll(keys);
-          store.delete(getEncodedStoreKey());
+          if (cache != null) {
+            keys.forEach(key -> cache.delete(store, key));
+            cache.delete(store, getEncodedStoreKey());
+          } else {
+            store.deleteAll(keys);
+            store.delete(getEncodedStoreKey());
+          }
         }
       }
     }
 
     private int getSize() {
+      if (cache != null) {
+        final Integer size = cache.get(store, getEncodedStoreKey(), SIZE_CODER);
+        return size == null ? 0 : size;
+      }
       final byte[] sizeBytes = store.get(getEncodedStoreKey());
       return sizeBytes == null ? 0 : Ints.fromByteArray(sizeBytes);
     }
@@ -536,7 +589,6 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
   private class SamzaMapStateImpl<KeyT, ValueT> extends AbstractSamzaState<ValueT>
       implements SamzaMapState<KeyT, ValueT>, KeyValueIteratorState {
 
-    private static final int MAX_KEY_SIZE = 100000; //100K bytes
     private final Coder<KeyT> keyCoder;
     private final byte[] maxKey;
     private final int storeKeySize;
@@ -551,35 +603,33 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
       super(namespace, address, valueCoder);
 
       this.keyCoder = keyCoder;
-      this.maxKey = new byte[MAX_KEY_SIZE];
       this.storeKeySize = getEncodedStoreKey().length;
 
+      // The smallest key greater than all keys prefixed by the store key, which bounds the range
+      // of the map entries regardless of the size of the map keys.
       final byte[] encodedKey = getEncodedStoreKey();
-      checkState(
-          encodedKey.length < MAX_KEY_SIZE,
-          "Encoded key size %s is longer than the max key size (100 KB) supported",
-          encodedKey.length);
-
-      Arrays.fill(maxKey, (byte) 0xff);
-      System.arraycopy(encodedKey, 0, maxKey, 0, encodedKey.length);
+      int last = encodedKey.length - 1;
+      while (last >= 0 && encodedKey[last] == (byte) 0xff) {
+        last--;
+      }
+      checkState(last >= 0, "No upper bound for the encoded state key");
+      this.maxKey = Arrays.copyOf(encodedKey, last + 1);
+      this.maxKey[last]++;
     }
 
     @Override
     public void put(KeyT key, ValueT value) {
-      final byte[] encodedKey = encodeKey(key);
-      checkState(
-          encodedKey.length < MAX_KEY_SIZE,
-          "Encoded key size %s is longer than the max key size (100 KB) supported",
-          encodedKey.length);
-
-      store.put(encodedKey, encodeValue(value));
+      if (cache != null) {
+        cache.put(store, encodeKey(key), value, coder);
+      } else {
+        store.put(encodeKey(key), encodeValue(value));
+      }
     }
 
     @Override
     @Nullable
     public ReadableState<ValueT> putIfAbsent(KeyT key, ValueT value) {
-      final byte[] encodedKey = encodeKey(key);
-      final ValueT current = decodeValue(store.get(encodedKey));
+      final ValueT current = get(key).read();
       if (current == null) {
         put(key, value);
       }
@@ -589,12 +639,21 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
 
     @Override
     public void remove(KeyT key) {
-      store.delete(encodeKey(key));
+      if (cache != null) {
+        cache.delete(store, encodeKey(key));
+      } else {
+        store.delete(encodeKey(key));
+      }
     }
 
     @Override
     public ReadableState<ValueT> get(KeyT key) {
-      ValueT value = decodeValue(store.get(encodeKey(key)));
+      final ValueT value;
+      if (cache != null) {
+        value = cache.get(store, encodeKey(key), coder);
+      } else {
+        value = decodeValue(store.get(encodeKey(key)));
+      }
       return ReadableStates.immediate(value);
     }
 
@@ -648,6 +707,7 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
 
     @Override
     public ReadableState<Iterator<Map.Entry<KeyT, ValueT>>> readIterator() {
+      flushCache();
       final KeyValueIterator<byte[], byte[]> kvIter = store.range(getEncodedStoreKey(), maxKey);
       openIterators.add(kvIter);
 
@@ -688,6 +748,7 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
      */
     private <OutputT> Iterable<OutputT> createIterable(
         SerializableFunction<org.apache.samza.storage.kv.Entry<byte[], byte[]>, OutputT> fn) {
+      flushCache();
       final KeyValueIterator<byte[], byte[]> kvIter = store.range(getEncodedStoreKey(), maxKey);
       final List<Entry<byte[], byte[]>> iterable = ImmutableList.copyOf(kvIter);
       kvIter.close();
@@ -714,6 +775,9 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
 
     @Override
     public void clear() {
+      if (cache != null) {
+        cache.invalidate(store, getEncodedStoreKey(), maxKey);
+      }
       final KeyValueIterator<byte[], byte[]> kvIter = store.range(getEncodedStoreKey(), maxKey);
       while (kvIter.hasNext()) {
         store.delete(kvIter.next().getKey());
@@ -721,6 +785,13 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
       kvIter.close();
     }
 
+    /** Writes the cached entries of this map to the store before it is scanned. */
+    private void flushCache() {
+      if (cache != null) {
+        cache.flush(store, getEncodedStoreKey(), maxKey);
+      }
+    }
+
     private byte[] encodeKey(KeyT key) {
       try {
         final ByteArrayOutputStream baos = getThreadLocalBaos();
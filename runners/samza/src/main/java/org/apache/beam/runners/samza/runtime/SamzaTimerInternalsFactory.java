@@ -18,20 +18,30 @@
 
 package org.apache.beam.runners.samza.runtime;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.TreeSet;
 import javax.annotation.Nullable;
+import org.apache.beam.runners.core.StateInternals;
+import org.apache.beam.runners.core.StateInternalsFactory;
 import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.StateTags;
 import org.apache.beam.runners.core.TimerInternals;
 import org.apache.beam.runners.core.TimerInternalsFactory;
 import org.apache.beam.runners.samza.SamzaRunner;
+import org.apache.beam.runners.samza.state.SamzaMapState;
+import org.apache.beam.runners.samza.state.SamzaSetState;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
 import org.apache.beam.sdk.state.TimeDomain;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.samza.operators.TimerRegistry;
@@ -43,23 +53,50 @@ import org.slf4j.LoggerFactory;
  * {@link TimerInternalsFactory} that creates Samza {@link TimerInternals}. This class keeps track
  * of the {@link org.apache.beam.runners.core.TimerInternals.TimerData} added to the sorted timer
  * set, and removes the ready timers when the watermark is advanced.
+ *
+ * <p>Timers are persisted in the Samza store through non-keyed {@link SamzaStoreStateInternals},
+ * so they survive restarts and their number is not bounded by the heap. Event-time timers are kept
+ * sorted by timestamp in the store, and only the earliest of them are buffered in memory. Once the
+ * buffer is drained and the watermark has passed the last buffered timestamp, the next batch is
+ * loaded from the store. The timestamps of recently set event-time timers are cached as well, so
+ * that setting a timer again does not read the store. Processing-time timers are registered with
+ * the Samza {@link TimerRegistry}, and registered again from the store when the factory is created.
  */
 public class SamzaTimerInternalsFactory<K> implements TimerInternalsFactory<K> {
   private static final Logger LOG = LoggerFactory.getLogger(SamzaTimerInternalsFactory.class);
 
-  private final Map<TimerKey, KeyedTimerData<K>> timerMap = new HashMap<>();
-  private final NavigableSet<KeyedTimerData<K>> eventTimeTimers = new TreeSet<>();
+  private final NavigableSet<KeyedTimerData<K>> eventTimeBuffer = new TreeSet<>();
 
   private final Coder<K> keyCoder;
   private final TimerRegistry<TimerKey<K>> timerRegistry;
+  private final int timerBufferSize;
+  private final SamzaTimerState state;
+
+  // All persisted event-time timers before this timestamp are in eventTimeBuffer.
+  private long maxEventTimeInBuffer;
 
   // TODO: use BoundedWindow.TIMESTAMP_MIN_VALUE when KafkaIO emits watermarks in bounds.
   private Instant inputWatermark = new Instant(Long.MIN_VALUE);
   private Instant outputWatermark = BoundedWindow.TIMESTAMP_MIN_VALUE;
 
-  public SamzaTimerInternalsFactory(Coder<K> keyCoder, TimerRegistry<TimerKey<K>> timerRegistry) {
+  public SamzaTimerInternalsFactory(
+      Coder<K> keyCoder,
+      TimerRegistry<TimerKey<K>> timerRegistry,
+      String timerStateId,
+      StateInternalsFactory<?> nonKeyedStateInternalsFactory,
+      Coder<? extends BoundedWindow> windowCoder,
+      int timerBufferSize) {
+    checkArgument(timerBufferSize > 0, "Timer buffer size must be positive: %s", timerBufferSize);
+
     this.keyCoder = keyCoder;
     this.timerRegistry = timerRegistry;
+    this.timerBufferSize = timerBufferSize;
+    this.state =
+        new SamzaTimerState(
+            timerStateId, nonKeyedStateInternalsFactory.stateInternalsForKey(null), windowCoder);
+
+    state.loadEventTimeTimers();
+    state.registerProcessingTimeTimers();
   }
 
   @Override
@@ -106,29 +143,43 @@ public class SamzaTimerInternalsFactory<K> implements TimerInternalsFactory<K> {
     outputWatermark = watermark;
   }
 
+  /**
+   * Removes and returns the event-time timers before the input watermark, at most the timer buffer
+   * size of them. Callers should keep firing the returned timers until none are returned.
+   */
   public Collection<KeyedTimerData<K>> removeReadyTimers() {
     final Collection<KeyedTimerData<K>> readyTimers = new ArrayList<>();
 
-    while (!eventTimeTimers.isEmpty()
-        && eventTimeTimers.first().getTimerData().getTimestamp().isBefore(inputWatermark)) {
-      final KeyedTimerData<K> keyedTimerData = eventTimeTimers.pollFirst();
-      final TimerInternals.TimerData timerData = keyedTimerData.getTimerData();
-
-      final TimerKey<K> timerKey =
-          new TimerKey<>(
-              keyedTimerData.getKey(),
-              keyedTimerData.getKeyBytes(),
-              timerData.getNamespace(),
-              timerData.getTimerId());
+    while (readyTimers.size() < timerBufferSize) {
+      if (eventTimeBuffer.isEmpty()) {
+        if (maxEventTimeInBuffer >= inputWatermark.getMillis()) {
+          // no persisted timer is ready yet
+          break;
+        }
+        state.loadEventTimeTimers();
+        if (eventTimeBuffer.isEmpty()) {
+          break;
+        }
+      }
 
-      timerMap.remove(timerKey);
+      final KeyedTimerData<K> keyedTimerData = eventTimeBuffer.first();
+      if (!keyedTimerData.getTimerData().getTimestamp().isBefore(inputWatermark)) {
+        break;
+      }
 
+      eventTimeBuffer.pollFirst();
+      state.deleteEventTimeTimer(keyedTimerData);
       readyTimers.add(keyedTimerData);
     }
 
     return readyTimers;
   }
 
+  /** Removes a fired processing-time timer from the store. */
+  public void removeProcessingTimer(KeyedTimerData<K> keyedTimerData) {
+    state.processingTimeTimerState.remove(toTimerKey(keyedTimerData));
+  }
+
   public Instant getInputWatermark() {
     return inputWatermark;
   }
@@ -137,6 +188,15 @@ public class SamzaTimerInternalsFactory<K> implements TimerInternalsFactory<K> {
     return outputWatermark;
   }
 
+  private static <K> TimerKey<K> toTimerKey(KeyedTimerData<K> keyedTimerData) {
+    final TimerInternals.TimerData timerData = keyedTimerData.getTimerData();
+    return new TimerKey<>(
+        keyedTimerData.getKey(),
+        keyedTimerData.getKeyBytes(),
+        timerData.getNamespace(),
+        timerData.getTimerId());
+  }
+
   private class SamzaTimerInternals implements TimerInternals {
     private final byte[] keyBytes;
     private final K key;
@@ -160,26 +220,11 @@ public class SamzaTimerInternalsFactory<K> implements TimerInternalsFactory<K> {
 
       switch (timerData.getDomain()) {
         case EVENT_TIME:
-          final KeyedTimerData<K> oldTimer = timerMap.get(timerKey);
-
-          if (oldTimer != null) {
-            if (!oldTimer.getTimerData().getDomain().equals(timerData.getDomain())) {
-              throw new IllegalArgumentException(
-                  String.format(
-                      "Attempt to set %s for time domain %s, "
-                          + "but it is already set for time domain %s",
-                      timerData.getTimerId(),
-                      timerData.getDomain(),
-                      oldTimer.getTimerData().getDomain()));
-            }
-            deleteTimer(oldTimer.getTimerData());
-          }
-          eventTimeTimers.add(keyedTimerData);
-          timerMap.put(timerKey, keyedTimerData);
+          state.addEventTimeTimer(timerKey, keyedTimerData);
           break;
 
         case PROCESSING_TIME:
-          timerRegistry.register(timerKey, timerData.getTimestamp().getMillis());
+          state.addProcessingTimeTimer(timerKey, timerData.getTimestamp().getMillis());
           break;
 
         default:
@@ -206,14 +251,11 @@ public class SamzaTimerInternalsFactory<K> implements TimerInternalsFactory<K> {
 
       switch (timerData.getDomain()) {
         case EVENT_TIME:
-          final KeyedTimerData<K> keyedTimerData = timerMap.remove(timerKey);
-          if (keyedTimerData != null) {
-            eventTimeTimers.remove(keyedTimerData);
-          }
+          state.deleteEventTimeTimer(timerKey);
           break;
 
         case PROCESSING_TIME:
-          timerRegistry.delete(timerKey);
+          state.deleteProcessingTimeTimer(timerKey);
           break;
 
         default:
@@ -244,4 +286,160 @@ public class SamzaTimerInternalsFactory<K> implements TimerInternalsFactory<K> {
       return outputWatermark;
     }
   }
+
+  /** Persisted timers of this factory, stored in non-keyed state. */
+  private class SamzaTimerState {
+    // timer key -> timestamp, to find the persisted timer to replace or delete
+    private final SamzaMapState<TimerKey<K>, Long> eventTimeTimerState;
+    // event-time timers, iterated in timestamp order
+    private final SamzaSetState<KeyedTimerData<K>> timestampSortedEventTimeTimerState;
+    private final SamzaMapState<TimerKey<K>, Long> processingTimeTimerState;
+    // timer key -> timestamp of recently used event-time timers, null if there is no such timer
+    private final Map<TimerKey<K>, Long> eventTimeTimestampCache =
+        new LinkedHashMap<TimerKey<K>, Long>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<TimerKey<K>, Long> eldest) {
+            return size() > timerBufferSize;
+          }
+        };
+
+    @SuppressWarnings("unchecked")
+    private SamzaTimerState(
+        String timerStateId,
+        StateInternals stateInternals,
+        Coder<? extends BoundedWindow> windowCoder) {
+      final TimerKey.TimerKeyCoder<K> timerKeyCoder =
+          new TimerKey.TimerKeyCoder<>(keyCoder, windowCoder);
+
+      this.eventTimeTimerState =
+          (SamzaMapState<TimerKey<K>, Long>)
+              stateInternals.state(
+                  StateNamespaces.global(),
+                  StateTags.map(timerStateId + "-et", timerKeyCoder, VarLongCoder.of()));
+      this.timestampSortedEventTimeTimerState =
+          (SamzaSetState<KeyedTimerData<K>>)
+              stateInternals.state(
+                  StateNamespaces.global(),
+                  StateTags.set(
+                      timerStateId + "-ts",
+                      new KeyedTimerData.KeyedTimerDataCoder<>(keyCoder, windowCoder)));
+      this.processingTimeTimerState =
+          (SamzaMapState<TimerKey<K>, Long>)
+              stateInternals.state(
+                  StateNamespaces.global(),
+                  StateTags.map(timerStateId + "-pt", timerKeyCoder, VarLongCoder.of()));
+    }
+
+    void addEventTimeTimer(TimerKey<K> timerKey, KeyedTimerData<K> keyedTimerData) {
+      final long timestamp = keyedTimerData.getTimerData().getTimestamp().getMillis();
+      final Long lastTimestamp = readEventTimeTimestamp(timerKey);
+      if (lastTimestamp != null) {
+        if (lastTimestamp == timestamp) {
+          // the timer is already set
+          return;
+        }
+        removeEventTimeTimer(timerKey, lastTimestamp);
+      }
+
+      eventTimeTimerState.put(timerKey, timestamp);
+      timestampSortedEventTimeTimerState.add(keyedTimerData);
+      eventTimeTimestampCache.put(timerKey, timestamp);
+
+      if (timestamp < maxEventTimeInBuffer) {
+        eventTimeBuffer.add(keyedTimerData);
+        if (eventTimeBuffer.size() > timerBufferSize) {
+          eventTimeBuffer.pollLast();
+          maxEventTimeInBuffer = eventTimeBuffer.last().getTimerData().getTimestamp().getMillis();
+        }
+      }
+    }
+
+    void deleteEventTimeTimer(TimerKey<K> timerKey) {
+      final Long timestamp = readEventTimeTimestamp(timerKey);
+      if (timestamp != null) {
+        removeEventTimeTimer(timerKey, timestamp);
+        eventTimeTimerState.remove(timerKey);
+        eventTimeTimestampCache.put(timerKey, null);
+      }
+    }
+
+    void deleteEventTimeTimer(KeyedTimerData<K> keyedTimerData) {
+      final TimerKey<K> timerKey = toTimerKey(keyedTimerData);
+      eventTimeTimerState.remove(timerKey);
+      timestampSortedEventTimeTimerState.remove(keyedTimerData);
+      eventTimeTimestampCache.put(timerKey, null);
+    }
+
+    @Nullable
+    private Long readEventTimeTimestamp(TimerKey<K> timerKey) {
+      if (eventTimeTimestampCache.containsKey(timerKey)) {
+        return eventTimeTimestampCache.get(timerKey);
+      }
+      final Long timestamp = eventTimeTimerState.get(timerKey).read();
+      eventTimeTimestampCache.put(timerKey, timestamp);
+      return timestamp;
+    }
+
+    /** Removes the timer at the given timestamp from the buffer and the sorted timers. */
+    private void removeEventTimeTimer(TimerKey<K> timerKey, long timestamp) {
+      final KeyedTimerData<K> keyedTimerData =
+          new KeyedTimerData<>(
+              timerKey.getKeyBytes(),
+              timerKey.getKey(),
+              TimerInternals.TimerData.of(
+                  timerKey.getTimerId(),
+                  timerKey.getStateNamespace(),
+                  new Instant(timestamp),
+                  TimeDomain.EVENT_TIME));
+      eventTimeBuffer.remove(keyedTimerData);
+      timestampSortedEventTimeTimerState.remove(keyedTimerData);
+    }
+
+    /** Fills the buffer with the earliest persisted event-time timers. */
+    void loadEventTimeTimers() {
+      final Iterator<KeyedTimerData<K>> iter =
+          timestampSortedEventTimeTimerState.readIterator().read();
+      try {
+        // the iterator is closed once hasNext() returns false, so it is not called again after
+        boolean hasNext = iter.hasNext();
+        while (hasNext && eventTimeBuffer.size() < timerBufferSize) {
+          eventTimeBuffer.add(iter.next());
+          hasNext = iter.hasNext();
+        }
+        maxEventTimeInBuffer =
+            hasNext
+                ? eventTimeBuffer.last().getTimerData().getTimestamp().getMillis()
+                : Long.MAX_VALUE;
+      } finally {
+        ((SamzaStoreStateInternals.KeyValueIteratorState) timestampSortedEventTimeTimerState)
+            .closeIterators();
+      }
+      LOG.debug("Loaded {} event-time timers.", eventTimeBuffer.size());
+    }
+
+    void addProcessingTimeTimer(TimerKey<K> timerKey, long timestamp) {
+      processingTimeTimerState.put(timerKey, timestamp);
+      timerRegistry.register(timerKey, timestamp);
+    }
+
+    void deleteProcessingTimeTimer(TimerKey<K> timerKey) {
+      processingTimeTimerState.remove(timerKey);
+      timerRegistry.delete(timerKey);
+    }
+
+    /** Registers the persisted processing-time timers, e.g. after a restart. */
+    void registerProcessingTimeTimers() {
+      final Iterator<Map.Entry<TimerKey<K>, Long>> iter =
+          processingTimeTimerState.readIterator().read();
+      try {
+        while (iter.hasNext()) {
+          final Map.Entry<TimerKey<K>, Long> entry = iter.next();
+          timerRegistry.register(entry.getKey(), entry.getValue());
+        }
+      } finally {
+        ((SamzaStoreStateInternals.KeyValueIteratorState) processingTimeTimerState)
+            .closeIterators();
+      }
+    }
+  }
 }
@@ -18,7 +18,21 @@
 
 package org.apache.beam.runners.samza.runtime;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
 import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.NullableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.StructuredCoder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.CoderUtils;
 
 /** Timer key which is used to register and delete timers. */
 class TimerKey<K> {
@@ -91,4 +105,51 @@ class TimerKey<K> {
         + '\''
         + '}';
   }
+
+  /**
+   * Coder for {@link TimerKey}. The key is encoded by its key bytes and decoded with the key
+   * coder, so a decoded {@link TimerKey} equals the one that was encoded.
+   */
+  static class TimerKeyCoder<K> extends StructuredCoder<TimerKey<K>> {
+    private static final Coder<byte[]> KEY_BYTES_CODER = NullableCoder.of(ByteArrayCoder.of());
+    private static final StringUtf8Coder STRING_CODER = StringUtf8Coder.of();
+
+    private final Coder<K> keyCoder;
+    private final Coder<? extends BoundedWindow> windowCoder;
+
+    TimerKeyCoder(Coder<K> keyCoder, Coder<? extends BoundedWindow> windowCoder) {
+      this.keyCoder = keyCoder;
+      this.windowCoder = windowCoder;
+    }
+
+    @Override
+    public void encode(TimerKey<K> value, OutputStream outStream)
+        throws CoderException, IOException {
+      KEY_BYTES_CODER.encode(value.getKeyBytes(), outStream);
+      STRING_CODER.encode(value.getStateNamespace().stringKey(), outStream);
+      STRING_CODER.encode(value.getTimerId(), outStream);
+    }
+
+    @Override
+    public TimerKey<K> decode(InputStream inStream) throws CoderException, IOException {
+      final byte[] keyBytes = KEY_BYTES_CODER.decode(inStream);
+      final StateNamespace namespace =
+          StateNamespaces.fromString(STRING_CODER.decode(inStream), windowCoder);
+      final String timerId = STRING_CODER.decode(inStream);
+      return new TimerKey<>(decodeKey(keyCoder, keyBytes), keyBytes, namespace, timerId);
+    }
+
+    @Override
+    public List<? extends Coder<?>> getCoderArguments() {
+      return Arrays.asList(keyCoder, windowCoder);
+    }
+
+    @Override
+    public void verifyDeterministic() throws NonDeterministicException {}
+  }
+
+  /** Decodes a key encoded by {@link SamzaTimerInternalsFactory#timerInternalsForKey}. */
+  static <K> K decodeKey(Coder<K> keyCoder, byte[] keyBytes) throws CoderException {
+    return keyBytes == null ? null : CoderUtils.decodeFromByteArray(keyCoder, keyBytes);
+  }
 }
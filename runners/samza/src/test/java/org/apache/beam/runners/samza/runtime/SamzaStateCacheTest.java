@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.runners.samza.runtime;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.beam.runners.core.StateInternals;
+import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.StateTags;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.MapState;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.samza.metrics.MetricsRegistryMap;
+import org.apache.samza.storage.kv.KeyValueIterator;
+import org.apache.samza.storage.kv.KeyValueStore;
+import org.apache.samza.storage.kv.KeyValueStoreMetrics;
+import org.apache.samza.storage.kv.inmemory.InMemoryKeyValueStore;
+import org.junit.Test;
+
+/** Tests for {@link SamzaStateCache}. */
+public class SamzaStateCacheTest {
+  private static final StateNamespace NAMESPACE = StateNamespaces.global();
+
+  private final KeyValueStore<byte[], byte[]> store =
+      new InMemoryKeyValueStore(new KeyValueStoreMetrics("beamStore", new MetricsRegistryMap()));
+  private final MetricsContainerImpl metricsContainer = new MetricsContainerImpl("step");
+
+  @Test
+  public void testWritesAreVisibleAfterFlush() {
+    final SamzaStateCache cache = new SamzaStateCache(1024 * 1024, metricsContainer);
+    final StateInternals stateInternals = createStateInternals(cache, "key");
+    final ValueState<Integer> value =
+        stateInternals.state(NAMESPACE, StateTags.value("value", VarIntCoder.of()));
+    final BagState<String> bag =
+        stateInternals.state(NAMESPACE, StateTags.bag("bag", StringUtf8Coder.of()));
+
+    value.write(1);
+    bag.add("a");
+    bag.add("b");
+    assertEquals(Integer.valueOf(1), value.read());
+    assertEquals(Arrays.asList("a", "b"), bag.read());
+    assertFalse(bag.isEmpty().read());
+    assertEquals(Arrays.asList("a", "b"), bag.read());
+    assertEquals(0, storeSize());
+
+    cache.flush();
+    final StateInternals uncachedStateInternals =
+        createStateInternals(null, "key");
+    assertEquals(
+        Integer.valueOf(1),
+        uncachedStateInternals
+            .state(NAMESPACE, StateTags.value("value", VarIntCoder.of()))
+            .read());
+    assertThat(
+        uncachedStateInternals.state(NAMESPACE, StateTags.bag("bag", StringUtf8Coder.of())).read(),
+        containsInAnyOrder("a", "b"));
+
+    value.clear();
+    bag.clear();
+    cache.flush();
+    assertEquals(0, storeSize());
+  }
+
+  @Test
+  public void testReadsAreCached() {
+    final StateInternals uncachedStateInternals =
+        createStateInternals(null, "key");
+    uncachedStateInternals.state(NAMESPACE, StateTags.value("value", VarIntCoder.of())).write(1);
+
+    final SamzaStateCache cache = new SamzaStateCache(1024 * 1024, metricsContainer);
+    final ValueState<Integer> value =
+        createStateInternals(cache, "key")
+            .state(NAMESPACE, StateTags.value("value", VarIntCoder.of()));
+    final ValueState<Integer> absentValue =
+        createStateInternals(cache, "key")
+            .state(NAMESPACE, StateTags.value("absent", VarIntCoder.of()));
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Integer.valueOf(1), value.read());
+      assertNull(absentValue.read());
+    }
+    cache.flush();
+
+    assertEquals(Long.valueOf(4), counter("hits"));
+    assertEquals(Long.valueOf(2), counter("misses"));
+    assertEquals(Long.valueOf(0), counter("flushes"));
+  }
+
+  @Test
+  public void testEvictionWritesBack() {
+    final SamzaStateCache cache = new SamzaStateCache(1024, metricsContainer);
+    for (int i = 0; i < 100; i++) {
+      createStateInternals(cache, "key" + i)
+          .state(NAMESPACE, StateTags.value("value", VarIntCoder.of()))
+          .write(i);
+    }
+
+    // the least recently written values were evicted and written to the store
+    final int written = storeSize();
+    assertTrue(written > 0 && written < 100);
+
+    cache.flush();
+    assertEquals(100, storeSize());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(
+          Integer.valueOf(i),
+          createStateInternals(null, "key" + i)
+              .state(NAMESPACE, StateTags.value("value", VarIntCoder.of()))
+              .read());
+    }
+    assertEquals(Long.valueOf(100), counter("flushes"));
+  }
+
+  @Test
+  public void testFlushWritesOnlyModifiedValues() {
+    final SamzaStateCache cache = new SamzaStateCache(1024 * 1024, metricsContainer);
+    for (int i = 0; i < 10; i++) {
+      createStateInternals(cache, "key" + i)
+          .state(NAMESPACE, StateTags.value("value", VarIntCoder.of()))
+          .write(i);
+    }
+    cache.flush();
+    assertEquals(Long.valueOf(10), counter("flushes"));
+
+    cache.flush();
+    assertEquals(Long.valueOf(10), counter("flushes"));
+
+    createStateInternals(cache, "key3")
+        .state(NAMESPACE, StateTags.value("value", VarIntCoder.of()))
+        .write(30);
+    cache.flush();
+    assertEquals(Long.valueOf(11), counter("flushes"));
+    assertEquals(
+        Integer.valueOf(30),
+        createStateInternals(null, "key3")
+            .state(NAMESPACE, StateTags.value("value", VarIntCoder.of()))
+            .read());
+  }
+
+  @Test
+  public void testMapIterationSeesCachedWrites() {
+    final SamzaStateCache cache = new SamzaStateCache(1024 * 1024, metricsContainer);
+    final MapState<String, Integer> map =
+        createStateInternals(cache, "key")
+            .state(
+                NAMESPACE, StateTags.map("map", StringUtf8Coder.of(), VarIntCoder.of()));
+
+    map.put("a", 1);
+    map.put("b", 2);
+    map.put("c", 3);
+    map.remove("b");
+    assertEquals(Arrays.asList("a", "c"), ImmutableList.copyOf(map.keys().read()));
+    assertEquals(Integer.valueOf(3), map.get("c").read());
+
+    map.clear();
+    map.put("d", 4);
+    assertEquals(Collections.singletonList("d"), ImmutableList.copyOf(map.keys().read()));
+
+    cache.flush();
+    assertEquals(
+        Collections.singletonList("d"),
+        ImmutableList.copyOf(
+            createStateInternals(null, "key")
+                .state(NAMESPACE, StateTags.map("map", StringUtf8Coder.of(), VarIntCoder.of()))
+                .keys()
+                .read()));
+  }
+
+  @Test
+  public void testGetAllPreservesOrder() {
+    final SamzaStateCache cache = new SamzaStateCache(1024 * 1024, metricsContainer);
+    // values are encoded in the nested context, i.e. with a length prefix
+    store.put(new byte[] {1}, new byte[] {1, 'a'});
+    store.put(new byte[] {3}, new byte[] {1, 'c'});
+    cache.put(store, new byte[] {2}, "b", StringUtf8Coder.of());
+
+    assertEquals(
+        Arrays.asList("c", "b", null, "a"),
+        cache.getAll(
+            store,
+            Arrays.asList(new byte[] {3}, new byte[] {2}, new byte[] {4}, new byte[] {1}),
+            StringUtf8Coder.of()));
+    assertNull(store.get(new byte[] {2}));
+
+    cache.flush();
+    assertArrayEquals(new byte[] {1, 'b'}, store.get(new byte[] {2}));
+  }
+
+  private StateInternals createStateInternals(
+      SamzaStateCache cache, String key) {
+    return new SamzaStoreStateInternals.Factory<>(
+            "stage", ImmutableMap.of("beamStore", store), StringUtf8Coder.of(), 100, cache)
+        .stateInternalsForKey(key);
+  }
+
+  private Long counter(String name) {
+    return metricsContainer
+        .getCounter(MetricName.named(SamzaStateCache.class, name))
+        .getCumulative();
+  }
+
+  private int storeSize() {
+    final KeyValueIterator<byte[], byte[]> iter = store.all();
+    int size = 0;
+    while (iter.hasNext()) {
+      iter.next();
+      size++;
+    }
+    iter.close();
+    return size;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.runners.samza.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.TimerInternals;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VoidCoder;
+import org.apache.beam.sdk.state.TimeDomain;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.samza.metrics.MetricsRegistryMap;
+import org.apache.samza.operators.TimerRegistry;
+import org.apache.samza.storage.kv.KeyValueStore;
+import org.apache.samza.storage.kv.KeyValueStoreMetrics;
+import org.apache.samza.storage.kv.inmemory.InMemoryKeyValueStore;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+/** Tests for {@link SamzaTimerInternalsFactory}. */
+public class SamzaTimerInternalsFactoryTest {
+  private static final StateNamespace NAMESPACE = StateNamespaces.global();
+
+  private final KeyValueStoreMetrics storeMetrics =
+      new KeyValueStoreMetrics("beamStore", new MetricsRegistryMap());
+  private final KeyValueStore<byte[], byte[]> store = new InMemoryKeyValueStore(storeMetrics);
+  private final TestTimerRegistry timerRegistry = new TestTimerRegistry();
+
+  @Test
+  public void testEventTimeTimersFireInOrderBeyondBufferSize() {
+    final SamzaTimerInternalsFactory<String> timerInternalsFactory = createFactory(2);
+    final TimerInternals timerInternals = timerInternalsFactory.timerInternalsForKey("key");
+
+    for (long timestamp : new long[] {5, 1, 4, 2, 3, 6}) {
+      timerInternals.setTimer(NAMESPACE, "timer" + timestamp, new Instant(timestamp), eventTime());
+    }
+    // deleted timers do not fire, and a timer set again only fires at its new timestamp
+    timerInternals.deleteTimer(NAMESPACE, "timer2", eventTime());
+    timerInternals.setTimer(NAMESPACE, "timer1", new Instant(7), eventTime());
+
+    timerInternalsFactory.setInputWatermark(new Instant(6));
+    assertEquals(timestamps(3, 4, 5), timestampsOf(removeAllReadyTimers(timerInternalsFactory)));
+
+    timerInternalsFactory.setInputWatermark(new Instant(10));
+    assertEquals(timestamps(6, 7), timestampsOf(removeAllReadyTimers(timerInternalsFactory)));
+  }
+
+  @Test
+  public void testSettingTheSameEventTimeTimerAgainDoesNotAccessTheStore() {
+    final SamzaTimerInternalsFactory<String> timerInternalsFactory = createFactory(2);
+    final TimerInternals timerInternals = timerInternalsFactory.timerInternalsForKey("key");
+    timerInternals.setTimer(NAMESPACE, "timer", new Instant(1), eventTime());
+
+    final long gets = storeMetrics.gets().getCount();
+    final long puts = storeMetrics.puts().getCount();
+    final long deletes = storeMetrics.deletes().getCount();
+    timerInternals.setTimer(NAMESPACE, "timer", new Instant(1), eventTime());
+    assertEquals(gets, storeMetrics.gets().getCount());
+    assertEquals(puts, storeMetrics.puts().getCount());
+    assertEquals(deletes, storeMetrics.deletes().getCount());
+
+    timerInternalsFactory.setInputWatermark(new Instant(10));
+    assertEquals(timestamps(1), timestampsOf(removeAllReadyTimers(timerInternalsFactory)));
+  }
+
+  @Test
+  public void testEventTimeTimersAreReplacedBeyondCacheSize() {
+    final SamzaTimerInternalsFactory<String> timerInternalsFactory = createFactory(2);
+    for (int i = 0; i < 5; i++) {
+      timerInternalsFactory
+          .timerInternalsForKey("key" + i)
+          .setTimer(NAMESPACE, "timer", new Instant(i), eventTime());
+    }
+    // the first timers are no longer cached, so they are looked up in the store
+    for (int i = 0; i < 5; i++) {
+      timerInternalsFactory
+          .timerInternalsForKey("key" + i)
+          .setTimer(NAMESPACE, "timer", new Instant(10 + i), eventTime());
+    }
+
+    timerInternalsFactory.setInputWatermark(new Instant(20));
+    assertEquals(
+        timestamps(10, 11, 12, 13, 14),
+        timestampsOf(removeAllReadyTimers(timerInternalsFactory)));
+  }
+
+  @Test
+  public void testEventTimeTimersAreRestored() {
+    final SamzaTimerInternalsFactory<String> timerInternalsFactory = createFactory(2);
+    final TimerInternals timerInternals = timerInternalsFactory.timerInternalsForKey("key");
+    for (long timestamp = 1; timestamp <= 5; timestamp++) {
+      timerInternals.setTimer(NAMESPACE, "timer" + timestamp, new Instant(timestamp), eventTime());
+    }
+    timerInternalsFactory.setInputWatermark(new Instant(3));
+    assertEquals(timestamps(1, 2), timestampsOf(removeAllReadyTimers(timerInternalsFactory)));
+
+    // a new factory over the same store, e.g. after a restart
+    final SamzaTimerInternalsFactory<String> restoredFactory = createFactory(2);
+    restoredFactory.setInputWatermark(new Instant(10));
+    final List<KeyedTimerData<String>> timers = removeAllReadyTimers(restoredFactory);
+    assertEquals(timestamps(3, 4, 5), timestampsOf(timers));
+    assertEquals("key", timers.get(0).getKey());
+  }
+
+  @Test
+  public void testProcessingTimeTimersAreRegisteredAgainOnRestore() throws Exception {
+    final SamzaTimerInternalsFactory<String> timerInternalsFactory = createFactory(2);
+    final TimerInternals timerInternals = timerInternalsFactory.timerInternalsForKey("key");
+    timerInternals.setTimer(NAMESPACE, "fired", new Instant(1), TimeDomain.PROCESSING_TIME);
+    timerInternals.setTimer(NAMESPACE, "pending", new Instant(2), TimeDomain.PROCESSING_TIME);
+    timerInternals.setTimer(NAMESPACE, "deleted", new Instant(3), TimeDomain.PROCESSING_TIME);
+    timerInternals.deleteTimer(NAMESPACE, "deleted", TimeDomain.PROCESSING_TIME);
+    assertEquals(2, timerRegistry.timers.size());
+
+    final byte[] keyBytes = CoderUtils.encodeToByteArray(StringUtf8Coder.of(), "key");
+    final TimerKey<String> firedKey = new TimerKey<>("key", keyBytes, NAMESPACE, "fired");
+    timerRegistry.timers.remove(firedKey);
+    timerInternalsFactory.removeProcessingTimer(
+        new KeyedTimerData<>(
+            keyBytes,
+            "key",
+            TimerInternals.TimerData.of(
+                "fired", NAMESPACE, new Instant(1), TimeDomain.PROCESSING_TIME)));
+
+    timerRegistry.timers.clear();
+    createFactory(2);
+    final Map<TimerKey<String>, Long> expected = new HashMap<>();
+    expected.put(new TimerKey<>("key", keyBytes, NAMESPACE, "pending"), 2L);
+    assertEquals(expected, timerRegistry.timers);
+  }
+
+  private SamzaTimerInternalsFactory<String> createFactory(int timerBufferSize) {
+    final SamzaStoreStateInternals.Factory<Void> nonKeyedStateInternalsFactory =
+        new SamzaStoreStateInternals.Factory<>(
+            "stage", Collections.singletonMap("beamStore", store), VoidCoder.of(), 100);
+    return new SamzaTimerInternalsFactory<>(
+        StringUtf8Coder.of(),
+        timerRegistry,
+        "timer",
+        nonKeyedStateInternalsFactory,
+        GlobalWindow.Coder.INSTANCE,
+        timerBufferSize);
+  }
+
+  private static TimeDomain eventTime() {
+    return TimeDomain.EVENT_TIME;
+  }
+
+  private static List<KeyedTimerData<String>> removeAllReadyTimers(
+      SamzaTimerInternalsFactory<String> timerInternalsFactory) {
+    final List<KeyedTimerData<String>> timers = new ArrayList<>();
+    Collection<KeyedTimerData<String>> readyTimers;
+    while (!(readyTimers = timerInternalsFactory.removeReadyTimers()).isEmpty()) {
+      assertTrue(readyTimers.size() <= 2);
+      timers.addAll(readyTimers);
+    }
+    return timers;
+  }
+
+  private static List<Long> timestampsOf(List<KeyedTimerData<String>> timers) {
+    final List<Long> result = new ArrayList<>();
+    for (KeyedTimerData<String> timer : timers) {
+      result.add(timer.getTimerData().getTimestamp().getMillis());
+    }
+    return result;
+  }
+
+  private static List<Long> timestamps(long... timestamps) {
+    final List<Long> result = new ArrayList<>();
+    for (long timestamp : timestamps) {
+      result.add(timestamp);
+    }
+    return result;
+  }
+
+  /** A {@link TimerRegistry} that only records the registered timers. */
+  private static class TestTimerRegistry implements TimerRegistry<TimerKey<String>> {
+    private final Map<TimerKey<String>, Long> timers = new HashMap<>();
+
+    @Override
+    public void register(TimerKey<String> key, long timestamp) {
+      timers.put(key, timestamp);
+    }
+
+    @Override
+    public void delete(TimerKey<String> key) {
+      timers.remove(key);
+    }
+  }
+}
@@ -113,6 +113,16 @@ public interface SparkPipelineOptions
 
   void setUsesProvidedSparkContext(boolean value);
 
+  @Description(
+      "If a batch GroupByKey with non-merging windows, the default trigger and end of window "
+          + "timestamps should group by (key, window) with a sort based shuffle. The grouped "
+          + "values are then read lazily, but can only be iterated once. If the output is "
+          + "cached, it is cached in serialized form regardless of the storage level.")
+  @Default.Boolean(false)
+  boolean getSortBasedGroupByKey();
+
+  void setSortBasedGroupByKey(boolean value);
+
   /**
    * List of local files to make available to workers.
    *
@@ -47,11 +47,19 @@ public class BoundedDataset<T> implements Dataset {
   private Iterable<WindowedValue<T>> windowedValues;
   private Coder<T> coder;
   private JavaRDD<WindowedValue<T>> rdd;
+  // if the elements can only be read once, e.g. lazily grouped values, and must be encoded to bytes
+  // when cached at any storage level.
+  private boolean encodeWhenCached;
 
   BoundedDataset(JavaRDD<WindowedValue<T>> rdd) {
     this.rdd = rdd;
   }
 
+  BoundedDataset(JavaRDD<WindowedValue<T>> rdd, boolean encodeWhenCached) {
+    this.rdd = rdd;
+    this.encodeWhenCached = encodeWhenCached;
+  }
+
   BoundedDataset(Iterable<T> values, JavaSparkContext jsc, Coder<T> coder) {
     this.windowedValues = Iterables.transform(values, WindowingHelpers.windowValueFunction());
     this.jsc = jsc;
@@ -96,7 +104,7 @@ public class BoundedDataset<T> implements Dataset {
   @SuppressWarnings("unchecked")
   public void cache(String storageLevel, Coder<?> coder) {
     StorageLevel level = StorageLevel.fromString(storageLevel);
-    if (TranslationUtils.avoidRddSerialization(level)) {
+    if (TranslationUtils.avoidRddSerialization(level) && !encodeWhenCached) {
       // if it is memory only reduce the overhead of moving to bytes
       this.rdd = getRDD().persist(level);
     } else {
@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.runners.spark.translation;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.apache.beam.runners.spark.coders.CoderHelpers;
+import org.apache.beam.runners.spark.util.ByteArray;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.DefaultTrigger;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.apache.spark.HashPartitioner;
+import org.apache.spark.Partitioner;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaRDD;
+import scala.Tuple2;
+
+/**
+ * Batch group/combine functions for {@link WindowingStrategy windowing strategies} with
+ * non-merging windows, which shuffle on the encoded (key, window) pair instead of on the key
+ * alone, so that a group never has to be assigned to windows after the shuffle.
+ */
+public class GroupNonMergingWindowsFunctions {
+
+  /**
+   * Checks if a {@link org.apache.beam.sdk.transforms.GroupByKey} with the given windowing strategy
+   * can be translated with {@link #groupByKeyAndWindow}, without running a {@link
+   * org.apache.beam.runners.core.ReduceFnRunner}.
+   *
+   * <p>This is the case if windows never merge, are encoded consistently with equals, the default
+   * trigger is used (so each window fires exactly once in batch) and the output timestamp is the
+   * end of the window (so it is known before the grouped values are read).
+   */
+  static boolean isEligibleForGroupByWindow(WindowingStrategy<?, ?> windowingStrategy) {
+    return isEligibleForCombineByWindow(windowingStrategy)
+        && windowingStrategy.getTrigger() instanceof DefaultTrigger
+        && windowingStrategy.getTimestampCombiner() == TimestampCombiner.END_OF_WINDOW;
+  }
+
+  /**
+   * Checks if a {@link org.apache.beam.sdk.transforms.Combine.PerKey} with the given windowing
+   * strategy can be translated with {@link #combinePerKeyAndWindow}.
+   */
+  static boolean isEligibleForCombineByWindow(WindowingStrategy<?, ?> windowingStrategy) {
+    return windowingStrategy.getWindowFn().isNonMerging()
+        && windowingStrategy.getWindowFn().windowCoder().consistentWithEquals();
+  }
+
+  /**
+   * Groups the values of each (key, window) pair using Spark's sort based shuffle.
+   *
+   * <p>The grouped values are decoded lazily while they are iterated, and can only be iterated
+   * once. Values that are not read before the next group is requested are buffered. The returned
+   * RDD must therefore not be cached as deserialized objects, which would hand out the same
+   * iterables to every consumer, but encoded to bytes, see {@link BoundedDataset#cache}.
+   */
+  static <K, V, W extends BoundedWindow>
+      JavaRDD<WindowedValue<KV<K, Iterable<V>>>> groupByKeyAndWindow(
+          JavaRDD<WindowedValue<KV<K, V>>> rdd,
+          Coder<K> keyCoder,
+          Coder<V> valueCoder,
+          WindowingStrategy<?, W> windowingStrategy) {
+    final KvCoder<K, W> windowedKeyCoder =
+        KvCoder.of(keyCoder, windowingStrategy.getWindowFn().windowCoder());
+    JavaPairRDD</*KV<K, W>*/ ByteArray, /*V*/ byte[]> pairRDD =
+        rdd.flatMapToPair(
+            wkv -> {
+              K key = wkv.getValue().getKey();
+              byte[] valueBytes = CoderHelpers.toByteArray(wkv.getValue().getValue(), valueCoder);
+              return Iterators.transform(
+                  wkv.getWindows().iterator(),
+                  window -> {
+                    @SuppressWarnings("unchecked")
+                    KV<K, W> windowedKey = KV.of(key, (W) window);
+                    return new Tuple2<>(
+                        new ByteArray(CoderHelpers.toByteArray(windowedKey, windowedKeyCoder)),
+                        valueBytes);
+                  });
+            });
+    // use a default parallelism HashPartitioner.
+    Partitioner partitioner = new HashPartitioner(rdd.rdd().sparkContext().defaultParallelism());
+
+    return pairRDD
+        .repartitionAndSortWithinPartitions(partitioner)
+        .mapPartitions(it -> new GroupByKeyIterator<>(it, windowedKeyCoder, valueCoder));
+  }
+
+  /**
+   * Applies a {@link org.apache.beam.sdk.transforms.Combine.PerKey} by combining the encoded
+   * accumulator of each (key, window) pair with Spark's {@link JavaPairRDD#combineByKey}.
+   */
+  static <K, InputT, AccumT, OutputT, W extends BoundedWindow>
+      JavaRDD<WindowedValue<KV<K, OutputT>>> combinePerKeyAndWindow(
+          JavaRDD<WindowedValue<KV<K, InputT>>> rdd,
+          final SparkKeyedCombineFn<K, InputT, AccumT, OutputT> sparkCombineFn,
+          final Coder<K> keyCoder,
+          final Coder<InputT> iCoder,
+          final Coder<AccumT> aCoder,
+          final WindowingStrategy<?, W> windowingStrategy) {
+    // coders.
+    final Coder<W> windowCoder = windowingStrategy.getWindowFn().windowCoder();
+    final KvCoder<K, W> windowedKeyCoder = KvCoder.of(keyCoder, windowCoder);
+    final WindowedValue.FullWindowedValueCoder<KV<K, InputT>> wkviCoder =
+        WindowedValue.FullWindowedValueCoder.of(KvCoder.of(keyCoder, iCoder), windowCoder);
+    final WindowedValue.FullWindowedValueCoder<KV<K, AccumT>> wkvaCoder =
+        WindowedValue.FullWindowedValueCoder.of(KvCoder.of(keyCoder, aCoder), windowCoder);
+
+    // every exploded input is keyed by its (key, window) pair, so each accumulator
+    // holds exactly one window and windows never have to be sorted or merged.
+    JavaPairRDD</*KV<K, W>*/ ByteArray, /*WV<KV<K, I>>*/ byte[]> inRddBytes =
+        rdd.flatMapToPair(
+            wkvi ->
+                Iterators.transform(
+                    wkvi.explodeWindows().iterator(),
+                    exploded -> {
+                      @SuppressWarnings("unchecked")
+                      KV<K, W> windowedKey =
+                          KV.of(
+                              exploded.getValue().getKey(),
+                              (W) exploded.getWindows().iterator().next());
+                      return new Tuple2<>(
+                          new ByteArray(CoderHelpers.toByteArray(windowedKey, windowedKeyCoder)),
+                          CoderHelpers.toByteArray(exploded, wkviCoder));
+                    }));
+
+    JavaPairRDD</*KV<K, W>*/ ByteArray, /*WV<KV<K, A>>*/ byte[]> accumulatedBytes =
+        inRddBytes.combineByKey(
+            input -> {
+              WindowedValue<KV<K, InputT>> wkvi = CoderHelpers.fromByteArray(input, wkviCoder);
+              return CoderHelpers.toByteArray(
+                  sparkCombineFn.createWindowCombiner(wkvi), wkvaCoder);
+            },
+            (acc, input) -> {
+              WindowedValue<KV<K, AccumT>> wkva = CoderHelpers.fromByteArray(acc, wkvaCoder);
+              WindowedValue<KV<K, InputT>> wkvi = CoderHelpers.fromByteArray(input, wkviCoder);
+              return CoderHelpers.toByteArray(
+                  sparkCombineFn.mergeWindowValue(wkvi, wkva), wkvaCoder);
+            },
+            (acc1, acc2) -> {
+              WindowedValue<KV<K, AccumT>> wkva1 = CoderHelpers.fromByteArray(acc1, wkvaCoder);
+              WindowedValue<KV<K, AccumT>> wkva2 = CoderHelpers.fromByteArray(acc2, wkvaCoder);
+              return CoderHelpers.toByteArray(
+                  sparkCombineFn.mergeWindowCombiners(wkva1, wkva2), wkvaCoder);
+            });
+
+    return accumulatedBytes
+        .values()
+        .map(
+            bytes -> {
+              WindowedValue<KV<K, AccumT>> wkva = CoderHelpers.fromByteArray(bytes, wkvaCoder);
+              return wkva.withValue(
+                  KV.of(wkva.getValue().getKey(), sparkCombineFn.extractWindowOutput(wkva)));
+            });
+  }
+
+  /**
+   * Transforms an iterator over encoded (key, window) and value pairs, sorted by the encoded key,
+   * into an iterator over the grouped values of each (key, window) pair.
+   */
+  static class GroupByKeyIterator<K, V, W extends BoundedWindow>
+      extends AbstractIterator<WindowedValue<KV<K, Iterable<V>>>> {
+
+    private final PeekingIterator<Tuple2<ByteArray, byte[]>> inner;
+    private final Coder<KV<K, W>> windowedKeyCoder;
+    private final Coder<V> valueCoder;
+
+    /** The values of the last returned group, possibly not yet consumed by the caller. */
+    private ValueIterator currentValues;
+
+    GroupByKeyIterator(
+        Iterator<Tuple2<ByteArray, byte[]>> inner,
+        Coder<KV<K, W>> windowedKeyCoder,
+        Coder<V> valueCoder) {
+      this.inner = Iterators.peekingIterator(inner);
+      this.windowedKeyCoder = windowedKeyCoder;
+      this.valueCoder = valueCoder;
+    }
+
+    @Override
+    protected WindowedValue<KV<K, Iterable<V>>> computeNext() {
+      if (currentValues != null) {
+        // the values of the previous group share the underlying iterator, so whatever
+        // was not read yet has to be taken out of it before moving on.
+        currentValues.detach();
+      }
+      if (!inner.hasNext()) {
+        return endOfData();
+      }
+      ByteArray encodedKey = inner.peek()._1();
+      KV<K, W> windowedKey = CoderHelpers.fromByteArray(encodedKey.getValue(), windowedKeyCoder);
+      W window = windowedKey.getValue();
+      currentValues = new ValueIterator(encodedKey);
+      Iterable<V> values = new OnceIterable<>(currentValues);
+      return WindowedValue.of(
+          KV.of(windowedKey.getKey(), values),
+          window.maxTimestamp(),
+          window,
+          PaneInfo.ON_TIME_AND_ONLY_FIRING);
+    }
+
+    /** Iterates the values of a single group, as long as they are adjacent in the input. */
+    private class ValueIterator implements Iterator<V> {
+      private final ByteArray encodedKey;
+      private Iterator<V> detached;
+
+      ValueIterator(ByteArray encodedKey) {
+        this.encodedKey = encodedKey;
+      }
+
+      void detach() {
+        List<V> remaining = Lists.newArrayList();
+        while (hasNext()) {
+          remaining.add(next());
+        }
+        detached = remaining.iterator();
+      }
+
+      @Override
+      public boolean hasNext() {
+        if (detached != null) {
+          return detached.hasNext();
+        }
+        return inner.hasNext() && inner.peek()._1().equals(encodedKey);
+      }
+
+      @Override
+      public V next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        if (detached != null) {
+          return detached.next();
+        }
+        return CoderHelpers.fromByteArray(inner.next()._2(), valueCoder);
+      }
+    }
+  }
+
+  /** An {@link Iterable} that can hand out its underlying {@link Iterator} only once. */
+  private static class OnceIterable<T> implements Iterable<T> {
+    private Iterator<T> iterator;
+
+    OnceIterable(Iterator<T> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      checkState(
+          iterator != null,
+          "Values grouped with a sort based GroupByKey can only be iterated once.");
+      Iterator<T> result = iterator;
+      iterator = null;
+      return result;
+    }
+  }
+}
@@ -265,6 +265,67 @@ public class SparkKeyedCombineFn<K, InputT, AccumT, OutputT> extends SparkAbstra
     return output;
   }
 
+  /**
+   * Creates the accumulator of a single (key, window) pair, for non-merging windows. The input must
+   * be in exactly one window.
+   */
+  WindowedValue<KV<K, AccumT>> createWindowCombiner(WindowedValue<KV<K, InputT>> wkvi) {
+    BoundedWindow window = Iterables.getOnlyElement(wkvi.getWindows());
+    AccumT accumulator = combineFn.createAccumulator(ctxtForInput(wkvi));
+    accumulator = combineFn.addInput(accumulator, wkvi.getValue().getValue(), ctxtForInput(wkvi));
+    Instant windowTimestamp =
+        windowingStrategy
+            .getTimestampCombiner()
+            .assign(
+                window, windowingStrategy.getWindowFn().getOutputTime(wkvi.getTimestamp(), window));
+    return WindowedValue.of(
+        KV.of(wkvi.getValue().getKey(), accumulator), windowTimestamp, window, PaneInfo.NO_FIRING);
+  }
+
+  /** Adds an input to the accumulator of the same (key, window) pair, for non-merging windows. */
+  WindowedValue<KV<K, AccumT>> mergeWindowValue(
+      WindowedValue<KV<K, InputT>> wkvi, WindowedValue<KV<K, AccumT>> wkva) {
+    BoundedWindow window = Iterables.getOnlyElement(wkva.getWindows());
+    TimestampCombiner timestampCombiner = windowingStrategy.getTimestampCombiner();
+    AccumT accumulator =
+        combineFn.addInput(
+            wkva.getValue().getValue(), wkvi.getValue().getValue(), ctxtForInput(wkvi));
+    Instant windowTimestamp =
+        timestampCombiner.combine(
+            wkva.getTimestamp(),
+            timestampCombiner.assign(
+                window,
+                windowingStrategy.getWindowFn().getOutputTime(wkvi.getTimestamp(), window)));
+    return WindowedValue.of(
+        KV.of(wkva.getValue().getKey(), accumulator),
+        windowTimestamp,
+        window,
+        PaneInfo.NO_FIRING);
+  }
+
+  /** Merges two accumulators of the same (key, window) pair, for non-merging windows. */
+  WindowedValue<KV<K, AccumT>> mergeWindowCombiners(
+      WindowedValue<KV<K, AccumT>> wkva1, WindowedValue<KV<K, AccumT>> wkva2) {
+    BoundedWindow window = Iterables.getOnlyElement(wkva1.getWindows());
+    Instant mergedTimestamp =
+        windowingStrategy
+            .getTimestampCombiner()
+            .merge(window, Lists.newArrayList(wkva1.getTimestamp(), wkva2.getTimestamp()));
+    K key = wkva1.getValue().getKey();
+    Iterable<AccumT> accumsToMerge =
+        Lists.newArrayList(wkva1.getValue().getValue(), wkva2.getValue().getValue());
+    WindowedValue<KV<K, Iterable<AccumT>>> preMergeWindowedValue =
+        WindowedValue.of(KV.of(key, accumsToMerge), mergedTimestamp, window, PaneInfo.NO_FIRING);
+    AccumT accumulated =
+        combineFn.mergeAccumulators(accumsToMerge, ctxtForInput(preMergeWindowedValue));
+    return preMergeWindowedValue.withValue(KV.of(key, accumulated));
+  }
+
+  /** Extracts the output of the accumulator of a single (key, window) pair. */
+  OutputT extractWindowOutput(WindowedValue<KV<K, AccumT>> wkva) {
+    return combineFn.extractOutput(wkva.getValue().getValue(), ctxtForInput(wkva));
+  }
+
   Iterable<WindowedValue<OutputT>> extractOutput(Iterable<WindowedValue<KV<K, AccumT>>> wkvas) {
     return StreamSupport.stream(wkvas.spliterator(), false)
         .map(
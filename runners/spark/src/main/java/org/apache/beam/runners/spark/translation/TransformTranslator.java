@@ -31,6 +31,7 @@ import java.util.Collection;
 import java.util.Map;
 import org.apache.beam.runners.core.SystemReduceFn;
 import org.apache.beam.runners.core.metrics.MetricsContainerStepMap;
+import org.apache.beam.runners.spark.SparkPipelineOptions;
 import org.apache.beam.runners.spark.aggregators.AggregatorsAccumulator;
 import org.apache.beam.runners.spark.aggregators.NamedAggregators;
 import org.apache.beam.runners.spark.coders.CoderHelpers;
@@ -125,6 +126,18 @@ public final class TransformTranslator {
         @SuppressWarnings("unchecked")
         final WindowFn<Object, W> windowFn = (WindowFn<Object, W>) windowingStrategy.getWindowFn();
 
+        if (context.getOptions().as(SparkPipelineOptions.class).getSortBasedGroupByKey()
+            && GroupNonMergingWindowsFunctions.isEligibleForGroupByWindow(windowingStrategy)) {
+          // --- group by key and window with a sorted shuffle, no ReduceFnRunner needed.
+          context.putDataset(
+              transform,
+              new BoundedDataset<>(
+                  GroupNonMergingWindowsFunctions.groupByKeyAndWindow(
+                      inRDD, coder.getKeyCoder(), coder.getValueCoder(), windowingStrategy),
+                  true));
+          return;
+        }
+
         // --- coders.
         final Coder<K> keyCoder = coder.getKeyCoder();
         final WindowedValue.WindowedValueCoder<V> wvCoder =
@@ -303,6 +316,24 @@ public final class TransformTranslator {
         JavaRDD<WindowedValue<KV<K, InputT>>> inRdd =
             ((BoundedDataset<KV<K, InputT>>) context.borrowDataset(transform)).getRDD();
 
+        if (GroupNonMergingWindowsFunctions.isEligibleForCombineByWindow(windowingStrategy)) {
+          // --- a single accumulator per key and window, no need to sort and merge windows.
+          @SuppressWarnings("unchecked")
+          final WindowingStrategy<?, BoundedWindow> nonMergingWindowingStrategy =
+              (WindowingStrategy<?, BoundedWindow>) windowingStrategy;
+          context.putDataset(
+              transform,
+              new BoundedDataset<>(
+                  GroupNonMergingWindowsFunctions.combinePerKeyAndWindow(
+                      inRdd,
+                      sparkCombineFn,
+                      inputCoder.getKeyCoder(),
+                      inputCoder.getValueCoder(),
+                      vaCoder,
+                      nonMergingWindowingStrategy)));
+          return;
+        }
+
         JavaPairRDD<K, Iterable<WindowedValue<KV<K, AccumT>>>> accumulatePerKey =
             GroupCombineFunctions.combinePerKey(
                 inRdd,
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark;
+
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.SimpleFunction;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.junit.Test;
+
+/**
+ * This test checks that the output of a sort based GroupByKey, whose grouped values can only be
+ * iterated once, can be read by multiple consumers when the runner caches it.
+ */
+public class SortBasedGroupByKeyTest {
+
+  @Test
+  public void testGroupedValuesReadByTwoConsumers() {
+    SparkPipelineOptions options =
+        PipelineOptionsFactory.create().as(TestSparkPipelineOptions.class);
+    options.setRunner(TestSparkRunner.class);
+    options.setSortBasedGroupByKey(true);
+    Pipeline pipeline = Pipeline.create(options);
+
+    PCollection<KV<String, Iterable<Integer>>> grouped =
+        pipeline
+            .apply(Create.of(KV.of("a", 1), KV.of("b", 2), KV.of("a", 3), KV.of("b", 4)))
+            .apply(GroupByKey.create());
+    // as the grouped PCollection is read twice, the runner caches it.
+    PCollection<KV<String, Integer>> sums = grouped.apply("Sum", MapElements.via(new SumFn()));
+    PCollection<KV<String, Integer>> counts =
+        grouped.apply("Count", MapElements.via(new CountFn()));
+
+    PAssert.that(sums).containsInAnyOrder(KV.of("a", 4), KV.of("b", 6));
+    PAssert.that(counts).containsInAnyOrder(KV.of("a", 2), KV.of("b", 2));
+    pipeline.run();
+  }
+
+  private static class SumFn
+      extends SimpleFunction<KV<String, Iterable<Integer>>, KV<String, Integer>> {
+    @Override
+    public KV<String, Integer> apply(KV<String, Iterable<Integer>> kv) {
+      int sum = 0;
+      for (int value : kv.getValue()) {
+        sum += value;
+      }
+      return KV.of(kv.getKey(), sum);
+    }
+  }
+
+  private static class CountFn
+      extends SimpleFunction<KV<String, Iterable<Integer>>, KV<String, Integer>> {
+    @Override
+    public KV<String, Integer> apply(KV<String, Iterable<Integer>> kv) {
+      int count = 0;
+      for (int ignored : kv.getValue()) {
+        count++;
+      }
+      return KV.of(kv.getKey(), count);
+    }
+  }
+}
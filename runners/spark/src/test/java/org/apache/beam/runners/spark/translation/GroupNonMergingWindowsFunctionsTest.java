@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.runners.spark.translation;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.beam.runners.spark.coders.CoderHelpers;
+import org.apache.beam.runners.spark.util.ByteArray;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.transforms.windowing.AfterPane;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.joda.time.Duration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import scala.Tuple2;
+
+/** Tests for {@link GroupNonMergingWindowsFunctions}. */
+@RunWith(JUnit4.class)
+public class GroupNonMergingWindowsFunctionsTest {
+
+  private static final KvCoder<String, GlobalWindow> WINDOWED_KEY_CODER =
+      KvCoder.of(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE);
+
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void testEligibility() {
+    Duration size = Duration.standardMinutes(1);
+    assertTrue(
+        GroupNonMergingWindowsFunctions.isEligibleForGroupByWindow(
+            WindowingStrategy.globalDefault()));
+    assertTrue(
+        GroupNonMergingWindowsFunctions.isEligibleForGroupByWindow(
+            WindowingStrategy.of(FixedWindows.of(size))));
+    assertFalse(
+        GroupNonMergingWindowsFunctions.isEligibleForGroupByWindow(
+            WindowingStrategy.of(Sessions.withGapDuration(size))));
+    assertFalse(
+        GroupNonMergingWindowsFunctions.isEligibleForGroupByWindow(
+            WindowingStrategy.of(FixedWindows.of(size))
+                .withTimestampCombiner(TimestampCombiner.EARLIEST)));
+    assertFalse(
+        GroupNonMergingWindowsFunctions.isEligibleForGroupByWindow(
+            WindowingStrategy.globalDefault().withTrigger(AfterPane.elementCountAtLeast(2))));
+    assertTrue(
+        GroupNonMergingWindowsFunctions.isEligibleForCombineByWindow(
+            WindowingStrategy.of(FixedWindows.of(size))
+                .withTimestampCombiner(TimestampCombiner.EARLIEST)));
+    assertFalse(
+        GroupNonMergingWindowsFunctions.isEligibleForCombineByWindow(
+            WindowingStrategy.of(Sessions.withGapDuration(size))));
+  }
+
+  @Test
+  public void testGroupsAdjacentKeysLazily() {
+    Iterator<WindowedValue<KV<String, Iterable<Integer>>>> groups =
+        groupByKeyIterator(
+            Arrays.asList(
+                KV.of("a", 1), KV.of("a", 2), KV.of("b", 3), KV.of("c", 4), KV.of("c", 5)));
+
+    WindowedValue<KV<String, Iterable<Integer>>> a = groups.next();
+    assertEquals("a", a.getValue().getKey());
+    assertEquals(GlobalWindow.INSTANCE.maxTimestamp(), a.getTimestamp());
+    assertEquals(PaneInfo.ON_TIME_AND_ONLY_FIRING, a.getPane());
+    assertThat(a.getValue().getValue(), contains(1, 2));
+
+    WindowedValue<KV<String, Iterable<Integer>>> b = groups.next();
+    assertEquals("b", b.getValue().getKey());
+    assertThat(b.getValue().getValue(), contains(3));
+
+    WindowedValue<KV<String, Iterable<Integer>>> c = groups.next();
+    assertEquals("c", c.getValue().getKey());
+    assertThat(c.getValue().getValue(), contains(4, 5));
+    assertFalse(groups.hasNext());
+  }
+
+  @Test
+  public void testBuffersUnreadValuesWhenAdvancing() {
+    Iterator<WindowedValue<KV<String, Iterable<Integer>>>> groups =
+        groupByKeyIterator(Arrays.asList(KV.of("a", 1), KV.of("a", 2), KV.of("b", 3)));
+
+    List<WindowedValue<KV<String, Iterable<Integer>>>> all = Lists.newArrayList(groups);
+
+    assertEquals(2, all.size());
+    assertThat(all.get(0).getValue().getValue(), contains(1, 2));
+    assertThat(all.get(1).getValue().getValue(), contains(3));
+  }
+
+  @Test
+  public void testValuesCanOnlyBeIteratedOnce() {
+    Iterator<WindowedValue<KV<String, Iterable<Integer>>>> groups =
+        groupByKeyIterator(Arrays.asList(KV.of("a", 1), KV.of("a", 2)));
+    Iterable<Integer> values = groups.next().getValue().getValue();
+    assertThat(values, contains(1, 2));
+
+    thrown.expect(IllegalStateException.class);
+    values.iterator();
+  }
+
+  private static Iterator<WindowedValue<KV<String, Iterable<Integer>>>> groupByKeyIterator(
+      List<KV<String, Integer>> sortedInput) {
+    List<Tuple2<ByteArray, byte[]>> encoded = Lists.newArrayList();
+    for (KV<String, Integer> kv : sortedInput) {
+      encoded.add(
+          new Tuple2<>(
+              new ByteArray(
+                  CoderHelpers.toByteArray(
+                      KV.of(kv.getKey(), GlobalWindow.INSTANCE), WINDOWED_KEY_CODER)),
+              CoderHelpers.toByteArray(kv.getValue(), VarIntCoder.of())));
+    }
+    return new GroupNonMergingWindowsFunctions.GroupByKeyIterator<>(
+        encoded.iterator(), WINDOWED_KEY_CODER, VarIntCoder.of());
+  }
+}
@@ -396,6 +396,27 @@ public class TextIO {
                   .withDelimiter(getDelimiter()));
     }
 
+    /**
+     * Returns a transform which reads the same records as this one, but emits the bytes of each
+     * record, without its delimiter, instead of decoding them as {@code UTF-8} strings.
+     *
+     * <p>This skips decoding and re-encoding records which are parsed as bytes anyway. It does not
+     * support {@link #watchForNewFiles} or {@link #withHintMatchesManyFiles}.
+     */
+    public org.apache.beam.sdk.io.Read.Bounded<byte[]> asBytes() {
+      checkNotNull(getFilepattern(), "need to set the filepattern of a TextIO.Read transform");
+      checkArgument(
+          getMatchConfiguration().getWatchInterval() == null && !getHintMatchesManyFiles(),
+          "asBytes() does not support watchForNewFiles() or withHintMatchesManyFiles()");
+      return org.apache.beam.sdk.io.Read.from(
+          CompressedSource.from(
+                  new TextSource.ByteArraySource(
+                      getFilepattern(),
+                      getMatchConfiguration().getEmptyMatchTreatment(),
+                      getDelimiter()))
+              .withCompression(getCompression()));
+    }
+
     // Helper to create a source specific to the requested compression type.
     protected FileBasedSource<String> getSource() {
       return CompressedSource.from(
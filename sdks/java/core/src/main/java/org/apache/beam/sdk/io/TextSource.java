@@ -18,15 +18,18 @@
 package org.apache.beam.sdk.io;
 
 import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.protobuf.ByteString;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import javax.annotation.Nullable;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.io.fs.EmptyMatchTreatment;
@@ -46,6 +49,9 @@ import org.apache.beam.sdk.options.ValueProvider;
  * <p>This source supports reading from any arbitrary byte position within the stream. If the
  * starting position is not {@code 0}, then bytes are skipped until the first delimiter is found
  * representing the beginning of the first record to be decoded.
+ *
+ * <p>{@link ByteArraySource} splits the data the same way, but emits the undecoded bytes of each
+ * record.
  */
 @VisibleForTesting
 class TextSource extends FileBasedSource<String> {
@@ -70,7 +76,7 @@ class TextSource extends FileBasedSource<String> {
 
   @Override
   protected FileBasedReader<String> createSingleFileReader(PipelineOptions options) {
-    return new TextBasedReader(this, delimiter);
+    return new StringTextReader(this, delimiter);
   }
 
   @Override
@@ -78,33 +84,105 @@ class TextSource extends FileBasedSource<String> {
     return StringUtf8Coder.of();
   }
 
+  /**
+   * A {@link FileBasedSource} which splits records exactly like {@link TextSource}, but emits the
+   * bytes of each record, without its delimiter, instead of decoding them as {@code UTF-8}.
+   */
+  static class ByteArraySource extends FileBasedSource<byte[]> {
+    byte[] delimiter;
+
+    ByteArraySource(
+        ValueProvider<String> fileSpec, EmptyMatchTreatment emptyMatchTreatment, byte[] delimiter) {
+      super(fileSpec, emptyMatchTreatment, 1L);
+      this.delimiter = delimiter;
+    }
+
+    private ByteArraySource(MatchResult.Metadata metadata, long start, long end, byte[] delimiter) {
+      super(metadata, 1L, start, end);
+      this.delimiter = delimiter;
+    }
+
+    @Override
+    protected FileBasedSource<byte[]> createForSubrangeOfFile(
+        MatchResult.Metadata metadata, long start, long end) {
+      return new ByteArraySource(metadata, start, end, delimiter);
+    }
+
+    @Override
+    protected FileBasedReader<byte[]> createSingleFileReader(PipelineOptions options) {
+      return new ByteArrayTextReader(this, delimiter);
+    }
+
+    @Override
+    public Coder<byte[]> getOutputCoder() {
+      return ByteArrayCoder.of();
+    }
+  }
+
+  /** A {@link TextBasedReader} which decodes each record as a {@code UTF-8} string. */
+  private static class StringTextReader extends TextBasedReader<String> {
+    private StringTextReader(TextSource source, byte[] delimiter) {
+      super(source, delimiter);
+    }
+
+    @Override
+    protected String decodeRecord(byte[] bytes, int offset, int length) {
+      return new String(bytes, offset, length, UTF_8);
+    }
+  }
+
+  /** A {@link TextBasedReader} which returns a copy of the bytes of each record. */
+  private static class ByteArrayTextReader extends TextBasedReader<byte[]> {
+    private ByteArrayTextReader(ByteArraySource source, byte[] delimiter) {
+      super(source, delimiter);
+    }
+
+    @Override
+    protected byte[] decodeRecord(byte[] bytes, int offset, int length) {
+      return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+  }
+
   /**
    * A {@link FileBasedReader FileBasedReader} which can decode records delimited by delimiter
    * characters.
    *
+   * <p>The channel is read directly into a single growable byte array, which records are decoded
+   * from in place. When no custom delimiter is set, line terminators are searched for eight bytes
+   * at a time, see {@link #findLineTerminator}.
+   *
    * <p>See {@link TextSource} for further details.
    */
   @VisibleForTesting
-  static class TextBasedReader extends FileBasedReader<String> {
-    private static final int READ_BUFFER_SIZE = 8192;
-    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
-    private ByteString buffer;
+  abstract static class TextBasedReader<T> extends FileBasedReader<T> {
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long LF_WORD = ONES * '\n';
+    private static final long CR_WORD = ONES * '\r';
+
+    /** Holds the unconsumed bytes of the channel in the range [bufferStart, bufferEnd). */
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int bufferStart;
+    private int bufferEnd;
     private int startOfDelimiterInBuffer;
     private int endOfDelimiterInBuffer;
     private long startOfRecord;
     private volatile long startOfNextRecord;
     private volatile boolean eof;
     private volatile boolean elementIsPresent;
-    private @Nullable String currentValue;
+    private @Nullable T currentValue;
     private @Nullable ReadableByteChannel inChannel;
     private @Nullable byte[] delimiter;
 
-    private TextBasedReader(TextSource source, byte[] delimiter) {
+    private TextBasedReader(FileBasedSource<T> source, byte[] delimiter) {
       super(source);
-      buffer = ByteString.EMPTY;
       this.delimiter = delimiter;
     }
 
+    /** Decodes the {@code length} bytes of a record starting at {@code offset}. */
+    protected abstract T decodeRecord(byte[] bytes, int offset, int length);
+
     @Override
     protected long getCurrentOffset() throws NoSuchElementException {
       if (!elementIsPresent) {
@@ -122,7 +200,7 @@ class TextSource extends FileBasedSource<String> {
     }
 
     @Override
-    public String getCurrent() throws NoSuchElementException {
+    public T getCurrent() throws NoSuchElementException {
       if (!elementIsPresent) {
         throw new NoSuchElementException();
       }
@@ -149,7 +227,7 @@ class TextSource extends FileBasedSource<String> {
         }
         ((SeekableByteChannel) channel).position(requiredPosition);
         findDelimiterBounds();
-        buffer = buffer.substring(endOfDelimiterInBuffer);
+        bufferStart += endOfDelimiterInBuffer;
         startOfNextRecord = requiredPosition + endOfDelimiterInBuffer;
         endOfDelimiterInBuffer = 0;
         startOfDelimiterInBuffer = 0;
@@ -160,7 +238,8 @@ class TextSource extends FileBasedSource<String> {
      * Locates the start position and end position of the next delimiter. Will consume the channel
      * till either EOF or the delimiter bounds are found.
      *
-     * <p>This fills the buffer and updates the positions as follows:
+     * <p>This fills the buffer and updates the positions, which are relative to {@code
+     * bufferStart}, as follows:
      *
      * <pre>{@code
      * ------------------------------------------------------
@@ -172,6 +251,10 @@ class TextSource extends FileBasedSource<String> {
      * }</pre>
      */
     private void findDelimiterBounds() throws IOException {
+      if (delimiter == null) {
+        findDefaultDelimiterBounds();
+        return;
+      }
       int bytePositionInBuffer = 0;
       while (true) {
         if (!tryToEnsureNumberOfBytesInBuffer(bytePositionInBuffer + 1)) {
@@ -179,53 +262,92 @@ class TextSource extends FileBasedSource<String> {
           break;
         }
 
-        byte currentByte = buffer.byteAt(bytePositionInBuffer);
+        byte currentByte = byteAt(bytePositionInBuffer);
 
-        if (delimiter == null) {
-          // default delimiter
-          if (currentByte == '\n') {
-            startOfDelimiterInBuffer = bytePositionInBuffer;
-            endOfDelimiterInBuffer = startOfDelimiterInBuffer + 1;
-            break;
-          } else if (currentByte == '\r') {
-            startOfDelimiterInBuffer = bytePositionInBuffer;
-            endOfDelimiterInBuffer = startOfDelimiterInBuffer + 1;
-
-            if (tryToEnsureNumberOfBytesInBuffer(bytePositionInBuffer + 2)) {
-              currentByte = buffer.byteAt(bytePositionInBuffer + 1);
-              if (currentByte == '\n') {
-                endOfDelimiterInBuffer += 1;
-              }
-            }
-            break;
-          }
-        } else {
-          // user defined delimiter
-          int i = 0;
-          // initialize delimiter not found
-          startOfDelimiterInBuffer = endOfDelimiterInBuffer = bytePositionInBuffer;
-          while ((i <= delimiter.length - 1) && (currentByte == delimiter[i])) {
-            // read next byte
-            i++;
-            if (tryToEnsureNumberOfBytesInBuffer(bytePositionInBuffer + i + 1)) {
-              currentByte = buffer.byteAt(bytePositionInBuffer + i);
-            } else {
-              // corner case: delimiter truncated at the end of the file
-              startOfDelimiterInBuffer = endOfDelimiterInBuffer = bytePositionInBuffer;
-              break;
-            }
-          }
-          if (i == delimiter.length) {
-            // all bytes of delimiter found
-            endOfDelimiterInBuffer = bytePositionInBuffer + i;
+        // user defined delimiter
+        int i = 0;
+        // initialize delimiter not found
+        startOfDelimiterInBuffer = endOfDelimiterInBuffer = bytePositionInBuffer;
+        while ((i <= delimiter.length - 1) && (currentByte == delimiter[i])) {
+          // read next byte
+          i++;
+          if (tryToEnsureNumberOfBytesInBuffer(bytePositionInBuffer + i + 1)) {
+            currentByte = byteAt(bytePositionInBuffer + i);
+          } else {
+            // corner case: delimiter truncated at the end of the file
+            startOfDelimiterInBuffer = endOfDelimiterInBuffer = bytePositionInBuffer;
             break;
           }
         }
+        if (i == delimiter.length) {
+          // all bytes of delimiter found
+          endOfDelimiterInBuffer = bytePositionInBuffer + i;
+          break;
+        }
         // Move to the next byte in buffer.
         bytePositionInBuffer += 1;
       }
     }
 
+    /** Same as {@link #findDelimiterBounds} for the default '\n', '\r' or '\r\n' delimiters. */
+    private void findDefaultDelimiterBounds() throws IOException {
+      int bytePositionInBuffer = 0;
+      while (true) {
+        if (!tryToEnsureNumberOfBytesInBuffer(bytePositionInBuffer + 1)) {
+          startOfDelimiterInBuffer = endOfDelimiterInBuffer = bytePositionInBuffer;
+          return;
+        }
+        int found = findLineTerminator(buffer, bufferStart + bytePositionInBuffer, bufferEnd);
+        if (found < 0) {
+          // Everything buffered so far belongs to the element.
+          bytePositionInBuffer = bufferEnd - bufferStart;
+          continue;
+        }
+        boolean isCarriageReturn = buffer[found] == '\r';
+        startOfDelimiterInBuffer = found - bufferStart;
+        endOfDelimiterInBuffer = startOfDelimiterInBuffer + 1;
+        if (isCarriageReturn
+            && tryToEnsureNumberOfBytesInBuffer(startOfDelimiterInBuffer + 2)
+            && byteAt(startOfDelimiterInBuffer + 1) == '\n') {
+          endOfDelimiterInBuffer += 1;
+        }
+        return;
+      }
+    }
+
+    /**
+     * Returns the index of the first '\n' or '\r' in {@code bytes[from, to)}, or -1 if there is
+     * none.
+     *
+     * <p>Bytes are compared a {@code long} at a time: for each word, {@code (v - 0x01..01) & ~v &
+     * 0x80..80} is non zero iff one of the bytes of {@code v} is zero, and its lowest set bit marks
+     * the first such byte.
+     */
+    @VisibleForTesting
+    static int findLineTerminator(byte[] bytes, int from, int to) {
+      int i = from;
+      if (to - i >= Long.BYTES) {
+        ByteBuffer words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (; i <= to - Long.BYTES; i += Long.BYTES) {
+          long word = words.getLong(i);
+          long matches = zeroBytes(word ^ LF_WORD) | zeroBytes(word ^ CR_WORD);
+          if (matches != 0) {
+            return i + (Long.numberOfTrailingZeros(matches) >>> 3);
+          }
+        }
+      }
+      for (; i < to; i++) {
+        if (bytes[i] == '\n' || bytes[i] == '\r') {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private static long zeroBytes(long word) {
+      return (word - ONES) & ~word & HIGHS;
+    }
+
     @Override
     protected boolean readNextRecord() throws IOException {
       startOfRecord = startOfNextRecord;
@@ -233,7 +355,7 @@ class TextSource extends FileBasedSource<String> {
 
       // If we have reached EOF file and consumed all of the buffer then we know
       // that there are no more records.
-      if (eof && buffer.isEmpty()) {
+      if (eof && bufferEnd == bufferStart) {
         elementIsPresent = false;
         return false;
       }
@@ -250,24 +372,45 @@ class TextSource extends FileBasedSource<String> {
      * endOfDelimiterInBuffer}.
      */
     private void decodeCurrentElement() throws IOException {
-      ByteString dataToDecode = buffer.substring(0, startOfDelimiterInBuffer);
-      currentValue = dataToDecode.toStringUtf8();
+      currentValue = decodeRecord(buffer, bufferStart, startOfDelimiterInBuffer);
       elementIsPresent = true;
-      buffer = buffer.substring(endOfDelimiterInBuffer);
+      bufferStart += endOfDelimiterInBuffer;
+    }
+
+    private byte byteAt(int positionInBuffer) {
+      return buffer[bufferStart + positionInBuffer];
     }
 
     /** Returns false if we were unable to ensure the minimum capacity by consuming the channel. */
     private boolean tryToEnsureNumberOfBytesInBuffer(int minCapacity) throws IOException {
       // While we aren't at EOF or haven't fulfilled the minimum buffer capacity,
       // attempt to read more bytes.
-      while (buffer.size() <= minCapacity && !eof) {
-        eof = inChannel.read(readBuffer) == -1;
-        readBuffer.flip();
-        buffer = buffer.concat(ByteString.copyFrom(readBuffer));
-        readBuffer.clear();
+      while (bufferEnd - bufferStart < minCapacity && !eof) {
+        if (bufferEnd == buffer.length) {
+          makeRoom();
+        }
+        int read = inChannel.read(ByteBuffer.wrap(buffer, bufferEnd, buffer.length - bufferEnd));
+        if (read == -1) {
+          eof = true;
+        } else {
+          bufferEnd += read;
+        }
       }
       // Return true if we were able to honor the minimum buffer capacity request
-      return buffer.size() >= minCapacity;
+      return bufferEnd - bufferStart >= minCapacity;
+    }
+
+    /**
+     * Moves the unconsumed bytes to the beginning of the buffer, doubling its size if they fill
+     * more than half of it.
+     */
+    private void makeRoom() {
+      int size = bufferEnd - bufferStart;
+      byte[] target = size > buffer.length / 2 ? new byte[buffer.length * 2] : buffer;
+      System.arraycopy(buffer, bufferStart, target, 0, size);
+      buffer = target;
+      bufferStart = 0;
+      bufferEnd = size;
     }
   }
 }
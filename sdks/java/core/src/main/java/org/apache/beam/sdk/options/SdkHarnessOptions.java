@@ -81,6 +81,49 @@ public interface SdkHarnessOptions extends PipelineOptions {
 
   void setSdkHarnessLogLevelOverrides(SdkHarnessLogLevelOverrides value);
 
+  /**
+   * The maximum time elements are buffered on the data plane before being sent to the runner.
+   *
+   * <p>Without a time limit, elements are only sent once the buffer limit is reached or the bundle
+   * finishes, which delays low rate outputs.
+   */
+  @Description(
+      "The maximum time in milliseconds that output elements are buffered by the SDK harness "
+          + "before being sent to the runner. A value of zero or less disables time based "
+          + "flushing.")
+  @Default.Long(0L)
+  long getDataBufferTimeLimitMs();
+
+  void setDataBufferTimeLimitMs(long value);
+
+  /**
+   * Whether the size at which buffered elements are sent to the runner adapts to the observed
+   * throughput of each output.
+   */
+  @Description(
+      "If true, the number of bytes the SDK harness buffers for each output before sending them "
+          + "to the runner grows and shrinks with the observed throughput of the output, "
+          + "starting from the configured or default buffer limit.")
+  @Default.Boolean(false)
+  boolean isDataBufferAdaptive();
+
+  void setDataBufferAdaptive(boolean value);
+
+  /**
+   * The amount of memory the SDK harness may use to cache side input values across bundles.
+   *
+   * <p>Cached values are only reused while the runner supplies the same cache tokens on each
+   * bundle. User state is not cached across bundles.
+   */
+  @Description(
+      "The maximum size in megabytes of the cache the SDK harness uses to retain side input "
+          + "values across bundles. The cache is only used when the runner supplies cache tokens. "
+          + "A value of zero or less disables the cache.")
+  @Default.Integer(100)
+  int getStateCacheSizeMb();
+
+  void setStateCacheSizeMb(int value);
+
   /**
    * Defines a log level override for a specific class, package, or name.
    *
@@ -42,6 +42,7 @@ import static org.junit.Assert.assertTrue;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -57,6 +58,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
@@ -74,6 +76,7 @@ import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.testing.UsesSplittableParDo;
 import org.apache.beam.sdk.testing.ValidatesRunner;
 import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.ToString;
 import org.apache.beam.sdk.transforms.Watch;
 import org.apache.beam.sdk.transforms.display.DisplayData;
@@ -84,6 +87,7 @@ import org.apache.beam.sdk.transforms.windowing.Repeatedly;
 import org.apache.beam.sdk.transforms.windowing.Window;
 import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptors;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.deflate.DeflateCompressorOutputStream;
 import org.joda.time.Duration;
@@ -453,6 +457,53 @@ public class TextIOReadTest {
       }
     }
 
+    @Test
+    public void testFindLineTerminator() {
+      Random random = new Random(42);
+      for (int i = 0; i < 1000; i++) {
+        byte[] bytes = new byte[random.nextInt(40)];
+        for (int j = 0; j < bytes.length; j++) {
+          int r = random.nextInt(20);
+          bytes[j] = r == 0 ? (byte) '\n' : r == 1 ? (byte) '\r' : (byte) (random.nextInt(256));
+        }
+        int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+        int expected = -1;
+        for (int j = from; j < bytes.length; j++) {
+          if (bytes[j] == '\n' || bytes[j] == '\r') {
+            expected = j;
+            break;
+          }
+        }
+        assertEquals(
+            expected, TextSource.TextBasedReader.findLineTerminator(bytes, from, bytes.length));
+      }
+    }
+
+    @Test
+    public void testReadLinesLongerThanBuffer() throws Exception {
+      String longLine = Strings.repeat("0123456789", 20000);
+      List<String> expected = ImmutableList.of("a", longLine, "", longLine + longLine, "b");
+      TextSource source = prepareSource(Joiner.on("\r\n").join(expected).getBytes(UTF_8));
+      assertEquals(
+          expected, SourceTestUtils.readFromSource(source, PipelineOptionsFactory.create()));
+    }
+
+    @Test
+    @Category(NeedsRunner.class)
+    public void testReadBytes() throws Exception {
+      File tmpFile = tempFolder.newFile();
+      Files.write(tmpFile.toPath(), "first\nsecond\r\n\nthird".getBytes(UTF_8));
+
+      PCollection<String> output =
+          p.apply(TextIO.read().from(tmpFile.getPath()).asBytes())
+              .apply(
+                  MapElements.into(TypeDescriptors.strings())
+                      .via(bytes -> new String(bytes, UTF_8)));
+
+      PAssert.that(output).containsInAnyOrder("first", "second", "", "third");
+      p.run();
+    }
+
     @Test
     @Category(NeedsRunner.class)
     public void testReadStrings() throws Exception {
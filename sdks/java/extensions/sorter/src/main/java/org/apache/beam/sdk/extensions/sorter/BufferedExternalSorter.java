@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.IOException;
 import java.io.Serializable;
+import org.apache.beam.sdk.extensions.sorter.ExternalSorter.Options.SorterType;
 import org.apache.beam.sdk.values.KV;
 
 /**
@@ -30,17 +31,21 @@ import org.apache.beam.sdk.values.KV;
  */
 public class BufferedExternalSorter implements Sorter {
   public static Options options() {
-    return new Options("/tmp", 100);
+    return new Options("/tmp", 100, 64, SorterType.HADOOP);
   }
 
   /** Contains configuration for the sorter. */
   public static class Options implements Serializable {
     private final String tempLocation;
     private final int memoryMB;
+    private final int mergeFanIn;
+    private final SorterType sorterType;
 
-    private Options(String tempLocation, int memoryMB) {
+    private Options(String tempLocation, int memoryMB, int mergeFanIn, SorterType sorterType) {
       this.tempLocation = tempLocation;
       this.memoryMB = memoryMB;
+      this.mergeFanIn = mergeFanIn;
+      this.sorterType = sorterType;
     }
 
     /** Sets the path to a temporary location where the sorter writes intermediate files. */
@@ -49,7 +54,7 @@ public class BufferedExternalSorter implements Sorter {
           !tempLocation.startsWith("gs://"),
           "BufferedExternalSorter does not support GCS temporary location");
 
-      return new Options(tempLocation, memoryMB);
+      return new Options(tempLocation, memoryMB, mergeFanIn, sorterType);
     }
 
     /** Returns the configured temporary location. */
@@ -59,21 +64,45 @@ public class BufferedExternalSorter implements Sorter {
 
     /**
      * Sets the size of the memory buffer in megabytes. This controls both the buffer for initial in
-     * memory sorting and the buffer used when external sorting. Must be greater than zero and less
-     * than 2048.
+     * memory sorting and the buffer used when external sorting. Must be greater than zero. When
+     * using the {@link SorterType#HADOOP} external sorter, must also be less than 2048.
      */
     public Options withMemoryMB(int memoryMB) {
       checkArgument(memoryMB > 0, "memoryMB must be greater than zero");
-      // Hadoop's external sort stores the number of available memory bytes in an int, this prevents
-      // overflow
-      checkArgument(memoryMB < 2048, "memoryMB must be less than 2048");
-      return new Options(tempLocation, memoryMB);
+      ExternalSorter.Options.checkMemoryForSorterType(memoryMB, sorterType);
+      return new Options(tempLocation, memoryMB, mergeFanIn, sorterType);
     }
 
     /** Returns the configured size of the memory buffer. */
     public int getMemoryMB() {
       return memoryMB;
     }
+
+    /**
+     * Sets the maximum number of sorted runs the {@link SorterType#NATIVE} external sorter merges
+     * at once. Must be at least 2.
+     */
+    public Options withMergeFanIn(int mergeFanIn) {
+      checkArgument(mergeFanIn >= 2, "mergeFanIn must be at least 2");
+      return new Options(tempLocation, memoryMB, mergeFanIn, sorterType);
+    }
+
+    /** Returns the configured merge fan-in. */
+    public int getMergeFanIn() {
+      return mergeFanIn;
+    }
+
+    /** Sets the type of external sorter used once values no longer fit into memory. */
+    public Options withExternalSorterType(SorterType sorterType) {
+      checkArgument(sorterType != null, "sorterType can not be null");
+      ExternalSorter.Options.checkMemoryForSorterType(memoryMB, sorterType);
+      return new Options(tempLocation, memoryMB, mergeFanIn, sorterType);
+    }
+
+    /** Returns the configured external sorter type. */
+    public SorterType getExternalSorterType() {
+      return sorterType;
+    }
   }
 
   private final ExternalSorter externalSorter;
@@ -88,7 +117,9 @@ public class BufferedExternalSorter implements Sorter {
 
   public static BufferedExternalSorter create(Options options) {
     ExternalSorter.Options externalSorterOptions = new ExternalSorter.Options();
+    externalSorterOptions.setSorterType(options.getExternalSorterType());
     externalSorterOptions.setMemoryMB(options.getMemoryMB());
+    externalSorterOptions.setMergeFanIn(options.getMergeFanIn());
     externalSorterOptions.setTempLocation(options.getTempLocation());
 
     InMemorySorter.Options inMemorySorterOptions = new InMemorySorter.Options();
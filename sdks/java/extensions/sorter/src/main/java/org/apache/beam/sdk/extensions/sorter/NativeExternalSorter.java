@@ -0,0 +1,581 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.sdk.extensions.sorter;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.primitives.UnsignedBytes;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import org.apache.beam.sdk.values.KV;
+
+/**
+ * Does an external sort of the provided values without depending on Hadoop.
+ *
+ * <p>Records are buffered in memory until the configured memory buffer is full, at which point they
+ * are sorted by their raw key bytes and written as a sorted run to a local file. On {@link
+ * #sort()}, runs are merged with a k-way merge, at most {@link Options#getMergeFanIn()} at a time,
+ * until few enough runs are left to be merged while iterating.
+ *
+ * <p>Runs are deleted as soon as they have been merged into a new run. Once sorting finishes, the
+ * final runs are opened and the temporary directory is deleted straight away, so nothing is left
+ * behind on disk however the returned {@link Iterable} is used. Iterators read the open runs with
+ * positional reads and hold no file handles of their own, so abandoning one leaks nothing. The open
+ * runs are closed by a background thread once neither the sorter nor anything returned by it is
+ * reachable anymore, and when the JVM shuts down. On file systems which do not allow deleting open
+ * files, the temporary directory is deleted at that point instead.
+ */
+class NativeExternalSorter extends ExternalSorter {
+  /** The comparator to use to sort the records by key. */
+  private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+  /** Comparator over records which only looks at the key. */
+  private static final Comparator<KV<byte[], byte[]>> KV_COMPARATOR =
+      (o1, o2) -> COMPARATOR.compare(o1.getKey(), o2.getKey());
+
+  /**
+   * Estimate of memory overhead per buffered record in bytes, not including the key and value
+   * bytes. Matches the estimate used by {@link InMemorySorter} for a 64 bit JVM.
+   */
+  private static final long RECORD_MEMORY_OVERHEAD_ESTIMATE = 13 * 8;
+
+  /** Upper bound on the size of the buffer used by each run reader and writer. */
+  private static final int MAX_IO_BUFFER_BYTES = 1024 * 1024;
+
+  /** Lower bound on the size of the buffer used by each run reader and writer. */
+  private static final int MIN_IO_BUFFER_BYTES = 8 * 1024;
+
+  /** Phantom references to sorters which wrote runs, enqueued once the sorter is unreachable. */
+  private static final ReferenceQueue<NativeExternalSorter> UNREACHABLE_SORTERS =
+      new ReferenceQueue<>();
+
+  /** Keeps the references in {@link #UNREACHABLE_SORTERS} alive until they are released. */
+  private static final Set<TempFilesReference> TEMP_FILES = ConcurrentHashMap.newKeySet();
+
+  static {
+    Thread cleaner = new Thread(NativeExternalSorter::releaseUnreachableTempFiles);
+    cleaner.setName("NativeExternalSorter-cleaner");
+    cleaner.setDaemon(true);
+    cleaner.start();
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  for (TempFilesReference reference : TEMP_FILES) {
+                    reference.tempFiles.release();
+                  }
+                }));
+  }
+
+  /** Whether {@link #sort()} was already called. */
+  private boolean sortCalled = false;
+
+  /** Maximum number of bytes buffered in memory before a run is written. */
+  private final long runSizeBytes;
+
+  /** Records buffered for the current run. */
+  private final ArrayList<KV<byte[], byte[]>> buffer = new ArrayList<>();
+
+  /** Estimated number of bytes held by {@link #buffer}. */
+  private long bufferBytes;
+
+  /** Sorted runs written so far. */
+  private final List<Path> runs = new ArrayList<>();
+
+  /** Temporary directory, created lazily on the first spill, and the open final runs. */
+  private final TempFiles tempFiles = new TempFiles();
+
+  /** Returns a {@link Sorter} configured with the given {@link Options}. */
+  public static NativeExternalSorter create(Options options) {
+    return new NativeExternalSorter(options);
+  }
+
+  private NativeExternalSorter(Options options) {
+    super(options);
+    this.runSizeBytes = options.getMemoryMB() * 1024L * 1024L;
+  }
+
+  @Override
+  public void add(KV<byte[], byte[]> record) throws IOException {
+    checkState(!sortCalled, "Records can only be added before sort()");
+
+    buffer.add(record);
+    bufferBytes +=
+        RECORD_MEMORY_OVERHEAD_ESTIMATE + record.getKey().length + record.getValue().length;
+    if (bufferBytes >= runSizeBytes) {
+      spill();
+    }
+  }
+
+  @Override
+  public Iterable<KV<byte[], byte[]>> sort() throws IOException {
+    checkState(!sortCalled, "sort() can only be called once.");
+    sortCalled = true;
+
+    if (runs.isEmpty()) {
+      // Everything fit into a single buffer, no need to go to disk.
+      buffer.sort(KV_COMPARATOR);
+      return Collections.unmodifiableList(buffer);
+    }
+
+    List<Path> remaining = new ArrayList<>(runs);
+    try {
+      if (!buffer.isEmpty()) {
+        spill();
+        remaining.add(runs.get(runs.size() - 1));
+      }
+
+      int fanIn = options.getMergeFanIn();
+      while (remaining.size() > fanIn) {
+        List<Path> merged = new ArrayList<>();
+        for (int i = 0; i < remaining.size(); i += fanIn) {
+          List<Path> group = remaining.subList(i, Math.min(i + fanIn, remaining.size()));
+          if (group.size() == 1) {
+            merged.add(group.get(0));
+          } else {
+            merged.add(mergeRuns(group));
+          }
+        }
+        remaining = merged;
+      }
+      tempFiles.channels = openRuns(remaining);
+    } catch (IOException | RuntimeException e) {
+      tempFiles.release();
+      throw e;
+    }
+
+    try {
+      // The open runs stay readable after their directory entries are gone.
+      deleteRecursively(tempFiles.tempDir);
+    } catch (IOException e) {
+      // Deleting open files is not allowed here, the directory goes once the runs are closed.
+    }
+    return new SortedRecordsIterable(this, tempFiles.channels, ioBufferBytes(remaining.size()));
+  }
+
+  /** Sorts the buffered records and writes them out as a new run. */
+  private void spill() throws IOException {
+    buffer.sort(KV_COMPARATOR);
+    Path run = newRunFile();
+    try (RunWriter writer = new RunWriter(run, ioBufferBytes(1))) {
+      for (KV<byte[], byte[]> record : buffer) {
+        writer.write(record.getKey(), record.getValue());
+      }
+    }
+    runs.add(run);
+    buffer.clear();
+    bufferBytes = 0;
+  }
+
+  /** Merges the given runs into a single new run and deletes the inputs. */
+  private Path mergeRuns(List<Path> inputs) throws IOException {
+    Path output = newRunFile();
+    int bufferBytes = ioBufferBytes(inputs.size() + 1);
+    List<FileChannel> channels = openRuns(inputs);
+    try (RunWriter writer = new RunWriter(output, bufferBytes)) {
+      MergingIterator iterator = new MergingIterator(channels, bufferBytes);
+      while (iterator.hasNext()) {
+        KV<byte[], byte[]> record = iterator.next();
+        writer.write(record.getKey(), record.getValue());
+      }
+    } finally {
+      closeAll(channels);
+    }
+    for (Path input : inputs) {
+      Files.deleteIfExists(input);
+    }
+    return output;
+  }
+
+  private Path newRunFile() throws IOException {
+    if (tempFiles.tempDir == null) {
+      Path tempDir = Paths.get(options.getTempLocation(), "tmp" + UUID.randomUUID().toString());
+      Files.createDirectories(tempDir);
+      tempFiles.tempDir = tempDir;
+      TEMP_FILES.add(new TempFilesReference(this, tempFiles));
+    }
+    return tempFiles.tempDir.resolve("run-" + runs.size() + "-" + UUID.randomUUID().toString());
+  }
+
+  /** Opens the given runs for reading, closing the ones already opened if one fails to open. */
+  private static List<FileChannel> openRuns(List<Path> runs) throws IOException {
+    List<FileChannel> channels = new ArrayList<>(runs.size());
+    try {
+      for (Path run : runs) {
+        channels.add(FileChannel.open(run, StandardOpenOption.READ));
+      }
+    } catch (IOException e) {
+      try {
+        closeAll(channels);
+      } catch (IOException closeException) {
+        e.addSuppressed(closeException);
+      }
+      throw e;
+    }
+    return channels;
+  }
+
+  private static void closeAll(List<FileChannel> channels) throws IOException {
+    IOException failure = null;
+    for (FileChannel channel : channels) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /** Releases the temporary files of sorters as they become unreachable. Runs until JVM exit. */
+  private static void releaseUnreachableTempFiles() {
+    while (true) {
+      TempFilesReference reference;
+      try {
+        reference = (TempFilesReference) UNREACHABLE_SORTERS.remove();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      TEMP_FILES.remove(reference);
+      reference.tempFiles.release();
+    }
+  }
+
+  private static void deleteRecursively(Path dir) throws IOException {
+    if (dir == null || !Files.exists(dir)) {
+      return;
+    }
+    Files.walkFileTree(
+        dir,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            Files.deleteIfExists(file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+            Files.deleteIfExists(dir);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  /** The temporary directory of a sorter and the final runs it opened for reading. */
+  private static class TempFiles {
+    private volatile Path tempDir;
+    private volatile List<FileChannel> channels = Collections.emptyList();
+
+    /** Closes the open runs and deletes the temporary directory. Failures are ignored. */
+    synchronized void release() {
+      try {
+        closeAll(channels);
+      } catch (IOException e) {
+        // Nothing more can be done about a run that fails to close.
+      }
+      channels = Collections.emptyList();
+      try {
+        deleteRecursively(tempDir);
+      } catch (IOException e) {
+        // Leave it to whoever cleans up the temp location.
+      }
+    }
+  }
+
+  /** The temporary files of a sorter, to be released once the sorter is unreachable. */
+  private static class TempFilesReference extends PhantomReference<NativeExternalSorter> {
+    private final TempFiles tempFiles;
+
+    TempFilesReference(NativeExternalSorter sorter, TempFiles tempFiles) {
+      super(sorter, UNREACHABLE_SORTERS);
+      this.tempFiles = tempFiles;
+    }
+  }
+
+  /** Splits the memory buffer between the given number of concurrently open runs. */
+  private int ioBufferBytes(int openRuns) {
+    long perRun = runSizeBytes / openRuns;
+    return (int) Math.max(MIN_IO_BUFFER_BYTES, Math.min(MAX_IO_BUFFER_BYTES, perRun));
+  }
+
+  /**
+   * Writes length prefixed records to a run file through a {@link FileChannel}. Keys and values
+   * larger than the buffer are written directly from their backing arrays.
+   */
+  private static class RunWriter implements AutoCloseable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    RunWriter(Path path, int bufferBytes) throws IOException {
+      this.channel =
+          FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      this.buffer = ByteBuffer.allocate(bufferBytes);
+    }
+
+    void write(byte[] key, byte[] value) throws IOException {
+      writeBytes(key);
+      writeBytes(value);
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+      if (buffer.remaining() < Integer.BYTES) {
+        flush();
+      }
+      buffer.putInt(bytes.length);
+      if (buffer.remaining() >= bytes.length) {
+        buffer.put(bytes);
+      } else {
+        flush();
+        ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+        while (wrapped.hasRemaining()) {
+          channel.write(wrapped);
+        }
+      }
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Reads length prefixed records from a run file with positional reads on a {@link FileChannel},
+   * so that several readers can share the channel. The reader does not own the channel.
+   */
+  private static class RunReader {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /** Position in the run of the next byte to read from the channel. */
+    private long position;
+
+    /** The record most recently read, or {@code null} once the run is exhausted. */
+    private KV<byte[], byte[]> current;
+
+    RunReader(FileChannel channel, int bufferBytes) throws IOException {
+      this.channel = channel;
+      this.buffer = ByteBuffer.allocate(bufferBytes);
+      buffer.flip();
+      advance();
+    }
+
+    KV<byte[], byte[]> current() {
+      return current;
+    }
+
+    /** Reads the next record into {@link #current()}. */
+    void advance() throws IOException {
+      if (!ensure(Integer.BYTES)) {
+        current = null;
+        return;
+      }
+      byte[] key = readBytes();
+      if (!ensure(Integer.BYTES)) {
+        throw new EOFException("Run file is truncated: missing value for key");
+      }
+      byte[] value = readBytes();
+      current = KV.of(key, value);
+    }
+
+    private byte[] readBytes() throws IOException {
+      int length = buffer.getInt();
+      byte[] bytes = new byte[length];
+      int copied = Math.min(length, buffer.remaining());
+      buffer.get(bytes, 0, copied);
+      if (copied < length) {
+        // Larger than what is buffered, read the remainder directly into the array.
+        ByteBuffer wrapped = ByteBuffer.wrap(bytes, copied, length - copied);
+        while (wrapped.hasRemaining()) {
+          if (read(wrapped) < 0) {
+            throw new EOFException("Run file is truncated");
+          }
+        }
+      }
+      return bytes;
+    }
+
+    /**
+     * Makes sure at least {@code bytes} bytes are buffered. Returns {@code false} if the end of the
+     * run was reached before any bytes could be read.
+     */
+    private boolean ensure(int bytes) throws IOException {
+      if (buffer.remaining() >= bytes) {
+        return true;
+      }
+      buffer.compact();
+      while (buffer.position() < bytes) {
+        if (read(buffer) < 0) {
+          break;
+        }
+      }
+      buffer.flip();
+      if (buffer.remaining() == 0) {
+        return false;
+      } else if (buffer.remaining() < bytes) {
+        throw new EOFException("Run file is truncated");
+      }
+      return true;
+    }
+
+    private int read(ByteBuffer dst) throws IOException {
+      int read = channel.read(dst, position);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+  }
+
+  /** Merges several sorted runs into a single sorted stream of records. */
+  private static class MergingIterator implements Iterator<KV<byte[], byte[]>> {
+    private final PriorityQueue<RunReader> heap;
+
+    MergingIterator(List<FileChannel> runs, int bufferBytes) throws IOException {
+      this.heap =
+          new PriorityQueue<>(
+              Math.max(1, runs.size()),
+              (r1, r2) -> KV_COMPARATOR.compare(r1.current(), r2.current()));
+      for (FileChannel run : runs) {
+        RunReader reader = new RunReader(run, bufferBytes);
+        if (reader.current() != null) {
+          heap.add(reader);
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heap.isEmpty();
+    }
+
+    @Override
+    public KV<byte[], byte[]> next() {
+      RunReader reader = heap.poll();
+      if (reader == null) {
+        throw new NoSuchElementException();
+      }
+      KV<byte[], byte[]> record = reader.current();
+      try {
+        reader.advance();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      if (reader.current() != null) {
+        heap.add(reader);
+      }
+      return record;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Iterator does not support remove");
+    }
+  }
+
+  /** An {@link Iterable} producing iterators that merge the final set of runs. */
+  private static class SortedRecordsIterable implements Iterable<KV<byte[], byte[]>> {
+    /** Keeps the runs from being closed for as long as they may be iterated. */
+    @SuppressWarnings("unused")
+    private final NativeExternalSorter owner;
+
+    private final List<FileChannel> runs;
+    private final int bufferBytes;
+
+    SortedRecordsIterable(NativeExternalSorter owner, List<FileChannel> runs, int bufferBytes) {
+      this.owner = owner;
+      this.runs = runs;
+      this.bufferBytes = bufferBytes;
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<KV<byte[], byte[]>> iterator() {
+      final MergingIterator delegate;
+      try {
+        delegate = new MergingIterator(runs, bufferBytes);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return new Iterator<KV<byte[], byte[]>>() {
+        /** Keeps the runs open for as long as this iterator is reachable. */
+        @SuppressWarnings("unused")
+        private final SortedRecordsIterable iterable = SortedRecordsIterable.this;
+
+        @Override
+        public boolean hasNext() {
+          return delegate.hasNext();
+        }
+
+        @Override
+        public KV<byte[], byte[]> next() {
+          return delegate.next();
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException("Iterator does not support remove");
+        }
+      };
+    }
+  }
+}
@@ -34,6 +34,7 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
+import org.apache.beam.sdk.extensions.sorter.ExternalSorter.Options.SorterType;
 import org.apache.beam.sdk.values.KV;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -185,6 +186,19 @@ public class BufferedExternalSorterTest {
         1000000);
   }
 
+  @Test
+  public void testOneSorterManyRecordsNativeFallback() throws Exception {
+    SorterTestUtils.testRandom(
+        () ->
+            BufferedExternalSorter.create(
+                BufferedExternalSorter.options()
+                    .withExternalSorterType(SorterType.NATIVE)
+                    .withMemoryMB(1)
+                    .withTempLocation(tmpLocation.toString())),
+        1,
+        1000000);
+  }
+
   @Test
   public void testAddAfterSort() throws Exception {
     SorterTestUtils.testAddAfterSort(
@@ -227,4 +241,19 @@ public class BufferedExternalSorterTest {
     BufferedExternalSorter.Options options = BufferedExternalSorter.options();
     options.withMemoryMB(2048);
   }
+
+  @Test
+  public void testNativeMemoryLargerThanHadoopLimit() {
+    BufferedExternalSorter.options().withExternalSorterType(SorterType.NATIVE).withMemoryMB(4096);
+  }
+
+  @Test
+  public void testSwitchToHadoopWithTooMuchMemory() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("memoryMB must be less than 2048");
+    BufferedExternalSorter.options()
+        .withExternalSorterType(SorterType.NATIVE)
+        .withMemoryMB(4096)
+        .withExternalSorterType(SorterType.HADOOP);
+  }
 }
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.sdk.extensions.sorter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.iterableWithSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import org.apache.beam.sdk.extensions.sorter.ExternalSorter.Options.SorterType;
+import org.apache.beam.sdk.values.KV;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link NativeExternalSorter}. */
+@RunWith(JUnit4.class)
+public class NativeExternalSorterTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+  private static Path tmpLocation;
+
+  @BeforeClass
+  public static void setupTempDir() throws IOException {
+    tmpLocation = Files.createTempDirectory("tmp");
+  }
+
+  @AfterClass
+  public static void cleanupTempDir() throws IOException {
+    Files.walkFileTree(
+        tmpLocation,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            Files.delete(file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+            Files.delete(dir);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  private static ExternalSorter.Options options() {
+    return new ExternalSorter.Options()
+        .setSorterType(SorterType.NATIVE)
+        .setTempLocation(tmpLocation.toString());
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    SorterTestUtils.testEmpty(ExternalSorter.create(options()));
+  }
+
+  @Test
+  public void testSingleElement() throws Exception {
+    SorterTestUtils.testSingleElement(ExternalSorter.create(options()));
+  }
+
+  @Test
+  public void testEmptyKeyValueElement() throws Exception {
+    SorterTestUtils.testEmptyKeyValueElement(ExternalSorter.create(options()));
+  }
+
+  @Test
+  public void testMultipleIterations() throws Exception {
+    SorterTestUtils.testMultipleIterations(ExternalSorter.create(options()));
+  }
+
+  @Test
+  public void testRandom() throws Exception {
+    SorterTestUtils.testRandom(() -> ExternalSorter.create(options()), 1, 1000000);
+  }
+
+  @Test
+  public void testRandomMultiPassMerge() throws Exception {
+    // A 1 MB buffer holds roughly 8000 records, so this writes over 100 runs which take several
+    // merge passes with a fan-in of 4.
+    SorterTestUtils.testRandom(
+        () -> ExternalSorter.create(options().setMemoryMB(1).setMergeFanIn(4)), 1, 1000000);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testLargeRecordsMultipleIterations() throws Exception {
+    // Records larger than the I/O buffers are written and read bypassing the buffers.
+    ExternalSorter sorter = ExternalSorter.create(options().setMemoryMB(1).setMergeFanIn(2));
+    KV<byte[], byte[]>[] kvs = new KV[5];
+    for (int i = 0; i < kvs.length; ++i) {
+      byte[] value = new byte[3 * 1024 * 1024];
+      value[value.length - 1] = (byte) i;
+      kvs[i] = KV.of(new byte[] {(byte) i}, value);
+    }
+    for (int i = kvs.length - 1; i >= 0; --i) {
+      sorter.add(kvs[i]);
+    }
+    Iterable<KV<byte[], byte[]>> sorted = sorter.sort();
+    assertThat(sorted, contains(kvs));
+    // Iterate second time.
+    assertThat(sorted, contains(kvs));
+  }
+
+  @Test
+  public void testTempDirIsDeletedAfterSort() throws Exception {
+    Path location = Files.createTempDirectory(tmpLocation, "merged");
+    ExternalSorter sorter =
+        ExternalSorter.create(
+            options().setTempLocation(location.toString()).setMemoryMB(1).setMergeFanIn(2));
+    for (int i = 0; i < 20; ++i) {
+      // Each record fills the 1 MB buffer, so every record is spilled to a run of its own.
+      sorter.add(KV.of(new byte[] {(byte) (20 - i)}, new byte[1024 * 1024]));
+    }
+    Iterable<KV<byte[], byte[]>> sorted = sorter.sort();
+
+    // Nothing is left on disk, yet the open runs can still be iterated, also after an iterator
+    // was abandoned halfway.
+    try (Stream<Path> tempDirs = Files.list(location)) {
+      assertEquals(0, tempDirs.count());
+    }
+    Iterator<KV<byte[], byte[]>> abandoned = sorted.iterator();
+    abandoned.next();
+    assertThat(sorted, iterableWithSize(20));
+    assertThat(sorted, iterableWithSize(20));
+  }
+
+  @Test
+  public void testAddAfterSort() throws Exception {
+    SorterTestUtils.testAddAfterSort(ExternalSorter.create(options()), thrown);
+    fail();
+  }
+
+  @Test
+  public void testSortTwice() throws Exception {
+    SorterTestUtils.testSortTwice(ExternalSorter.create(options()), thrown);
+    fail();
+  }
+
+  @Test
+  public void testMemoryLargerThanHadoopLimit() {
+    options().setMemoryMB(4096);
+  }
+
+  @Test
+  public void testFanInTooSmall() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("mergeFanIn must be at least 2");
+    options().setMergeFanIn(1);
+  }
+}
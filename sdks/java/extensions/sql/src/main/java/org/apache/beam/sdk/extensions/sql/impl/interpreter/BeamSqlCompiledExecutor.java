@@ -0,0 +1,627 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.extensions.sql.impl.interpreter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.apache.beam.sdk.extensions.sql.impl.interpreter.operator.BeamSqlPrimitive;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.values.Row;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexLocalRef;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgram;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+/**
+ * Executor that compiles a {@link RexProgram} into a tree of type specialized evaluators.
+ *
+ * <p>Unlike {@link BeamSqlFnExecutor}, intermediate results are passed between evaluators as
+ * primitive values, so evaluating a filter or an arithmetic projection allocates neither {@link
+ * BeamSqlPrimitive BeamSqlPrimitives} nor a {@link BeamSqlExpressionEnvironment} per {@link Row}.
+ * Only field references, literals, logical operators, {@code IS [NOT] NULL}, numeric comparisons
+ * and integral or double arithmetic are supported, with the same semantics as the corresponding
+ * {@link BeamSqlFnExecutor} expressions for non null operands. Use {@link #isSupported(RexProgram)}
+ * to check whether a program can be compiled, and fall back to {@link BeamSqlFnExecutor} otherwise.
+ *
+ * <p>{@code NULL} operands follow SQL: arithmetic on {@code NULL} is {@code NULL}, {@code AND},
+ * {@code OR} and {@code NOT} use three-valued logic, and a row whose filter condition is {@code
+ * NULL} is dropped like one whose condition is {@code FALSE}.
+ *
+ * <p>The {@link BeamSqlExpressionEnvironment} passed to {@link #execute} is not used, so callers
+ * may pass {@code null} instead of building one for each {@link Row}.
+ */
+public class BeamSqlCompiledExecutor implements BeamSqlExpressionExecutor {
+  private static final Set<SqlTypeName> INTEGRAL_TYPES =
+      ImmutableSet.of(
+          SqlTypeName.TINYINT, SqlTypeName.SMALLINT, SqlTypeName.INTEGER, SqlTypeName.BIGINT);
+
+  /** Types whose values are represented exactly as a {@code double}. */
+  private static final Set<SqlTypeName> EXACT_DOUBLE_TYPES =
+      ImmutableSet.of(
+          SqlTypeName.TINYINT,
+          SqlTypeName.SMALLINT,
+          SqlTypeName.INTEGER,
+          SqlTypeName.FLOAT,
+          SqlTypeName.DOUBLE);
+
+  /** Numeric types in the order used by the interpreter to deduce the type of arithmetic. */
+  private static final List<SqlTypeName> ORDERED_ARITHMETIC_TYPES =
+      Arrays.asList(
+          SqlTypeName.TINYINT,
+          SqlTypeName.SMALLINT,
+          SqlTypeName.INTEGER,
+          SqlTypeName.BIGINT,
+          SqlTypeName.FLOAT,
+          SqlTypeName.DOUBLE);
+
+  private final CompiledExpression filterCondition;
+  private final CompiledExpression[] projections;
+
+  public BeamSqlCompiledExecutor(RexProgram program) {
+    Compiler compiler = new Compiler(program);
+    this.filterCondition =
+        program.getCondition() == null
+            ? new Literal(SqlTypeName.BOOLEAN, true)
+            : compiler.compile(program.getCondition());
+    this.projections = new CompiledExpression[program.getProjectList().size()];
+    for (int i = 0; i < projections.length; i++) {
+      projections[i] = compiler.compile(program.getProjectList().get(i));
+    }
+    checkArgument(
+        filterCondition != null && !Arrays.asList(projections).contains(null),
+        "%s cannot be compiled, use %s instead",
+        program,
+        BeamSqlFnExecutor.class.getSimpleName());
+  }
+
+  /** Returns whether every expression of the {@link RexProgram} can be compiled. */
+  public static boolean isSupported(RexProgram program) {
+    Compiler compiler = new Compiler(program);
+    if (program.getCondition() != null && compiler.compile(program.getCondition()) == null) {
+      return false;
+    }
+    for (RexLocalRef projection : program.getProjectList()) {
+      if (compiler.compile(projection) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void prepare() {}
+
+  @Override
+  public @Nullable List<Object> execute(
+      Row inputRow, BoundedWindow window, @Nullable BeamSqlExpressionEnvironment env) {
+    if (!filterCondition.isTrue(inputRow)) {
+      return null;
+    }
+    List<Object> values = new ArrayList<>(projections.length);
+    for (CompiledExpression projection : projections) {
+      values.add(projection.evaluate(inputRow));
+    }
+    return values;
+  }
+
+  @Override
+  public void close() {}
+
+  /**
+   * Translates the expressions of a {@link RexProgram}, returning {@code null} for any expression
+   * that uses an unsupported operator or type.
+   */
+  private static class Compiler {
+    private final List<RexNode> exprs;
+    private final CompiledExpression[] localRefs;
+
+    Compiler(RexProgram program) {
+      this.exprs = program.getExprList();
+      this.localRefs = new CompiledExpression[exprs.size()];
+    }
+
+    @Nullable
+    CompiledExpression compile(RexNode rexNode) {
+      if (rexNode instanceof RexLocalRef) {
+        int index = ((RexLocalRef) rexNode).getIndex();
+        if (localRefs[index] == null) {
+          localRefs[index] = compile(exprs.get(index));
+        }
+        return localRefs[index];
+      } else if (rexNode instanceof RexInputRef) {
+        RexInputRef node = (RexInputRef) rexNode;
+        return new InputRef(node.getType().getSqlTypeName(), node.getIndex());
+      } else if (rexNode instanceof RexLiteral) {
+        return compileLiteral((RexLiteral) rexNode);
+      } else if (rexNode instanceof RexCall) {
+        return compileCall((RexCall) rexNode);
+      }
+      return null;
+    }
+
+    @Nullable
+    private CompiledExpression compileLiteral(RexLiteral node) {
+      SqlTypeName type = node.getType().getSqlTypeName();
+      if (node.getValue() == null
+          || !(SqlTypeName.NUMERIC_TYPES.contains(type)
+              || SqlTypeName.CHAR_TYPES.contains(type)
+              || type == SqlTypeName.BOOLEAN)) {
+        return null;
+      }
+      // Share the literal conversions of the interpreter so that both produce the same values.
+      BeamSqlPrimitive<?> primitive = (BeamSqlPrimitive<?>) BeamSqlFnExecutor.buildExpression(node);
+      return new Literal(primitive.getOutputType(), primitive.getValue());
+    }
+
+    @Nullable
+    private CompiledExpression compileCall(RexCall node) {
+      List<CompiledExpression> operands = new ArrayList<>();
+      for (RexNode operand : node.getOperands()) {
+        CompiledExpression compiled = compile(operand);
+        if (compiled == null) {
+          return null;
+        }
+        operands.add(compiled);
+      }
+
+      String opName = node.op.getName();
+      switch (opName) {
+        case "AND":
+        case "OR":
+          if (!allOfType(operands, SqlTypeName.BOOLEAN)) {
+            return null;
+          }
+          CompiledExpression[] conditions = operands.toArray(new CompiledExpression[0]);
+          return "AND".equals(opName) ? new And(conditions) : new Or(conditions);
+        case "NOT":
+          return operands.size() == 1 && allOfType(operands, SqlTypeName.BOOLEAN)
+              ? new Not(operands.get(0))
+              : null;
+        case "IS NULL":
+          return operands.size() == 1 ? new IsNull(operands.get(0), true) : null;
+        case "IS NOT NULL":
+          return operands.size() == 1 ? new IsNull(operands.get(0), false) : null;
+        case "=":
+          return compileComparison(Comparison.EQUALS, operands);
+        case "<>":
+          return compileComparison(Comparison.NOT_EQUALS, operands);
+        case ">":
+          return compileComparison(Comparison.GREATER_THAN, operands);
+        case ">=":
+          return compileComparison(Comparison.GREATER_THAN_OR_EQUALS, operands);
+        case "<":
+          return compileComparison(Comparison.LESS_THAN, operands);
+        case "<=":
+          return compileComparison(Comparison.LESS_THAN_OR_EQUALS, operands);
+        case "+":
+        case "-":
+        case "*":
+        case "/":
+        case "/INT":
+          if (!SqlTypeName.NUMERIC_TYPES.contains(node.type.getSqlTypeName())) {
+            return null;
+          }
+          return compileArithmetic(opName.charAt(0), operands);
+        default:
+          return null;
+      }
+    }
+
+    @Nullable
+    private static CompiledExpression compileComparison(
+        Comparison comparison, List<CompiledExpression> operands) {
+      if (operands.size() != 2
+          || !SqlTypeName.NUMERIC_TYPES.contains(operands.get(0).outputType)
+          || !SqlTypeName.NUMERIC_TYPES.contains(operands.get(1).outputType)) {
+        return null;
+      }
+      return new Compare(comparison, operands.get(0), operands.get(1));
+    }
+
+    /**
+     * Only arithmetic whose result is identical to the {@link java.math.BigDecimal} arithmetic of
+     * the interpreter is compiled: integral addition, subtraction and multiplication wrap around
+     * exactly like narrowing the exact result does, integral division truncates identically when
+     * the divisor fits an {@code int}, and double addition, subtraction and multiplication of
+     * exactly representable operands round the exact result once.
+     */
+    @Nullable
+    private static CompiledExpression compileArithmetic(
+        char operator, List<CompiledExpression> operands) {
+      if (operands.size() != 2) {
+        return null;
+      }
+      SqlTypeName leftType = operands.get(0).outputType;
+      SqlTypeName rightType = operands.get(1).outputType;
+      int leftIndex = ORDERED_ARITHMETIC_TYPES.indexOf(leftType);
+      int rightIndex = ORDERED_ARITHMETIC_TYPES.indexOf(rightType);
+      if (leftIndex < 0 || rightIndex < 0) {
+        return null;
+      }
+      SqlTypeName outputType = ORDERED_ARITHMETIC_TYPES.get(Math.max(leftIndex, rightIndex));
+
+      boolean supported;
+      if (operator == '/') {
+        supported = INTEGRAL_TYPES.contains(outputType) && outputType != SqlTypeName.BIGINT;
+      } else if (INTEGRAL_TYPES.contains(outputType)) {
+        supported = true;
+      } else {
+        supported =
+            outputType == SqlTypeName.DOUBLE
+                && EXACT_DOUBLE_TYPES.contains(leftType)
+                && EXACT_DOUBLE_TYPES.contains(rightType);
+      }
+      return supported
+          ? new Arithmetic(operator, outputType, operands.get(0), operands.get(1))
+          : null;
+    }
+
+    private static boolean allOfType(List<CompiledExpression> operands, SqlTypeName type) {
+      for (CompiledExpression operand : operands) {
+        if (operand.outputType != type) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A compiled expression. Values are boxed only by {@link #evaluate}, other accessors may only be
+   * called when {@link #isNull} is {@code false}.
+   */
+  abstract static class CompiledExpression implements Serializable {
+    final SqlTypeName outputType;
+
+    CompiledExpression(SqlTypeName outputType) {
+      this.outputType = outputType;
+    }
+
+    @Nullable
+    abstract Object evaluate(Row row);
+
+    boolean isNull(Row row) {
+      return evaluate(row) == null;
+    }
+
+    boolean booleanValue(Row row) {
+      return (Boolean) evaluate(row);
+    }
+
+    /** Returns whether a {@code BOOLEAN} expression is {@code TRUE}, rather than FALSE or NULL. */
+    boolean isTrue(Row row) {
+      return Boolean.TRUE.equals(evaluate(row));
+    }
+
+    long longValue(Row row) {
+      return ((Number) evaluate(row)).longValue();
+    }
+
+    double doubleValue(Row row) {
+      return ((Number) evaluate(row)).doubleValue();
+    }
+
+    float floatValue(Row row) {
+      return ((Number) evaluate(row)).floatValue();
+    }
+  }
+
+  private static class InputRef extends CompiledExpression {
+    private final int index;
+
+    InputRef(SqlTypeName outputType, int index) {
+      super(outputType);
+      this.index = index;
+    }
+
+    @Override
+    Object evaluate(Row row) {
+      return row.getValue(index);
+    }
+  }
+
+  private static class Literal extends CompiledExpression {
+    private final Object value;
+
+    Literal(SqlTypeName outputType, Object value) {
+      super(outputType);
+      this.value = value;
+    }
+
+    @Override
+    Object evaluate(Row row) {
+      return value;
+    }
+  }
+
+  /** Base class of compiled expressions that evaluate to a non null {@code BOOLEAN}. */
+  private abstract static class Condition extends CompiledExpression {
+    Condition() {
+      super(SqlTypeName.BOOLEAN);
+    }
+
+    @Override
+    Object evaluate(Row row) {
+      return booleanValue(row);
+    }
+
+    @Override
+    boolean isNull(Row row) {
+      return false;
+    }
+
+    @Override
+    boolean isTrue(Row row) {
+      return booleanValue(row);
+    }
+
+    @Override
+    abstract boolean booleanValue(Row row);
+  }
+
+  /**
+   * {@code AND}: {@code FALSE} if any operand is {@code FALSE}, otherwise {@code NULL} if any
+   * operand is {@code NULL}, otherwise {@code TRUE}.
+   */
+  private static class And extends CompiledExpression {
+    private final CompiledExpression[] operands;
+
+    And(CompiledExpression[] operands) {
+      super(SqlTypeName.BOOLEAN);
+      this.operands = operands;
+    }
+
+    @Override
+    @Nullable
+    Object evaluate(Row row) {
+      boolean unknown = false;
+      for (CompiledExpression operand : operands) {
+        // Boxed booleans are the shared Boolean constants, so this does not allocate.
+        Boolean value = (Boolean) operand.evaluate(row);
+        if (value == null) {
+          unknown = true;
+        } else if (!value) {
+          return false;
+        }
+      }
+      return unknown ? null : Boolean.TRUE;
+    }
+  }
+
+  /**
+   * {@code OR}: {@code TRUE} if any operand is {@code TRUE}, otherwise {@code NULL} if any operand
+   * is {@code NULL}, otherwise {@code FALSE}.
+   */
+  private static class Or extends CompiledExpression {
+    private final CompiledExpression[] operands;
+
+    Or(CompiledExpression[] operands) {
+      super(SqlTypeName.BOOLEAN);
+      this.operands = operands;
+    }
+
+    @Override
+    @Nullable
+    Object evaluate(Row row) {
+      boolean unknown = false;
+      for (CompiledExpression operand : operands) {
+        Boolean value = (Boolean) operand.evaluate(row);
+        if (value == null) {
+          unknown = true;
+        } else if (value) {
+          return true;
+        }
+      }
+      return unknown ? null : Boolean.FALSE;
+    }
+  }
+
+  /** {@code NOT}: {@code NULL} if its operand is {@code NULL}. */
+  private static class Not extends CompiledExpression {
+    private final CompiledExpression operand;
+
+    Not(CompiledExpression operand) {
+      super(SqlTypeName.BOOLEAN);
+      this.operand = operand;
+    }
+
+    @Override
+    @Nullable
+    Object evaluate(Row row) {
+      Boolean value = (Boolean) operand.evaluate(row);
+      return value == null ? null : !value;
+    }
+  }
+
+  private static class IsNull extends Condition {
+    private final CompiledExpression operand;
+    private final boolean expectNull;
+
+    IsNull(CompiledExpression operand, boolean expectNull) {
+      this.operand = operand;
+      this.expectNull = expectNull;
+    }
+
+    @Override
+    boolean booleanValue(Row row) {
+      return operand.isNull(row) == expectNull;
+    }
+  }
+
+  /** Numeric comparisons, which like the interpreter compare {@code float} values. */
+  private enum Comparison {
+    EQUALS,
+    NOT_EQUALS,
+    GREATER_THAN,
+    GREATER_THAN_OR_EQUALS,
+    LESS_THAN,
+    LESS_THAN_OR_EQUALS
+  }
+
+  private static class Compare extends Condition {
+    private final Comparison comparison;
+    private final CompiledExpression left;
+    private final CompiledExpression right;
+
+    Compare(Comparison comparison, CompiledExpression left, CompiledExpression right) {
+      this.comparison = comparison;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    boolean booleanValue(Row row) {
+      boolean leftNull = left.isNull(row);
+      boolean rightNull = right.isNull(row);
+      if (leftNull || rightNull) {
+        return leftNull && rightNull;
+      }
+      float leftValue = left.floatValue(row);
+      float rightValue = right.floatValue(row);
+      switch (comparison) {
+        case EQUALS:
+          return leftValue == rightValue;
+        case NOT_EQUALS:
+          return leftValue != rightValue;
+        case GREATER_THAN:
+          return leftValue > rightValue;
+        case GREATER_THAN_OR_EQUALS:
+          return leftValue >= rightValue;
+        case LESS_THAN:
+          return leftValue < rightValue;
+        case LESS_THAN_OR_EQUALS:
+          return leftValue <= rightValue;
+        default:
+          throw new IllegalStateException("Unknown comparison " + comparison);
+      }
+    }
+  }
+
+  private static class Arithmetic extends CompiledExpression {
+    private final char operator;
+    private final boolean integral;
+    private final CompiledExpression left;
+    private final CompiledExpression right;
+
+    Arithmetic(
+        char operator,
+        SqlTypeName outputType,
+        CompiledExpression left,
+        CompiledExpression right) {
+      super(outputType);
+      this.operator = operator;
+      this.integral = INTEGRAL_TYPES.contains(outputType);
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Object evaluate(Row row) {
+      if (isNull(row)) {
+        return null;
+      }
+      switch (outputType) {
+        case TINYINT:
+          return (byte) longValue(row);
+        case SMALLINT:
+          return (short) longValue(row);
+        case INTEGER:
+          return (int) longValue(row);
+        case BIGINT:
+          return longValue(row);
+        default:
+          return doubleValue(row);
+      }
+    }
+
+    @Override
+    boolean isNull(Row row) {
+      return left.isNull(row) || right.isNull(row);
+    }
+
+    @Override
+    long longValue(Row row) {
+      if (!integral) {
+        return (long) doubleValue(row);
+      }
+      long leftValue = left.longValue(row);
+      long rightValue = right.longValue(row);
+      long result;
+      switch (operator) {
+        case '+':
+          result = leftValue + rightValue;
+          break;
+        case '-':
+          result = leftValue - rightValue;
+          break;
+        case '*':
+          result = leftValue * rightValue;
+          break;
+        case '/':
+          result = leftValue / rightValue;
+          break;
+        default:
+          throw new IllegalStateException("Unknown operator " + operator);
+      }
+      switch (outputType) {
+        case TINYINT:
+          return (byte) result;
+        case SMALLINT:
+          return (short) result;
+        case INTEGER:
+          return (int) result;
+        default:
+          return result;
+      }
+    }
+
+    @Override
+    double doubleValue(Row row) {
+      if (integral) {
+        return longValue(row);
+      }
+      double leftValue = left.doubleValue(row);
+      double rightValue = right.doubleValue(row);
+      switch (operator) {
+        case '+':
+          return leftValue + rightValue;
+        case '-':
+          return leftValue - rightValue;
+        case '*':
+          return leftValue * rightValue;
+        default:
+          throw new IllegalStateException("Unknown operator " + operator);
+      }
+    }
+
+    @Override
+    float floatValue(Row row) {
+      return integral ? (float) longValue(row) : (float) doubleValue(row);
+    }
+  }
+}
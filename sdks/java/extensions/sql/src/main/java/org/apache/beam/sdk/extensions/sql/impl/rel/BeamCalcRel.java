@@ -18,11 +18,17 @@
 package org.apache.beam.sdk.extensions.sql.impl.rel;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static java.util.stream.Collectors.toList;
 
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.Objects;
 import javax.annotation.Nullable;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.extensions.sql.impl.interpreter.BeamSqlCompiledExecutor;
+import org.apache.beam.sdk.extensions.sql.impl.interpreter.BeamSqlExpressionEnvironment;
 import org.apache.beam.sdk.extensions.sql.impl.interpreter.BeamSqlExpressionEnvironments;
 import org.apache.beam.sdk.extensions.sql.impl.interpreter.BeamSqlExpressionExecutor;
 import org.apache.beam.sdk.extensions.sql.impl.interpreter.BeamSqlFnExecutor;
@@ -33,6 +39,7 @@ import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionList;
 import org.apache.beam.sdk.values.Row;
@@ -70,16 +77,49 @@ public class BeamCalcRel extends Calc implements BeamRelNode {
           pinput);
       PCollection<Row> upstream = pinput.get(0);
 
-      BeamSqlExpressionExecutor executor = new BeamSqlFnExecutor(BeamCalcRel.this.getProgram());
-
       PCollection<Row> projectStream =
-          upstream.apply(ParDo.of(new CalcFn(executor, CalciteUtils.toBeamSchema(rowType))));
+          upstream.apply(
+              ParDo.of(new CalcFn(newExecutor(), CalciteUtils.toBeamSchema(rowType))));
       projectStream.setCoder(CalciteUtils.toBeamSchema(getRowType()).getRowCoder());
 
       return projectStream;
     }
   }
 
+  /** Whether the input is an ORDER BY without a LIMIT, see {@link BeamSortRel#isFullSort}. */
+  public boolean isInputSortRelAndFullSort() {
+    return (input instanceof BeamSortRel) && ((BeamSortRel) input).isFullSort();
+  }
+
+  /**
+   * Returns a transform which applies this calc to the rows of each range produced by {@link
+   * BeamSortRel#buildSortedRangesTransform}, keeping the order of the rows within each range.
+   */
+  public PTransform<PCollection<KV<Integer, Iterable<Row>>>, PCollection<KV<Integer, Iterable<Row>>>>
+      buildSortedRangesTransform() {
+    return new SortedRangesTransform();
+  }
+
+  private class SortedRangesTransform
+      extends PTransform<
+          PCollection<KV<Integer, Iterable<Row>>>, PCollection<KV<Integer, Iterable<Row>>>> {
+    @Override
+    public PCollection<KV<Integer, Iterable<Row>>> expand(
+        PCollection<KV<Integer, Iterable<Row>>> ranges) {
+      Schema outputSchema = CalciteUtils.toBeamSchema(getRowType());
+      return ranges
+          .apply(ParDo.of(new CalcRangeFn(newExecutor(), outputSchema)))
+          .setCoder(KvCoder.of(VarIntCoder.of(), IterableCoder.of(outputSchema.getRowCoder())));
+    }
+  }
+
+  private BeamSqlExpressionExecutor newExecutor() {
+    RexProgram program = getProgram();
+    return BeamSqlCompiledExecutor.isSupported(program)
+        ? new BeamSqlCompiledExecutor(program)
+        : new BeamSqlFnExecutor(program);
+  }
+
   public int getLimitCountOfSortRel() {
     if (input instanceof BeamSortRel) {
       return ((BeamSortRel) input).getCount();
@@ -110,23 +150,44 @@ public class BeamCalcRel extends Calc implements BeamRelNode {
 
     @ProcessElement
     public void processElement(ProcessContext c, BoundedWindow window) {
-      Row inputRow = c.element();
-      @Nullable
-      List<Object> rawResultValues =
-          executor.execute(
-              inputRow, window, BeamSqlExpressionEnvironments.forRow(inputRow, window));
-
-      if (rawResultValues != null) {
-        List<Object> castResultValues =
-            IntStream.range(0, outputSchema.getFieldCount())
-                .mapToObj(i -> castField(rawResultValues, i))
-                .collect(toList());
-        c.output(Row.withSchema(outputSchema).addValues(castResultValues).build());
+      Row outputRow = calc(executor, outputSchema, c.element(), window);
+      if (outputRow != null) {
+        c.output(outputRow);
       }
     }
 
-    private Object castField(List<Object> resultValues, int i) {
-      return BeamTableUtils.autoCastField(outputSchema.getField(i), resultValues.get(i));
+    @Teardown
+    public void close() {
+      executor.close();
+    }
+  }
+
+  /**
+   * Applies the calc to the rows of a sorted range, keeping their order. The rows are transformed
+   * lazily as the output is iterated, so a range which was sorted on disk is not copied into
+   * memory.
+   */
+  private static class CalcRangeFn
+      extends DoFn<KV<Integer, Iterable<Row>>, KV<Integer, Iterable<Row>>> {
+    private final BeamSqlExpressionExecutor executor;
+    private final Schema outputSchema;
+
+    CalcRangeFn(BeamSqlExpressionExecutor executor, Schema outputSchema) {
+      this.executor = executor;
+      this.outputSchema = outputSchema;
+    }
+
+    @Setup
+    public void setup() {
+      executor.prepare();
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c, BoundedWindow window) {
+      Iterable<Row> outputRows =
+          Iterables.transform(
+              c.element().getValue(), row -> calc(executor, outputSchema, row, window));
+      c.output(KV.of(c.element().getKey(), Iterables.filter(outputRows, Objects::nonNull)));
     }
 
     @Teardown
@@ -134,4 +195,25 @@ public class BeamCalcRel extends Calc implements BeamRelNode {
       executor.close();
     }
   }
+
+  /** Returns the output row for the input row, or {@code null} if it is filtered out. */
+  @Nullable
+  private static Row calc(
+      BeamSqlExpressionExecutor executor, Schema outputSchema, Row inputRow, BoundedWindow window) {
+    // The compiled executor evaluates rows without an environment.
+    BeamSqlExpressionEnvironment env =
+        executor instanceof BeamSqlCompiledExecutor
+            ? null
+            : BeamSqlExpressionEnvironments.forRow(inputRow, window);
+    @Nullable List<Object> rawResultValues = executor.execute(inputRow, window, env);
+    if (rawResultValues == null) {
+      return null;
+    }
+    List<Object> castResultValues = new ArrayList<>(outputSchema.getFieldCount());
+    for (int i = 0; i < outputSchema.getFieldCount(); i++) {
+      castResultValues.add(
+          BeamTableUtils.autoCastField(outputSchema.getField(i), rawResultValues.get(i)));
+    }
+    return Row.withSchema(outputSchema).addValues(castResultValues).build();
+  }
 }
@@ -21,9 +21,11 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
@@ -52,6 +54,7 @@ import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollection.IsBounded;
+import org.apache.beam.sdk.values.PCollectionList;
 import org.apache.beam.sdk.values.PValue;
 import org.apache.beam.sdk.values.Row;
 import org.apache.calcite.adapter.enumerable.EnumerableRel;
@@ -131,6 +134,8 @@ public class BeamEnumerableConverter extends ConverterImpl implements Enumerable
         return count(options, node);
       } else if (isLimitQuery(node)) {
         return limitCollect(options, node);
+      } else if (isFullSortQuery(node)) {
+        return sortedCollect(options, node);
       }
 
       return collect(options, node);
@@ -218,6 +223,47 @@ public class BeamEnumerableConverter extends ConverterImpl implements Enumerable
     return Linq4j.asEnumerable(values);
   }
 
+  /**
+   * Collects the result of an ORDER BY without a LIMIT range by range, so that the rows are returned
+   * in order. A {@link BeamCalcRel} on top of the sort is applied to each range.
+   */
+  private static Enumerable<Object> sortedCollect(PipelineOptions options, BeamRelNode node) {
+    long id = options.getOptionsId();
+    Map<Integer, List<Object>> collectedRanges = new ConcurrentHashMap<>();
+
+    checkArgument(
+        options
+            .getRunner()
+            .getCanonicalName()
+            .equals("org.apache.beam.runners.direct.DirectRunner"),
+        "SELECT without INSERT is only supported in DirectRunner in SQL Shell.");
+
+    RangeCollector.globalRanges.put(id, collectedRanges);
+
+    BeamSortRel sortNode =
+        (BeamSortRel) (node instanceof BeamSortRel ? node : node.getPCollectionInputs().get(0));
+    Pipeline pipeline = Pipeline.create(options);
+    PCollection<Row> input =
+        BeamSqlRelUtils.toPCollection(
+            pipeline, (BeamRelNode) sortNode.getPCollectionInputs().get(0));
+    PCollection<KV<Integer, Iterable<Row>>> ranges =
+        PCollectionList.of(input).apply(sortNode.buildSortedRangesTransform());
+    if (node instanceof BeamCalcRel) {
+      ranges = ranges.apply(((BeamCalcRel) node).buildSortedRangesTransform());
+    }
+    ranges.apply(ParDo.of(new RangeCollector()));
+    PipelineResult result = pipeline.run();
+    result.waitUntilFinish();
+
+    RangeCollector.globalRanges.remove(id);
+
+    List<Object> values = new ArrayList<>();
+    for (List<Object> range : new TreeMap<>(collectedRanges).values()) {
+      values.addAll(range);
+    }
+    return Linq4j.asEnumerable(values);
+  }
+
   private static Enumerable<Object> limitCollect(PipelineOptions options, BeamRelNode node) {
     long id = options.getOptionsId();
     Queue<Object> values = new ConcurrentLinkedQueue<Object>();
@@ -328,6 +374,31 @@ public class BeamEnumerableConverter extends ConverterImpl implements Enumerable
     }
   }
 
+  private static class RangeCollector extends DoFn<KV<Integer, Iterable<Row>>, Void> {
+
+    // This will only work on the direct runner.
+    private static final Map<Long, Map<Integer, List<Object>>> globalRanges =
+        new ConcurrentHashMap<>();
+
+    @Nullable private volatile Map<Integer, List<Object>> ranges;
+
+    @StartBundle
+    public void startBundle(StartBundleContext context) {
+      long id = context.getPipelineOptions().getOptionsId();
+      ranges = globalRanges.get(id);
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext context) {
+      List<Object> values = new ArrayList<>();
+      for (Row row : context.element().getValue()) {
+        Object[] avaticaRow = rowToAvatica(row);
+        values.add(avaticaRow.length == 1 ? avaticaRow[0] : avaticaRow);
+      }
+      ranges.put(context.element().getKey(), values);
+    }
+  }
+
   private static Object[] rowToAvatica(Row row) {
     Schema schema = row.getSchema();
     Object[] convertedColumns = new Object[schema.getFields().size()];
@@ -409,6 +480,11 @@ public class BeamEnumerableConverter extends ConverterImpl implements Enumerable
         || (node instanceof BeamCalcRel && ((BeamCalcRel) node).isInputSortRelAndLimitOnly());
   }
 
+  private static boolean isFullSortQuery(BeamRelNode node) {
+    return (node instanceof BeamSortRel && ((BeamSortRel) node).isFullSort())
+        || (node instanceof BeamCalcRel && ((BeamCalcRel) node).isInputSortRelAndFullSort());
+  }
+
   private static int getLimitCount(BeamRelNode node) {
     if (node instanceof BeamSortRel) {
       return ((BeamSortRel) node).getCount();
@@ -19,18 +19,27 @@
 package org.apache.beam.sdk.extensions.sql.impl.rel;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.ListCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.extensions.sql.impl.BeamSqlPipelineOptions;
+import org.apache.beam.sdk.extensions.sql.impl.transform.BeamSortTransforms.RangeSort;
+import org.apache.beam.sdk.extensions.sql.impl.transform.BeamSortTransforms.SortKeyEncoder;
+import org.apache.beam.sdk.extensions.sql.impl.transform.BeamSortTransforms.SortedRanges;
 import org.apache.beam.sdk.extensions.sql.impl.utils.CalciteUtils;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.schemas.Schema.FieldType;
 import org.apache.beam.sdk.state.StateSpec;
 import org.apache.beam.sdk.state.StateSpecs;
@@ -63,15 +72,17 @@ import org.apache.calcite.sql.type.SqlTypeName;
 /**
  * {@code BeamRelNode} to replace a {@code Sort} node.
  *
- * <p>Since Beam does not fully supported global sort we are using {@link Top} to implement the
- * {@code Sort} algebra. The following types of ORDER BY are supported:
+ * <p>ORDER BY with a limit is implemented with {@link Top}, the following are supported:
  *
  * <pre>{@code
  * select * from t order by id desc limit 10;
  * select * from t order by id desc limit 10 offset 5;
  * }</pre>
  *
- * <p>but Order BY without a limit is NOT supported:
+ * <p>ORDER BY without a limit is implemented as a distributed sort with {@link RangeSort}: the
+ * input is range partitioned by sort key, using boundaries sampled from the input, and each range
+ * is sorted with the external sorter of the sorter extension. The number of ranges is set by
+ * {@link BeamSqlPipelineOptions#getNumSortRanges}:
  *
  * <pre>{@code
  * select * from t order by id desc
@@ -82,6 +93,11 @@ import org.apache.calcite.sql.type.SqlTypeName;
  * <ul>
  *   <li>Due to the constraints of {@link Top}, the result of a `ORDER BY LIMIT` must fit into the
  *       memory of a single machine.
+ *   <li>A {@code PCollection} has no order, so the result of an `ORDER BY` without a limit is only
+ *       ordered within each range, and ranges cover increasing sort keys. {@link
+ *       #buildSortedRangesTransform} keeps the range of each row for consumers which need the
+ *       order, like {@link BeamEnumerableConverter} or a sink writing ordered shards.
+ *   <li>OFFSET is only supported together with a LIMIT.
  *   <li>Since `WINDOW`(HOP, TUMBLE, SESSION etc) is always associated with `GroupBy`, it does not
  *       make much sense to use `ORDER BY` with `WINDOW`.
  * </ul>
@@ -120,7 +136,11 @@ public class BeamSortRel extends Sort implements BeamRelNode {
     }
 
     if (fetch == null) {
-      throw new UnsupportedOperationException("ORDER BY without a LIMIT is not supported!");
+      if (offset != null) {
+        throw new UnsupportedOperationException("OFFSET without a LIMIT is not supported!");
+      }
+      count = -1;
+      return;
     }
 
     RexLiteral fetchLiteral = (RexLiteral) fetch;
@@ -132,6 +152,11 @@ public class BeamSortRel extends Sort implements BeamRelNode {
     }
   }
 
+  /** Whether this is an ORDER BY without a LIMIT, which sorts the whole input. */
+  public boolean isFullSort() {
+    return count < 0;
+  }
+
   public boolean isLimitOnly() {
     return fieldIndices.size() == 0;
   }
@@ -177,6 +202,12 @@ public class BeamSortRel extends Sort implements BeamRelNode {
                   GlobalWindows.class.getSimpleName(), windowingStrategy));
         }
 
+        if (isFullSort()) {
+          return upstream
+              .apply("rangeSort", new RangeSort(sortKeyEncoder(), numSortRanges()))
+              .setCoder(CalciteUtils.toBeamSchema(getRowType()).getRowCoder());
+        }
+
         BeamSqlRowComparator comparator =
             new BeamSqlRowComparator(fieldIndices, orientation, nullsFirst);
 
@@ -205,6 +236,69 @@ public class BeamSortRel extends Sort implements BeamRelNode {
     }
   }
 
+  /**
+   * Returns a transform which sorts the input of an ORDER BY without a LIMIT into ranges, see {@link
+   * SortedRanges}. Concatenating the rows of the ranges in the order of their index yields the rows
+   * in the requested order.
+   */
+  public PTransform<PCollectionList<Row>, PCollection<KV<Integer, Iterable<Row>>>>
+      buildSortedRangesTransform() {
+    checkState(isFullSort(), "Only an ORDER BY without a LIMIT is sorted into ranges");
+    return new SortedRangesTransform();
+  }
+
+  /**
+   * The number of ranges to sort into, see {@link BeamSqlPipelineOptions#getNumSortRanges}. It is
+   * read from the options of the tables this sort reads from, which {@code SET numSortRanges}
+   * changes, and defaults when no input carries options.
+   */
+  private int numSortRanges() {
+    Map<String, String> options = findPipelineOptions(this);
+    PipelineOptions pipelineOptions =
+        options == null
+            ? PipelineOptionsFactory.create()
+            : BeamEnumerableConverter.createPipelineOptions(options);
+    return pipelineOptions.as(BeamSqlPipelineOptions.class).getNumSortRanges();
+  }
+
+  @Nullable
+  private static Map<String, String> findPipelineOptions(RelNode node) {
+    if (node instanceof BeamIOSourceRel) {
+      return ((BeamIOSourceRel) node).getPipelineOptions();
+    }
+    for (RelNode input : node.getInputs()) {
+      Map<String, String> options = findPipelineOptions(input);
+      if (options != null) {
+        return options;
+      }
+    }
+    return null;
+  }
+
+  private SortKeyEncoder sortKeyEncoder() {
+    return new SortKeyEncoder(
+        CalciteUtils.toBeamSchema(getInput().getRowType()), fieldIndices, orientation, nullsFirst);
+  }
+
+  private class SortedRangesTransform
+      extends PTransform<PCollectionList<Row>, PCollection<KV<Integer, Iterable<Row>>>> {
+    @Override
+    public PCollection<KV<Integer, Iterable<Row>>> expand(PCollectionList<Row> pinput) {
+      checkArgument(
+          pinput.size() == 1,
+          "Wrong number of inputs for %s: %s",
+          BeamSortRel.class.getSimpleName(),
+          pinput);
+      PCollection<Row> upstream = pinput.get(0);
+      checkArgument(
+          upstream.getWindowingStrategy().getWindowFn() instanceof GlobalWindows,
+          "`ORDER BY` is only supported for %s, actual windowing strategy: %s",
+          GlobalWindows.class.getSimpleName(),
+          upstream.getWindowingStrategy());
+      return upstream.apply("sortedRanges", new SortedRanges(sortKeyEncoder(), numSortRanges()));
+    }
+  }
+
   private class LimitTransform<T> extends PTransform<PCollection<T>, PCollection<T>> {
     @Override
     public PCollection<T> expand(PCollection<T> input) {
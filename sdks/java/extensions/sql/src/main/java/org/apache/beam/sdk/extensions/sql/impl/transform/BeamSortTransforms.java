@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.extensions.sql.impl.transform;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.UnsignedBytes;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.extensions.sorter.BufferedExternalSorter;
+import org.apache.beam.sdk.extensions.sorter.ExternalSorter.Options.SorterType;
+import org.apache.beam.sdk.extensions.sorter.SortValues;
+import org.apache.beam.sdk.extensions.sql.impl.utils.CalciteUtils;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.transforms.ApproximateQuantiles;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.Keys;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.sdk.values.Row;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.joda.time.ReadableInstant;
+
+/** Collections of {@code PTransform} and {@code DoFn} used to perform a distributed sort. */
+public class BeamSortTransforms {
+
+  /**
+   * Sorts a {@code PCollection<Row>} without collecting it on a single worker.
+   *
+   * <p>The sort keys of a sample of the input determine the boundaries of {@code numRanges}
+   * ranges. Each row is assigned to the range of its sort key, and each range is grouped and sorted
+   * with the external sorter of the sorter extension, so a range does not need to fit in memory.
+   * See {@link SortedRanges} for a variant that keeps the range index, e.g. to write one ordered
+   * shard per range.
+   */
+  public static class RangeSort extends PTransform<PCollection<Row>, PCollection<Row>> {
+    private final SortedRanges sortedRanges;
+
+    public RangeSort(SortKeyEncoder encoder, int numRanges) {
+      this.sortedRanges = new SortedRanges(encoder, numRanges);
+    }
+
+    @Override
+    public PCollection<Row> expand(PCollection<Row> input) {
+      return input
+          .apply("SortedRanges", sortedRanges)
+          .apply("FlattenRanges", ParDo.of(new FlattenRangeFn()))
+          .setCoder(input.getCoder());
+    }
+  }
+
+  /**
+   * Range partitions and sorts a {@code PCollection<Row>}, producing one element per non empty
+   * range holding its rows in order. Every row of range {@code i} sorts before or equal to every
+   * row of range {@code i + 1}.
+   */
+  public static class SortedRanges
+      extends PTransform<PCollection<Row>, PCollection<KV<Integer, Iterable<Row>>>> {
+    private final SortKeyEncoder encoder;
+    private final int numRanges;
+
+    public SortedRanges(SortKeyEncoder encoder, int numRanges) {
+      checkArgument(numRanges > 0, "numRanges must be positive, was %s", numRanges);
+      this.encoder = encoder;
+      this.numRanges = numRanges;
+    }
+
+    @Override
+    public PCollection<KV<Integer, Iterable<Row>>> expand(PCollection<Row> input) {
+      Coder<Row> rowCoder = input.getCoder();
+      PCollection<KV<byte[], Row>> keyedRows =
+          input
+              .apply("EncodeSortKeys", ParDo.of(new EncodeSortKeyFn(encoder)))
+              .setCoder(KvCoder.of(ByteArrayCoder.of(), rowCoder));
+
+      PCollectionView<List<byte[]>> boundaries =
+          keyedRows
+              .apply("SortKeys", Keys.create())
+              .setCoder(ByteArrayCoder.of())
+              .apply(
+                  "SampleBoundaries",
+                  ApproximateQuantiles.globally(numRanges + 1, new LexicographicComparator()))
+              .apply("BoundariesView", View.asSingleton());
+
+      return keyedRows
+          .apply(
+              "AssignRanges",
+              ParDo.of(new AssignRangeFn(boundaries)).withSideInputs(boundaries))
+          .setCoder(
+              KvCoder.of(VarIntCoder.of(), KvCoder.of(ByteArrayCoder.of(), rowCoder)))
+          .apply("GroupRanges", GroupByKey.create())
+          .apply(
+              "SortRanges",
+              SortValues.create(
+                  BufferedExternalSorter.options().withExternalSorterType(SorterType.NATIVE)))
+          .apply("DropSortKeys", ParDo.of(new DropSortKeysFn()))
+          .setCoder(KvCoder.of(VarIntCoder.of(), IterableCoder.of(rowCoder)));
+    }
+  }
+
+  /**
+   * Encodes the sort fields of a {@link Row} so that comparing the encodings as unsigned bytes
+   * orders the rows like {@code ORDER BY} does.
+   *
+   * <p>Each field is written as a null marker followed by a fixed size big-endian representation
+   * with the sign flipped for numbers and instants, or a terminated sequence of UTF-16 code units
+   * for strings. Descending fields have all of their bytes inverted, which reverses their order as
+   * every field encoding is prefix free. The null marker is not inverted, as {@code NULLS FIRST}
+   * and {@code NULLS LAST} do not depend on the direction.
+   */
+  public static class SortKeyEncoder implements Serializable {
+    private final int[] fieldIndices;
+    private final SqlTypeName[] fieldTypes;
+    private final boolean[] ascending;
+    private final boolean[] nullsFirst;
+
+    public SortKeyEncoder(
+        Schema schema,
+        List<Integer> fieldIndices,
+        List<Boolean> ascending,
+        List<Boolean> nullsFirst) {
+      int size = fieldIndices.size();
+      checkArgument(
+          ascending.size() == size && nullsFirst.size() == size,
+          "Sort fields %s, directions %s and null directions %s must have the same size",
+          fieldIndices,
+          ascending,
+          nullsFirst);
+      this.fieldIndices = new int[size];
+      this.fieldTypes = new SqlTypeName[size];
+      this.ascending = new boolean[size];
+      this.nullsFirst = new boolean[size];
+      for (int i = 0; i < size; i++) {
+        this.fieldIndices[i] = fieldIndices.get(i);
+        this.fieldTypes[i] =
+            CalciteUtils.toSqlTypeName(schema.getField(fieldIndices.get(i)).getType());
+        this.ascending[i] = ascending.get(i);
+        this.nullsFirst[i] = nullsFirst.get(i);
+        checkArgument(
+            isSupported(fieldTypes[i]), "Data type: %s not supported yet!", fieldTypes[i]);
+      }
+    }
+
+    private static boolean isSupported(SqlTypeName type) {
+      switch (type) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case FLOAT:
+        case DOUBLE:
+        case CHAR:
+        case VARCHAR:
+        case DATE:
+        case TIMESTAMP:
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    public byte[] encode(Row row) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (int i = 0; i < fieldIndices.length; i++) {
+        Object value = row.getValue(fieldIndices[i]);
+        if (value == null) {
+          out.write(nullsFirst[i] ? 0 : 2);
+          continue;
+        }
+        out.write(1);
+        int mask = ascending[i] ? 0 : 0xFF;
+        switch (fieldTypes[i]) {
+          case TINYINT:
+            writeBigEndian(out, ((Byte) value) ^ Byte.MIN_VALUE, 1, mask);
+            break;
+          case SMALLINT:
+            writeBigEndian(out, ((Short) value) ^ Short.MIN_VALUE, 2, mask);
+            break;
+          case INTEGER:
+            writeBigEndian(out, ((Integer) value) ^ Integer.MIN_VALUE, 4, mask);
+            break;
+          case BIGINT:
+            writeBigEndian(out, ((Long) value) ^ Long.MIN_VALUE, 8, mask);
+            break;
+          case FLOAT:
+            int floatBits = Float.floatToIntBits((Float) value);
+            writeBigEndian(
+                out, floatBits < 0 ? ~floatBits : floatBits ^ Integer.MIN_VALUE, 4, mask);
+            break;
+          case DOUBLE:
+            long doubleBits = Double.doubleToLongBits((Double) value);
+            writeBigEndian(
+                out, doubleBits < 0 ? ~doubleBits : doubleBits ^ Long.MIN_VALUE, 8, mask);
+            break;
+          case DATE:
+          case TIMESTAMP:
+            writeBigEndian(out, ((ReadableInstant) value).getMillis() ^ Long.MIN_VALUE, 8, mask);
+            break;
+          default:
+            // CHAR and VARCHAR order by UTF-16 code unit like String#compareTo. A NUL code unit is
+            // escaped so that the terminator sorts before any continuation.
+            CharSequence chars = (CharSequence) value;
+            for (int c = 0; c < chars.length(); c++) {
+              char ch = chars.charAt(c);
+              writeBigEndian(out, ch, 2, mask);
+              if (ch == 0) {
+                out.write(1 ^ mask);
+              }
+            }
+            writeBigEndian(out, 0, 3, mask);
+        }
+      }
+      return out.toByteArray();
+    }
+
+    private static void writeBigEndian(ByteArrayOutputStream out, long value, int bytes, int mask) {
+      for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+        out.write(((int) (value >>> shift) & 0xFF) ^ mask);
+      }
+    }
+  }
+
+  /** Compares byte arrays as unsigned bytes, like the sorter extension does. */
+  static class LexicographicComparator implements Comparator<byte[]>, Serializable {
+    @Override
+    public int compare(byte[] left, byte[] right) {
+      return UnsignedBytes.lexicographicalComparator().compare(left, right);
+    }
+  }
+
+  private static class EncodeSortKeyFn extends DoFn<Row, KV<byte[], Row>> {
+    private final SortKeyEncoder encoder;
+
+    EncodeSortKeyFn(SortKeyEncoder encoder) {
+      this.encoder = encoder;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      c.output(KV.of(encoder.encode(c.element()), c.element()));
+    }
+  }
+
+  /**
+   * Assigns each sort key to the number of sampled boundaries below it. The first and last sample
+   * are the minimum and maximum, so only the ones in between split ranges.
+   */
+  private static class AssignRangeFn extends DoFn<KV<byte[], Row>, KV<Integer, KV<byte[], Row>>> {
+    private final PCollectionView<List<byte[]>> boundariesView;
+    private final Comparator<byte[]> comparator = new LexicographicComparator();
+
+    AssignRangeFn(PCollectionView<List<byte[]>> boundariesView) {
+      this.boundariesView = boundariesView;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      List<byte[]> boundaries = c.sideInput(boundariesView);
+      byte[] key = c.element().getKey();
+      int low = 1;
+      int high = boundaries.size() - 1;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (comparator.compare(boundaries.get(mid), key) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      c.output(KV.of(Math.max(low - 1, 0), c.element()));
+    }
+  }
+
+  private static class DropSortKeysFn
+      extends DoFn<KV<Integer, Iterable<KV<byte[], Row>>>, KV<Integer, Iterable<Row>>> {
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      // Lazily, so that a range which was sorted on disk is not copied into memory.
+      c.output(KV.of(c.element().getKey(), Iterables.transform(c.element().getValue(), KV::getValue)));
+    }
+  }
+
+  private static class FlattenRangeFn extends DoFn<KV<Integer, Iterable<Row>>, Row> {
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      for (Row row : c.element().getValue()) {
+        c.output(row);
+      }
+    }
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.extensions.sql.impl.interpreter;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.beam.sdk.extensions.sql.impl.utils.CalciteUtils;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.SerializableUtils;
+import org.apache.beam.sdk.values.Row;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeSystem;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgram;
+import org.apache.calcite.rex.RexProgramBuilder;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link BeamSqlCompiledExecutor}. */
+@RunWith(JUnit4.class)
+public class BeamSqlCompiledExecutorTest {
+  private static final JavaTypeFactory TYPE_FACTORY =
+      new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
+  private static final RexBuilder rexBuilder = new RexBuilder(TYPE_FACTORY);
+  private static final RelDataType relDataType =
+      TYPE_FACTORY
+          .builder()
+          .add("order_id", SqlTypeName.BIGINT)
+          .add("site_id", SqlTypeName.INTEGER)
+          .add("price", SqlTypeName.DOUBLE)
+          .add("order_time", SqlTypeName.BIGINT)
+          .add("order_info", SqlTypeName.VARCHAR)
+          .build();
+
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void testFilterAndProjectionsMatchInterpreter() {
+    RexProgramBuilder builder = new RexProgramBuilder(relDataType, rexBuilder);
+    builder.addCondition(
+        rexBuilder.makeCall(
+            SqlStdOperatorTable.OR,
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.AND,
+                rexBuilder.makeCall(
+                    SqlStdOperatorTable.GREATER_THAN, inputRef(1), intLiteral(0)),
+                rexBuilder.makeCall(
+                    SqlStdOperatorTable.LESS_THAN_OR_EQUAL,
+                    inputRef(2),
+                    rexBuilder.makeExactLiteral(new BigDecimal("10.5")))),
+            rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, inputRef(0), intLiteral(42))));
+    builder.addProject(
+        rexBuilder.makeCall(SqlStdOperatorTable.PLUS, inputRef(0), inputRef(1)), "sum");
+    builder.addProject(
+        rexBuilder.makeCall(SqlStdOperatorTable.MULTIPLY, inputRef(2), intLiteral(3)), "product");
+    builder.addProject(
+        rexBuilder.makeCall(SqlStdOperatorTable.DIVIDE, inputRef(1), intLiteral(-3)), "quotient");
+    builder.addProject(
+        rexBuilder.makeCall(SqlStdOperatorTable.MINUS, inputRef(1), intLiteral(1)), "difference");
+    builder.addProject(inputRef(4), "info");
+    builder.addProject(
+        rexBuilder.makeCall(
+            SqlStdOperatorTable.NOT,
+            rexBuilder.makeCall(SqlStdOperatorTable.NOT_EQUALS, inputRef(3), inputRef(0))),
+        "same");
+    RexProgram program = builder.getProgram();
+
+    assertTrue(BeamSqlCompiledExecutor.isSupported(program));
+    BeamSqlExpressionExecutor compiled = new BeamSqlCompiledExecutor(program);
+    BeamSqlExpressionExecutor interpreted = new BeamSqlFnExecutor(program);
+
+    List<Row> rows =
+        Arrays.asList(
+            newRow(1234567L, 0, 8.9, 1234567L, "This is an order."),
+            newRow(42L, -7, 99.25, 42L, "matches by id"),
+            newRow(5L, 17, 10.5, 6L, "matches by site"),
+            newRow(6L, 17, 10.75, 6L, "filtered out"),
+            newRow(Long.MAX_VALUE, Integer.MAX_VALUE, 0.1, 0L, "overflow"));
+    for (Row input : rows) {
+      assertEquals(
+          input.toString(), executeWith(interpreted, input), executeWith(compiled, input));
+    }
+    assertThat(
+        executeWith(compiled, rows.get(2)),
+        contains((Object) 22L, 31.5, -5, 16, "matches by site", false));
+    assertNull(executeWith(compiled, rows.get(3)));
+  }
+
+  @Test
+  public void testNullValues() {
+    RelDataType nullableType =
+        TYPE_FACTORY.createTypeWithNullability(TYPE_FACTORY.createSqlType(SqlTypeName.INTEGER), true);
+    RelDataType inputType =
+        TYPE_FACTORY.builder().add("a", nullableType).add("b", nullableType).build();
+    RexNode a = rexBuilder.makeInputRef(nullableType, 0);
+    RexNode b = rexBuilder.makeInputRef(nullableType, 1);
+
+    RexProgramBuilder builder = new RexProgramBuilder(inputType, rexBuilder);
+    builder.addProject(rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL, a), "a_null");
+    builder.addProject(rexBuilder.makeCall(SqlStdOperatorTable.IS_NOT_NULL, b), "b_not_null");
+    builder.addProject(rexBuilder.makeCall(SqlStdOperatorTable.PLUS, a, b), "sum");
+    builder.addProject(rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN, a, b), "greater");
+    RexProgram program = builder.getProgram();
+    BeamSqlExpressionExecutor executor = new BeamSqlCompiledExecutor(program);
+
+    Row input =
+        Row.withSchema(CalciteUtils.toBeamSchema(inputType)).addValues(null, 3).build();
+    assertThat(executeWith(executor, input), contains(true, true, null, false));
+
+    input = Row.withSchema(CalciteUtils.toBeamSchema(inputType)).addValues(null, null).build();
+    assertThat(executeWith(executor, input), contains(true, false, null, true));
+  }
+
+  @Test
+  public void testThreeValuedLogic() {
+    RelDataType nullableBoolean =
+        TYPE_FACTORY.createTypeWithNullability(TYPE_FACTORY.createSqlType(SqlTypeName.BOOLEAN), true);
+    RelDataType inputType =
+        TYPE_FACTORY.builder().add("a", nullableBoolean).add("b", nullableBoolean).build();
+    RexNode a = rexBuilder.makeInputRef(nullableBoolean, 0);
+    RexNode b = rexBuilder.makeInputRef(nullableBoolean, 1);
+
+    RexProgramBuilder builder = new RexProgramBuilder(inputType, rexBuilder);
+    builder.addProject(rexBuilder.makeCall(SqlStdOperatorTable.AND, a, b), "and");
+    builder.addProject(rexBuilder.makeCall(SqlStdOperatorTable.OR, a, b), "or");
+    builder.addProject(rexBuilder.makeCall(SqlStdOperatorTable.NOT, a), "not");
+    BeamSqlExpressionExecutor executor = new BeamSqlCompiledExecutor(builder.getProgram());
+
+    assertEquals(
+        Arrays.asList(null, true, null), executeWith(executor, booleanRow(inputType, null, true)));
+    assertEquals(
+        Arrays.asList(false, null, null),
+        executeWith(executor, booleanRow(inputType, null, false)));
+    assertEquals(
+        Arrays.asList(null, null, null), executeWith(executor, booleanRow(inputType, null, null)));
+    assertEquals(
+        Arrays.asList(false, true, false),
+        executeWith(executor, booleanRow(inputType, true, false)));
+  }
+
+  @Test
+  public void testNullConditionFiltersRow() {
+    RelDataType nullableBoolean =
+        TYPE_FACTORY.createTypeWithNullability(TYPE_FACTORY.createSqlType(SqlTypeName.BOOLEAN), true);
+    RelDataType inputType =
+        TYPE_FACTORY.builder().add("a", nullableBoolean).add("b", nullableBoolean).build();
+    RexNode a = rexBuilder.makeInputRef(nullableBoolean, 0);
+    RexNode b = rexBuilder.makeInputRef(nullableBoolean, 1);
+
+    for (RexNode condition :
+        Arrays.asList(
+            a,
+            rexBuilder.makeCall(SqlStdOperatorTable.NOT, a),
+            rexBuilder.makeCall(SqlStdOperatorTable.AND, a, b),
+            rexBuilder.makeCall(SqlStdOperatorTable.OR, a, b))) {
+      RexProgramBuilder builder = new RexProgramBuilder(inputType, rexBuilder);
+      builder.addCondition(condition);
+      builder.addProject(b, "b");
+      BeamSqlExpressionExecutor executor = new BeamSqlCompiledExecutor(builder.getProgram());
+
+      // The condition is NULL, which is not TRUE, so the row is dropped.
+      assertNull(condition.toString(), executeWith(executor, booleanRow(inputType, null, null)));
+      assertEquals(
+          condition.toString(),
+          Arrays.asList((Object) true),
+          executeWith(executor, booleanRow(inputType, !condition.isA(SqlKind.NOT), true)));
+    }
+  }
+
+  @Test
+  public void testSerializable() {
+    RexProgramBuilder builder = new RexProgramBuilder(relDataType, rexBuilder);
+    builder.addCondition(
+        rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN, inputRef(0), intLiteral(0)));
+    builder.addProject(
+        rexBuilder.makeCall(SqlStdOperatorTable.MULTIPLY, inputRef(1), intLiteral(2)), "double");
+    BeamSqlExpressionExecutor executor =
+        SerializableUtils.clone(new BeamSqlCompiledExecutor(builder.getProgram()));
+
+    assertThat(executeWith(executor, newRow(1L, 21, 0.0, 0L, "")), contains((Object) 42));
+  }
+
+  @Test
+  public void testUnsupportedOperator() {
+    RexProgramBuilder builder = new RexProgramBuilder(relDataType, rexBuilder);
+    builder.addCondition(
+        rexBuilder.makeCall(
+            SqlStdOperatorTable.LIKE, inputRef(4), rexBuilder.makeLiteral("%order%")));
+    builder.addProject(inputRef(0), "id");
+    RexProgram program = builder.getProgram();
+
+    assertFalse(BeamSqlCompiledExecutor.isSupported(program));
+    thrown.expect(IllegalArgumentException.class);
+    new BeamSqlCompiledExecutor(program);
+  }
+
+  @Test
+  public void testUnsupportedArithmeticTypes() {
+    RexProgramBuilder builder = new RexProgramBuilder(relDataType, rexBuilder);
+    // BIGINT values are not all representable as doubles, so the result could differ.
+    builder.addProject(
+        rexBuilder.makeCall(SqlStdOperatorTable.PLUS, inputRef(0), inputRef(2)), "sum");
+
+    assertFalse(BeamSqlCompiledExecutor.isSupported(builder.getProgram()));
+  }
+
+  private static RexNode inputRef(int index) {
+    return rexBuilder.makeInputRef(relDataType.getFieldList().get(index).getType(), index);
+  }
+
+  private static RexNode intLiteral(int value) {
+    return rexBuilder.makeExactLiteral(BigDecimal.valueOf(value));
+  }
+
+  private static Row booleanRow(RelDataType type, Boolean a, Boolean b) {
+    return Row.withSchema(CalciteUtils.toBeamSchema(type)).addValues(a, b).build();
+  }
+
+  private static Row newRow(Object... values) {
+    return Row.withSchema(CalciteUtils.toBeamSchema(relDataType)).addValues(values).build();
+  }
+
+  private static List<Object> executeWith(BeamSqlExpressionExecutor executor, Row input) {
+    return executor.execute(
+        input,
+        GlobalWindow.INSTANCE,
+        BeamSqlExpressionEnvironments.forRow(input, GlobalWindow.INSTANCE));
+  }
+}
@@ -35,6 +35,10 @@ public abstract class BaseRelTest {
     return BeamSqlRelUtils.toPCollection(pipeline, env.parseQuery(sql));
   }
 
+  protected static BeamRelNode parseQuery(String sql) {
+    return env.parseQuery(sql);
+  }
+
   protected static void registerTable(String tableName, BeamSqlTable table) {
     tables.put(tableName, table);
   }
@@ -24,6 +24,9 @@ import static org.junit.Assert.assertTrue;
 
 import com.google.common.collect.ImmutableList;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.apache.beam.sdk.extensions.sql.impl.schema.BaseBeamTable;
 import org.apache.beam.sdk.extensions.sql.impl.utils.CalciteUtils;
 import org.apache.beam.sdk.options.PipelineOptions;
@@ -43,6 +46,8 @@ import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.volcano.VolcanoPlanner;
 import org.apache.calcite.prepare.RelOptTableImpl;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeSystem;
 import org.apache.calcite.rex.RexBuilder;
@@ -96,6 +101,39 @@ public class BeamEnumerableConverterTest {
     enumerator.close();
   }
 
+  @Test
+  public void testToEnumerable_collectFullSortInOrder() {
+    Schema schema = Schema.builder().addInt64Field("id").build();
+    RelDataType type = CalciteUtils.toCalciteRowType(schema, TYPE_FACTORY);
+    List<Long> ids = new ArrayList<>();
+    for (long id = 0; id < 500; id++) {
+      ids.add(id);
+    }
+    Collections.shuffle(ids);
+    ImmutableList.Builder<ImmutableList<RexLiteral>> tuples = ImmutableList.builder();
+    for (long id : ids) {
+      tuples.add(ImmutableList.of(rexBuilder.makeBigintLiteral(BigDecimal.valueOf(id))));
+    }
+    BeamRelNode node =
+        new BeamSortRel(
+            cluster,
+            cluster.traitSet(),
+            new BeamValuesRel(cluster, type, tuples.build(), null),
+            RelCollations.of(new RelFieldCollation(0, RelFieldCollation.Direction.DESCENDING)),
+            null,
+            null);
+
+    Enumerable<Object> enumerable = BeamEnumerableConverter.toEnumerable(options, node);
+    Enumerator<Object> enumerator = enumerable.enumerator();
+
+    for (long id = 499; id >= 0; id--) {
+      assertTrue(enumerator.moveNext());
+      assertEquals(id, enumerator.current());
+    }
+    assertFalse(enumerator.moveNext());
+    enumerator.close();
+  }
+
   private static class FakeTable extends BaseBeamTable {
     public FakeTable() {
       super(null);
@@ -18,13 +18,28 @@
 
 package org.apache.beam.sdk.extensions.sql.impl.rel;
 
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import org.apache.beam.sdk.extensions.sql.TestUtils;
 import org.apache.beam.sdk.extensions.sql.impl.ParseException;
 import org.apache.beam.sdk.extensions.sql.mock.MockedBoundedTable;
 import org.apache.beam.sdk.schemas.Schema;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionList;
 import org.apache.beam.sdk.values.Row;
 import org.joda.time.DateTime;
 import org.junit.Before;
@@ -259,6 +274,128 @@ public class BeamSortRelTest extends BaseRelTest {
     pipeline.run().waitUntilFinish();
   }
 
+  @Test
+  public void testOrderBy_withoutLimit() throws Exception {
+    String sql =
+        "INSERT INTO SUB_ORDER_RAM(order_id, site_id, price)  SELECT "
+            + " order_id, site_id, price "
+            + "FROM ORDER_DETAILS "
+            + "ORDER BY order_id desc, site_id";
+
+    PCollection<Row> rows = compilePipeline(sql, pipeline);
+    PAssert.that(rows)
+        .containsInAnyOrder(
+            TestUtils.RowsBuilder.of(
+                    Schema.FieldType.INT64, "order_id",
+                    Schema.FieldType.INT32, "site_id",
+                    Schema.FieldType.DOUBLE, "price")
+                .addRows(
+                    1L, 2, 1.0, 1L, 1, 2.0, 2L, 4, 3.0, 2L, 1, 4.0, 5L, 5, 5.0, 6L, 6, 6.0, 7L, 7,
+                    7.0, 8L, 8888, 8.0, 8L, 999, 9.0, 10L, 100, 10.0)
+                .getRows());
+    pipeline.run().waitUntilFinish();
+  }
+
+  @Test
+  public void testOrderBy_withoutLimitSortedRanges() throws Exception {
+    // The projection is planned on top of the sort and applied to each range.
+    BeamRelNode node =
+        parseQuery(
+            "SELECT order_id, site_id, price FROM ORDER_DETAILS ORDER BY order_id desc, site_id");
+    assertThat(node, instanceOf(BeamCalcRel.class));
+    BeamSortRel sortNode = (BeamSortRel) node.getPCollectionInputs().get(0);
+
+    PCollection<Row> input =
+        BeamSqlRelUtils.toPCollection(
+            pipeline, (BeamRelNode) sortNode.getPCollectionInputs().get(0));
+    PCollection<KV<Integer, Iterable<Row>>> ranges =
+        PCollectionList.of(input)
+            .apply(sortNode.buildSortedRangesTransform())
+            .apply(((BeamCalcRel) node).buildSortedRangesTransform());
+
+    // Concatenating the ranges by index yields the rows in order.
+    PAssert.that(ranges)
+        .satisfies(
+            actual -> {
+              Map<Integer, Iterable<Row>> byIndex = new TreeMap<>();
+              for (KV<Integer, Iterable<Row>> range : actual) {
+                byIndex.put(range.getKey(), range.getValue());
+              }
+              List<List<Object>> rows = new ArrayList<>();
+              for (Iterable<Row> range : byIndex.values()) {
+                for (Row row : range) {
+                  rows.add(row.getValues());
+                }
+              }
+              assertEquals(
+                  Arrays.asList(
+                      Arrays.asList(10L, 100, 10.0),
+                      Arrays.asList(8L, 999, 9.0),
+                      Arrays.asList(8L, 8888, 8.0),
+                      Arrays.asList(7L, 7, 7.0),
+                      Arrays.asList(6L, 6, 6.0),
+                      Arrays.asList(5L, 5, 5.0),
+                      Arrays.asList(2L, 1, 4.0),
+                      Arrays.asList(2L, 4, 3.0),
+                      Arrays.asList(1L, 1, 2.0),
+                      Arrays.asList(1L, 2, 1.0)),
+                  rows);
+              return null;
+            });
+    pipeline.run().waitUntilFinish();
+  }
+
+  @Test
+  public void testOrderBy_withoutLimitNumSortRanges() throws Exception {
+    BeamRelNode node =
+        parseQuery(
+            "SELECT order_id, site_id, price FROM ORDER_DETAILS ORDER BY order_id desc, site_id");
+    BeamSortRel sortNode = (BeamSortRel) node.getPCollectionInputs().get(0);
+    PCollection<Row> input =
+        BeamSqlRelUtils.toPCollection(
+            pipeline, (BeamRelNode) sortNode.getPCollectionInputs().get(0));
+
+    // Set like SET numSortRanges = 2 does.
+    Map<String, String> options = sortNode.getPipelineOptions();
+    PCollection<KV<Integer, Iterable<Row>>> ranges;
+    options.put("numSortRanges", "2");
+    try {
+      ranges = PCollectionList.of(input).apply(sortNode.buildSortedRangesTransform());
+    } finally {
+      options.remove("numSortRanges");
+    }
+
+    PAssert.that(ranges)
+        .satisfies(
+            actual -> {
+              int rows = 0;
+              for (KV<Integer, Iterable<Row>> range : actual) {
+                assertThat(range.getKey(), lessThan(2));
+                rows += Iterables.size(range.getValue());
+              }
+              assertEquals(10, rows);
+              return null;
+            });
+    pipeline.run().waitUntilFinish();
+  }
+
+  @Test
+  public void testOrderBy_offsetWithoutLimit() throws Exception {
+    String sql =
+        "INSERT INTO SUB_ORDER_RAM(order_id, site_id, price)  SELECT "
+            + " order_id, site_id, price "
+            + "FROM ORDER_DETAILS "
+            + "ORDER BY order_id desc offset 2";
+
+    TestPipeline pipeline = TestPipeline.create();
+    try {
+      compilePipeline(sql, pipeline);
+      fail("OFFSET without a LIMIT should be rejected");
+    } catch (RuntimeException e) {
+      assertThat(Throwables.getRootCause(e), instanceOf(UnsupportedOperationException.class));
+    }
+  }
+
   @Test(expected = ParseException.class)
   public void testOrderBy_exception() throws Exception {
     String sql =
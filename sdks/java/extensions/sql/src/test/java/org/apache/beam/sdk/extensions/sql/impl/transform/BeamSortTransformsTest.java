@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.extensions.sql.impl.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.apache.beam.sdk.extensions.sql.impl.transform.BeamSortTransforms.LexicographicComparator;
+import org.apache.beam.sdk.extensions.sql.impl.transform.BeamSortTransforms.RangeSort;
+import org.apache.beam.sdk.extensions.sql.impl.transform.BeamSortTransforms.SortKeyEncoder;
+import org.apache.beam.sdk.extensions.sql.impl.transform.BeamSortTransforms.SortedRanges;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.SerializableFunction;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.Row;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link BeamSortTransforms}. */
+@RunWith(JUnit4.class)
+public class BeamSortTransformsTest {
+  @Rule public final transient TestPipeline pipeline = TestPipeline.create();
+
+  private static final Schema SCHEMA =
+      Schema.builder()
+          .addNullableField("id", Schema.FieldType.INT32)
+          .addNullableField("price", Schema.FieldType.DOUBLE)
+          .addNullableField("name", Schema.FieldType.STRING)
+          .addNullableField("time", Schema.FieldType.DATETIME)
+          .addNullableField("count", Schema.FieldType.INT64)
+          .build();
+
+  @Test
+  public void testEncodedKeysOrderLikeOrderBy() {
+    List<Row> rows = randomRows(2000);
+    for (boolean ascending : new boolean[] {true, false}) {
+      for (boolean nullsFirst : new boolean[] {true, false}) {
+        for (int field = 0; field < SCHEMA.getFieldCount(); field++) {
+          SortKeyEncoder encoder =
+              new SortKeyEncoder(
+                  SCHEMA,
+                  Arrays.asList(field, 4),
+                  Arrays.asList(ascending, !ascending),
+                  Arrays.asList(nullsFirst, !nullsFirst));
+          Comparator<Row> expected =
+              fieldComparator(field, ascending, nullsFirst)
+                  .thenComparing(fieldComparator(4, !ascending, !nullsFirst));
+          assertOrderedLike(rows, encoder, expected);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEncodedStringsOrderByCodeUnit() {
+    List<Row> rows = new ArrayList<>();
+    for (String name : Arrays.asList("", "\0", "\0\0", "\0a", "a", "a\0", "ab", "\uffff", "\ud83d\ude00")) {
+      rows.add(Row.withSchema(SCHEMA).addValues(null, null, name, null, null).build());
+    }
+    for (boolean ascending : new boolean[] {true, false}) {
+      SortKeyEncoder encoder =
+          new SortKeyEncoder(
+              SCHEMA,
+              Collections.singletonList(2),
+              Collections.singletonList(ascending),
+              Collections.singletonList(true));
+      assertOrderedLike(rows, encoder, fieldComparator(2, ascending, true));
+    }
+  }
+
+  @Test
+  public void testSortedRanges() {
+    List<Row> rows = randomRows(1000);
+    SortKeyEncoder encoder =
+        new SortKeyEncoder(
+            SCHEMA,
+            Arrays.asList(0, 1),
+            Arrays.asList(false, true),
+            Arrays.asList(true, false));
+
+    PCollection<KV<Integer, Iterable<Row>>> ranges =
+        pipeline
+            .apply(Create.of(rows).withCoder(SCHEMA.getRowCoder()))
+            .apply(new SortedRanges(encoder, 8));
+    PAssert.that(ranges).satisfies(new RangesAreOrdered(encoder, rows.size()));
+    pipeline.run();
+  }
+
+  @Test
+  public void testRangeSortOfEmptyInput() {
+    SortKeyEncoder encoder =
+        new SortKeyEncoder(
+            SCHEMA,
+            Collections.singletonList(0),
+            Collections.singletonList(true),
+            Collections.singletonList(true));
+    PCollection<Row> sorted =
+        pipeline
+            .apply(Create.empty(SCHEMA.getRowCoder()))
+            .apply(new RangeSort(encoder, 4));
+    PAssert.that(sorted).empty();
+    pipeline.run();
+  }
+
+  /** Checks that concatenating the ranges by index yields all rows in order. */
+  private static class RangesAreOrdered
+      implements SerializableFunction<Iterable<KV<Integer, Iterable<Row>>>, Void> {
+    private final SortKeyEncoder encoder;
+    private final int expectedCount;
+
+    RangesAreOrdered(SortKeyEncoder encoder, int expectedCount) {
+      this.encoder = encoder;
+      this.expectedCount = expectedCount;
+    }
+
+    @Override
+    public Void apply(Iterable<KV<Integer, Iterable<Row>>> output) {
+      List<KV<Integer, Iterable<Row>>> ranges = new ArrayList<>();
+      output.forEach(ranges::add);
+      ranges.sort(Comparator.comparing(KV::getKey));
+      assertTrue(ranges.size() > 1);
+
+      List<byte[]> keys = new ArrayList<>();
+      for (KV<Integer, Iterable<Row>> range : ranges) {
+        for (Row row : range.getValue()) {
+          keys.add(encoder.encode(row));
+        }
+      }
+      assertEquals(expectedCount, keys.size());
+      Comparator<byte[]> comparator = new LexicographicComparator();
+      for (int i = 1; i < keys.size(); i++) {
+        assertTrue(comparator.compare(keys.get(i - 1), keys.get(i)) <= 0);
+      }
+      return null;
+    }
+  }
+
+  private static void assertOrderedLike(
+      List<Row> rows, SortKeyEncoder encoder, Comparator<Row> expected) {
+    Comparator<byte[]> bytes = new LexicographicComparator();
+    for (int i = 1; i < rows.size(); i++) {
+      Row left = rows.get(i - 1);
+      Row right = rows.get(i);
+      assertEquals(
+          left + " vs " + right,
+          Integer.signum(expected.compare(left, right)),
+          Integer.signum(bytes.compare(encoder.encode(left), encoder.encode(right))));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Comparator<Row> fieldComparator(
+      int field, boolean ascending, boolean nullsFirst) {
+    Comparator<Comparable> values = Comparator.naturalOrder();
+    if (!ascending) {
+      values = values.reversed();
+    }
+    Comparator<Comparable> withNulls =
+        nullsFirst ? Comparator.nullsFirst(values) : Comparator.nullsLast(values);
+    return (left, right) ->
+        withNulls.compare((Comparable) left.getValue(field), (Comparable) right.getValue(field));
+  }
+
+  private static List<Row> randomRows(int count) {
+    Random random = new Random(17);
+    String[] names = {"", "a", "ab", "b", "\0", "a\0b", "\u00e9t\u00e9", "\ud83d\ude00", "zz"};
+    double[] prices = {-0.0, 0.0, -1.5, 1.5, Double.MAX_VALUE, -Double.MAX_VALUE, 1e-300};
+    List<Row> rows = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      rows.add(
+          Row.withSchema(SCHEMA)
+              .addValues(
+                  nullOr(random, random.nextInt(20) - 10 + random.nextInt(3) * Integer.MIN_VALUE / 2),
+                  nullOr(random, prices[random.nextInt(prices.length)]),
+                  nullOr(random, names[random.nextInt(names.length)]),
+                  nullOr(random, new DateTime(random.nextInt(2000) - 1000L)),
+                  nullOr(random, random.nextLong() % 5))
+              .build());
+    }
+    return rows;
+  }
+
+  private static Object nullOr(Random random, Object value) {
+    return random.nextInt(8) == 0 ? null : value;
+  }
+}
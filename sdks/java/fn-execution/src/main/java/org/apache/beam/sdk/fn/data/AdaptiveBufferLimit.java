@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.sdk.fn.data;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A buffer limit for a {@link BeamFnDataBufferingOutboundObserver} which follows the throughput
+ * observed for an output.
+ *
+ * <p>Every flush reports how many bytes were sent and how long they took to accumulate. The limit
+ * is set to the number of bytes expected to accumulate within the target flush interval at an
+ * exponentially weighted moving average of the observed throughput, bounded by a minimum and a
+ * maximum. Slow outputs therefore send small messages often while fast outputs send large
+ * messages, making better use of gRPC.
+ *
+ * <p>A single instance is meant to be shared by all the observers created for the same output
+ * across bundles, and is thread safe.
+ */
+public class AdaptiveBufferLimit {
+  @VisibleForTesting static final int DEFAULT_MIN_BUFFER_LIMIT_BYTES = 64 * 1024;
+  // gRPC servers reject messages larger than 4 MiB by default.
+  @VisibleForTesting static final int DEFAULT_MAX_BUFFER_LIMIT_BYTES = 4 * 1024 * 1024 - 64 * 1024;
+  @VisibleForTesting static final long DEFAULT_TARGET_FLUSH_INTERVAL_MILLIS = 100;
+
+  /** Weight given to the most recent throughput observation. */
+  private static final double SMOOTHING = 0.25;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long targetFlushIntervalNanos;
+
+  private double bytesPerNano = -1;
+  private int limit;
+
+  /**
+   * Returns an {@link AdaptiveBufferLimit} starting at the given limit, aiming to flush about once
+   * per target interval.
+   */
+  public static AdaptiveBufferLimit create(int initialLimit, long targetFlushIntervalMillis) {
+    return new AdaptiveBufferLimit(
+        initialLimit,
+        DEFAULT_MIN_BUFFER_LIMIT_BYTES,
+        DEFAULT_MAX_BUFFER_LIMIT_BYTES,
+        targetFlushIntervalMillis);
+  }
+
+  /** Returns an {@link AdaptiveBufferLimit} with the default target flush interval. */
+  public static AdaptiveBufferLimit create(int initialLimit) {
+    return create(initialLimit, DEFAULT_TARGET_FLUSH_INTERVAL_MILLIS);
+  }
+
+  @VisibleForTesting
+  AdaptiveBufferLimit(
+      int initialLimit, int minLimit, int maxLimit, long targetFlushIntervalMillis) {
+    checkArgument(minLimit > 0, "minLimit must be positive, was %s", minLimit);
+    checkArgument(
+        maxLimit >= minLimit, "maxLimit %s must be at least minLimit %s", maxLimit, minLimit);
+    checkArgument(
+        targetFlushIntervalMillis > 0,
+        "targetFlushIntervalMillis must be positive, was %s",
+        targetFlushIntervalMillis);
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.targetFlushIntervalNanos = targetFlushIntervalMillis * 1_000_000L;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+  }
+
+  /** Returns the current buffer limit in bytes. */
+  public synchronized int get() {
+    return limit;
+  }
+
+  /**
+   * Records that {@code bytes} bytes were flushed after having accumulated for {@code elapsedNanos}
+   * nanoseconds, and updates the limit accordingly.
+   */
+  public synchronized void recordFlush(long bytes, long elapsedNanos) {
+    if (bytes <= 0 || elapsedNanos <= 0) {
+      return;
+    }
+    double observed = (double) bytes / elapsedNanos;
+    bytesPerNano =
+        bytesPerNano < 0 ? observed : SMOOTHING * observed + (1 - SMOOTHING) * bytesPerNano;
+    long target = (long) (bytesPerNano * targetFlushIntervalNanos);
+    limit = (int) Math.max(minLimit, Math.min(maxLimit, target));
+  }
+}
@@ -18,11 +18,20 @@
 package org.apache.beam.sdk.fn.data;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +45,18 @@ import org.slf4j.LoggerFactory;
  * <p>The default buffer threshold can be overridden by specifying the experiment {@code
  * beam_fn_api_data_buffer_limit=<bytes>}
  *
+ * <p>The buffer threshold may also follow the observed throughput of the output by using an {@link
+ * AdaptiveBufferLimit}, and buffered elements may be flushed after a maximum latency even if the
+ * threshold is not reached. When a time limit is used, the observer and the provided outbound
+ * observer are synchronized on, since flushes also happen on a background thread. A flush is
+ * scheduled for the deadline of the oldest buffered element, and only while elements are buffered,
+ * so an observer which is never closed is not referenced by the background thread for longer than
+ * the time limit. A failure to send a background flush is rethrown by the next call to {@link
+ * #accept} or {@link #close}.
+ *
+ * <p>The number of flushes and bytes sent for each {@link FlushReason} are reported as counters
+ * when the observer is closed.
+ *
  * <p>TODO: Handle outputting large elements (&gt; 2GiBs). Note that this also applies to the input
  * side as well.
  *
@@ -46,10 +67,20 @@ public class BeamFnDataBufferingOutboundObserver<T>
     implements CloseableFnDataReceiver<WindowedValue<T>> {
   // TODO: Consider moving this constant out of this class
   public static final String BEAM_FN_API_DATA_BUFFER_LIMIT = "beam_fn_api_data_buffer_limit=";
-  @VisibleForTesting static final int DEFAULT_BUFFER_LIMIT_BYTES = 1_000_000;
+  public static final int DEFAULT_BUFFER_LIMIT_BYTES = 1_000_000;
   private static final Logger LOG =
       LoggerFactory.getLogger(BeamFnDataBufferingOutboundObserver.class);
 
+  /** The reasons for sending the buffered elements. */
+  public enum FlushReason {
+    /** The buffer limit was reached. */
+    SIZE,
+    /** Elements were buffered for longer than the time limit. */
+    TIME,
+    /** The observer was closed. */
+    CLOSE
+  }
+
   public static <T> BeamFnDataBufferingOutboundObserver<T> forLocation(
       LogicalEndpoint endpoint,
       Coder<WindowedValue<T>> coder,
@@ -64,38 +95,97 @@ public class BeamFnDataBufferingOutboundObserver<T>
       Coder<WindowedValue<T>> coder,
       StreamObserver<BeamFnApi.Elements> outboundObserver) {
     return new BeamFnDataBufferingOutboundObserver<>(
-        bufferLimit, endpoint, coder, outboundObserver);
+        bufferLimit, null, 0, endpoint, coder, outboundObserver);
+  }
+
+  /**
+   * Returns an observer whose buffer limit follows the given {@link AdaptiveBufferLimit}, and which
+   * flushes buffered elements at the latest {@code timeLimitMs} milliseconds after they were
+   * buffered if {@code timeLimitMs} is positive.
+   */
+  public static <T> BeamFnDataBufferingOutboundObserver<T> forLocationWithAdaptiveBufferLimit(
+      AdaptiveBufferLimit bufferLimit,
+      long timeLimitMs,
+      LogicalEndpoint endpoint,
+      Coder<WindowedValue<T>> coder,
+      StreamObserver<BeamFnApi.Elements> outboundObserver) {
+    return new BeamFnDataBufferingOutboundObserver<>(
+        bufferLimit.get(), bufferLimit, timeLimitMs, endpoint, coder, outboundObserver);
+  }
+
+  /**
+   * Returns an observer with a fixed buffer limit which flushes buffered elements at the latest
+   * {@code timeLimitMs} milliseconds after they were buffered if {@code timeLimitMs} is positive.
+   */
+  public static <T> BeamFnDataBufferingOutboundObserver<T> forLocationWithTimeLimit(
+      int bufferLimit,
+      long timeLimitMs,
+      LogicalEndpoint endpoint,
+      Coder<WindowedValue<T>> coder,
+      StreamObserver<BeamFnApi.Elements> outboundObserver) {
+    return new BeamFnDataBufferingOutboundObserver<>(
+        bufferLimit, null, timeLimitMs, endpoint, coder, outboundObserver);
   }
 
   private long byteCounter;
   private long counter;
   private boolean closed;
-  private final int bufferLimit;
+  private int bufferLimit;
+  private long lastFlushNanos;
+  /** When the oldest buffered element was buffered. */
+  private long bufferedSinceNanos;
+  @Nullable private final AdaptiveBufferLimit adaptiveBufferLimit;
+  private final long timeLimitNanos;
+  /** The pending time limited flush, if any. Guarded by {@code this}. */
+  @Nullable private ScheduledFuture<?> flushFuture;
   private final Coder<WindowedValue<T>> coder;
   private final LogicalEndpoint outputLocation;
   private final StreamObserver<BeamFnApi.Elements> outboundObserver;
+  private final Map<FlushReason, long[]> flushStatistics = new EnumMap<>(FlushReason.class);
   private final ByteString.Output bufferedElements;
+  @Nullable private RuntimeException flushFailure;
 
   private BeamFnDataBufferingOutboundObserver(
       int bufferLimit,
+      @Nullable AdaptiveBufferLimit adaptiveBufferLimit,
+      long timeLimitMs,
       LogicalEndpoint outputLocation,
       Coder<WindowedValue<T>> coder,
       StreamObserver<BeamFnApi.Elements> outboundObserver) {
     this.bufferLimit = bufferLimit;
+    this.adaptiveBufferLimit = adaptiveBufferLimit;
+    this.timeLimitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeLimitMs));
     this.outputLocation = outputLocation;
     this.coder = coder;
     this.outboundObserver = outboundObserver;
     this.bufferedElements = ByteString.newOutput();
     this.closed = false;
+    for (FlushReason reason : FlushReason.values()) {
+      flushStatistics.put(reason, new long[2]);
+    }
+    this.lastFlushNanos = System.nanoTime();
   }
 
   @Override
   public void close() throws Exception {
+    if (timeLimitNanos == 0) {
+      closeInternal();
+    } else {
+      synchronized (this) {
+        // No flush is scheduled after this whether closing succeeds or fails.
+        cancelScheduledFlush();
+        checkFlushFailure();
+        closeInternal();
+      }
+    }
+  }
+
+  private void closeInternal() {
     if (closed) {
       throw new IllegalStateException("Already closed.");
     }
     closed = true;
-    BeamFnApi.Elements.Builder elements = convertBufferForTransmission();
+    BeamFnApi.Elements.Builder elements = convertBufferForTransmission(FlushReason.CLOSE);
     // This will add an empty data block representing the end of stream.
     elements
         .addDataBuilder()
@@ -109,24 +199,102 @@ public class BeamFnDataBufferingOutboundObserver<T>
         outputLocation.getTarget(),
         counter,
         byteCounter);
-    outboundObserver.onNext(elements.build());
+    send(elements.build());
+    reportFlushStatistics();
   }
 
   @Override
   public void accept(WindowedValue<T> t) throws IOException {
+    if (timeLimitNanos == 0) {
+      acceptInternal(t);
+    } else {
+      synchronized (this) {
+        checkFlushFailure();
+        acceptInternal(t);
+      }
+    }
+  }
+
+  private void acceptInternal(WindowedValue<T> t) throws IOException {
     if (closed) {
       throw new IllegalStateException("Already closed.");
     }
+    boolean wasEmpty = bufferedElements.size() == 0;
     coder.encode(t, bufferedElements);
     counter += 1;
     if (bufferedElements.size() >= bufferLimit) {
-      outboundObserver.onNext(convertBufferForTransmission().build());
+      send(convertBufferForTransmission(FlushReason.SIZE).build());
+    } else if (wasEmpty && timeLimitNanos > 0) {
+      bufferedSinceNanos = System.nanoTime();
+      if (flushFuture == null) {
+        scheduleFlush(timeLimitNanos);
+      }
     }
   }
 
-  private BeamFnApi.Elements.Builder convertBufferForTransmission() {
+  private void scheduleFlush(long delayNanos) {
+    flushFuture =
+        FlushScheduler.INSTANCE.schedule(this::flushIfExpired, delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void cancelScheduledFlush() {
+    if (flushFuture != null) {
+      flushFuture.cancel(false);
+      flushFuture = null;
+    }
+  }
+
+  /**
+   * Flushes the buffer if the oldest buffered element reached the time limit, or schedules another
+   * check for when it does. Nothing is scheduled while the buffer is empty.
+   */
+  private synchronized void flushIfExpired() {
+    flushFuture = null;
+    if (closed || flushFailure != null || bufferedElements.size() == 0) {
+      return;
+    }
+    long remainingNanos = bufferedSinceNanos + timeLimitNanos - System.nanoTime();
+    if (remainingNanos > 0) {
+      // The buffer was flushed and refilled since this check was scheduled.
+      scheduleFlush(remainingNanos);
+      return;
+    }
+    try {
+      send(convertBufferForTransmission(FlushReason.TIME).build());
+    } catch (RuntimeException e) {
+      // The buffered elements are gone, so the bundle has to fail.
+      flushFailure = e;
+    }
+  }
+
+  private void checkFlushFailure() throws IOException {
+    if (flushFailure != null) {
+      throw new IOException(
+          String.format(
+              "Failed to flush buffered elements for instruction %s and target %s",
+              outputLocation.getInstructionId(), outputLocation.getTarget()),
+          flushFailure);
+    }
+  }
+
+  private void send(BeamFnApi.Elements elements) {
+    if (timeLimitNanos == 0) {
+      outboundObserver.onNext(elements);
+    } else {
+      // Other observers sharing the outbound observer may also be flushing on the background
+      // thread.
+      synchronized (outboundObserver) {
+        outboundObserver.onNext(elements);
+      }
+    }
+  }
+
+  private BeamFnApi.Elements.Builder convertBufferForTransmission(FlushReason reason) {
     BeamFnApi.Elements.Builder elements = BeamFnApi.Elements.newBuilder();
-    if (bufferedElements.size() == 0) {
+    long now = System.nanoTime();
+    int size = bufferedElements.size();
+    if (size == 0) {
+      lastFlushNanos = now;
       return elements;
     }
 
@@ -136,8 +304,52 @@ public class BeamFnDataBufferingOutboundObserver<T>
         .setTarget(outputLocation.getTarget())
         .setData(bufferedElements.toByteString());
 
-    byteCounter += bufferedElements.size();
+    byteCounter += size;
     bufferedElements.reset();
+
+    long[] statistics = flushStatistics.get(reason);
+    statistics[0] += 1;
+    statistics[1] += size;
+    if (adaptiveBufferLimit != null) {
+      adaptiveBufferLimit.recordFlush(size, now - lastFlushNanos);
+      bufferLimit = adaptiveBufferLimit.get();
+    }
+    lastFlushNanos = now;
     return elements;
   }
+
+  private void reportFlushStatistics() {
+    for (Map.Entry<FlushReason, long[]> entry : flushStatistics.entrySet()) {
+      String reason = entry.getKey().name().toLowerCase();
+      long[] statistics = entry.getValue();
+      if (statistics[0] > 0) {
+        Metrics.counter(BeamFnDataBufferingOutboundObserver.class, reason + "Flushes")
+            .inc(statistics[0]);
+        Metrics.counter(BeamFnDataBufferingOutboundObserver.class, reason + "FlushedBytes")
+            .inc(statistics[1]);
+      }
+    }
+  }
+
+  /** Returns whether a time limited flush is scheduled. */
+  @VisibleForTesting
+  synchronized boolean isFlushScheduled() {
+    return flushFuture != null;
+  }
+
+  /** Returns the number of flushes and bytes flushed for the given reason. */
+  @VisibleForTesting
+  synchronized long[] getFlushStatistics(FlushReason reason) {
+    return flushStatistics.get(reason).clone();
+  }
+
+  /** Holds the background thread used for time based flushing. */
+  private static class FlushScheduler {
+    private static final ScheduledExecutorService INSTANCE =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("BeamFnDataBufferingOutboundObserver-flusher-%d")
+                .build());
+  }
 }
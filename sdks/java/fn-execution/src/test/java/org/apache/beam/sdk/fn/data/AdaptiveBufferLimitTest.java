@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.sdk.fn.data;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link AdaptiveBufferLimit}. */
+@RunWith(JUnit4.class)
+public class AdaptiveBufferLimitTest {
+  private static final long MILLIS = 1_000_000L;
+
+  @Test
+  public void testInitialLimitIsBounded() {
+    assertEquals(10, new AdaptiveBufferLimit(1, 10, 1000, 100L).get());
+    assertEquals(1000, new AdaptiveBufferLimit(5000, 10, 1000, 100L).get());
+    assertEquals(
+        AdaptiveBufferLimit.DEFAULT_MAX_BUFFER_LIMIT_BYTES,
+        AdaptiveBufferLimit.create(Integer.MAX_VALUE).get());
+  }
+
+  @Test
+  public void testLimitFollowsThroughput() {
+    AdaptiveBufferLimit limit = new AdaptiveBufferLimit(100, 10, 1000, 100L);
+    // 200 bytes per 100ms.
+    limit.recordFlush(100, 50 * MILLIS);
+    assertEquals(200, limit.get());
+    // Repeated observations of a lower rate shrink the limit towards 50 bytes per 100ms.
+    for (int i = 0; i < 100; i++) {
+      limit.recordFlush(50, 100 * MILLIS);
+    }
+    assertEquals(50, limit.get());
+  }
+
+  @Test
+  public void testLimitIsBounded() {
+    AdaptiveBufferLimit limit = new AdaptiveBufferLimit(100, 10, 1000, 100L);
+    limit.recordFlush(1_000_000, MILLIS);
+    assertEquals(1000, limit.get());
+    for (int i = 0; i < 100; i++) {
+      limit.recordFlush(1, 1000 * MILLIS);
+    }
+    assertEquals(10, limit.get());
+  }
+
+  @Test
+  public void testIgnoresEmptyFlushes() {
+    AdaptiveBufferLimit limit = new AdaptiveBufferLimit(100, 10, 1000, 100L);
+    limit.recordFlush(0, 100 * MILLIS);
+    limit.recordFlush(100, 0);
+    assertEquals(100, limit.get());
+  }
+}
@@ -19,8 +19,11 @@ package org.apache.beam.sdk.fn.data;
 
 import static org.apache.beam.sdk.util.WindowedValue.valueInGlobalWindow;
 import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.google.common.collect.Iterables;
@@ -28,6 +31,8 @@ import com.google.protobuf.ByteString;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi;
@@ -150,6 +155,140 @@ public class BeamFnDataBufferingOutboundObserverTest {
         Iterables.get(values, 1));
   }
 
+  @Test
+  public void testConfiguredTimeLimit() throws Exception {
+    Collection<BeamFnApi.Elements> values = new ConcurrentLinkedQueue<>();
+    BeamFnDataBufferingOutboundObserver<byte[]> consumer =
+        BeamFnDataBufferingOutboundObserver.forLocationWithTimeLimit(
+            100,
+            1L,
+            OUTPUT_LOCATION,
+            CODER,
+            TestStreams.withOnNext(addToValuesConsumer(values)).build());
+
+    // Test that the buffered element is emitted without reaching the buffer limit.
+    consumer.accept(valueInGlobalWindow(new byte[1]));
+    while (values.isEmpty()) {
+      Thread.sleep(1L);
+    }
+    assertEquals(messageWithData(new byte[1]), Iterables.get(values, 0));
+    assertArrayEquals(
+        new long[] {1L, 2L},
+        consumer.getFlushStatistics(BeamFnDataBufferingOutboundObserver.FlushReason.TIME));
+
+    consumer.close();
+    assertEquals(
+        BeamFnApi.Elements.newBuilder()
+            .addData(
+                BeamFnApi.Elements.Data.newBuilder()
+                    .setInstructionReference(OUTPUT_LOCATION.getInstructionId())
+                    .setTarget(OUTPUT_LOCATION.getTarget()))
+            .build(),
+        Iterables.getLast(values));
+  }
+
+  @Test
+  public void testTimeLimitedFlushIsOnlyScheduledWhileBuffering() throws Exception {
+    Collection<BeamFnApi.Elements> values = new ConcurrentLinkedQueue<>();
+    BeamFnDataBufferingOutboundObserver<byte[]> consumer =
+        BeamFnDataBufferingOutboundObserver.forLocationWithTimeLimit(
+            100,
+            1L,
+            OUTPUT_LOCATION,
+            CODER,
+            TestStreams.withOnNext(addToValuesConsumer(values)).build());
+    assertFalse(consumer.isFlushScheduled());
+
+    consumer.accept(valueInGlobalWindow(new byte[1]));
+    while (values.isEmpty()) {
+      Thread.sleep(1L);
+    }
+    // Once the buffer is flushed, the background thread lets go of an observer that is never
+    // closed.
+    while (consumer.isFlushScheduled()) {
+      Thread.sleep(1L);
+    }
+
+    // Closing cancels a pending flush.
+    BeamFnDataBufferingOutboundObserver<byte[]> closed =
+        BeamFnDataBufferingOutboundObserver.forLocationWithTimeLimit(
+            100,
+            60_000L,
+            OUTPUT_LOCATION,
+            CODER,
+            TestStreams.withOnNext(addToValuesConsumer(values)).build());
+    closed.accept(valueInGlobalWindow(new byte[1]));
+    assertTrue(closed.isFlushScheduled());
+    closed.close();
+    assertFalse(closed.isFlushScheduled());
+  }
+
+  @Test
+  public void testTimeLimitedFlushFailureIsRethrown() throws Exception {
+    CountDownLatch flushAttempted = new CountDownLatch(1);
+    BeamFnDataBufferingOutboundObserver<byte[]> consumer =
+        BeamFnDataBufferingOutboundObserver.forLocationWithTimeLimit(
+            100,
+            1L,
+            OUTPUT_LOCATION,
+            CODER,
+            TestStreams.<Elements>withOnNext(
+                    elements -> {
+                      flushAttempted.countDown();
+                      throw new IllegalStateException("Stream broken");
+                    })
+                .build());
+
+    consumer.accept(valueInGlobalWindow(new byte[1]));
+    flushAttempted.await();
+
+    // The flushed element was lost, so the next element fails.
+    try {
+      consumer.accept(valueInGlobalWindow(new byte[1]));
+      fail("Accepting after a failed flush should fail.");
+    } catch (IOException exn) {
+      assertEquals("Stream broken", exn.getCause().getMessage());
+    }
+    try {
+      consumer.close();
+      fail("Closing after a failed flush should fail.");
+    } catch (IOException exn) {
+      assertEquals("Stream broken", exn.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testAdaptiveBufferLimit() throws Exception {
+    Collection<BeamFnApi.Elements> values = new ArrayList<>();
+    AdaptiveBufferLimit bufferLimit = new AdaptiveBufferLimit(100, 10, 1000, 10_000L);
+    BeamFnDataBufferingOutboundObserver<byte[]> consumer =
+        BeamFnDataBufferingOutboundObserver.forLocationWithAdaptiveBufferLimit(
+            bufferLimit,
+            0L,
+            OUTPUT_LOCATION,
+            CODER,
+            TestStreams.withOnNext(addToValuesConsumer(values)).build());
+
+    // Test that the initial limit is used for the first flush.
+    consumer.accept(valueInGlobalWindow(new byte[98]));
+    assertThat(values, empty());
+    consumer.accept(valueInGlobalWindow(new byte[1]));
+    assertEquals(messageWithData(new byte[98], new byte[1]), Iterables.get(values, 0));
+
+    // 101 bytes were produced much faster than the 10s flush interval, so the limit grows.
+    assertEquals(1000, bufferLimit.get());
+    consumer.accept(valueInGlobalWindow(new byte[200]));
+    assertEquals(1, values.size());
+
+    consumer.close();
+    assertArrayEquals(
+        new long[] {1L, 101L},
+        consumer.getFlushStatistics(BeamFnDataBufferingOutboundObserver.FlushReason.SIZE));
+    assertArrayEquals(
+        new long[] {1L, 202L},
+        consumer.getFlushStatistics(BeamFnDataBufferingOutboundObserver.FlushReason.CLOSE));
+  }
+
   private static BeamFnApi.Elements messageWithData(byte[]... datum) throws IOException {
     ByteString.Output output = ByteString.newOutput();
     for (byte[] data : datum) {
@@ -39,6 +39,7 @@ import org.apache.beam.model.pipeline.v1.RunnerApi.StandardPTransforms;
 import org.apache.beam.runners.core.construction.BeamUrns;
 import org.apache.beam.runners.core.construction.RehydratedComponents;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.Coder.NonDeterministicException;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.fn.data.FnDataReceiver;
 import org.apache.beam.sdk.fn.function.ThrowingFunction;
@@ -93,9 +94,26 @@ public class CombineRunners {
     }
 
     void startBundle() {
-      groupingTable =
-          PrecombineGroupingTable.combiningAndSampling(
-              options, combineFn, keyCoder, accumCoder, 0.001 /*sizeEstimatorSampleRate*/);
+      // Grouping tables are empty after being flushed, so they are reused across bundles.
+      if (groupingTable == null) {
+        groupingTable = createGroupingTable();
+      }
+    }
+
+    /**
+     * Keys with a deterministic {@link Coder} can be grouped by their encoded form, which allows
+     * using the {@link OffHeapPrecombineGroupingTable}. Otherwise falls back to grouping by
+     * structural value.
+     */
+    private GroupingTable<WindowedValue<KeyT>, InputT, AccumT> createGroupingTable() {
+      try {
+        keyCoder.verifyDeterministic();
+        return OffHeapPrecombineGroupingTable.combining(
+            options, combineFn, keyCoder, accumCoder, 0.001 /*sizeEstimatorSampleRate*/);
+      } catch (NonDeterministicException e) {
+        return PrecombineGroupingTable.combiningAndSampling(
+            options, combineFn, keyCoder, accumCoder, 0.001 /*sizeEstimatorSampleRate*/);
+      }
     }
 
     void processElement(WindowedValue<KV<KeyT, InputT>> elem) throws Exception {
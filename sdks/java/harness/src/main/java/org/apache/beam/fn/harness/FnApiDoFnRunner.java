@@ -239,7 +239,8 @@ public class FnApiDoFnRunner<InputT, OutputT>
   public void finishBundle() {
     doFnInvoker.invokeFinishBundle(finishBundleContext);
 
-    // TODO: Support caching state data across bundle boundaries.
+    // State is cached across bundle boundaries by the state client if the runner supplied cache
+    // tokens, so this only flushes the writes of this bundle.
     this.stateAccessor.finalizeState();
     this.stateAccessor = null;
   }
@@ -0,0 +1,586 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.fn.harness;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import org.apache.beam.fn.harness.PrecombineGroupingTable.CoderSizeEstimator;
+import org.apache.beam.fn.harness.PrecombineGroupingTable.Combiner;
+import org.apache.beam.fn.harness.PrecombineGroupingTable.SamplingSizeEstimator;
+import org.apache.beam.fn.harness.PrecombineGroupingTable.SizeEstimator;
+import org.apache.beam.fn.harness.PrecombineGroupingTable.ValueCombiner;
+import org.apache.beam.runners.core.GlobalCombineFnRunners;
+import org.apache.beam.runners.core.NullSideInputReader;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+
+/**
+ * A {@link GroupingTable} that groups by the encoded form of the key using an open addressing hash
+ * table.
+ *
+ * <p>Encoded keys are stored back to back in a direct {@link ByteBuffer} and are only decoded again
+ * when an entry is output. The table itself is made up of primitive arrays, plus the accumulators
+ * and a value-less template of each entry's windowing which consecutive entries with the same
+ * windowing share, so adding a value for a key that is already present does not allocate any
+ * per-key objects. Key bytes, templates and the overhead of occupied slots are accounted for
+ * exactly, while accumulator sizes are estimated by sampling their {@link Coder}. When the table
+ * becomes full the least recently updated entries are flushed until the table is below its target
+ * load. The table is only grown while its arrays fit into the budget, and it shrinks back as
+ * entries are evicted and on every flush, so it does not hold on to memory it no longer needs.
+ *
+ * <p>Grouping by encoded key is only correct when the key {@link Coder} is deterministic.
+ */
+public class OffHeapPrecombineGroupingTable<K, InputT, AccumT>
+    implements GroupingTable<WindowedValue<K>, InputT, AccumT> {
+
+  /** Returns a {@link GroupingTable} that combines inputs into a accumulator. */
+  public static <K, InputT, AccumT> OffHeapPrecombineGroupingTable<K, InputT, AccumT> combining(
+      PipelineOptions options,
+      CombineFn<InputT, AccumT, ?> combineFn,
+      Coder<K> keyCoder,
+      Coder<? super AccumT> accumulatorCoder,
+      double sizeEstimatorSampleRate) {
+    Combiner<WindowedValue<K>, InputT, AccumT, ?> valueCombiner =
+        new ValueCombiner<>(
+            GlobalCombineFnRunners.create(combineFn), NullSideInputReader.empty(), options);
+    return new OffHeapPrecombineGroupingTable<>(
+        DEFAULT_MAX_GROUPING_TABLE_BYTES,
+        keyCoder,
+        valueCombiner,
+        new SamplingSizeEstimator<>(
+            new CoderSizeEstimator<>(accumulatorCoder), sizeEstimatorSampleRate, 1.0));
+  }
+
+  // By default, how many bytes we allow the grouping table to consume before
+  // it has to be flushed.
+  private static final long DEFAULT_MAX_GROUPING_TABLE_BYTES = 100_000_000L;
+
+  /**
+   * The number of bytes used by each slot of the table: an int hash,
+   * an int key offset, an int key length, an int key cost, a long last access time, a long
+   * accumulator size and two object references.
+   */
+  private static final int PER_SLOT_OVERHEAD = 4 + 4 + 4 + 4 + 8 + 8 + 2 * 8;
+
+  /** Estimated size of a windowing template: an object header and three references. */
+  private static final int TEMPLATE_BYTES = 16 + 3 * 8;
+
+  private static final int INITIAL_CAPACITY = 1 << 10;
+
+  private static final int INITIAL_ARENA_BYTES = 1 << 16;
+
+  /** Grow the table once it is more than half full to keep probe sequences short. */
+  private static final double MAX_LOAD_FACTOR = 0.5;
+
+  /** Flush until the table is below this fraction of its maximum size. */
+  private static final double TARGET_LOAD = 0.9;
+
+  /** Marks entries which have been output by {@link #evict} and still need to be removed. */
+  private static final long EVICTED = -1L;
+
+  private final Coder<K> keyCoder;
+  private final Combiner<WindowedValue<K>, InputT, AccumT, ?> combiner;
+  private final SizeEstimator<? super AccumT> accumulatorSizer;
+  private final KeyBuffer keyBytes = new KeyBuffer();
+  private final ArenaInputStream arenaInput = new ArenaInputStream();
+
+  private final Counter hits = Metrics.counter(OffHeapPrecombineGroupingTable.class, "hits");
+  private final Counter misses = Metrics.counter(OffHeapPrecombineGroupingTable.class, "misses");
+  private final Counter evictedEntries =
+      Metrics.counter(OffHeapPrecombineGroupingTable.class, "evictedEntries");
+  private final Counter flushedEntries =
+      Metrics.counter(OffHeapPrecombineGroupingTable.class, "flushedEntries");
+
+  private long maxSize;
+
+  // Parallel arrays making up the open addressing table. A slot is occupied iff
+  // templates[slot] != null.
+  private int[] hashes;
+  private int[] keyOffsets;
+  private int[] keyLengths;
+  /** Bytes accounted for the key of each entry: its encoded length plus any template it owns. */
+  private int[] keyCosts;
+
+  private long[] lastAccess;
+  private long[] accumulatorSizes;
+  private Object[] templates;
+  private Object[] accumulators;
+  private int mask;
+  private int count;
+
+  /** Encoded keys of all entries, stored back to back with gaps left by removed entries. */
+  private ByteBuffer arena;
+
+  /** Number of bytes of {@link #arena} used by the keys of present entries. */
+  private int arenaLiveBytes;
+
+  /** Windowing template of the most recently inserted entry, shared with the next if equal. */
+  private WindowedValue<K> lastTemplate;
+
+  /** Reusable scratch space for sorting access times and key offsets. */
+  private long[] scratch = new long[0];
+
+  private long accessClock;
+  private long keyAndAccumulatorBytes;
+
+  // Counted locally and reported once per flush to keep metrics off the per element path.
+  private long hitCount;
+  private long missCount;
+  private long evictedCount;
+
+  /** A reusable buffer for encoding keys which exposes its backing array without copying. */
+  private static class KeyBuffer extends ByteArrayOutputStream {
+    byte[] buffer() {
+      return buf;
+    }
+  }
+
+  /** A reusable stream over the encoded key of an entry in the {@link #arena}. */
+  private class ArenaInputStream extends InputStream {
+    private int position;
+    private int limit;
+
+    ArenaInputStream reset(int offset, int length) {
+      position = offset;
+      limit = offset + length;
+      return this;
+    }
+
+    @Override
+    public int read() {
+      return position < limit ? arena.get(position++) & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (position >= limit) {
+        return -1;
+      }
+      int n = Math.min(len, limit - position);
+      for (int i = 0; i < n; i++) {
+        b[off + i] = arena.get(position++);
+      }
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return limit - position;
+    }
+  }
+
+  OffHeapPrecombineGroupingTable(
+      long maxSize,
+      Coder<K> keyCoder,
+      Combiner<WindowedValue<K>, InputT, AccumT, ?> combiner,
+      SizeEstimator<? super AccumT> accumulatorSizer) {
+    this.maxSize = maxSize;
+    this.keyCoder = keyCoder;
+    this.combiner = combiner;
+    this.accumulatorSizer = accumulatorSizer;
+    this.arena = ByteBuffer.allocateDirect(INITIAL_ARENA_BYTES);
+    allocateTable(INITIAL_CAPACITY);
+  }
+
+  private void allocateTable(int capacity) {
+    hashes = new int[capacity];
+    keyOffsets = new int[capacity];
+    keyLengths = new int[capacity];
+    keyCosts = new int[capacity];
+    lastAccess = new long[capacity];
+    accumulatorSizes = new long[capacity];
+    templates = new Object[capacity];
+    accumulators = new Object[capacity];
+    mask = capacity - 1;
+    count = 0;
+  }
+
+  /** Adds a pair to this table, possibly flushing some entries to output if the table is full. */
+  @SuppressWarnings("unchecked")
+  @Override
+  public void put(Object pair, Receiver receiver) throws Exception {
+    WindowedValue<KV<K, InputT>> windowedKv = (WindowedValue<KV<K, InputT>>) pair;
+    put(
+        windowedKv.withValue(windowedKv.getValue().getKey()),
+        windowedKv.getValue().getValue(),
+        receiver);
+  }
+
+  /**
+   * Adds the key and value to this table, possibly flushing some entries to output if the table is
+   * full.
+   */
+  @SuppressWarnings("unchecked")
+  public void put(WindowedValue<K> key, InputT value, Receiver receiver) throws Exception {
+    keyBytes.reset();
+    keyCoder.encode(key.getValue(), keyBytes);
+    byte[] encoded = keyBytes.buffer();
+    int length = keyBytes.size();
+    int hash = hash(encoded, length, key.getWindows());
+
+    int slot = hash & mask;
+    while (templates[slot] != null) {
+      if (hashes[slot] == hash && matches(slot, encoded, length, key)) {
+        break;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    AccumT accumulator;
+    if (templates[slot] == null) {
+      missCount++;
+      if (count + 1 > MAX_LOAD_FACTOR * templates.length
+          && (long) templates.length * 2 * PER_SLOT_OVERHEAD + keyAndAccumulatorBytes
+              >= TARGET_LOAD * maxSize) {
+        // Growing the table would not fit, so make room for new entries instead.
+        evict(
+            (long) (TARGET_LOAD * maxSize),
+            (int) (MAX_LOAD_FACTOR * templates.length / 2),
+            receiver);
+      }
+      slot = insert(hash, encoded, length, key);
+      accumulator = combiner.createAccumulator(key);
+    } else {
+      hitCount++;
+      accumulator = (AccumT) accumulators[slot];
+      keyAndAccumulatorBytes -= accumulatorSizes[slot];
+    }
+    accumulator = combiner.add(key, accumulator, value);
+    accumulators[slot] = accumulator;
+    accumulatorSizes[slot] = accumulatorSizer.estimateSize(accumulator);
+    keyAndAccumulatorBytes += accumulatorSizes[slot];
+    lastAccess[slot] = ++accessClock;
+
+    if (size() >= maxSize) {
+      evict((long) (TARGET_LOAD * maxSize), Integer.MAX_VALUE, receiver);
+    }
+  }
+
+  /** Inserts a new entry without an accumulator, growing the table if needed. */
+  private int insert(int hash, byte[] encoded, int length, WindowedValue<K> key) {
+    if (count + 1 > MAX_LOAD_FACTOR * templates.length) {
+      rehash(templates.length * 2);
+    }
+    int slot = hash & mask;
+    while (templates[slot] != null) {
+      slot = (slot + 1) & mask;
+    }
+    ensureArenaCapacity(length);
+    keyOffsets[slot] = arena.position();
+    arena.put(encoded, 0, length);
+    arenaLiveBytes += length;
+    keyLengths[slot] = length;
+    hashes[slot] = hash;
+    int cost = length;
+    if (lastTemplate == null || !sameWindowing(lastTemplate, key)) {
+      lastTemplate = key.withValue(null);
+      cost += TEMPLATE_BYTES;
+    }
+    templates[slot] = lastTemplate;
+    keyCosts[slot] = cost;
+    accumulatorSizes[slot] = 0;
+    count++;
+    keyAndAccumulatorBytes += cost;
+    return slot;
+  }
+
+  private static boolean sameWindowing(WindowedValue<?> template, WindowedValue<?> key) {
+    return template.getTimestamp().equals(key.getTimestamp())
+        && template.getPane().equals(key.getPane())
+        && template.getWindows().equals(key.getWindows());
+  }
+
+  private boolean matches(int slot, byte[] encoded, int length, WindowedValue<K> key) {
+    if (keyLengths[slot] != length) {
+      return false;
+    }
+    int offset = keyOffsets[slot];
+    for (int i = 0; i < length; i++) {
+      if (arena.get(offset + i) != encoded[i]) {
+        return false;
+      }
+    }
+    WindowedValue<?> existing = (WindowedValue<?>) templates[slot];
+    return Objects.equals(existing.getWindows(), key.getWindows())
+        && Objects.equals(existing.getPane(), key.getPane());
+  }
+
+  private static int hash(byte[] encoded, int length, Collection<? extends BoundedWindow> windows) {
+    int hash = 1;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + encoded[i];
+    }
+    hash = 31 * hash + windows.hashCode();
+    // Spread the bits since the table uses the low bits as an index.
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Makes room for a key of the given length, preferably by compacting the arena in place and only
+   * by allocating a larger one if the live keys need it.
+   */
+  private void ensureArenaCapacity(int length) {
+    if (arena.remaining() >= length) {
+      return;
+    }
+    long required = (long) arenaLiveBytes + length;
+    if (required <= arena.capacity() / 2) {
+      compactArena();
+      return;
+    }
+    long newCapacity = Math.max((long) arena.capacity() * 2, required);
+    ByteBuffer newArena = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, newCapacity));
+    for (int slot = 0; slot < templates.length; slot++) {
+      if (templates[slot] != null) {
+        int offset = keyOffsets[slot];
+        keyOffsets[slot] = newArena.position();
+        for (int i = 0; i < keyLengths[slot]; i++) {
+          newArena.put(arena.get(offset + i));
+        }
+      }
+    }
+    arena = newArena;
+  }
+
+  /** Moves the live keys to the front of the arena, in place, preserving their order. */
+  private void compactArena() {
+    int n = 0;
+    long[] offsets = scratch(count);
+    for (int slot = 0; slot < templates.length; slot++) {
+      if (templates[slot] != null) {
+        offsets[n++] = ((long) keyOffsets[slot] << 32) | slot;
+      }
+    }
+    Arrays.sort(offsets, 0, n);
+    int position = 0;
+    for (int i = 0; i < n; i++) {
+      int slot = (int) offsets[i];
+      int offset = keyOffsets[slot];
+      // Keys only ever move towards the front, so copying forwards is safe.
+      for (int j = 0; j < keyLengths[slot]; j++) {
+        arena.put(position + j, arena.get(offset + j));
+      }
+      keyOffsets[slot] = position;
+      position += keyLengths[slot];
+    }
+    arena.clear();
+    arena.position(position);
+  }
+
+  private long[] scratch(int size) {
+    if (scratch.length < size) {
+      scratch = new long[Math.max(size, scratch.length * 2)];
+    }
+    return scratch;
+  }
+
+  /** Rebuilds the table with the given capacity. Keys stay where they are in the arena. */
+  private void rehash(int capacity) {
+    int[] oldHashes = hashes;
+    int[] oldKeyOffsets = keyOffsets;
+    int[] oldKeyLengths = keyLengths;
+    int[] oldKeyCosts = keyCosts;
+    long[] oldLastAccess = lastAccess;
+    long[] oldAccumulatorSizes = accumulatorSizes;
+    Object[] oldTemplates = templates;
+    Object[] oldAccumulators = accumulators;
+
+    allocateTable(capacity);
+    for (int i = 0; i < oldTemplates.length; i++) {
+      if (oldTemplates[i] == null) {
+        continue;
+      }
+      int slot = oldHashes[i] & mask;
+      while (templates[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      keyOffsets[slot] = oldKeyOffsets[i];
+      keyLengths[slot] = oldKeyLengths[i];
+      keyCosts[slot] = oldKeyCosts[i];
+      hashes[slot] = oldHashes[i];
+      lastAccess[slot] = oldLastAccess[i];
+      accumulatorSizes[slot] = oldAccumulatorSizes[i];
+      templates[slot] = oldTemplates[i];
+      accumulators[slot] = oldAccumulators[i];
+      count++;
+    }
+  }
+
+  /**
+   * Outputs the least recently updated entries until the table is below the target size and holds
+   * at most the given number of entries.
+   */
+  private void evict(long targetSize, int maxEntries, Receiver receiver) throws Exception {
+    int n = 0;
+    long[] accessTimes = scratch(count);
+    for (int slot = 0; slot < templates.length; slot++) {
+      if (templates[slot] != null) {
+        accessTimes[n++] = lastAccess[slot];
+      }
+    }
+    Arrays.sort(accessTimes, 0, n);
+
+    int evicted = 0;
+    while ((size() >= targetSize || count > maxEntries) && evicted < n) {
+      // Guess how many more entries need to go from the average size of the remaining ones.
+      long averageEntryBytes = Math.max(1, keyAndAccumulatorBytes / (n - evicted));
+      long excessBytes = Math.max(0, size() - targetSize + 1);
+      long excessEntries =
+          Math.max(count - maxEntries, (excessBytes + averageEntryBytes - 1) / averageEntryBytes);
+      evicted += (int) Math.min(n - evicted, Math.max(1, excessEntries));
+      // Access times are unique, so this selects exactly the first evicted entries.
+      long cutoff = accessTimes[evicted - 1];
+      for (int slot = 0; slot < templates.length; slot++) {
+        if (templates[slot] != null && lastAccess[slot] != EVICTED && lastAccess[slot] <= cutoff) {
+          output(slot, receiver);
+          lastAccess[slot] = EVICTED;
+        }
+      }
+      for (int slot = 0; slot < templates.length; slot++) {
+        while (templates[slot] != null && lastAccess[slot] == EVICTED) {
+          remove(slot);
+        }
+      }
+      maybeShrink();
+    }
+    evictedCount += evicted;
+  }
+
+  /**
+   * Removes the entry in the given slot, shifting later entries of its probe sequence back so that
+   * lookups don't need tombstones.
+   */
+  private void remove(int slot) {
+    keyAndAccumulatorBytes -= keyCosts[slot] + accumulatorSizes[slot];
+    arenaLiveBytes -= keyLengths[slot];
+    count--;
+
+    int hole = slot;
+    int next = (hole + 1) & mask;
+    while (templates[next] != null) {
+      int ideal = hashes[next] & mask;
+      // The entry may fill the hole if its probe sequence passes through the hole.
+      if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+        hashes[hole] = hashes[next];
+        keyOffsets[hole] = keyOffsets[next];
+        keyLengths[hole] = keyLengths[next];
+        keyCosts[hole] = keyCosts[next];
+        lastAccess[hole] = lastAccess[next];
+        accumulatorSizes[hole] = accumulatorSizes[next];
+        templates[hole] = templates[next];
+        accumulators[hole] = accumulators[next];
+        hole = next;
+      }
+      next = (next + 1) & mask;
+    }
+    templates[hole] = null;
+    accumulators[hole] = null;
+  }
+
+  /** Shrinks the table once it is mostly empty so that its overhead does not stay at its peak. */
+  private void maybeShrink() {
+    int capacity = INITIAL_CAPACITY;
+    while (count > MAX_LOAD_FACTOR * capacity / 2) {
+      capacity *= 2;
+    }
+    if (capacity < templates.length) {
+      rehash(capacity);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void output(int slot, Receiver receiver) throws Exception {
+    K decoded = keyCoder.decode(arenaInput.reset(keyOffsets[slot], keyLengths[slot]));
+    WindowedValue<K> key = ((WindowedValue<K>) templates[slot]).withValue(decoded);
+    AccumT accumulator = combiner.compact(key, (AccumT) accumulators[slot]);
+    receiver.process(key.withValue(KV.of(decoded, accumulator)));
+  }
+
+  /** Flushes all entries in this table to output. */
+  @Override
+  public void flush(Receiver output) throws Exception {
+    for (int i = 0; i < templates.length; i++) {
+      if (templates[i] != null) {
+        output(i, output);
+      }
+    }
+    flushedEntries.inc(count);
+    hits.inc(hitCount);
+    misses.inc(missCount);
+    evictedEntries.inc(evictedCount);
+    hitCount = 0;
+    missCount = 0;
+    evictedCount = 0;
+
+    // Start over from the initial sizes rather than keeping the peak allocation around.
+    if (templates.length > INITIAL_CAPACITY) {
+      allocateTable(INITIAL_CAPACITY);
+    } else {
+      Arrays.fill(templates, null);
+      Arrays.fill(accumulators, null);
+      count = 0;
+    }
+    if (arena.capacity() > INITIAL_ARENA_BYTES) {
+      arena = ByteBuffer.allocateDirect(INITIAL_ARENA_BYTES);
+    } else {
+      arena.clear();
+    }
+    scratch = new long[0];
+    arenaLiveBytes = 0;
+    lastTemplate = null;
+    accessClock = 0;
+    keyAndAccumulatorBytes = 0;
+  }
+
+  @VisibleForTesting
+  void setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /** Returns the number of bytes used by the occupied slots, their keys and their accumulators. */
+  @VisibleForTesting
+  long size() {
+    return (long) count * PER_SLOT_OVERHEAD + keyAndAccumulatorBytes;
+  }
+
+  @VisibleForTesting
+  int capacity() {
+    return templates.length;
+  }
+
+  @VisibleForTesting
+  int arenaCapacity() {
+    return arena.capacity();
+  }
+}
@@ -217,7 +217,7 @@ public class PrecombineGroupingTable<K, InputT, AccumT>
     private final SideInputReader sideInputReader;
     private final PipelineOptions options;
 
-    private ValueCombiner(
+    ValueCombiner(
         GlobalCombineFnRunner<InputT, AccumT, OutputT> combineFn,
         SideInputReader sideInputReader,
         PipelineOptions options) {
@@ -487,7 +487,7 @@ public class PrecombineGroupingTable<K, InputT, AccumT>
 
     private long nextSample = 0;
 
-    private SamplingSizeEstimator(
+    SamplingSizeEstimator(
         SizeEstimator<T> underlying, double minSampleRate, double maxSampleRate) {
       this(underlying, minSampleRate, maxSampleRate, DEFAULT_MIN_SAMPLED, new Random());
     }
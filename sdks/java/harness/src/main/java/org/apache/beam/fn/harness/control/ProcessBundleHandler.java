@@ -40,11 +40,14 @@ import java.util.concurrent.Phaser;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import org.apache.beam.fn.harness.PTransformRunnerFactory;
 import org.apache.beam.fn.harness.PTransformRunnerFactory.Registrar;
 import org.apache.beam.fn.harness.data.BeamFnDataClient;
 import org.apache.beam.fn.harness.state.BeamFnStateClient;
 import org.apache.beam.fn.harness.state.BeamFnStateGrpcClientCache;
+import org.apache.beam.fn.harness.state.CachingBeamFnStateClient;
+import org.apache.beam.fn.harness.state.StateCache;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.BundleSplit;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.BundleSplit.Application;
@@ -65,6 +68,7 @@ import org.apache.beam.runners.core.construction.PTransformTranslation;
 import org.apache.beam.sdk.fn.data.FnDataReceiver;
 import org.apache.beam.sdk.fn.function.ThrowingRunnable;
 import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.SdkHarnessOptions;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.util.common.ReflectHelpers;
 import org.slf4j.Logger;
@@ -107,6 +111,8 @@ public class ProcessBundleHandler {
   private final BeamFnStateGrpcClientCache beamFnStateGrpcClientCache;
   private final Map<String, PTransformRunnerFactory> urnToPTransformRunnerFactoryMap;
   private final PTransformRunnerFactory defaultPTransformRunnerFactory;
+  // Null if caching state across bundles is disabled.
+  @Nullable private final StateCache stateCache;
 
   public ProcessBundleHandler(
       PipelineOptions options,
@@ -135,6 +141,9 @@ public class ProcessBundleHandler {
     this.urnToPTransformRunnerFactoryMap = urnToPTransformRunnerFactoryMap;
     this.defaultPTransformRunnerFactory =
         new UnknownPTransformRunnerFactory(urnToPTransformRunnerFactoryMap.keySet());
+    int stateCacheSizeMb = options.as(SdkHarnessOptions.class).getStateCacheSizeMb();
+    this.stateCache =
+        stateCacheSizeMb > 0 ? StateCache.withMaxWeight(stateCacheSizeMb * 1024L * 1024L) : null;
   }
 
   private void createRunnerAndConsumersForPTransformRecursively(
@@ -231,8 +240,10 @@ public class ProcessBundleHandler {
     try (HandleStateCallsForBundle beamFnStateClient =
         bundleDescriptor.hasStateApiServiceDescriptor()
             ? new BlockTillStateCallsFinish(
-                beamFnStateGrpcClientCache.forApiServiceDescriptor(
-                    bundleDescriptor.getStateApiServiceDescriptor()))
+                maybeCaching(
+                    beamFnStateGrpcClientCache.forApiServiceDescriptor(
+                        bundleDescriptor.getStateApiServiceDescriptor()),
+                    request.getProcessBundle()))
             : new FailAllStateCallsForBundle(request.getProcessBundle())) {
       Multimap<String, Application> allPrimaries = ArrayListMultimap.create();
       Multimap<String, DelayedApplication> allResiduals = ArrayListMultimap.create();
@@ -299,6 +310,19 @@ public class ProcessBundleHandler {
     return BeamFnApi.InstructionResponse.newBuilder().setProcessBundle(response);
   }
 
+  /**
+   * Wraps the {@link BeamFnStateClient} with one that caches side inputs across bundles if the
+   * runner supplied cache tokens for this bundle.
+   */
+  private BeamFnStateClient maybeCaching(
+      BeamFnStateClient beamFnStateClient, ProcessBundleRequest processBundleRequest) {
+    if (stateCache == null || processBundleRequest.getCacheTokensCount() == 0) {
+      return beamFnStateClient;
+    }
+    return new CachingBeamFnStateClient(
+        beamFnStateClient, stateCache, processBundleRequest.getCacheTokensList());
+  }
+
   /**
    * A {@link BeamFnStateClient} which counts the number of outstanding {@link StateRequest}s and
    * blocks till they are all finished.
@@ -25,10 +25,12 @@ import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi;
 import org.apache.beam.model.fnexecution.v1.BeamFnDataGrpc;
 import org.apache.beam.model.pipeline.v1.Endpoints;
 import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.fn.data.AdaptiveBufferLimit;
 import org.apache.beam.sdk.fn.data.BeamFnDataBufferingOutboundObserver;
 import org.apache.beam.sdk.fn.data.BeamFnDataGrpcMultiplexer;
 import org.apache.beam.sdk.fn.data.BeamFnDataInboundObserver;
@@ -39,6 +41,7 @@ import org.apache.beam.sdk.fn.data.LogicalEndpoint;
 import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
 import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.SdkHarnessOptions;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +56,7 @@ public class BeamFnDataGrpcClient implements BeamFnDataClient {
   private static final String BEAM_FN_API_DATA_BUFFER_LIMIT = "beam_fn_api_data_buffer_limit=";
 
   private final ConcurrentMap<Endpoints.ApiServiceDescriptor, BeamFnDataGrpcMultiplexer> cache;
+  private final ConcurrentMap<BeamFnApi.Target, AdaptiveBufferLimit> adaptiveBufferLimits;
   private final Function<Endpoints.ApiServiceDescriptor, ManagedChannel> channelFactory;
   private final OutboundObserverFactory outboundObserverFactory;
   private final PipelineOptions options;
@@ -65,6 +69,7 @@ public class BeamFnDataGrpcClient implements BeamFnDataClient {
     this.channelFactory = channelFactory;
     this.outboundObserverFactory = outboundObserverFactory;
     this.cache = new ConcurrentHashMap<>();
+    this.adaptiveBufferLimits = new ConcurrentHashMap<>();
   }
 
   /**
@@ -115,7 +120,27 @@ public class BeamFnDataGrpcClient implements BeamFnDataClient {
         outputLocation.getInstructionId(),
         outputLocation.getTarget());
     Optional<Integer> bufferLimit = getBufferLimit(options);
-    if (bufferLimit.isPresent()) {
+    SdkHarnessOptions harnessOptions = options.as(SdkHarnessOptions.class);
+    long timeLimitMs = harnessOptions.getDataBufferTimeLimitMs();
+    if (harnessOptions.isDataBufferAdaptive()) {
+      // Limits are kept per target so that what was learned carries over to later bundles.
+      AdaptiveBufferLimit adaptiveBufferLimit =
+          adaptiveBufferLimits.computeIfAbsent(
+              outputLocation.getTarget(),
+              target ->
+                  AdaptiveBufferLimit.create(
+                      bufferLimit.orElse(
+                          BeamFnDataBufferingOutboundObserver.DEFAULT_BUFFER_LIMIT_BYTES)));
+      return BeamFnDataBufferingOutboundObserver.forLocationWithAdaptiveBufferLimit(
+          adaptiveBufferLimit, timeLimitMs, outputLocation, coder, client.getOutboundObserver());
+    } else if (timeLimitMs > 0) {
+      return BeamFnDataBufferingOutboundObserver.forLocationWithTimeLimit(
+          bufferLimit.orElse(BeamFnDataBufferingOutboundObserver.DEFAULT_BUFFER_LIMIT_BYTES),
+          timeLimitMs,
+          outputLocation,
+          coder,
+          client.getOutboundObserver());
+    } else if (bufferLimit.isPresent()) {
       return BeamFnDataBufferingOutboundObserver.forLocationWithBufferLimit(
           bufferLimit.get(), outputLocation, coder, client.getOutboundObserver());
     } else {
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateGetResponse;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
+
+/**
+ * A {@link BeamFnStateClient} which serves get requests for side inputs from a {@link StateCache}
+ * that is shared across bundles.
+ *
+ * <p>An instance is created for each bundle using the cache tokens of the {@link
+ * ProcessBundleRequest}. Get requests which miss the cache are forwarded to the delegate and once
+ * all chunks of the value have been fetched the value is cached.
+ *
+ * <p>The cache tokens only vouch for side input values. User state is scoped to a key and may be
+ * changed by whichever worker processes the key next, so it is never cached across bundles; within
+ * a bundle, {@link FnApiStateAccessor} already reuses the state it fetched for a key.
+ */
+public class CachingBeamFnStateClient implements BeamFnStateClient {
+  private final BeamFnStateClient delegate;
+  private final StateCache stateCache;
+  private final List<ByteString> cacheTokens;
+  // Values which are being fetched in multiple chunks, keyed by the state key.
+  private final Map<StateKey, PartialValue> partialValues;
+
+  public CachingBeamFnStateClient(
+      BeamFnStateClient delegate, StateCache stateCache, List<ByteString> cacheTokens) {
+    this.delegate = delegate;
+    this.stateCache = stateCache;
+    this.cacheTokens = ImmutableList.copyOf(cacheTokens);
+    this.partialValues = new HashMap<>();
+  }
+
+  @Override
+  public void handle(StateRequest.Builder requestBuilder, CompletableFuture<StateResponse> response) {
+    StateKey stateKey = requestBuilder.getStateKey();
+    if (!isCacheable(stateKey)) {
+      delegate.handle(requestBuilder, response);
+      return;
+    }
+
+    if (requestBuilder.getRequestCase() == StateRequest.RequestCase.GET) {
+      handleGet(requestBuilder, response);
+    } else {
+      delegate.handle(requestBuilder, response);
+    }
+  }
+
+  private void handleGet(
+      StateRequest.Builder requestBuilder, CompletableFuture<StateResponse> response) {
+    StateKey stateKey = requestBuilder.getStateKey();
+    ByteString continuationToken = requestBuilder.getGet().getContinuationToken();
+    if (continuationToken.isEmpty()) {
+      ByteString cachedValue = stateCache.get(cacheTokens, stateKey);
+      if (cachedValue != null) {
+        response.complete(
+            StateResponse.newBuilder()
+                .setId(requestBuilder.getId())
+                .setGet(StateGetResponse.newBuilder().setData(cachedValue))
+                .build());
+        return;
+      }
+    }
+
+    CompletableFuture<StateResponse> delegateResponse = new CompletableFuture<>();
+    delegateResponse.whenComplete(
+        (stateResponse, throwable) -> {
+          if (throwable == null) {
+            if (stateResponse.getError().isEmpty()) {
+              onGetChunk(stateKey, continuationToken, stateResponse.getGet());
+            }
+            response.complete(stateResponse);
+          } else {
+            response.completeExceptionally(throwable);
+          }
+        });
+    delegate.handle(requestBuilder, delegateResponse);
+  }
+
+  /**
+   * Accumulates the chunks of a value as they are fetched, caching the value once the final chunk
+   * has been seen. Chunks which do not continue the value being accumulated restart accumulation.
+   */
+  private void onGetChunk(
+      StateKey stateKey, ByteString requestToken, StateGetResponse getResponse) {
+    synchronized (partialValues) {
+      ByteString value;
+      if (requestToken.isEmpty()) {
+        value = getResponse.getData();
+      } else {
+        PartialValue partialValue = partialValues.remove(stateKey);
+        if (partialValue == null || !partialValue.nextToken.equals(requestToken)) {
+          // The fetch did not start from the first chunk so the value is incomplete.
+          return;
+        }
+        value = partialValue.data.concat(getResponse.getData());
+      }
+
+      if (getResponse.getContinuationToken().isEmpty()) {
+        partialValues.remove(stateKey);
+        stateCache.put(cacheTokens, stateKey, value);
+      } else {
+        partialValues.put(stateKey, new PartialValue(value, getResponse.getContinuationToken()));
+      }
+    }
+  }
+
+  private static boolean isCacheable(StateKey stateKey) {
+    return stateKey.getTypeCase() == StateKey.TypeCase.MULTIMAP_SIDE_INPUT;
+  }
+
+  /** The chunks of a value fetched so far and the token of the next chunk. */
+  private static class PartialValue {
+    private final ByteString data;
+    private final ByteString nextToken;
+
+    private PartialValue(ByteString data, ByteString nextToken) {
+      this.data = data;
+      this.nextToken = nextToken;
+    }
+  }
+}
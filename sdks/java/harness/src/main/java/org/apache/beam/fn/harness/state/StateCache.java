@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
+
+/**
+ * A cache of fully materialized state values which is shared across bundles.
+ *
+ * <p>Entries are scoped by the cache tokens which the runner supplies on each {@link
+ * ProcessBundleRequest}. A runner invalidates all values cached under a set of tokens by no longer
+ * sending those tokens, the stale entries are then evicted as the cache fills up. The cache is
+ * bounded by the number of bytes of cached values and evicts the least recently used entries
+ * first.
+ *
+ * <p>This class is thread safe.
+ */
+public class StateCache {
+  private final Cache<CacheKey, ByteString> cache;
+
+  /** Creates a cache which holds at most {@code maxWeightBytes} bytes of state. */
+  public static StateCache withMaxWeight(long maxWeightBytes) {
+    checkArgument(maxWeightBytes > 0, "maxWeightBytes must be positive, got %s", maxWeightBytes);
+    return new StateCache(maxWeightBytes);
+  }
+
+  private StateCache(long maxWeightBytes) {
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxWeightBytes)
+            .weigher(
+                (CacheKey key, ByteString value) ->
+                    key.stateKey.getSerializedSize() + value.size())
+            .build();
+  }
+
+  /**
+   * Returns the value cached for the {@link StateKey} under the given cache tokens or {@code null}
+   * if there is none.
+   */
+  @Nullable
+  public ByteString get(List<ByteString> cacheTokens, StateKey stateKey) {
+    return cache.getIfPresent(new CacheKey(cacheTokens, stateKey));
+  }
+
+  /** Caches the fully materialized value of the {@link StateKey} under the given cache tokens. */
+  public void put(List<ByteString> cacheTokens, StateKey stateKey, ByteString value) {
+    cache.put(new CacheKey(cacheTokens, stateKey), value);
+  }
+
+  @VisibleForTesting
+  long size() {
+    cache.cleanUp();
+    return cache.size();
+  }
+
+  /** The cache tokens and state key that a cached value is stored under. */
+  private static class CacheKey {
+    private final List<ByteString> cacheTokens;
+    private final StateKey stateKey;
+
+    private CacheKey(List<ByteString> cacheTokens, StateKey stateKey) {
+      this.cacheTokens = ImmutableList.copyOf(cacheTokens);
+      this.stateKey = stateKey;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey other = (CacheKey) obj;
+      return cacheTokens.equals(other.cacheTokens) && stateKey.equals(other.stateKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(cacheTokens, stateKey);
+    }
+  }
+}
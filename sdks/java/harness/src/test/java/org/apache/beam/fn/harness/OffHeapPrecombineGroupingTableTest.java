@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.beam.fn.harness;
+
+import static org.apache.beam.sdk.util.WindowedValue.valueInGlobalWindow;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.fn.harness.GroupingTable.Receiver;
+import org.apache.beam.fn.harness.PrecombineGroupingTable.Combiner;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link OffHeapPrecombineGroupingTable}. */
+@RunWith(JUnit4.class)
+public class OffHeapPrecombineGroupingTableTest {
+
+  private static class TestOutputReceiver implements Receiver {
+    final List<Object> outputElems = new ArrayList<>();
+
+    @Override
+    public void process(Object elem) {
+      outputElems.add(elem);
+    }
+  }
+
+  private static class SummingCombiner
+      implements Combiner<WindowedValue<String>, Integer, Long, Long> {
+    @Override
+    public Long createAccumulator(WindowedValue<String> key) {
+      return 0L;
+    }
+
+    @Override
+    public Long add(WindowedValue<String> key, Long accumulator, Integer value) {
+      return accumulator + value;
+    }
+
+    @Override
+    public Long merge(WindowedValue<String> key, Iterable<Long> accumulators) {
+      long sum = 0;
+      for (Long part : accumulators) {
+        sum += part;
+      }
+      return sum;
+    }
+
+    @Override
+    public Long compact(WindowedValue<String> key, Long accumulator) {
+      return accumulator;
+    }
+
+    @Override
+    public Long extract(WindowedValue<String> key, Long accumulator) {
+      return accumulator;
+    }
+  }
+
+  private static OffHeapPrecombineGroupingTable<String, Integer, Long> createTable() {
+    // "Estimate" the size of accumulators by looking at their value.
+    return new OffHeapPrecombineGroupingTable<>(
+        100_000_000L, StringUtf8Coder.of(), new SummingCombiner(), accumulator -> accumulator);
+  }
+
+  @Test
+  public void testCombiningGroupingTable() throws Exception {
+    OffHeapPrecombineGroupingTable<String, Integer, Long> table = createTable();
+    // An empty table takes up no space, only entries count against the maximum size.
+    assertEquals(0, table.size());
+    table.setMaxSize(100_000);
+
+    TestOutputReceiver receiver = new TestOutputReceiver();
+
+    table.put(valueInGlobalWindow("A"), 20_000, receiver);
+    table.put(valueInGlobalWindow("B"), 20_000, receiver);
+    table.put(valueInGlobalWindow("A"), 10_000, receiver);
+    table.put(valueInGlobalWindow("C"), 30_000, receiver);
+    assertThat(receiver.outputElems, empty());
+
+    // Exceeds the maximum size, which evicts the least recently updated entries until the table
+    // is below its target load.
+    table.put(valueInGlobalWindow("D"), 30_000, receiver);
+    assertThat(
+        receiver.outputElems,
+        containsInAnyOrder(
+            valueInGlobalWindow(KV.of("B", 20_000L)), valueInGlobalWindow(KV.of("A", 30_000L))));
+
+    // Remaining entries are still combined into.
+    table.put(valueInGlobalWindow("C"), 1, receiver);
+    receiver.outputElems.clear();
+    table.flush(receiver);
+    assertThat(
+        receiver.outputElems,
+        containsInAnyOrder(
+            valueInGlobalWindow(KV.of("C", 30_001L)), valueInGlobalWindow(KV.of("D", 30_000L))));
+  }
+
+  @Test
+  public void testGroupsByWindow() throws Exception {
+    OffHeapPrecombineGroupingTable<String, Integer, Long> table = createTable();
+    TestOutputReceiver receiver = new TestOutputReceiver();
+
+    IntervalWindow first = new IntervalWindow(new Instant(0), new Instant(10));
+    IntervalWindow second = new IntervalWindow(new Instant(10), new Instant(20));
+    table.put(WindowedValue.of("A", new Instant(1), first, PaneInfo.NO_FIRING), 1, receiver);
+    table.put(WindowedValue.of("A", new Instant(11), second, PaneInfo.NO_FIRING), 2, receiver);
+    table.put(WindowedValue.of("A", new Instant(2), first, PaneInfo.NO_FIRING), 3, receiver);
+    table.flush(receiver);
+
+    assertThat(
+        receiver.outputElems,
+        containsInAnyOrder(
+            WindowedValue.of(KV.of("A", 4L), new Instant(1), first, PaneInfo.NO_FIRING),
+            WindowedValue.of(KV.of("A", 2L), new Instant(11), second, PaneInfo.NO_FIRING)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testEvictsPartOfTheTableWithinBudget() throws Exception {
+    OffHeapPrecombineGroupingTable<String, Integer, Long> table = createTable();
+    // Too small to grow the table to hold all of the keys.
+    long maxSize = 500_000L;
+    table.setMaxSize(maxSize);
+    TestOutputReceiver receiver = new TestOutputReceiver();
+    for (int i = 0; i < 20_000; i++) {
+      table.put(valueInGlobalWindow("hot" + (i % 100)), 1, receiver);
+      table.put(valueInGlobalWindow("cold" + i), 1, receiver);
+      assertThat(table.size(), lessThan(maxSize));
+    }
+    // Evictions only make room by dropping the least recently updated keys, so the frequently
+    // updated ones stay in the table.
+    assertThat(receiver.outputElems, not(empty()));
+    for (Object output : receiver.outputElems) {
+      KV<String, Long> kv = ((WindowedValue<KV<String, Long>>) output).getValue();
+      assertThat(kv.getKey(), startsWith("cold"));
+    }
+    table.flush(receiver);
+
+    Map<String, Long> sums = new HashMap<>();
+    for (Object output : receiver.outputElems) {
+      KV<String, Long> kv = ((WindowedValue<KV<String, Long>>) output).getValue();
+      sums.merge(kv.getKey(), kv.getValue(), Long::sum);
+    }
+    assertEquals(20_100, sums.size());
+    assertEquals(200L, (long) sums.get("hot0"));
+    assertEquals(1L, (long) sums.get("cold0"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testManyKeysAcrossFlushes() throws Exception {
+    OffHeapPrecombineGroupingTable<String, Integer, Long> table = createTable();
+    for (int round = 0; round < 2; round++) {
+      TestOutputReceiver receiver = new TestOutputReceiver();
+      for (int i = 0; i < 100_000; i++) {
+        table.put(valueInGlobalWindow("key" + (i % 20_000)), 1, receiver);
+      }
+      assertThat(receiver.outputElems, empty());
+      table.flush(receiver);
+
+      Map<String, Long> sums = new HashMap<>();
+      for (Object output : receiver.outputElems) {
+        KV<String, Long> kv = ((WindowedValue<KV<String, Long>>) output).getValue();
+        sums.merge(kv.getKey(), kv.getValue(), Long::sum);
+      }
+      assertEquals(20_000, sums.size());
+      for (Long sum : sums.values()) {
+        assertEquals(5L, (long) sum);
+      }
+    }
+  }
+
+  @Test
+  public void testShrinksOnFlush() throws Exception {
+    OffHeapPrecombineGroupingTable<String, Integer, Long> table = createTable();
+    int initialCapacity = table.capacity();
+    int initialArenaCapacity = table.arenaCapacity();
+    TestOutputReceiver receiver = new TestOutputReceiver();
+    for (int i = 0; i < 20_000; i++) {
+      table.put(valueInGlobalWindow("key" + i), 1, receiver);
+    }
+    assertThat(table.capacity(), greaterThan(initialCapacity));
+    assertThat(table.arenaCapacity(), greaterThan(initialArenaCapacity));
+
+    table.flush(receiver);
+    assertEquals(20_000, receiver.outputElems.size());
+    assertEquals(initialCapacity, table.capacity());
+    assertEquals(initialArenaCapacity, table.arenaCapacity());
+
+    // A few entries only account for their own slots, however large the table grew before.
+    table.put(valueInGlobalWindow("A"), 1, receiver);
+    assertThat(table.size(), lessThan(1_000L));
+  }
+}
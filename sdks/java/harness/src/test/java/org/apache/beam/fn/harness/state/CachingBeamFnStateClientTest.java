@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest.RequestCase;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link CachingBeamFnStateClient}. */
+@RunWith(JUnit4.class)
+public class CachingBeamFnStateClientTest {
+  private static final List<ByteString> TOKENS = ImmutableList.of(ByteString.copyFromUtf8("T1"));
+
+  private FakeBeamFnStateClient fakeClient;
+  private CountingBeamFnStateClient countingClient;
+  private StateCache stateCache;
+
+  @Before
+  public void setUp() throws Exception {
+    fakeClient =
+        new FakeBeamFnStateClient(
+            ImmutableMap.of(
+                sideInputKey("A"),
+                encode("A1", "A2", "A3"),
+                sideInputKey("B"),
+                encode("B1"),
+                userStateKey("B"),
+                encode("B1")));
+    countingClient = new CountingBeamFnStateClient(fakeClient);
+    stateCache = StateCache.withMaxWeight(1024 * 1024);
+  }
+
+  @Test
+  public void testGetIsCachedAcrossBundles() throws Exception {
+    assertArrayEquals(new String[] {"A1", "A2", "A3"}, readSideInput(bundle(TOKENS), "A"));
+    // The fake client returns 5 byte chunks so the value required several requests.
+    int fetches = countingClient.gets;
+    assertEquals(2, fetches);
+
+    assertArrayEquals(new String[] {"A1", "A2", "A3"}, readSideInput(bundle(TOKENS), "A"));
+    assertEquals(fetches, countingClient.gets);
+  }
+
+  @Test
+  public void testDifferentCacheTokensDoNotShareValues() throws Exception {
+    assertArrayEquals(new String[] {"B1"}, readSideInput(bundle(TOKENS), "B"));
+    assertEquals(1, countingClient.gets);
+
+    assertArrayEquals(
+        new String[] {"B1"},
+        readSideInput(bundle(ImmutableList.of(ByteString.copyFromUtf8("T2"))), "B"));
+    assertEquals(2, countingClient.gets);
+  }
+
+  @Test
+  public void testUserStateIsNotCachedAcrossBundles() throws Exception {
+    assertArrayEquals(new String[] {"B1"}, readUserState(bundle(TOKENS), "B"));
+    assertEquals(1, countingClient.gets);
+
+    // Another worker may change the state of the key in between bundles sent with the same
+    // tokens.
+    BagUserState<String> otherWorker = bagUserState(fakeClient, "B");
+    otherWorker.append("B2");
+    otherWorker.asyncClose();
+
+    // The value is fetched again, which now takes two chunks.
+    assertArrayEquals(new String[] {"B1", "B2"}, readUserState(bundle(TOKENS), "B"));
+    assertEquals(3, countingClient.gets);
+  }
+
+  @Test
+  public void testPartiallyReadValueIsNotCached() throws Exception {
+    // Only fetch the first chunk of the two chunk value.
+    CachingBeamFnStateClient client = bundle(TOKENS);
+    StateFetchingIterators.forFirstChunk(
+            client, StateRequest.newBuilder().setStateKey(sideInputKey("A")).build())
+        .next();
+    assertEquals(1, countingClient.gets);
+
+    assertArrayEquals(new String[] {"A1", "A2", "A3"}, readSideInput(bundle(TOKENS), "A"));
+    assertEquals(3, countingClient.gets);
+  }
+
+  private CachingBeamFnStateClient bundle(List<ByteString> cacheTokens) {
+    return new CachingBeamFnStateClient(countingClient, stateCache, cacheTokens);
+  }
+
+  private String[] readUserState(BeamFnStateClient client, String id) throws Exception {
+    BagUserState<String> userState = bagUserState(client, id);
+    String[] values = Iterables.toArray(userState.get(), String.class);
+    userState.asyncClose();
+    return values;
+  }
+
+  private String[] readSideInput(BeamFnStateClient client, String id) throws Exception {
+    Iterator<ByteString> chunks =
+        StateFetchingIterators.forFirstChunk(
+            client, StateRequest.newBuilder().setStateKey(sideInputKey(id)).build());
+    ByteString data = ByteString.EMPTY;
+    while (chunks.hasNext()) {
+      data = data.concat(chunks.next());
+    }
+    List<String> values = new ArrayList<>();
+    InputStream input = data.newInput();
+    while (input.available() > 0) {
+      values.add(StringUtf8Coder.of().decode(input));
+    }
+    return values.toArray(new String[0]);
+  }
+
+  private BagUserState<String> bagUserState(BeamFnStateClient client, String id)
+      throws IOException {
+    return new BagUserState<>(
+        client,
+        "instructionId",
+        "ptransformId",
+        "stateId",
+        ByteString.copyFromUtf8("encodedWindow"),
+        encode(id),
+        StringUtf8Coder.of());
+  }
+
+  private StateKey sideInputKey(String id) throws IOException {
+    return StateKey.newBuilder()
+        .setMultimapSideInput(
+            StateKey.MultimapSideInput.newBuilder()
+                .setPtransformId("ptransformId")
+                .setSideInputId("sideInputId")
+                .setWindow(ByteString.copyFromUtf8("encodedWindow"))
+                .setKey(encode(id)))
+        .build();
+  }
+
+  private StateKey userStateKey(String id) throws IOException {
+    return StateKey.newBuilder()
+        .setBagUserState(
+            StateKey.BagUserState.newBuilder()
+                .setPtransformId("ptransformId")
+                .setUserStateId("stateId")
+                .setWindow(ByteString.copyFromUtf8("encodedWindow"))
+                .setKey(encode(id)))
+        .build();
+  }
+
+  private ByteString encode(String... values) throws IOException {
+    ByteString.Output out = ByteString.newOutput();
+    for (String value : values) {
+      StringUtf8Coder.of().encode(value, out);
+    }
+    return out.toByteString();
+  }
+
+  /** A {@link BeamFnStateClient} which counts the get requests it forwards. */
+  private static class CountingBeamFnStateClient implements BeamFnStateClient {
+    private final BeamFnStateClient delegate;
+    private int gets;
+
+    private CountingBeamFnStateClient(BeamFnStateClient delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void handle(
+        StateRequest.Builder requestBuilder, CompletableFuture<StateResponse> response) {
+      if (requestBuilder.getRequestCase() == RequestCase.GET) {
+        gets++;
+      }
+      delegate.handle(requestBuilder, response);
+    }
+  }
+}
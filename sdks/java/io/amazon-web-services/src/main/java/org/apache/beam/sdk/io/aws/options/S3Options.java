@@ -42,6 +42,29 @@ public interface S3Options extends AwsOptions {
 
   void setS3UploadBufferSizeBytes(Integer value);
 
+  @Description(
+      "Maximum size of the upload buffers of each S3 writer, including the parts being uploaded;"
+          + " up to this value divided by S3UploadBufferSizeBytes parts are uploaded concurrently."
+          + " Default is S3UploadBufferSizeBytes, which uploads one part at a time.")
+  @Default.InstanceFactory(S3UploadMemoryBudgetBytesFactory.class)
+  Long getS3UploadMemoryBudgetBytes();
+
+  void setS3UploadMemoryBudgetBytes(Long value);
+
+  @Description("Size of the blocks S3 objects are read in, with ranged requests. Default is 4MB.")
+  @Default.Integer(4 * 1024 * 1024)
+  int getS3ReadBlockSizeBytes();
+
+  void setS3ReadBlockSizeBytes(int value);
+
+  @Description(
+      "Maximum number of blocks fetched in parallel ahead of the one being read, once an S3 object"
+          + " is read sequentially.")
+  @Default.Integer(4)
+  int getS3ReadAheadBlocks();
+
+  void setS3ReadAheadBlocks(int value);
+
   @Description("Thread pool size, limiting max concurrent S3 operations")
   @Default.Integer(50)
   int getS3ThreadPoolSize();
@@ -86,4 +109,15 @@ public interface S3Options extends AwsOptions {
           : 67_108_864;
     }
   }
+
+  /**
+   * Provide the default upload memory budget per writer: a single upload buffer, so that each
+   * writer holds at most one part in memory. Larger budgets upload parts concurrently.
+   */
+  class S3UploadMemoryBudgetBytesFactory implements DefaultValueFactory<Long> {
+    @Override
+    public Long create(PipelineOptions options) {
+      return (long) options.as(S3Options.class).getS3UploadBufferSizeBytes();
+    }
+  }
 }
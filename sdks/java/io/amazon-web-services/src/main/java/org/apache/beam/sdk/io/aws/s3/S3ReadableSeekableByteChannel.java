@@ -24,33 +24,73 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
-import java.io.BufferedInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.NonWritableChannelException;
-import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.beam.sdk.io.aws.options.S3Options;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
 
-/** A readable S3 object, as a {@link SeekableByteChannel}. */
+/**
+ * A readable S3 object, as a {@link SeekableByteChannel}.
+ *
+ * <p>The object is read in blocks of {@link S3Options#getS3ReadBlockSizeBytes}, each fetched with
+ * a ranged request on the {@link S3FileSystem} executor. While blocks are read one after the
+ * other, up to {@link S3Options#getS3ReadAheadBlocks} following blocks are fetched in parallel,
+ * doubling the read-ahead at each sequential block. Any other seek cancels the read-ahead. The
+ * last blocks read are kept, so that seeking back a little, e.g. to read a footer, does not fetch
+ * them again.
+ */
 class S3ReadableSeekableByteChannel implements SeekableByteChannel {
+  private static final int CACHED_BLOCKS = 2;
+
+  private final Counter bytesFetchedCounter =
+      Metrics.counter(S3ReadableSeekableByteChannel.class, "bytesFetched");
+  private final Counter bytesConsumedCounter =
+      Metrics.counter(S3ReadableSeekableByteChannel.class, "bytesConsumed");
 
   private final AmazonS3 amazonS3;
   private final S3ResourceId path;
   private final long contentLength;
+  private final S3Options options;
+  private final ListeningExecutorService executorService;
+  private final int blockSize;
+  private final int maxReadAheadBlocks;
+
+  // Fetched or pending blocks by index, from the least to the most recently used.
+  private final LinkedHashMap<Long, ListenableFuture<byte[]>> blocks =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong bytesFetched = new AtomicLong();
+  private long bytesConsumed = 0;
+  private long currentBlock = -1;
+  private int readAheadBlocks = 0;
   private long position = 0;
   private boolean open = true;
-  private S3Object s3Object;
-  private final S3Options options;
-  private ReadableByteChannel s3ObjectContentChannel;
 
-  S3ReadableSeekableByteChannel(AmazonS3 amazonS3, S3ResourceId path, S3Options options)
+  S3ReadableSeekableByteChannel(
+      AmazonS3 amazonS3,
+      S3ResourceId path,
+      S3Options options,
+      ListeningExecutorService executorService)
       throws IOException {
     this.amazonS3 = checkNotNull(amazonS3, "amazonS3");
     checkNotNull(path, "path");
     this.options = checkNotNull(options, "options");
+    this.executorService = checkNotNull(executorService, "executorService");
+    checkArgument(options.getS3ReadBlockSizeBytes() > 0, "S3ReadBlockSizeBytes must be positive");
+    checkArgument(options.getS3ReadAheadBlocks() >= 0, "S3ReadAheadBlocks must not be negative");
+    this.blockSize = options.getS3ReadBlockSizeBytes();
+    this.maxReadAheadBlocks = options.getS3ReadAheadBlocks();
 
     if (path.getSize().isPresent()) {
       contentLength = path.getSize().get();
@@ -79,36 +119,84 @@ class S3ReadableSeekableByteChannel implements SeekableByteChannel {
       return -1;
     }
 
-    if (s3Object == null) {
-      GetObjectRequest request = new GetObjectRequest(path.getBucket(), path.getKey());
-      request.setSSECustomerKey(options.getSSECustomerKey());
-      if (position > 0) {
-        request.setRange(position, contentLength);
-      }
-      try {
-        s3Object = amazonS3.getObject(request);
-      } catch (AmazonClientException e) {
-        throw new IOException(e);
+    int totalBytesRead = 0;
+    while (destinationBuffer.hasRemaining() && position < contentLength) {
+      long blockIndex = position / blockSize;
+      byte[] block = getBlock(blockIndex);
+      int offsetInBlock = (int) (position - blockIndex * blockSize);
+      int bytesRead = Math.min(destinationBuffer.remaining(), block.length - offsetInBlock);
+      destinationBuffer.put(block, offsetInBlock, bytesRead);
+      position += bytesRead;
+      totalBytesRead += bytesRead;
+    }
+
+    bytesConsumed += totalBytesRead;
+    return totalBytesRead;
+  }
+
+  /** Returns the content of a block, adapting and scheduling the read-ahead which follows it. */
+  private byte[] getBlock(long blockIndex) throws IOException {
+    if (blockIndex == currentBlock + 1) {
+      readAheadBlocks = Math.min(maxReadAheadBlocks, Math.max(1, readAheadBlocks * 2));
+    } else if (blockIndex != currentBlock) {
+      readAheadBlocks = 0;
+    }
+    currentBlock = blockIndex;
+
+    long lastBlock = Math.min((contentLength - 1) / blockSize, blockIndex + readAheadBlocks);
+    for (long i = blockIndex; i <= lastBlock; i++) {
+      if (!blocks.containsKey(i)) {
+        long index = i;
+        blocks.put(index, executorService.submit(() -> fetchBlock(index)));
       }
-      s3ObjectContentChannel =
-          Channels.newChannel(new BufferedInputStream(s3Object.getObjectContent(), 1024 * 1024));
     }
+    ListenableFuture<byte[]> block = blocks.get(blockIndex);
+    evictBlocks(blockIndex, lastBlock);
 
-    int totalBytesRead = 0;
-    int bytesRead = 0;
+    try {
+      return block.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading " + path, e);
+    } catch (ExecutionException e) {
+      blocks.remove(blockIndex);
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
 
-    do {
-      totalBytesRead += bytesRead;
-      try {
-        bytesRead = s3ObjectContentChannel.read(destinationBuffer);
-      } catch (AmazonClientException e) {
-        // TODO replace all catch AmazonServiceException with client exception
-        throw new IOException(e);
+  /**
+   * Drops the least recently used blocks beyond the read-ahead window and the cached blocks,
+   * cancelling their fetch if it is still pending.
+   */
+  private void evictBlocks(long firstBlock, long lastBlock) {
+    int capacity = (int) (lastBlock - firstBlock + 1) + CACHED_BLOCKS;
+    Iterator<Map.Entry<Long, ListenableFuture<byte[]>>> iterator = blocks.entrySet().iterator();
+    while (blocks.size() > capacity && iterator.hasNext()) {
+      Map.Entry<Long, ListenableFuture<byte[]>> entry = iterator.next();
+      if (entry.getKey() < firstBlock || entry.getKey() > lastBlock) {
+        entry.getValue().cancel(true);
+        iterator.remove();
       }
-    } while (bytesRead > 0);
+    }
+  }
 
-    position += totalBytesRead;
-    return totalBytesRead;
+  private byte[] fetchBlock(long blockIndex) throws IOException {
+    long start = blockIndex * blockSize;
+    long end = Math.min(contentLength, start + blockSize) - 1;
+    GetObjectRequest request =
+        new GetObjectRequest(path.getBucket(), path.getKey()).withRange(start, end);
+    request.setSSECustomerKey(options.getSSECustomerKey());
+    try (S3Object s3Object = amazonS3.getObject(request)) {
+      byte[] block = new byte[(int) (end - start + 1)];
+      ByteStreams.readFully(s3Object.getObjectContent(), block);
+      bytesFetched.addAndGet(block.length);
+      return block;
+    } catch (AmazonClientException e) {
+      throw new IOException(e);
+    }
   }
 
   @Override
@@ -127,16 +215,7 @@ class S3ReadableSeekableByteChannel implements SeekableByteChannel {
     checkArgument(newPosition >= 0, "newPosition too low");
     checkArgument(newPosition < contentLength, "new position too high");
 
-    if (newPosition == position) {
-      return this;
-    }
-
-    // The position has changed, so close and destroy the object to induce a re-creation on the next
-    // call to read()
-    if (s3Object != null) {
-      s3Object.close();
-      s3Object = null;
-    }
+    // Blocks are kept across seeks, the read-ahead is adapted by the next read.
     position = newPosition;
     return this;
   }
@@ -151,10 +230,16 @@ class S3ReadableSeekableByteChannel implements SeekableByteChannel {
 
   @Override
   public void close() throws IOException {
-    if (s3Object != null) {
-      s3Object.close();
+    if (!open) {
+      return;
     }
     open = false;
+    for (ListenableFuture<byte[]> block : blocks.values()) {
+      block.cancel(true);
+    }
+    blocks.clear();
+    bytesFetchedCounter.inc(bytesFetched.get());
+    bytesConsumedCounter.inc(bytesConsumed);
   }
 
   @Override
@@ -29,36 +29,62 @@ import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.Base64;
 import com.google.common.annotations.VisibleForTesting;
-import java.io.ByteArrayInputStream;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import org.apache.beam.sdk.io.aws.options.S3Options;
 import org.apache.beam.sdk.io.aws.options.S3Options.S3UploadBufferSizeBytesFactory;
 
-/** A writable S3 object, as a {@link WritableByteChannel}. */
+/**
+ * A writable S3 object, as a {@link WritableByteChannel}.
+ *
+ * <p>Each full upload buffer is uploaded as a part on the {@link S3FileSystem} executor. Buffers are
+ * allocated on the heap, reused while the object is written and released when the channel is
+ * closed. They hold at most {@link S3Options#getS3UploadMemoryBudgetBytes} bytes, so writes block
+ * while all of them are being uploaded. With a budget of several buffers, the next one is filled
+ * while the others are uploaded. Each part is sent with its MD5 digest, for S3 to check.
+ */
 class S3WritableByteChannel implements WritableByteChannel {
   private final AmazonS3 amazonS3;
   private final S3Options options;
   private final S3ResourceId path;
+  private final ListeningExecutorService executorService;
 
   private final String uploadId;
-  private final ByteBuffer uploadBuffer;
-  private final List<PartETag> eTags;
+  private final int maxUploadBuffers;
+  private final LinkedBlockingQueue<ByteBuffer> freeUploadBuffers = new LinkedBlockingQueue<>();
+  private final List<ListenableFuture<PartETag>> eTags;
+  private int allocatedUploadBuffers;
+  private ByteBuffer uploadBuffer;
 
   // AWS S3 parts are 1-indexed, not zero-indexed.
   private int partNumber = 1;
-  private boolean open = true;
+  // read by the upload threads, which only return their buffer to an open channel.
+  private volatile boolean open = true;
 
-  S3WritableByteChannel(AmazonS3 amazonS3, S3ResourceId path, String contentType, S3Options options)
+  S3WritableByteChannel(
+      AmazonS3 amazonS3,
+      S3ResourceId path,
+      String contentType,
+      S3Options options,
+      ListeningExecutorService executorService)
       throws IOException {
     this.amazonS3 = checkNotNull(amazonS3, "amazonS3");
     this.options = checkNotNull(options);
     this.path = checkNotNull(path, "path");
+    this.executorService = checkNotNull(executorService, "executorService");
     checkArgument(
         atMostOne(
             options.getSSECustomerKey() != null,
@@ -72,7 +98,11 @@ class S3WritableByteChannel implements WritableByteChannel {
             >= S3UploadBufferSizeBytesFactory.MINIMUM_UPLOAD_BUFFER_SIZE_BYTES,
         "S3UploadBufferSizeBytes must be at least %s bytes",
         S3UploadBufferSizeBytesFactory.MINIMUM_UPLOAD_BUFFER_SIZE_BYTES);
-    this.uploadBuffer = ByteBuffer.allocate(options.getS3UploadBufferSizeBytes());
+    this.maxUploadBuffers =
+        (int)
+            Math.max(
+                1, options.getS3UploadMemoryBudgetBytes() / options.getS3UploadBufferSizeBytes());
+    this.uploadBuffer = allocateUploadBuffer();
     eTags = new ArrayList<>();
 
     ObjectMetadata objectMetadata = new ObjectMetadata();
@@ -106,9 +136,10 @@ class S3WritableByteChannel implements WritableByteChannel {
       int bytesWritten = Math.min(sourceBuffer.remaining(), uploadBuffer.remaining());
       totalBytesWritten += bytesWritten;
 
-      byte[] copyBuffer = new byte[bytesWritten];
-      sourceBuffer.get(copyBuffer);
-      uploadBuffer.put(copyBuffer);
+      ByteBuffer source = sourceBuffer.duplicate();
+      source.limit(source.position() + bytesWritten);
+      uploadBuffer.put(source);
+      sourceBuffer.position(sourceBuffer.position() + bytesWritten);
 
       if (!uploadBuffer.hasRemaining() || sourceBuffer.hasRemaining()) {
         flush();
@@ -118,18 +149,51 @@ class S3WritableByteChannel implements WritableByteChannel {
     return totalBytesWritten;
   }
 
+  /**
+   * Submits the upload of the current buffer, and takes the next buffer to fill from the pool,
+   * waiting for an upload to finish if all of them are in use.
+   */
   private void flush() throws IOException {
-    uploadBuffer.flip();
-    ByteArrayInputStream inputStream = new ByteArrayInputStream(uploadBuffer.array());
+    submitUpload();
+    ByteBuffer next = freeUploadBuffers.poll();
+    if (next == null) {
+      next =
+          allocatedUploadBuffers < maxUploadBuffers
+              ? allocateUploadBuffer()
+              : takeFreeUploadBuffer();
+    }
+    uploadBuffer = next;
+    checkForFailedUploads();
+  }
 
+  private void submitUpload() {
+    ByteBuffer part = uploadBuffer;
+    part.flip();
+    int number = partNumber++;
+    eTags.add(
+        executorService.submit(
+            () -> {
+              try {
+                return uploadPart(part, number);
+              } finally {
+                if (open) {
+                  part.clear();
+                  freeUploadBuffers.add(part);
+                }
+              }
+            }));
+  }
+
+  private PartETag uploadPart(ByteBuffer part, int number) throws IOException {
     UploadPartRequest request =
         new UploadPartRequest()
             .withBucketName(path.getBucket())
             .withKey(path.getKey())
             .withUploadId(uploadId)
-            .withPartNumber(partNumber++)
-            .withPartSize(uploadBuffer.remaining())
-            .withInputStream(inputStream);
+            .withPartNumber(number)
+            .withPartSize(part.remaining())
+            .withMD5Digest(md5AsBase64(part))
+            .withInputStream(new ByteBufferInputStream(part));
     request.setSSECustomerKey(options.getSSECustomerKey());
 
     UploadPartResult result;
@@ -138,8 +202,54 @@ class S3WritableByteChannel implements WritableByteChannel {
     } catch (AmazonClientException e) {
       throw new IOException(e);
     }
-    uploadBuffer.clear();
-    eTags.add(result.getPartETag());
+    return result.getPartETag();
+  }
+
+  private ByteBuffer allocateUploadBuffer() {
+    allocatedUploadBuffers++;
+    return ByteBuffer.allocate(options.getS3UploadBufferSizeBytes());
+  }
+
+  private ByteBuffer takeFreeUploadBuffer() throws IOException {
+    try {
+      return freeUploadBuffers.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for an upload buffer", e);
+    }
+  }
+
+  /** Fails fast if the upload of an earlier part already failed. */
+  private void checkForFailedUploads() throws IOException {
+    for (ListenableFuture<PartETag> eTag : eTags) {
+      if (eTag.isDone()) {
+        getPartETag(eTag);
+      }
+    }
+  }
+
+  private static PartETag getPartETag(ListenableFuture<PartETag> eTag) throws IOException {
+    try {
+      return eTag.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while uploading a part", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static String md5AsBase64(ByteBuffer part) {
+    try {
+      MessageDigest md5 = MessageDigest.getInstance("MD5");
+      md5.update(part.duplicate());
+      return Base64.encodeAsString(md5.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
   }
 
   @Override
@@ -149,20 +259,81 @@ class S3WritableByteChannel implements WritableByteChannel {
 
   @Override
   public void close() throws IOException {
-    open = false;
-    if (uploadBuffer.remaining() > 0) {
-      flush();
+    if (!open) {
+      return;
     }
-    CompleteMultipartUploadRequest request =
-        new CompleteMultipartUploadRequest()
-            .withBucketName(path.getBucket())
-            .withKey(path.getKey())
-            .withUploadId(uploadId)
-            .withPartETags(eTags);
+    open = false;
     try {
-      amazonS3.completeMultipartUpload(request);
-    } catch (AmazonClientException e) {
-      throw new IOException(e);
+      if (uploadBuffer.remaining() > 0) {
+        submitUpload();
+      }
+      List<PartETag> partETags = new ArrayList<>(eTags.size());
+      for (ListenableFuture<PartETag> eTag : eTags) {
+        partETags.add(getPartETag(eTag));
+      }
+      CompleteMultipartUploadRequest request =
+          new CompleteMultipartUploadRequest()
+              .withBucketName(path.getBucket())
+              .withKey(path.getKey())
+              .withUploadId(uploadId)
+              .withPartETags(partETags);
+      try {
+        amazonS3.completeMultipartUpload(request);
+      } catch (AmazonClientException e) {
+        throw new IOException(e);
+      }
+    } finally {
+      // release the buffers, also if an upload failed.
+      uploadBuffer = null;
+      freeUploadBuffers.clear();
+    }
+  }
+
+  /** Reads a part from its upload buffer, supporting the mark and reset used for retries. */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer.duplicate();
+      this.buffer.mark();
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(len, buffer.remaining());
+      buffer.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+      return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+      buffer.mark();
+    }
+
+    @Override
+    public synchronized void reset() {
+      buffer.reset();
     }
   }
 
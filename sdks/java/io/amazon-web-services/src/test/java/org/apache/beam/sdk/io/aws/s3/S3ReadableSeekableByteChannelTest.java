@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.aws.s3;
+
+import static org.apache.beam.sdk.io.aws.s3.S3TestUtils.s3Options;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.RETURNS_SMART_NULLS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apache.beam.sdk.io.aws.options.S3Options;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link S3ReadableSeekableByteChannel}. */
+@RunWith(JUnit4.class)
+public class S3ReadableSeekableByteChannelTest {
+  private static final int BLOCK_SIZE = 1000;
+
+  private final byte[] content = new byte[10 * BLOCK_SIZE + 500];
+  private final List<Long> fetchedBlocks = new ArrayList<>();
+  private S3ReadableSeekableByteChannel channel;
+
+  @Before
+  public void setUp() throws IOException {
+    new Random(42).nextBytes(content);
+    AmazonS3 mockAmazonS3 = mock(AmazonS3.class, withSettings().defaultAnswer(RETURNS_SMART_NULLS));
+    doAnswer(
+            invocation -> {
+              long[] range = ((GetObjectRequest) invocation.getArguments()[0]).getRange();
+              fetchedBlocks.add(range[0] / BLOCK_SIZE);
+              S3Object s3Object = new S3Object();
+              s3Object.setObjectContent(
+                  new ByteArrayInputStream(
+                      Arrays.copyOfRange(content, (int) range[0], (int) range[1] + 1)));
+              return s3Object;
+            })
+        .when(mockAmazonS3)
+        .getObject(any(GetObjectRequest.class));
+
+    S3Options options = s3Options();
+    options.setS3ReadBlockSizeBytes(BLOCK_SIZE);
+    options.setS3ReadAheadBlocks(4);
+    channel =
+        new S3ReadableSeekableByteChannel(
+            mockAmazonS3,
+            S3ResourceId.fromUri("s3://bucket/dir/file").withSize(content.length),
+            options,
+            MoreExecutors.newDirectExecutorService());
+  }
+
+  @Test
+  public void testSequentialReadFetchesEachBlockOnce() throws IOException {
+    ByteBuffer read = ByteBuffer.allocate(content.length);
+    ByteBuffer chunk = ByteBuffer.allocate(700);
+    while (channel.read(chunk) != -1) {
+      chunk.flip();
+      read.put(chunk);
+      chunk.clear();
+    }
+    channel.close();
+
+    assertArrayEquals(content, read.array());
+    assertThat(fetchedBlocks, contains(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L));
+  }
+
+  @Test
+  public void testSeeksBackwardsAreServedFromCachedBlocks() throws IOException {
+    // reads a footer like Parquet does: its length, then the footer itself
+    channel.position(content.length - 8);
+    assertArrayEquals(readAt(content.length - 8, 8), read(8));
+    channel.position(content.length - 300);
+    assertArrayEquals(readAt(content.length - 300, 292), read(292));
+
+    assertThat(fetchedBlocks, contains(10L));
+  }
+
+  @Test
+  public void testReadAheadStartsOnceReadsAreSequential() throws IOException {
+    channel.position(5 * BLOCK_SIZE + 10);
+    assertArrayEquals(readAt(5 * BLOCK_SIZE + 10, 10), read(10));
+    assertThat(fetchedBlocks, contains(5L));
+
+    // crosses into the next block: the following one is fetched ahead
+    assertArrayEquals(readAt(5 * BLOCK_SIZE + 20, BLOCK_SIZE), read(BLOCK_SIZE));
+    assertThat(fetchedBlocks, contains(5L, 6L, 7L));
+
+    // and the read-ahead doubles with each sequential block
+    assertArrayEquals(readAt(6 * BLOCK_SIZE + 20, BLOCK_SIZE), read(BLOCK_SIZE));
+    assertThat(fetchedBlocks, contains(5L, 6L, 7L, 8L, 9L));
+    assertEquals(7 * BLOCK_SIZE + 20, channel.position());
+  }
+
+  private byte[] read(int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    assertEquals(length, channel.read(buffer));
+    return buffer.array();
+  }
+
+  private byte[] readAt(int position, int length) {
+    return Arrays.copyOfRange(content, position, position + length);
+  }
+}
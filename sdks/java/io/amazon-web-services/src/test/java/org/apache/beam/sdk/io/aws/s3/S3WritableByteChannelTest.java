@@ -24,13 +24,19 @@ import static org.apache.beam.sdk.io.aws.s3.S3TestUtils.s3OptionsWithSSEAlgorith
 import static org.apache.beam.sdk.io.aws.s3.S3TestUtils.s3OptionsWithSSEAwsKeyManagementParams;
 import static org.apache.beam.sdk.io.aws.s3.S3TestUtils.s3OptionsWithSSECustomerKey;
 import static org.apache.beam.sdk.io.aws.s3.S3WritableByteChannel.atMostOne;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.RETURNS_SMART_NULLS;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -43,11 +49,25 @@ import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.Base64;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.beam.sdk.io.aws.options.S3Options;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -109,7 +129,8 @@ public class S3WritableByteChannelTest {
     assertEquals(getSSECustomerKeyMd5(options), mockUploadPartResult.getSSECustomerKeyMd5());
 
     S3WritableByteChannel channel =
-        new S3WritableByteChannel(mockAmazonS3, path, "text/plain", options);
+        new S3WritableByteChannel(
+            mockAmazonS3, path, "text/plain", options, MoreExecutors.newDirectExecutorService());
     int contentSize = 34_078_720;
     ByteBuffer uploadContent = ByteBuffer.allocate((int) (contentSize * 2.5));
     for (int i = 0; i < contentSize; i++) {
@@ -127,6 +148,9 @@ public class S3WritableByteChannelTest {
         .completeMultipartUpload(argThat(notNullValue(CompleteMultipartUploadRequest.class)));
 
     channel.close();
+    // closing again has no effect.
+    channel.close();
+    assertFalse(channel.isOpen());
 
     verify(mockAmazonS3, times(2))
         .initiateMultipartUpload(notNull(InitiateMultipartUploadRequest.class));
@@ -138,6 +162,85 @@ public class S3WritableByteChannelTest {
     verifyNoMoreInteractions(mockAmazonS3);
   }
 
+  /**
+   * Writes to an in-memory stand-in for S3, which checks the digest of each part and takes some
+   * time to store it.
+   */
+  @Test
+  public void testUploadsPartsConcurrently() throws Exception {
+    S3Options options = s3Options();
+    int partSize = options.getS3UploadBufferSizeBytes();
+    options.setS3UploadMemoryBudgetBytes(4L * partSize);
+    AmazonS3 mockAmazonS3 = mock(AmazonS3.class, withSettings().defaultAnswer(RETURNS_SMART_NULLS));
+    S3ResourceId path = S3ResourceId.fromUri("s3://bucket/dir/file");
+
+    InitiateMultipartUploadResult initiateMultipartUploadResult =
+        new InitiateMultipartUploadResult();
+    initiateMultipartUploadResult.setUploadId("upload-id");
+    doReturn(initiateMultipartUploadResult)
+        .when(mockAmazonS3)
+        .initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+
+    Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+    AtomicInteger uploadsInFlight = new AtomicInteger();
+    AtomicInteger maxUploadsInFlight = new AtomicInteger();
+    doAnswer(
+            invocation -> {
+              UploadPartRequest request = (UploadPartRequest) invocation.getArguments()[0];
+              int inFlight = uploadsInFlight.incrementAndGet();
+              maxUploadsInFlight.accumulateAndGet(inFlight, Math::max);
+              byte[] part = ByteStreams.toByteArray(request.getInputStream());
+              assertEquals(request.getPartSize(), part.length);
+              assertEquals(Base64.encodeAsString(DigestUtils.md5(part)), request.getMd5Digest());
+              parts.put(request.getPartNumber(), part);
+              Thread.sleep(50);
+              uploadsInFlight.decrementAndGet();
+              UploadPartResult result = new UploadPartResult();
+              result.setPartNumber(request.getPartNumber());
+              result.setETag("etag-" + request.getPartNumber());
+              return result;
+            })
+        .when(mockAmazonS3)
+        .uploadPart(any(UploadPartRequest.class));
+    AtomicReference<List<PartETag>> completedParts = new AtomicReference<>();
+    doAnswer(
+            invocation -> {
+              completedParts.set(
+                  ((CompleteMultipartUploadRequest) invocation.getArguments()[0]).getPartETags());
+              return new CompleteMultipartUploadResult();
+            })
+        .when(mockAmazonS3)
+        .completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+
+    byte[] content = new byte[10 * partSize + 12345];
+    new Random(42).nextBytes(content);
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(8));
+    try {
+      S3WritableByteChannel channel =
+          new S3WritableByteChannel(mockAmazonS3, path, "text/plain", options, executorService);
+      // writes in chunks which do not align with the parts
+      for (int offset = 0; offset < content.length; offset += 1_000_000) {
+        channel.write(
+            ByteBuffer.wrap(content, offset, Math.min(1_000_000, content.length - offset)));
+      }
+      channel.close();
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    assertEquals(11, parts.size());
+    ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+    for (int partNumber = 1; partNumber <= parts.size(); partNumber++) {
+      uploaded.write(parts.get(partNumber));
+      assertEquals(partNumber, completedParts.get().get(partNumber - 1).getPartNumber());
+    }
+    assertArrayEquals(content, uploaded.toByteArray());
+    // no more parts are uploaded at once than there are buffers
+    assertThat(maxUploadsInFlight.get(), greaterThan(1));
+    assertThat(maxUploadsInFlight.get(), lessThanOrEqualTo(4));
+  }
+
   @Test
   public void testAtMostOne() {
     assertTrue(atMostOne(true));
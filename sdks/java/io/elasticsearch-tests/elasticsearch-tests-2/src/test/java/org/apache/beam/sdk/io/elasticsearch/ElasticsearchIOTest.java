@@ -155,6 +155,16 @@ public class ElasticsearchIOTest implements Serializable {
     elasticsearchIOTestCommon.testWriteWithMaxBatchSizeBytes();
   }
 
+  @Test
+  public void testWriteWithMaxConcurrentRequests() throws Exception {
+    elasticsearchIOTestCommon.testWriteWithMaxConcurrentRequests();
+  }
+
+  @Test
+  public void testWriteRetriesOnlyRejectedDocuments() throws Exception {
+    elasticsearchIOTestCommon.testWriteRetriesOnlyRejectedDocuments();
+  }
+
   @Test
   public void testSplit() throws Exception {
     ElasticSearchIOTestUtils.insertTestDocuments(
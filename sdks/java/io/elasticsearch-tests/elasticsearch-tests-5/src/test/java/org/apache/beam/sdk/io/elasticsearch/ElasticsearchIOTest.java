@@ -156,6 +156,16 @@ public class ElasticsearchIOTest extends ESIntegTestCase implements Serializable
     elasticsearchIOTestCommon.testWriteWithMaxBatchSizeBytes();
   }
 
+  @Test
+  public void testWriteWithMaxConcurrentRequests() throws Exception {
+    elasticsearchIOTestCommon.testWriteWithMaxConcurrentRequests();
+  }
+
+  @Test
+  public void testWriteRetriesOnlyRejectedDocuments() throws Exception {
+    elasticsearchIOTestCommon.testWriteRetriesOnlyRejectedDocuments();
+  }
+
   @Test
   public void testSplit() throws Exception {
     //need to create the index using the helper method (not create it at first insertion)
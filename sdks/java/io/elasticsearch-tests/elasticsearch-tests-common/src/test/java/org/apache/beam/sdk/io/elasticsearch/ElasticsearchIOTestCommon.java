@@ -27,16 +27,27 @@ import static org.apache.beam.sdk.io.elasticsearch.ElasticsearchIO.ConnectionCon
 import static org.apache.beam.sdk.io.elasticsearch.ElasticsearchIO.Read;
 import static org.apache.beam.sdk.io.elasticsearch.ElasticsearchIO.Write;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.core.Is.isA;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.PAssert;
@@ -287,6 +298,125 @@ class ElasticsearchIOTestCommon implements Serializable {
     }
   }
 
+  void testWriteWithMaxConcurrentRequests() throws Exception {
+    Write write =
+        ElasticsearchIO.write()
+            .withConnectionConfiguration(connectionConfiguration)
+            .withMaxBatchSize(BATCH_SIZE / 10)
+            .withMaxConcurrentRequests(4);
+    List<String> input =
+        ElasticSearchIOTestUtils.createDocuments(
+            numDocs, ElasticSearchIOTestUtils.InjectionMode.DO_NOT_INJECT_INVALID_DOCS);
+    try (DoFnTester<String, Void> fnTester = DoFnTester.of(new Write.WriteFn(write))) {
+      // all the requests in flight are acknowledged at the end of the bundle
+      fnTester.processBundle(input);
+    }
+
+    long currentNumDocs = refreshIndexAndGetCurrentNumDocs(connectionConfiguration, restClient);
+    assertEquals(numDocs, currentNumDocs);
+
+    int count = countByScientistName(connectionConfiguration, restClient, "Einstein");
+    assertEquals(numDocs / NUM_SCIENTISTS, count);
+  }
+
+  /**
+   * Writes to a stand-in for Elasticsearch which answers each bulk request after a delay, and
+   * rejects the first document it receives.
+   */
+  void testWriteRetriesOnlyRejectedDocuments() throws Exception {
+    int maxConcurrentRequests = 4;
+    int numBatches = 20;
+    List<Integer> bulkSizes = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger requestsInFlight = new AtomicInteger();
+    AtomicInteger maxRequestsInFlight = new AtomicInteger();
+    AtomicInteger rejected = new AtomicInteger();
+
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.createContext(
+        "/", exchange -> respond(exchange, "{\"version\" : {\"number\" : \"5.6.3\"}}"));
+    server.createContext(
+        "/" + ES_INDEX + "/" + ES_TYPE + "/_bulk",
+        exchange -> {
+          int inFlight = requestsInFlight.incrementAndGet();
+          maxRequestsInFlight.accumulateAndGet(inFlight, Math::max);
+          // each document of the bulk request is an action line followed by a source line
+          int numItems =
+              (int)
+                      new BufferedReader(
+                              new InputStreamReader(
+                                  exchange.getRequestBody(), StandardCharsets.UTF_8))
+                          .lines()
+                          .count()
+                  / 2;
+          bulkSizes.add(numItems);
+          StringBuilder items = new StringBuilder();
+          boolean errors = false;
+          for (int i = 0; i < numItems; i++) {
+            items.append(i == 0 ? "" : ",");
+            if (rejected.compareAndSet(0, 1)) {
+              errors = true;
+              items.append(
+                  "{\"index\" : {\"status\" : 429, \"error\" : "
+                      + "{\"type\" : \"es_rejected_execution_exception\"}}}");
+            } else {
+              items.append("{\"index\" : {\"status\" : 201}}");
+            }
+          }
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          requestsInFlight.decrementAndGet();
+          respond(exchange, String.format("{\"errors\" : %s, \"items\" : [%s]}", errors, items));
+        });
+    server.start();
+    try {
+      ConnectionConfiguration standIn =
+          ConnectionConfiguration.create(
+              new String[] {"http://localhost:" + server.getAddress().getPort()},
+              ES_INDEX,
+              ES_TYPE);
+      Write write =
+          ElasticsearchIO.write()
+              .withConnectionConfiguration(standIn)
+              .withMaxBatchSize(10)
+              .withMaxConcurrentRequests(maxConcurrentRequests);
+      List<String> input =
+          ElasticSearchIOTestUtils.createDocuments(
+              10 * numBatches, ElasticSearchIOTestUtils.InjectionMode.DO_NOT_INJECT_INVALID_DOCS);
+      long start = System.nanoTime();
+      try (DoFnTester<String, Void> fnTester = DoFnTester.of(new Write.WriteFn(write))) {
+        fnTester.processBundle(input);
+      }
+      LOG.info(
+          "Wrote {} batches to the stand-in in {} ms",
+          numBatches,
+          (System.nanoTime() - start) / 1_000_000);
+    } finally {
+      server.stop(0);
+      serverExecutor.shutdownNow();
+    }
+
+    // only the rejected document was sent again, in a bulk request of its own
+    assertEquals(numBatches + 1, bulkSizes.size());
+    assertEquals(1, Collections.frequency(bulkSizes, 1));
+    assertEquals(10 * numBatches + 1, bulkSizes.stream().mapToInt(Integer::intValue).sum());
+    assertThat(maxRequestsInFlight.get(), greaterThan(1));
+    assertThat(maxRequestsInFlight.get(), lessThanOrEqualTo(maxConcurrentRequests));
+  }
+
+  private static void respond(HttpExchange exchange, String json) throws IOException {
+    byte[] response = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, response.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(response);
+    }
+  }
+
   /** Extracts the name field from the JSON document. */
   private static class ExtractValueFn implements Write.FieldValueExtractFn {
     private final String fieldName;
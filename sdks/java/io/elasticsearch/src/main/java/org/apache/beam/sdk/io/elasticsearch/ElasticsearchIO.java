@@ -27,12 +27,16 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.util.ArrayList;
@@ -44,6 +48,12 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import javax.net.ssl.SSLContext;
 import org.apache.beam.sdk.annotations.Experimental;
@@ -56,6 +66,9 @@ import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.SerializableFunction;
 import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.util.BackOff;
+import org.apache.beam.sdk.util.FluentBackoff;
+import org.apache.beam.sdk.util.Sleeper;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PDone;
@@ -65,14 +78,20 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
 import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
 import org.apache.http.nio.entity.NStringEntity;
 import org.apache.http.ssl.SSLContexts;
 import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
+import org.joda.time.Duration;
 
 /**
  * Transforms for reading and writing data from/to Elasticsearch.
@@ -129,6 +148,10 @@ import org.elasticsearch.client.RestClientBuilder;
  *
  * <p>When {withUsePartialUpdate()} is enabled, the input document must contain an id field and
  * {@code withIdFn()} must be used to allow its extraction by the ElasticsearchIO.
+ *
+ * <p>Optionally, you can provide {@code withMaxConcurrentRequests()} to keep sending batches while
+ * previous ones are still being indexed. Documents which Elasticsearch rejected because it was
+ * overloaded are retried with a backoff, without resending the rest of their batch.
  */
 @Experimental(Experimental.Kind.SOURCE_SINK)
 public class ElasticsearchIO {
@@ -150,6 +173,7 @@ public class ElasticsearchIO {
         // advised default starting batch size in ES docs
         .setMaxBatchSizeBytes(5L * 1024L * 1024L)
         .setUsePartialUpdate(false) // default is document upsert
+        .setMaxConcurrentRequests(1)
         .build();
   }
 
@@ -163,7 +187,10 @@ public class ElasticsearchIO {
   }
 
   static void checkForErrors(Response response, int backendVersion) throws IOException {
-    JsonNode searchResult = parseResponse(response);
+    checkForErrors(parseResponse(response), backendVersion);
+  }
+
+  static void checkForErrors(JsonNode searchResult, int backendVersion) throws IOException {
     boolean errors = searchResult.path("errors").asBoolean();
     if (errors) {
       StringBuilder errorMessages =
@@ -196,6 +223,33 @@ public class ElasticsearchIO {
     }
   }
 
+  /**
+   * Returns the positions, in the bulk request, of the items which failed because Elasticsearch was
+   * temporarily unable to process them. Throws like {@link #checkForErrors} if any other item
+   * failed.
+   */
+  static List<Integer> getRetriableItems(JsonNode bulkResult, int backendVersion)
+      throws IOException {
+    List<Integer> retriableItems = new ArrayList<>();
+    if (!bulkResult.path("errors").asBoolean()) {
+      return retriableItems;
+    }
+    int position = 0;
+    for (JsonNode item : bulkResult.path("items")) {
+      // each item holds a single field named after its action: create, index or update
+      JsonNode itemResult = item.elements().next();
+      if (itemResult.has("error")) {
+        int status = itemResult.path("status").asInt();
+        if (status != 429 && status != 503) {
+          checkForErrors(bulkResult, backendVersion);
+        }
+        retriableItems.add(position);
+      }
+      position++;
+    }
+    return retriableItems;
+  }
+
   /** A POJO describing a connection configuration to Elasticsearch. */
   @AutoValue
   public abstract static class ConnectionConfiguration implements Serializable {
@@ -744,6 +798,8 @@ public class ElasticsearchIO {
 
     abstract boolean getUsePartialUpdate();
 
+    abstract int getMaxConcurrentRequests();
+
     abstract Builder builder();
 
     @AutoValue.Builder
@@ -762,6 +818,8 @@ public class ElasticsearchIO {
 
       abstract Builder setUsePartialUpdate(boolean usePartialUpdate);
 
+      abstract Builder setMaxConcurrentRequests(int maxConcurrentRequests);
+
       abstract Write build();
     }
 
@@ -861,6 +919,23 @@ public class ElasticsearchIO {
       return builder().setUsePartialUpdate(usePartialUpdate).build();
     }
 
+    /**
+     * Provide the maximum number of bulk requests which each writer keeps in flight. Default is 1,
+     * which sends each batch and waits for its response before building the next one. Above 1,
+     * batches are sent asynchronously and processing blocks only once this many are awaiting a
+     * response. All of them are acknowledged before a bundle finishes.
+     *
+     * @param maxConcurrentRequests maximum number of bulk requests in flight
+     * @return the {@link Write} with the maximum number of concurrent requests set
+     */
+    public Write withMaxConcurrentRequests(int maxConcurrentRequests) {
+      checkArgument(
+          maxConcurrentRequests > 0,
+          "maxConcurrentRequests must be > 0, but was %s",
+          maxConcurrentRequests);
+      return builder().setMaxConcurrentRequests(maxConcurrentRequests).build();
+    }
+
     @Override
     public PDone expand(PCollection<String> input) {
       ConnectionConfiguration connectionConfiguration = getConnectionConfiguration();
@@ -874,13 +949,23 @@ public class ElasticsearchIO {
     static class WriteFn extends DoFn<String, Void> {
       private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
       private static final int DEFAULT_RETRY_ON_CONFLICT = 5; // race conditions on updates
+      private static final int MAX_RETRIES = 5;
+      private static final FluentBackoff REJECTED_DOCUMENTS_BACKOFF =
+          FluentBackoff.DEFAULT
+              .withMaxRetries(MAX_RETRIES)
+              .withInitialBackoff(Duration.standardSeconds(1));
 
       private int backendVersion;
       private final Write spec;
       private transient RestClient restClient;
-      private ArrayList<String> batch;
+      private ArrayList<byte[]> batch;
       private long currentBatchSizeBytes;
 
+      // Only used when more than one request can be in flight
+      private transient Semaphore requestsInFlight;
+      private transient ScheduledExecutorService retryExecutor;
+      private transient AtomicReference<Throwable> asyncFailure;
+
       // Encapsulates the elements which form the metadata for an Elasticsearch bulk operation
       @JsonPropertyOrder({"_index", "_type", "_id"})
       @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -915,12 +1000,17 @@ public class ElasticsearchIO {
         ConnectionConfiguration connectionConfiguration = spec.getConnectionConfiguration();
         backendVersion = getBackendVersion(connectionConfiguration);
         restClient = connectionConfiguration.createClient();
+        if (spec.getMaxConcurrentRequests() > 1) {
+          requestsInFlight = new Semaphore(spec.getMaxConcurrentRequests());
+          retryExecutor = Executors.newSingleThreadScheduledExecutor();
+        }
       }
 
       @StartBundle
       public void startBundle(StartBundleContext context) {
         batch = new ArrayList<>();
         currentBatchSizeBytes = 0;
+        asyncFailure = new AtomicReference<>();
       }
 
       /**
@@ -964,14 +1054,16 @@ public class ElasticsearchIO {
         String documentMetadata = getDocumentMetadata(document);
 
         // index is an insert/upsert and update is a partial update (or insert if not existing)
+        String action;
         if (spec.getUsePartialUpdate()) {
-          batch.add(
+          action =
               String.format(
                   "{ \"update\" : %s }%n{ \"doc\" : %s, \"doc_as_upsert\" : true }%n",
-                  documentMetadata, document));
+                  documentMetadata, document);
         } else {
-          batch.add(String.format("{ \"index\" : %s }%n%s%n", documentMetadata, document));
+          action = String.format("{ \"index\" : %s }%n%s%n", documentMetadata, document);
         }
+        batch.add(action.getBytes(StandardCharsets.UTF_8));
 
         currentBatchSizeBytes += document.getBytes(StandardCharsets.UTF_8).length;
         if (batch.size() >= spec.getMaxBatchSize()
@@ -983,40 +1075,204 @@ public class ElasticsearchIO {
       @FinishBundle
       public void finishBundle(FinishBundleContext context) throws Exception {
         flushBatch();
+        if (requestsInFlight != null) {
+          // wait for all the requests of the bundle to be acknowledged
+          requestsInFlight.acquire(spec.getMaxConcurrentRequests());
+          requestsInFlight.release(spec.getMaxConcurrentRequests());
+          checkForAsyncFailure();
+        }
       }
 
-      private void flushBatch() throws IOException {
+      private void flushBatch() throws IOException, InterruptedException {
         if (batch.isEmpty()) {
           return;
         }
-        StringBuilder bulkRequest = new StringBuilder();
-        for (String json : batch) {
-          bulkRequest.append(json);
-        }
-        batch.clear();
+        List<byte[]> bulkRequest = batch;
+        batch = new ArrayList<>();
         currentBatchSizeBytes = 0;
-        Response response;
+        BackOff backOff = REJECTED_DOCUMENTS_BACKOFF.backoff();
+        if (requestsInFlight == null) {
+          while (!bulkRequest.isEmpty()) {
+            Response response =
+                restClient.performRequest(
+                    "POST", getEndPoint(), Collections.emptyMap(), new BulkEntity(bulkRequest));
+            JsonNode bulkResult = parseResponse(response);
+            bulkRequest = getDocumentsToRetry(bulkResult, bulkRequest);
+            if (!bulkRequest.isEmpty()) {
+              Sleeper.DEFAULT.sleep(getNextBackOffMillis(bulkResult, backOff));
+            }
+          }
+        } else {
+          checkForAsyncFailure();
+          requestsInFlight.acquire();
+          flushBatchAsync(bulkRequest, backOff);
+        }
+      }
+
+      /**
+       * Sends the bulk request through the asynchronous client, scheduling a new request for the
+       * rejected documents if needed. Releases the permit once all the documents are written or a
+       * failure is recorded.
+       */
+      private void flushBatchAsync(List<byte[]> bulkRequest, BackOff backOff) {
+        restClient.performRequestAsync(
+            "POST",
+            getEndPoint(),
+            Collections.emptyMap(),
+            new BulkEntity(bulkRequest),
+            new ResponseListener() {
+              @Override
+              public void onSuccess(Response response) {
+                try {
+                  JsonNode bulkResult = parseResponse(response);
+                  List<byte[]> toRetry = getDocumentsToRetry(bulkResult, bulkRequest);
+                  if (toRetry.isEmpty()) {
+                    requestsInFlight.release();
+                  } else {
+                    retryExecutor.schedule(
+                        () -> flushBatchAsync(toRetry, backOff),
+                        getNextBackOffMillis(bulkResult, backOff),
+                        TimeUnit.MILLISECONDS);
+                  }
+                } catch (Exception e) {
+                  onFailure(e);
+                }
+              }
+
+              @Override
+              public void onFailure(Exception exception) {
+                asyncFailure.compareAndSet(null, exception);
+                requestsInFlight.release();
+              }
+            });
+      }
+
+      private void checkForAsyncFailure() throws IOException {
+        Throwable failure = asyncFailure.get();
+        if (failure instanceof IOException) {
+          throw (IOException) failure;
+        } else if (failure != null) {
+          throw new IOException("Error writing to Elasticsearch", failure);
+        }
+      }
+
+      /**
+       * Returns the documents of the bulk request which were rejected by an overloaded
+       * Elasticsearch, and should be sent again. Throws if any other document failed.
+       */
+      private List<byte[]> getDocumentsToRetry(JsonNode bulkResult, List<byte[]> bulkRequest)
+          throws IOException {
+        return getRetriableItems(bulkResult, backendVersion)
+            .stream()
+            .map(bulkRequest::get)
+            .collect(Collectors.toList());
+      }
+
+      /** Throws the errors of the bulk result if the rejected documents were retried enough. */
+      private long getNextBackOffMillis(JsonNode bulkResult, BackOff backOff) throws IOException {
+        long backOffMillis = backOff.nextBackOffMillis();
+        if (backOffMillis == BackOff.STOP) {
+          checkForErrors(bulkResult, backendVersion);
+        }
+        return backOffMillis;
+      }
+
+      private String getEndPoint() {
         // Elasticsearch will default to the index/type provided here if none are set in the
         // document meta (i.e. using ElasticsearchIO$Write#withIndexFn and
         // ElasticsearchIO$Write#withTypeFn options)
-        String endPoint =
-            String.format(
-                "/%s/%s/_bulk",
-                spec.getConnectionConfiguration().getIndex(),
-                spec.getConnectionConfiguration().getType());
-        HttpEntity requestBody =
-            new NStringEntity(bulkRequest.toString(), ContentType.APPLICATION_JSON);
-        response = restClient.performRequest("POST", endPoint, Collections.emptyMap(), requestBody);
-        checkForErrors(response, backendVersion);
+        return String.format(
+            "/%s/%s/_bulk",
+            spec.getConnectionConfiguration().getIndex(),
+            spec.getConnectionConfiguration().getType());
       }
 
       @Teardown
       public void closeClient() throws Exception {
+        if (retryExecutor != null) {
+          retryExecutor.shutdownNow();
+        }
         if (restClient != null) {
           restClient.close();
         }
       }
     }
+
+    /**
+     * A repeatable bulk request body which streams the already encoded actions one after the other,
+     * instead of concatenating them.
+     */
+    private static class BulkEntity extends AbstractHttpEntity implements HttpAsyncContentProducer {
+      private final List<byte[]> actions;
+      private final long contentLength;
+      private int nextAction;
+      @Nullable private ByteBuffer currentAction;
+
+      BulkEntity(List<byte[]> actions) {
+        this.actions = actions;
+        long length = 0;
+        for (byte[] action : actions) {
+          length += action.length;
+        }
+        this.contentLength = length;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+      }
+
+      @Override
+      public boolean isRepeatable() {
+        return true;
+      }
+
+      @Override
+      public long getContentLength() {
+        return contentLength;
+      }
+
+      @Override
+      public InputStream getContent() {
+        return new SequenceInputStream(
+            Collections.enumeration(
+                actions.stream().map(ByteArrayInputStream::new).collect(Collectors.toList())));
+      }
+
+      @Override
+      public void writeTo(OutputStream outStream) throws IOException {
+        for (byte[] action : actions) {
+          outStream.write(action);
+        }
+        outStream.flush();
+      }
+
+      @Override
+      public boolean isStreaming() {
+        return false;
+      }
+
+      @Override
+      public void produceContent(ContentEncoder encoder, IOControl ioControl) throws IOException {
+        while (true) {
+          if (currentAction == null || !currentAction.hasRemaining()) {
+            if (nextAction == actions.size()) {
+              encoder.complete();
+              return;
+            }
+            currentAction = ByteBuffer.wrap(actions.get(nextAction++));
+          }
+          encoder.write(currentAction);
+          if (currentAction.hasRemaining()) {
+            // the channel is full, wait to be called again
+            return;
+          }
+        }
+      }
+
+      @Override
+      public void close() {
+        // makes the entity repeatable, for retries on another host
+        nextAction = 0;
+        currentAction = null;
+      }
+    }
   }
 
   static int getBackendVersion(ConnectionConfiguration connectionConfiguration) {
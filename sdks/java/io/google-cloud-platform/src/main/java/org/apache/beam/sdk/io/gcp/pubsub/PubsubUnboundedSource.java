@@ -26,6 +26,7 @@ import com.google.api.client.util.Clock;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -41,7 +42,15 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -59,7 +68,10 @@ import org.apache.beam.sdk.io.gcp.pubsub.PubsubClient.PubsubClientFactory;
 import org.apache.beam.sdk.io.gcp.pubsub.PubsubClient.SubscriptionPath;
 import org.apache.beam.sdk.io.gcp.pubsub.PubsubClient.TopicPath;
 import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.metrics.SourceMetrics;
+import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.ValueProvider;
 import org.apache.beam.sdk.options.ValueProvider.StaticValueProvider;
@@ -108,6 +120,11 @@ import org.slf4j.LoggerFactory;
  *   <li>Though some background threads may be used by the underlying transport all Pubsub calls are
  *       blocking. We rely on the underlying runner to allow multiple {@link
  *       UnboundedSource.UnboundedReader} instances to execute concurrently and thus hide latency.
+ *   <li>With the {@code enable_pubsub_pipelining} experiment each reader instead pulls its next
+ *       batch ahead of the consumer and sends ACKs and ACK deadline extensions from a background
+ *       thread, batched by count, bytes and time, so that ACK latency no longer throttles pulls.
+ *   <li>The messages and bytes in flight are limited per reader. The time taken to ACK messages
+ *       after their checkpoint is finalized is reported in the {@code ackLatencyMs} distribution.
  * </ul>
  */
 public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<PubsubMessage>> {
@@ -128,6 +145,27 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
   /** Maximum number of messages in flight. */
   private static final int MAX_IN_FLIGHT = 20000;
 
+  /** Maximum number of message bytes in flight. */
+  private static final long MAX_IN_FLIGHT_BYTES = 100L * 1024 * 1024;
+
+  /**
+   * Experiment enabling pull-ahead and background, batched ACKs and ACK deadline extensions. See
+   * {@link PubsubReader#ackBatch}.
+   */
+  @VisibleForTesting static final String PIPELINING_EXPERIMENT = "enable_pubsub_pipelining";
+
+  /**
+   * If pipelining: Maximum number of ACK id bytes per background ACK or ACK extension call. Pubsub
+   * rejects requests above 512KB.
+   */
+  private static final int ACK_BATCH_BYTES = 400 * 1024;
+
+  /** If pipelining: Maximum time an ACK id waits to be batched with others before being sent. */
+  private static final Duration ACK_BATCH_DELAY = Duration.millis(100);
+
+  /** If pipelining: How long closing a reader waits for its pending ACKs to be sent. */
+  private static final Duration ACK_FLUSH_TIMEOUT = Duration.standardSeconds(30);
+
   /** Timeout for round trip from receiving a message to finally ACKing it back to Pubsub. */
   private static final Duration PROCESSING_TIMEOUT = Duration.standardMinutes(2);
 
@@ -396,9 +434,115 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
        */
       long ackDeadlineMsSinceEpoch;
 
-      public InFlightState(long requestTimeMsSinceEpoch, long ackDeadlineMsSinceEpoch) {
+      /** Byte size of the undecoded message. */
+      long bytes;
+
+      public InFlightState(
+          long requestTimeMsSinceEpoch, long ackDeadlineMsSinceEpoch, long bytes) {
         this.requestTimeMsSinceEpoch = requestTimeMsSinceEpoch;
         this.ackDeadlineMsSinceEpoch = ackDeadlineMsSinceEpoch;
+        this.bytes = bytes;
+      }
+    }
+
+    /** A batch of ACK ids which have been successfully ACKed. */
+    private static class AckedBatch {
+      final List<String> ackIds;
+
+      /** Time (ms) from the first of the ACKs being requested to Pubsub confirming them all. */
+      final long latencyMs;
+
+      AckedBatch(List<String> ackIds, long latencyMs) {
+        this.ackIds = ackIds;
+        this.latencyMs = latencyMs;
+      }
+    }
+
+    /**
+     * If pipelining: Collects ACK ids and sends them on {@link #ackExecutor} once enough ids or
+     * bytes are pending, or the oldest pending id has waited for {@link #ACK_BATCH_DELAY}.
+     */
+    private abstract class AckIdBatcher {
+      private List<String> pendingIds = new ArrayList<>();
+      private long pendingBytes;
+      private long pendingSinceMsSinceEpoch;
+      // If a send is queued to run right away, or after ACK_BATCH_DELAY.
+      private boolean sendScheduled;
+      private boolean delayedSendScheduled;
+
+      /** BLOCKING Send {@code ackIds} to Pubsub. Called on {@link #ackExecutor} only. */
+      abstract void send(List<String> ackIds, long pendingSinceMsSinceEpoch) throws Exception;
+
+      /** Called on {@link #ackExecutor} if {@link #send} failed. */
+      abstract void failed(List<String> ackIds, Exception e);
+
+      synchronized void add(Collection<String> ackIds) {
+        for (String ackId : ackIds) {
+          if (pendingIds.isEmpty()) {
+            pendingSinceMsSinceEpoch = now();
+          }
+          pendingIds.add(ackId);
+          pendingBytes += ackId.length();
+          if (!sendScheduled
+              && (pendingIds.size() >= ACK_BATCH_SIZE || pendingBytes >= ACK_BATCH_BYTES)) {
+            // Send the full batch promptly.
+            ackExecutor.execute(this::sendPending);
+            sendScheduled = true;
+          }
+        }
+        if (!sendScheduled && !delayedSendScheduled && !pendingIds.isEmpty()) {
+          ackExecutor.schedule(
+              this::sendPending, ACK_BATCH_DELAY.getMillis(), TimeUnit.MILLISECONDS);
+          delayedSendScheduled = true;
+        }
+      }
+
+      /** Send whatever is pending, unless a send is already on its way. */
+      void flush() {
+        ackExecutor.execute(this::sendPending);
+      }
+
+      private void sendPending() {
+        boolean drain = true;
+        while (drain) {
+          List<String> ackIds;
+          long sinceMsSinceEpoch;
+          synchronized (this) {
+            sendScheduled = false;
+            delayedSendScheduled = false;
+            if (pendingIds.isEmpty()) {
+              return;
+            }
+            // Only take what fits in a single request, the rest goes out on the next send.
+            int n = 0;
+            long bytes = 0;
+            while (n < pendingIds.size() && n < ACK_BATCH_SIZE && bytes < ACK_BATCH_BYTES) {
+              bytes += pendingIds.get(n).length();
+              n++;
+            }
+            ackIds = new ArrayList<>(pendingIds.subList(0, n));
+            pendingIds = new ArrayList<>(pendingIds.subList(n, pendingIds.size()));
+            pendingBytes -= bytes;
+            sinceMsSinceEpoch = pendingSinceMsSinceEpoch;
+            drain = false;
+            if (!pendingIds.isEmpty()) {
+              // The remaining ids were added later, their latency is measured from now on.
+              pendingSinceMsSinceEpoch = now();
+              try {
+                ackExecutor.execute(this::sendPending);
+                sendScheduled = true;
+              } catch (RejectedExecutionException e) {
+                // The reader is being closed, so send the remaining ids from this task.
+                drain = true;
+              }
+            }
+          }
+          try {
+            send(ackIds, sinceMsSinceEpoch);
+          } catch (Exception e) {
+            failed(ackIds, e);
+          }
+        }
       }
     }
 
@@ -408,11 +552,47 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
      */
     private final LinkedHashMap<String, InFlightState> inFlight;
 
+    /** Byte size of undecoded messages in {@link #inFlight}. */
+    private long inFlightBytes;
+
     /**
      * Batches of successfully ACKed ids which need to be pruned from the above. CAUTION: Accessed
-     * by both reader and checkpointing threads.
+     * by reader, checkpointing and ACK sending threads.
+     */
+    private final Queue<AckedBatch> ackedIds;
+
+    /**
+     * Executor sending ACKs and ACK deadline extensions in the background, or {@literal null} if
+     * they are sent synchronously. See {@link #PIPELINING_EXPERIMENT}.
+     */
+    @Nullable private final ScheduledExecutorService ackExecutor;
+
+    /** Executor pulling ahead of the consumer, or {@literal null} if pulls are synchronous. */
+    @Nullable private final ExecutorService pullExecutor;
+
+    /** If pipelining: ACKs waiting to be sent. */
+    @Nullable private final AckIdBatcher pendingAcks;
+
+    /**
+     * If pipelining: ACK ids queued or sent but not yet retired, so that later checkpoints don't ACK
+     * them again. CAUTION: Accessed by reader, checkpointing and ACK sending threads.
+     */
+    @Nullable private final Set<String> ackRequestedIds;
+
+    /** If pipelining: ACK deadline extensions waiting to be sent. */
+    @Nullable private final AckIdBatcher pendingExtensions;
+
+    /**
+     * If pipelining: Failure to extend ACK deadlines in the background, to be thrown by the next
+     * {@link #advance}.
      */
-    private final Queue<List<String>> ackedIds;
+    private final AtomicReference<Exception> extensionFailure;
+
+    /** If pipelining: The pull in progress, or {@literal null} if none. */
+    @Nullable private Future<List<PubsubClient.IncomingMessage>> pendingPull;
+
+    /** If pipelining: When {@link #pendingPull} was requested. */
+    private long pendingPullRequestTimeMsSinceEpoch;
 
     /** Byte size of undecoded elements in {@link #notYetRead}. */
     private long notYetReadBytes;
@@ -462,6 +642,13 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
     /** Stats only: Number of messages which have recently been ACKed. */
     private MovingFunction numAcked;
 
+    /** Stats only: Maximum of recent ACK latencies (ms). */
+    private MovingFunction maxAckLatencyMs;
+
+    /** Time from finalizing a checkpoint to its messages having been ACKed. */
+    private final Distribution ackLatencyMs =
+        Metrics.distribution(PubsubUnboundedSource.class, "ackLatencyMs");
+
     /**
      * Stats only: Number of messages which have recently expired (ACKs were extended for too long).
      */
@@ -528,7 +715,58 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
       safeToAckIds = new HashSet<>();
       notYetRead = new ArrayDeque<>();
       inFlight = new LinkedHashMap<>();
+      inFlightBytes = 0;
       ackedIds = new ConcurrentLinkedQueue<>();
+      extensionFailure = new AtomicReference<>();
+      if (ExperimentalOptions.hasExperiment(options, PIPELINING_EXPERIMENT)) {
+        ackExecutor =
+            Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("pubsub-ack-" + subscription.getName() + "-%d")
+                    .build());
+        pullExecutor =
+            Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("pubsub-pull-" + subscription.getName() + "-%d")
+                    .build());
+        pendingAcks =
+            new AckIdBatcher() {
+              @Override
+              void send(List<String> ackIds, long pendingSinceMsSinceEpoch) throws Exception {
+                sendAcks(ackIds, pendingSinceMsSinceEpoch);
+              }
+
+              @Override
+              void failed(List<String> ackIds, Exception e) {
+                // As for a failed checkpoint finalization Pubsub will simply redeliver these,
+                // unless the next checkpoint manages to ACK them.
+                LOG.warn("Failed to ACK {} messages on {}", ackIds.size(), subscription, e);
+                ackRequestedIds.removeAll(ackIds);
+              }
+            };
+        ackRequestedIds = ConcurrentHashMap.newKeySet();
+        pendingExtensions =
+            new AckIdBatcher() {
+              @Override
+              void send(List<String> ackIds, long pendingSinceMsSinceEpoch) throws Exception {
+                pubsubClient.get().modifyAckDeadline(subscription, ackIds, extensionSec());
+              }
+
+              @Override
+              void failed(List<String> ackIds, Exception e) {
+                extensionFailure.compareAndSet(null, e);
+              }
+            };
+      } else {
+        ackExecutor = null;
+        pullExecutor = null;
+        pendingAcks = null;
+        ackRequestedIds = null;
+        pendingExtensions = null;
+      }
+      pendingPull = null;
       notYetReadBytes = 0;
       minUnreadTimestampMsSinceEpoch =
           new BucketingFunction(
@@ -543,6 +781,7 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
       numExtendedDeadlines = newFun(SUM);
       numLateDeadlines = newFun(SUM);
       numAcked = newFun(SUM);
+      maxAckLatencyMs = newFun(MAX);
       numExpired = newFun(SUM);
       numNacked = newFun(SUM);
       numReadBytes = newFun(SUM);
@@ -562,15 +801,30 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
 
     /**
      * Acks the provided {@code ackIds} back to Pubsub, blocking until all of the messages are
-     * ACKed.
+     * ACKed. If pipelining, only queues the {@code ackIds} to be ACKed in the background.
      *
      * <p>CAUTION: May be invoked from a separate thread.
      *
      * <p>CAUTION: Retains {@code ackIds}.
      */
     void ackBatch(List<String> ackIds) throws IOException {
+      if (pendingAcks != null) {
+        List<String> newAckIds = new ArrayList<>(ackIds.size());
+        for (String ackId : ackIds) {
+          if (ackRequestedIds.add(ackId)) {
+            newAckIds.add(ackId);
+          }
+        }
+        pendingAcks.add(newAckIds);
+      } else {
+        sendAcks(ackIds, now());
+      }
+    }
+
+    /** BLOCKING ACK {@code ackIds} requested since the given time. Retains {@code ackIds}. */
+    private void sendAcks(List<String> ackIds, long requestedMsSinceEpoch) throws IOException {
       pubsubClient.get().acknowledge(subscription, ackIds);
-      ackedIds.add(ackIds);
+      ackedIds.add(new AckedBatch(ackIds, now() - requestedMsSinceEpoch));
     }
 
     /**
@@ -584,14 +838,23 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
 
     /**
      * BLOCKING Extend the processing deadline for messages from Pubsub with the given {@code
-     * ackIds}. Does not retain {@code ackIds}.
+     * ackIds}. If pipelining, only queues the extension to be sent in the background. Does not
+     * retain {@code ackIds}.
      */
     private void extendBatch(long nowMsSinceEpoch, List<String> ackIds) throws IOException {
-      int extensionSec = (ackTimeoutMs * ACK_EXTENSION_PCT) / (100 * 1000);
-      pubsubClient.get().modifyAckDeadline(subscription, ackIds, extensionSec);
+      if (pendingExtensions != null) {
+        pendingExtensions.add(ackIds);
+      } else {
+        pubsubClient.get().modifyAckDeadline(subscription, ackIds, extensionSec());
+      }
       numExtendedDeadlines.add(nowMsSinceEpoch, ackIds.size());
     }
 
+    /** By how many seconds to extend ACK deadlines. */
+    private int extensionSec() {
+      return (ackTimeoutMs * ACK_EXTENSION_PCT) / (100 * 1000);
+    }
+
     /** Return the current time, in ms since epoch. */
     private long now() {
       if (outer.outer.clock == null) {
@@ -608,16 +871,31 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
     private void retire() throws IOException {
       long nowMsSinceEpoch = now();
       while (true) {
-        List<String> ackIds = ackedIds.poll();
-        if (ackIds == null) {
+        AckedBatch batch = ackedIds.poll();
+        if (batch == null) {
           return;
         }
-        numAcked.add(nowMsSinceEpoch, ackIds.size());
-        for (String ackId : ackIds) {
-          inFlight.remove(ackId);
+        numAcked.add(nowMsSinceEpoch, batch.ackIds.size());
+        maxAckLatencyMs.add(nowMsSinceEpoch, batch.latencyMs);
+        ackLatencyMs.update(batch.latencyMs);
+        for (String ackId : batch.ackIds) {
+          removeInFlight(ackId);
           safeToAckIds.remove(ackId);
         }
+        if (ackRequestedIds != null) {
+          ackRequestedIds.removeAll(batch.ackIds);
+        }
+      }
+    }
+
+    /** Forget the in-flight state of {@code ackId}, if any. */
+    @Nullable
+    private InFlightState removeInFlight(String ackId) {
+      InFlightState state = inFlight.remove(ackId);
+      if (state != null) {
+        inFlightBytes -= state.bytes;
       }
+      return state;
     }
 
     /**
@@ -673,7 +951,7 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
           // If we didn't make the ACK deadline assume expired and no longer in flight.
           numLateDeadlines.add(nowMsSinceEpoch, assumeExpired.size());
           for (String ackId : assumeExpired) {
-            inFlight.remove(ackId);
+            removeInFlight(ackId);
           }
         }
 
@@ -681,7 +959,7 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
           // Expired messages are no longer considered in flight.
           numExpired.add(nowMsSinceEpoch, toBeExpired.size());
           for (String ackId : toBeExpired) {
-            inFlight.remove(ackId);
+            removeInFlight(ackId);
           }
         }
 
@@ -692,38 +970,84 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
           for (String ackId : toBeExtended) {
             // Maintain increasing ack deadline order.
             InFlightState state = inFlight.remove(ackId);
-            inFlight.put(
-                ackId, new InFlightState(state.requestTimeMsSinceEpoch, newDeadlineMsSinceEpoch));
+            state.ackDeadlineMsSinceEpoch = newDeadlineMsSinceEpoch;
+            inFlight.put(ackId, state);
           }
-          // BLOCKs until extended.
+          // BLOCKs until extended, unless pipelining.
           extendBatch(nowMsSinceEpoch, toBeExtended);
         }
       }
     }
 
+    /**
+     * Return {@literal true} if we should wait for checkpoints to be finalized before pulling
+     * anymore. There may be lag while checkpoints are persisted and the finalizeCheckpoint method is
+     * invoked. By limiting the in-flight messages and bytes we can ensure we don't end up consuming
+     * messages faster than we can checkpoint them.
+     */
+    private boolean overSubscribed() {
+      return inFlight.size() >= MAX_IN_FLIGHT || inFlightBytes >= MAX_IN_FLIGHT_BYTES;
+    }
+
     /** BLOCKING Fetch another batch of messages from Pubsub. */
     private void pull() throws IOException {
-      if (inFlight.size() >= MAX_IN_FLIGHT) {
-        // Wait for checkpoint to be finalized before pulling anymore.
-        // There may be lag while checkpoints are persisted and the finalizeCheckpoint method
-        // is invoked. By limiting the in-flight messages we can ensure we don't end up consuming
-        // messages faster than we can checkpoint them.
+      if (overSubscribed()) {
         return;
       }
 
       long requestTimeMsSinceEpoch = now();
-      long deadlineMsSinceEpoch = requestTimeMsSinceEpoch + ackTimeoutMs;
 
       // Pull the next batch.
       // BLOCKs until received.
       Collection<PubsubClient.IncomingMessage> receivedMessages =
           pubsubClient.get().pull(requestTimeMsSinceEpoch, subscription, PULL_BATCH_SIZE, true);
+      receive(requestTimeMsSinceEpoch, receivedMessages);
+    }
+
+    /**
+     * Take the messages of a completed background pull, if any, and unless enough messages are
+     * already waiting to be read start pulling the next batch in the background.
+     */
+    private void pullAhead() throws IOException {
+      if (pendingPull != null) {
+        if (!pendingPull.isDone()) {
+          return;
+        }
+        Collection<PubsubClient.IncomingMessage> receivedMessages;
+        try {
+          receivedMessages = pendingPull.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while pulling from " + subscription, e);
+        } catch (ExecutionException e) {
+          throw new IOException("Failed to pull from " + subscription, e.getCause());
+        } finally {
+          pendingPull = null;
+        }
+        receive(pendingPullRequestTimeMsSinceEpoch, receivedMessages);
+      }
+
+      if (notYetRead.size() >= PULL_BATCH_SIZE || overSubscribed()) {
+        return;
+      }
+      final long requestTimeMsSinceEpoch = now();
+      final PubsubClient client = pubsubClient.get();
+      pendingPullRequestTimeMsSinceEpoch = requestTimeMsSinceEpoch;
+      pendingPull =
+          pullExecutor.submit(
+              () -> client.pull(requestTimeMsSinceEpoch, subscription, PULL_BATCH_SIZE, true));
+    }
+
+    /** Capture messages received from a pull requested at the given time. */
+    private void receive(
+        long requestTimeMsSinceEpoch, Collection<PubsubClient.IncomingMessage> receivedMessages) {
       if (receivedMessages.isEmpty()) {
         // Nothing available yet. Try again later.
         return;
       }
 
       lastReceivedMsSinceEpoch = requestTimeMsSinceEpoch;
+      long deadlineMsSinceEpoch = requestTimeMsSinceEpoch + ackTimeoutMs;
 
       // Capture the received messages.
       for (PubsubClient.IncomingMessage incomingMessage : receivedMessages) {
@@ -731,7 +1055,11 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
         notYetReadBytes += incomingMessage.elementBytes.length;
         inFlight.put(
             incomingMessage.ackId,
-            new InFlightState(requestTimeMsSinceEpoch, deadlineMsSinceEpoch));
+            new InFlightState(
+                requestTimeMsSinceEpoch,
+                deadlineMsSinceEpoch,
+                incomingMessage.elementBytes.length));
+        inFlightBytes += incomingMessage.elementBytes.length;
         numReceived++;
         numReceivedRecently.add(requestTimeMsSinceEpoch, 1L);
         minReceivedTimestampMsSinceEpoch.add(
@@ -782,6 +1110,7 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
               + "{} current unread messages, "
               + "{} current unread bytes, "
               + "{} current in-flight msgs, "
+              + "{} current in-flight bytes, "
               + "{} oldest in-flight, "
               + "{} current in-flight checkpoints, "
               + "{} max in-flight checkpoints, "
@@ -790,6 +1119,7 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
               + "{} recent extended, "
               + "{} recent late extended, "
               + "{} recent ACKed, "
+              + "{}ms recent max ACK latency, "
               + "{} recent NACKed, "
               + "{} recent expired, "
               + "{} recent message timestamp skew, "
@@ -801,6 +1131,7 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
           notYetRead.size(),
           notYetReadBytes,
           inFlight.size(),
+          inFlightBytes,
           oldestInFlight,
           numInFlightCheckpoints.get(),
           maxInFlightCheckpoints,
@@ -809,6 +1140,7 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
           numExtendedDeadlines.get(nowMsSinceEpoch),
           numLateDeadlines.get(nowMsSinceEpoch),
           numAcked.get(nowMsSinceEpoch),
+          maxAckLatencyMs.get(nowMsSinceEpoch),
           numNacked.get(nowMsSinceEpoch),
           numExpired.get(nowMsSinceEpoch),
           messageSkew,
@@ -829,10 +1161,15 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
     /**
      * BLOCKING Return {@literal true} if a Pubsub messaage is available, {@literal false} if none
      * is available at this time or we are over-subscribed. May BLOCK while extending ACKs or
-     * fetching available messages. Will not block waiting for messages.
+     * fetching available messages, unless pipelining. Will not block waiting for messages.
      */
     @Override
     public boolean advance() throws IOException {
+      Exception failure = extensionFailure.getAndSet(null);
+      if (failure != null) {
+        throw new IOException("Failed to extend ACK deadlines on " + subscription, failure);
+      }
+
       // Emit stats.
       stats();
 
@@ -853,7 +1190,10 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
       // the work to extend ACKs would be better done in the background.
       extend();
 
-      if (notYetRead.isEmpty()) {
+      if (pullExecutor != null) {
+        // Take the batch pulled in the background, and/or start pulling the next one.
+        pullAhead();
+      } else if (notYetRead.isEmpty()) {
         // Pull another batch.
         // Will BLOCK until fetch returns, but will not block until a message is available.
         pull();
@@ -914,15 +1254,34 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
     @Override
     public void close() throws IOException {
       active.set(false);
+      if (pullExecutor != null) {
+        // Messages of a pull still in progress will be redelivered once their ACK deadline
+        // expires.
+        pullExecutor.shutdownNow();
+      }
       maybeCloseClient();
     }
 
     /**
      * Close this reader's underlying {@link PubsubClient} if the reader has been closed and there
-     * are no outstanding checkpoints.
+     * are no outstanding checkpoints. If pipelining, first waits for pending ACKs to be sent.
      */
-    private void maybeCloseClient() throws IOException {
+    private synchronized void maybeCloseClient() throws IOException {
       if (!active.get() && numInFlightCheckpoints.get() == 0) {
+        if (ackExecutor != null && !ackExecutor.isShutdown()) {
+          pendingAcks.flush();
+          pendingExtensions.flush();
+          ackExecutor.shutdown();
+          try {
+            if (!ackExecutor.awaitTermination(
+                ACK_FLUSH_TIMEOUT.getMillis(), TimeUnit.MILLISECONDS)) {
+              LOG.warn("Timed out sending pending ACKs on {}", subscription);
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending pending ACKs on " + subscription, e);
+          }
+        }
         // The reader has been closed and it has no more outstanding checkpoints. The client
         // must be closed so it doesn't leak
         PubsubClient client = pubsubClient.getAndSet(null);
@@ -939,7 +1298,7 @@ public class PubsubUnboundedSource extends PTransform<PBegin, PCollection<Pubsub
 
     @Override
     public Instant getWatermark() {
-      if (pubsubClient.get().isEOF() && notYetRead.isEmpty()) {
+      if (pubsubClient.get().isEOF() && notYetRead.isEmpty() && pendingPull == null) {
         // For testing only: Advance the watermark to the end of time to signal
         // the test is complete.
         return BoundedWindow.TIMESTAMP_MAX_VALUE;
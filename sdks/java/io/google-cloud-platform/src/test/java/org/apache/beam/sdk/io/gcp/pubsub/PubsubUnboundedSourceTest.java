@@ -37,8 +37,10 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.beam.sdk.io.gcp.pubsub.PubsubClient.IncomingMessage;
 import org.apache.beam.sdk.io.gcp.pubsub.PubsubClient.SubscriptionPath;
@@ -47,6 +49,7 @@ import org.apache.beam.sdk.io.gcp.pubsub.PubsubTestClient.PubsubTestClientFactor
 import org.apache.beam.sdk.io.gcp.pubsub.PubsubUnboundedSource.PubsubCheckpoint;
 import org.apache.beam.sdk.io.gcp.pubsub.PubsubUnboundedSource.PubsubReader;
 import org.apache.beam.sdk.io.gcp.pubsub.PubsubUnboundedSource.PubsubSource;
+import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.options.ValueProvider.StaticValueProvider;
@@ -335,6 +338,89 @@ public class PubsubUnboundedSourceTest {
     reader.close();
   }
 
+  @Test
+  public void readManyMessagesPipelined() throws Exception {
+    final int n = 5000;
+    List<IncomingMessage> incoming = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      incoming.add(
+          new IncomingMessage(
+              String.format("data_%d", i).getBytes(StandardCharsets.UTF_8),
+              null,
+              TIMESTAMP,
+              0,
+              String.format("ackid_%d", i),
+              String.format("recordid_%d", i)));
+    }
+    setupOneMessage(incoming);
+
+    PipelineOptions options = PipelineOptionsFactory.create();
+    options
+        .as(ExperimentalOptions.class)
+        .setExperiments(ImmutableList.of(PubsubUnboundedSource.PIPELINING_EXPERIMENT));
+    PubsubReader reader = primSource.createReader(options, null);
+
+    // Messages are pulled in the background, so need not be available straight away.
+    Set<String> read = new HashSet<>();
+    boolean available = reader.start();
+    while (read.size() < n) {
+      if (available) {
+        // No duplicate messages.
+        assertTrue(read.add(data(reader.getCurrent())));
+        if (read.size() % 1000 == 0) {
+          // ACKs are sent in the background.
+          reader.getCheckpointMark().finalizeCheckpoint();
+        }
+      } else {
+        Thread.sleep(1);
+      }
+      available = reader.advance();
+    }
+    assertFalse(available);
+    // Closing the reader waits for the pending ACKs, which the factory checks on close.
+    reader.close();
+  }
+
+  /** Tests that ACKs still pending when the reader is closed are all sent, not just one batch. */
+  @Test
+  public void closePipelinedWithManyPendingAcks() throws Exception {
+    final int n = 10000;
+    List<IncomingMessage> incoming = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      incoming.add(
+          new IncomingMessage(
+              String.format("data_%d", i).getBytes(StandardCharsets.UTF_8),
+              null,
+              TIMESTAMP,
+              0,
+              String.format("ackid_%d", i),
+              String.format("recordid_%d", i)));
+    }
+    setupOneMessage(incoming);
+
+    PipelineOptions options = PipelineOptionsFactory.create();
+    options
+        .as(ExperimentalOptions.class)
+        .setExperiments(ImmutableList.of(PubsubUnboundedSource.PIPELINING_EXPERIMENT));
+    PubsubReader reader = primSource.createReader(options, null);
+
+    int read = 0;
+    boolean available = reader.start();
+    while (read < n) {
+      if (available) {
+        read++;
+      } else {
+        Thread.sleep(1);
+      }
+      available = reader.advance();
+    }
+    PubsubCheckpoint checkpoint = reader.getCheckpointMark();
+    reader.close();
+    // Finalizing the last checkpoint queues all of the ACKs and then closes the client, which
+    // the factory checks for unACKed messages on close.
+    checkpoint.finalizeCheckpoint();
+  }
+
   @Test
   public void noSubscriptionSplitGeneratesSubscription() throws Exception {
     TopicPath topicPath = PubsubClient.topicPathFromName("my_project", "my_topic");
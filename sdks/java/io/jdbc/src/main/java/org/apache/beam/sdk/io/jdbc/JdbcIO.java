@@ -18,21 +18,33 @@
 package org.apache.beam.sdk.io.jdbc;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 import org.apache.beam.sdk.annotations.Experimental;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.options.ValueProvider;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
@@ -47,6 +59,7 @@ import org.apache.beam.sdk.util.BackOff;
 import org.apache.beam.sdk.util.BackOffUtils;
 import org.apache.beam.sdk.util.FluentBackoff;
 import org.apache.beam.sdk.util.Sleeper;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionView;
@@ -116,6 +129,32 @@ import org.slf4j.LoggerFactory;
  * );
  * }</pre>
  *
+ * <h3>Reading a table in parallel</h3>
+ *
+ * <p>{@link #read} runs its query as a single statement. To read a large table with several
+ * connections in parallel, use {@link #readWithPartitions} with a numeric or timestamp partition
+ * column. The table is split into ranges of the partition column, each read with its own range
+ * predicate. If no bounds are given, they are found with {@code MIN} and {@code MAX} queries on the
+ * partition column:
+ *
+ * <pre>{@code
+ * pipeline.apply(JdbcIO.<KV<Integer, String>>readWithPartitions()
+ *   .withDataSourceConfiguration(JdbcIO.DataSourceConfiguration.create(
+ *          "com.mysql.jdbc.Driver", "jdbc:mysql://hostname:3306/mydb")
+ *        .withUsername("username")
+ *        .withPassword("password"))
+ *   .withTable("Person")
+ *   .withPartitionColumn("id")
+ *   .withNumPartitions(100)
+ *   .withCoder(KvCoder.of(BigEndianIntegerCoder.of(), StringUtf8Coder.of()))
+ *   .withRowMapper(new JdbcIO.RowMapper<KV<Integer, String>>() {
+ *     public KV<Integer, String> mapRow(ResultSet resultSet) throws Exception {
+ *       return KV.of(resultSet.getInt("id"), resultSet.getString("name"));
+ *     }
+ *   })
+ * );
+ * }</pre>
+ *
  * <h3>Writing to JDBC datasource</h3>
  *
  * <p>JDBC sink supports writing records into a database. It writes a {@link PCollection} to the
@@ -176,8 +215,23 @@ public class JdbcIO {
         .build();
   }
 
+  /**
+   * Like {@link #read}, but reads a table with a query per range of a partition column, in
+   * parallel.
+   *
+   * @param <T> Type of the data to be read.
+   */
+  public static <T> ReadWithPartitions<T> readWithPartitions() {
+    return new AutoValue_JdbcIO_ReadWithPartitions.Builder<T>()
+        .setFetchSize(DEFAULT_FETCH_SIZE)
+        .setNumPartitions(DEFAULT_NUM_PARTITIONS)
+        .setTimestampPartitionColumn(false)
+        .build();
+  }
+
   private static final long DEFAULT_BATCH_SIZE = 1000L;
   private static final int DEFAULT_FETCH_SIZE = 50_000;
+  private static final int DEFAULT_NUM_PARTITIONS = 200;
 
   /**
    * Write data to a JDBC datasource.
@@ -220,6 +274,28 @@ public class JdbcIO {
    */
   @AutoValue
   public abstract static class DataSourceConfiguration implements Serializable {
+    /**
+     * The maximum number of connections of a shared pool. Threads asking for more connections wait
+     * until one is returned to the pool.
+     */
+    private static final int SHARED_POOL_SIZE = 16;
+
+    /**
+     * The shared pools, keyed by a hash of their configuration so that credentials are not kept in
+     * the key.
+     */
+    private static final Map<HashCode, SharedDataSource> SHARED_DATA_SOURCES = new HashMap<>();
+
+    /** A pooling {@link DataSource} with the number of its users. */
+    private static class SharedDataSource {
+      private final DataSource dataSource;
+      private int references;
+
+      private SharedDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+      }
+    }
+
     @Nullable
     abstract ValueProvider<String> getDriverClassName();
 
@@ -332,6 +408,79 @@ public class JdbcIO {
     }
 
     DataSource buildDatasource() throws Exception {
+      return buildDatasource(1);
+    }
+
+    /**
+     * Returns a pooling {@link DataSource} shared by all the users of an equal configuration in this
+     * JVM, so that the DoFn instances running on a worker take their connections from one pool of
+     * at most {@link #SHARED_POOL_SIZE} connections. Each call must be paired with a call to {@link
+     * #releaseSharedDatasource}, which closes the pool once it has no users left. A configuration
+     * with a provided {@link DataSource} cannot be compared after serialization, so it gets its own
+     * pool.
+     */
+    DataSource getSharedDatasource() throws Exception {
+      if (getDataSource() != null) {
+        return buildDatasource(SHARED_POOL_SIZE);
+      }
+      HashCode key = sharedDatasourceKey();
+      synchronized (SHARED_DATA_SOURCES) {
+        SharedDataSource shared = SHARED_DATA_SOURCES.get(key);
+        if (shared == null) {
+          shared = new SharedDataSource(buildDatasource(SHARED_POOL_SIZE));
+          SHARED_DATA_SOURCES.put(key, shared);
+        }
+        shared.references++;
+        return shared.dataSource;
+      }
+    }
+
+    /** Releases a {@link DataSource} returned by {@link #getSharedDatasource}. */
+    void releaseSharedDatasource(DataSource dataSource) throws Exception {
+      if (getDataSource() != null) {
+        closeDatasource(dataSource);
+        return;
+      }
+      HashCode key = sharedDatasourceKey();
+      synchronized (SHARED_DATA_SOURCES) {
+        SharedDataSource shared = SHARED_DATA_SOURCES.get(key);
+        checkState(
+            shared != null && shared.dataSource == dataSource,
+            "The DataSource was not returned by getSharedDatasource");
+        if (--shared.references == 0) {
+          SHARED_DATA_SOURCES.remove(key);
+          closeDatasource(dataSource);
+        }
+      }
+    }
+
+    private HashCode sharedDatasourceKey() {
+      Hasher hasher = Hashing.sha256().newHasher();
+      for (ValueProvider<String> value :
+          Arrays.asList(
+              getDriverClassName(),
+              getUrl(),
+              getUsername(),
+              getPassword(),
+              getConnectionProperties())) {
+        String string = value == null ? null : value.get();
+        if (string == null) {
+          hasher.putInt(-1);
+        } else {
+          // the length keeps the boundaries between the values unambiguous.
+          hasher.putInt(string.length()).putString(string, StandardCharsets.UTF_8);
+        }
+      }
+      return hasher.hash();
+    }
+
+    private static void closeDatasource(DataSource dataSource) throws Exception {
+      if (dataSource instanceof AutoCloseable) {
+        ((AutoCloseable) dataSource).close();
+      }
+    }
+
+    private DataSource buildDatasource(int maxPoolSize) throws Exception {
       DataSource current = null;
       if (getDataSource() != null) {
         current = getDataSource();
@@ -360,7 +509,7 @@ public class JdbcIO {
       PoolableConnectionFactory poolableConnectionFactory =
           new PoolableConnectionFactory(connectionFactory, null);
       GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
-      poolConfig.setMaxTotal(1);
+      poolConfig.setMaxTotal(maxPoolSize);
       poolConfig.setMinIdle(0);
       poolConfig.setMinEvictableIdleTimeMillis(10000);
       poolConfig.setSoftMinEvictableIdleTimeMillis(30000);
@@ -665,6 +814,315 @@ public class JdbcIO {
     }
   }
 
+  /** Implementation of {@link #readWithPartitions}. */
+  @AutoValue
+  public abstract static class ReadWithPartitions<T> extends PTransform<PBegin, PCollection<T>> {
+    @Nullable
+    abstract DataSourceConfiguration getDataSourceConfiguration();
+
+    @Nullable
+    abstract String getTable();
+
+    @Nullable
+    abstract String getPartitionColumn();
+
+    abstract boolean isTimestampPartitionColumn();
+
+    @Nullable
+    abstract Long getLowerBound();
+
+    @Nullable
+    abstract Long getUpperBound();
+
+    abstract int getNumPartitions();
+
+    @Nullable
+    abstract RowMapper<T> getRowMapper();
+
+    @Nullable
+    abstract Coder<T> getCoder();
+
+    abstract int getFetchSize();
+
+    abstract Builder<T> toBuilder();
+
+    @AutoValue.Builder
+    abstract static class Builder<T> {
+      abstract Builder<T> setDataSourceConfiguration(DataSourceConfiguration config);
+
+      abstract Builder<T> setTable(String table);
+
+      abstract Builder<T> setPartitionColumn(String partitionColumn);
+
+      abstract Builder<T> setTimestampPartitionColumn(boolean timestampPartitionColumn);
+
+      abstract Builder<T> setLowerBound(Long lowerBound);
+
+      abstract Builder<T> setUpperBound(Long upperBound);
+
+      abstract Builder<T> setNumPartitions(int numPartitions);
+
+      abstract Builder<T> setRowMapper(RowMapper<T> rowMapper);
+
+      abstract Builder<T> setCoder(Coder<T> coder);
+
+      abstract Builder<T> setFetchSize(int fetchSize);
+
+      abstract ReadWithPartitions<T> build();
+    }
+
+    public ReadWithPartitions<T> withDataSourceConfiguration(
+        DataSourceConfiguration configuration) {
+      return toBuilder().setDataSourceConfiguration(configuration).build();
+    }
+
+    /** The table to read. All its columns are selected. */
+    public ReadWithPartitions<T> withTable(String table) {
+      checkArgument(table != null, "table can not be null");
+      return toBuilder().setTable(table).build();
+    }
+
+    /**
+     * The integral numeric column used to split the table. Rows with a {@code NULL} partition
+     * column are not read.
+     */
+    public ReadWithPartitions<T> withPartitionColumn(String partitionColumn) {
+      checkArgument(partitionColumn != null, "partitionColumn can not be null");
+      return toBuilder()
+          .setPartitionColumn(partitionColumn)
+          .setTimestampPartitionColumn(false)
+          .build();
+    }
+
+    /**
+     * Like {@link #withPartitionColumn(String)}, for a {@code DATE} or {@code TIMESTAMP} column.
+     * The bounds are then milliseconds since the epoch.
+     */
+    public ReadWithPartitions<T> withTimestampPartitionColumn(String partitionColumn) {
+      checkArgument(partitionColumn != null, "partitionColumn can not be null");
+      return toBuilder()
+          .setPartitionColumn(partitionColumn)
+          .setTimestampPartitionColumn(true)
+          .build();
+    }
+
+    /**
+     * The smallest value of the partition column to read, inclusive. If neither bound is set, both
+     * are found with {@code MIN} and {@code MAX} queries when the pipeline runs.
+     */
+    public ReadWithPartitions<T> withLowerBound(long lowerBound) {
+      return toBuilder().setLowerBound(lowerBound).build();
+    }
+
+    /** The largest value of the partition column to read, inclusive. */
+    public ReadWithPartitions<T> withUpperBound(long upperBound) {
+      return toBuilder().setUpperBound(upperBound).build();
+    }
+
+    /** The number of ranges to split the partition column into. Default is 200. */
+    public ReadWithPartitions<T> withNumPartitions(int numPartitions) {
+      checkArgument(numPartitions > 0, "numPartitions must be > 0, but was %s", numPartitions);
+      return toBuilder().setNumPartitions(numPartitions).build();
+    }
+
+    public ReadWithPartitions<T> withRowMapper(RowMapper<T> rowMapper) {
+      checkArgument(rowMapper != null, "rowMapper can not be null");
+      return toBuilder().setRowMapper(rowMapper).build();
+    }
+
+    public ReadWithPartitions<T> withCoder(Coder<T> coder) {
+      checkArgument(coder != null, "coder can not be null");
+      return toBuilder().setCoder(coder).build();
+    }
+
+    /** Same as {@link Read#withFetchSize(int)}. */
+    public ReadWithPartitions<T> withFetchSize(int fetchSize) {
+      checkArgument(fetchSize > 0, "fetch size must be > 0");
+      return toBuilder().setFetchSize(fetchSize).build();
+    }
+
+    @Override
+    public PCollection<T> expand(PBegin input) {
+      checkArgument(
+          getDataSourceConfiguration() != null, "withDataSourceConfiguration() is required");
+      checkArgument(getTable() != null, "withTable() is required");
+      checkArgument(getPartitionColumn() != null, "withPartitionColumn() is required");
+      checkArgument(getRowMapper() != null, "withRowMapper() is required");
+      checkArgument(getCoder() != null, "withCoder() is required");
+      checkArgument(
+          (getLowerBound() == null) == (getUpperBound() == null),
+          "withLowerBound() and withUpperBound() must be set together");
+      checkArgument(
+          getLowerBound() == null || getLowerBound() <= getUpperBound(),
+          "lowerBound %s must be <= upperBound %s",
+          getLowerBound(),
+          getUpperBound());
+
+      return input
+          .apply(Create.of((Void) null))
+          .apply("Partition", ParDo.of(new PartitionFn(this)))
+          .setCoder(KvCoder.of(VarLongCoder.of(), VarLongCoder.of()))
+          // spread the ranges over the workers before they are read.
+          .apply(Reshuffle.viaRandomKey())
+          .apply("Read partitions", ParDo.of(new ReadPartitionFn<>(this)))
+          .setCoder(getCoder());
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      builder.add(DisplayData.item("table", getTable()));
+      builder.add(DisplayData.item("partitionColumn", getPartitionColumn()));
+      builder.add(DisplayData.item("numPartitions", getNumPartitions()));
+      builder.addIfNotNull(DisplayData.item("lowerBound", getLowerBound()));
+      builder.addIfNotNull(DisplayData.item("upperBound", getUpperBound()));
+      builder.add(DisplayData.item("rowMapper", getRowMapper().getClass().getName()));
+      builder.add(DisplayData.item("coder", getCoder().getClass().getName()));
+      getDataSourceConfiguration().populateDisplayData(builder);
+    }
+  }
+
+  /**
+   * Splits the inclusive range {@code [lowerBound, upperBound]} into at most {@code numPartitions}
+   * inclusive ranges of about the same size.
+   */
+  static List<KV<Long, Long>> partitionRanges(long lowerBound, long upperBound, int numPartitions) {
+    // the differences of values in the range may not fit in a long, but always fit in an unsigned
+    // long, so the stride ceil((upperBound - lowerBound + 1) / numPartitions) is unsigned. It only
+    // overflows to zero if a single range covers all long values.
+    long stride = Long.divideUnsigned(upperBound - lowerBound, numPartitions) + 1;
+    List<KV<Long, Long>> ranges = new ArrayList<>();
+    long start = lowerBound;
+    while (stride != 0 && Long.compareUnsigned(upperBound - start, stride) >= 0) {
+      ranges.add(KV.of(start, start + stride - 1));
+      start += stride;
+    }
+    ranges.add(KV.of(start, upperBound));
+    return ranges;
+  }
+
+  /** A {@link DoFn} computing the ranges of the partition column read by each query. */
+  private static class PartitionFn extends DoFn<Void, KV<Long, Long>> {
+    private final ReadWithPartitions<?> spec;
+
+    private PartitionFn(ReadWithPartitions<?> spec) {
+      this.spec = spec;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext context) throws Exception {
+      long lowerBound;
+      long upperBound;
+      if (spec.getLowerBound() != null) {
+        lowerBound = spec.getLowerBound();
+        upperBound = spec.getUpperBound();
+      } else {
+        String query =
+            String.format(
+                "SELECT MIN(%1$s), MAX(%1$s) FROM %2$s", spec.getPartitionColumn(), spec.getTable());
+        DataSource dataSource = spec.getDataSourceConfiguration().buildDatasource();
+        try (Connection connection = dataSource.getConnection();
+            PreparedStatement statement = connection.prepareStatement(query);
+            ResultSet resultSet = statement.executeQuery()) {
+          resultSet.next();
+          if (spec.isTimestampPartitionColumn()) {
+            java.sql.Timestamp min = resultSet.getTimestamp(1);
+            if (min == null) {
+              // the table has no rows with a partition column.
+              return;
+            }
+            lowerBound = min.getTime();
+            upperBound = resultSet.getTimestamp(2).getTime();
+          } else {
+            lowerBound = resultSet.getLong(1);
+            if (resultSet.wasNull()) {
+              return;
+            }
+            upperBound = resultSet.getLong(2);
+          }
+        } finally {
+          if (dataSource instanceof AutoCloseable) {
+            ((AutoCloseable) dataSource).close();
+          }
+        }
+        LOG.info(
+            "Partitioning {} on {} between {} and {}",
+            spec.getTable(),
+            spec.getPartitionColumn(),
+            lowerBound,
+            upperBound);
+      }
+      for (KV<Long, Long> range :
+          partitionRanges(lowerBound, upperBound, spec.getNumPartitions())) {
+        context.output(range);
+      }
+    }
+  }
+
+  /**
+   * A {@link DoFn} reading the rows of a range of the partition column. Each range takes a
+   * connection from a pool shared by the DoFn instances of the worker.
+   */
+  private static class ReadPartitionFn<T> extends DoFn<KV<Long, Long>, T> {
+    private final ReadWithPartitions<T> spec;
+    private final String query;
+
+    private final Counter partitionsRead = Metrics.counter(JdbcIO.class, "partitionsRead");
+    private final Counter rowsRead = Metrics.counter(JdbcIO.class, "rowsRead");
+
+    private DataSource dataSource;
+
+    private ReadPartitionFn(ReadWithPartitions<T> spec) {
+      this.spec = spec;
+      this.query =
+          String.format(
+              "SELECT * FROM %1$s WHERE %2$s >= ? AND %2$s <= ?",
+              spec.getTable(), spec.getPartitionColumn());
+    }
+
+    @Setup
+    public void setup() throws Exception {
+      dataSource = spec.getDataSourceConfiguration().getSharedDatasource();
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext context) throws Exception {
+      KV<Long, Long> range = context.element();
+      try (Connection connection = dataSource.getConnection();
+          PreparedStatement statement =
+              connection.prepareStatement(
+                  query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        statement.setFetchSize(spec.getFetchSize());
+        if (spec.isTimestampPartitionColumn()) {
+          statement.setTimestamp(1, new java.sql.Timestamp(range.getKey()));
+          // the range ends with the last nanosecond of its last millisecond.
+          java.sql.Timestamp end = new java.sql.Timestamp(range.getValue());
+          end.setNanos(end.getNanos() + 999_999);
+          statement.setTimestamp(2, end);
+        } else {
+          statement.setLong(1, range.getKey());
+          statement.setLong(2, range.getValue());
+        }
+        try (ResultSet resultSet = statement.executeQuery()) {
+          long rows = 0;
+          while (resultSet.next()) {
+            context.output(spec.getRowMapper().mapRow(resultSet));
+            rows++;
+          }
+          rowsRead.inc(rows);
+        }
+      }
+      partitionsRead.inc();
+    }
+
+    @Teardown
+    public void teardown() throws Exception {
+      if (dataSource != null) {
+        spec.getDataSourceConfiguration().releaseSharedDatasource(dataSource);
+      }
+    }
+  }
+
   /**
    * An interface used by the JdbcIO Write to set the parameters of the {@link PreparedStatement}
    * used to setParameters into the database.
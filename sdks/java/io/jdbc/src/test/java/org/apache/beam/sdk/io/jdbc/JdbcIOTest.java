@@ -17,7 +17,11 @@
  */
 package org.apache.beam.sdk.io.jdbc;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.PrintWriter;
 import java.io.Serializable;
@@ -30,6 +34,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import javax.sql.DataSource;
 import org.apache.beam.sdk.coders.KvCoder;
@@ -256,6 +261,94 @@ public class JdbcIOTest implements Serializable {
     pipeline.run();
   }
 
+  @Test
+  public void testReadWithPartitions() throws Exception {
+    PCollection<TestRow> rows =
+        pipeline.apply(
+            JdbcIO.<TestRow>readWithPartitions()
+                .withDataSourceConfiguration(JdbcIO.DataSourceConfiguration.create(dataSource))
+                .withTable(readTableName)
+                .withPartitionColumn("id")
+                .withNumPartitions(7)
+                .withRowMapper(
+                    resultSet -> TestRow.create(resultSet.getInt("id"), resultSet.getString("name")))
+                .withCoder(SerializableCoder.of(TestRow.class)));
+
+    PAssert.thatSingleton(rows.apply("Count All", Count.globally()))
+        .isEqualTo((long) EXPECTED_ROW_COUNT);
+
+    Iterable<TestRow> expectedValues = TestRow.getExpectedValues(0, EXPECTED_ROW_COUNT);
+    PAssert.that(rows).containsInAnyOrder(expectedValues);
+
+    pipeline.run();
+  }
+
+  @Test
+  public void testReadWithPartitionsAndBounds() throws Exception {
+    PCollection<TestRow> rows =
+        pipeline.apply(
+            JdbcIO.<TestRow>readWithPartitions()
+                .withDataSourceConfiguration(JdbcIO.DataSourceConfiguration.create(dataSource))
+                .withTable(readTableName)
+                .withPartitionColumn("id")
+                .withLowerBound(100)
+                .withUpperBound(199)
+                .withNumPartitions(3)
+                .withRowMapper(
+                    resultSet -> TestRow.create(resultSet.getInt("id"), resultSet.getString("name")))
+                .withCoder(SerializableCoder.of(TestRow.class)));
+
+    PAssert.that(rows).containsInAnyOrder(TestRow.getExpectedValues(100, 200));
+
+    pipeline.run();
+  }
+
+  @Test
+  public void testPartitionRanges() {
+    assertEquals(
+        Arrays.asList(KV.of(0L, 3L), KV.of(4L, 7L), KV.of(8L, 9L)),
+        JdbcIO.partitionRanges(0, 9, 3));
+    assertEquals(Collections.singletonList(KV.of(5L, 5L)), JdbcIO.partitionRanges(5, 5, 10));
+    assertEquals(
+        Arrays.asList(KV.of(-2L, -2L), KV.of(-1L, -1L), KV.of(0L, 0L)),
+        JdbcIO.partitionRanges(-2, 0, 10));
+    assertEquals(
+        Arrays.asList(
+            KV.of(Long.MAX_VALUE - 3, Long.MAX_VALUE - 2), KV.of(Long.MAX_VALUE - 1, Long.MAX_VALUE)),
+        JdbcIO.partitionRanges(Long.MAX_VALUE - 3, Long.MAX_VALUE, 2));
+    assertEquals(
+        Arrays.asList(KV.of(Long.MIN_VALUE, -1L), KV.of(0L, Long.MAX_VALUE)),
+        JdbcIO.partitionRanges(Long.MIN_VALUE, Long.MAX_VALUE, 2));
+  }
+
+  @Test
+  public void testSharedDatasourceIsClosedByLastUser() throws Exception {
+    String url = "jdbc:derby://localhost:" + port + "/target/beam";
+    JdbcIO.DataSourceConfiguration first =
+        JdbcIO.DataSourceConfiguration.create("org.apache.derby.jdbc.ClientDriver", url);
+    JdbcIO.DataSourceConfiguration second =
+        JdbcIO.DataSourceConfiguration.create("org.apache.derby.jdbc.ClientDriver", url);
+
+    DataSource shared = first.getSharedDatasource();
+    assertSame(shared, second.getSharedDatasource());
+
+    first.releaseSharedDatasource(shared);
+    try (Connection connection = shared.getConnection()) {
+      assertTrue(connection.isValid(0));
+    }
+
+    second.releaseSharedDatasource(shared);
+    try (Connection connection = shared.getConnection()) {
+      fail("The pool should be closed after its last user released it");
+    } catch (IllegalStateException expected) {
+      // expected
+    }
+
+    DataSource recreated = first.getSharedDatasource();
+    assertNotSame(shared, recreated);
+    first.releaseSharedDatasource(recreated);
+  }
+
   @Test
   public void testWrite() throws Exception {
     final long rowsToAdd = 1000L;
@@ -137,6 +137,12 @@ import org.slf4j.LoggerFactory;
  * Read#withValueDeserializerAndCoder(Class, Coder)}. Note that Kafka messages are interpreted using
  * key and value <i>deserializers</i>.
  *
+ * <p>Key and value are deserialized on the thread that reads the split, while a separate consumer
+ * thread polls ahead of it. When deserialization is costly, consider {@link #readBytes()}, which
+ * emits the key and value bytes as returned by the consumer without copying them, and deserialize
+ * them in a later {@link org.apache.beam.sdk.transforms.ParDo} that the runner can parallelize
+ * beyond the number of splits.
+ *
  * <h3>Partition Assignment and Checkpointing</h3>
  *
  * The Kafka partitions are evenly distributed among splits (workers).
@@ -34,11 +34,12 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -371,13 +372,21 @@ class KafkaUnboundedReader<K, V> extends UnboundedReader<KafkaRecord<K, V>> {
   private static final Duration RECORDS_DEQUEUE_POLL_TIMEOUT = Duration.millis(10);
   private static final Duration RECORDS_ENQUEUE_POLL_TIMEOUT = Duration.millis(100);
 
+  /**
+   * The number of batches the consumer thread may poll ahead of the reader. Each batch holds at
+   * most {@code max.poll.records} records, which bounds the memory used by prefetched records.
+   */
+  private static final int MAX_PREFETCHED_BATCHES = 4;
+
   // Use a separate thread to read Kafka messages. Kafka Consumer does all its work including
   // network I/O inside poll(). Polling only inside #advance(), especially with a small timeout
   // like 100 milliseconds does not work well. This along with large receive buffer for
   // consumer achieved best throughput in tests (see `defaultConsumerProperties`).
+  // The consumer thread keeps polling while the reader processes earlier batches, until
+  // MAX_PREFETCHED_BATCHES batches are waiting in availableRecordsQueue.
   private final ExecutorService consumerPollThread = Executors.newSingleThreadExecutor();
-  private final SynchronousQueue<ConsumerRecords<byte[], byte[]>> availableRecordsQueue =
-      new SynchronousQueue<>();
+  private final BlockingQueue<ConsumerRecords<byte[], byte[]>> availableRecordsQueue =
+      new ArrayBlockingQueue<>(MAX_PREFETCHED_BATCHES);
   private AtomicReference<KafkaCheckpointMark> finalizedCheckpointMark = new AtomicReference<>();
   private AtomicBoolean closed = new AtomicBoolean(false);
 
@@ -729,7 +738,7 @@ class KafkaUnboundedReader<K, V> extends UnboundedReader<KafkaRecord<K, V>> {
     boolean isShutdown = false;
 
     // Wait for threads to shutdown. Trying this as a loop to handle a tiny race where poll thread
-    // might block to enqueue right after availableRecordsQueue.poll() below.
+    // might block to enqueue right after availableRecordsQueue.clear() below.
     while (!isShutdown) {
 
       if (consumer != null) {
@@ -738,7 +747,7 @@ class KafkaUnboundedReader<K, V> extends UnboundedReader<KafkaRecord<K, V>> {
       if (offsetConsumer != null) {
         offsetConsumer.wakeup();
       }
-      availableRecordsQueue.poll(); // drain unread batch, this unblocks consumer thread.
+      availableRecordsQueue.clear(); // drain unread batches, this unblocks consumer thread.
       try {
         isShutdown =
             consumerPollThread.awaitTermination(10, TimeUnit.SECONDS)
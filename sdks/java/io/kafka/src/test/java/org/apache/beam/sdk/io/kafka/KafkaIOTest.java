@@ -20,6 +20,7 @@ package org.apache.beam.sdk.io.kafka;
 import static org.apache.beam.sdk.metrics.MetricResultsMatchers.attemptedMetricsResult;
 import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.hasDisplayItem;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasItem;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -50,6 +51,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -97,6 +99,7 @@ import org.apache.beam.sdk.values.TypeDescriptors;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.MockConsumer;
 import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
 import org.apache.kafka.clients.consumer.OffsetResetStrategy;
@@ -804,6 +807,82 @@ public class KafkaIOTest {
     }
   }
 
+  // Number of polls which returned records, across all the consumers of EndlessConsumerFactoryFn.
+  private static final AtomicInteger nonEmptyPolls = new AtomicInteger();
+
+  // Creates consumers of a single partition which return a new record on every poll.
+  private static class EndlessConsumerFactoryFn
+      implements SerializableFunction<Map<String, Object>, Consumer<byte[], byte[]>> {
+
+    @Override
+    public Consumer<byte[], byte[]> apply(Map<String, Object> config) {
+      TopicPartition tp = new TopicPartition("topic_a", 0);
+      MockConsumer<byte[], byte[]> consumer =
+          new MockConsumer<byte[], byte[]>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized ConsumerRecords<byte[], byte[]> poll(long timeout) {
+              ConsumerRecords<byte[], byte[]> records = super.poll(timeout);
+              if (!records.isEmpty()) {
+                nonEmptyPolls.incrementAndGet();
+              }
+              return records;
+            }
+          };
+      consumer.updatePartitions(
+          tp.topic(), ImmutableList.of(new PartitionInfo(tp.topic(), 0, null, null, null)));
+      consumer.updateBeginningOffsets(ImmutableMap.of(tp, 0L));
+      consumer.updateEndOffsets(ImmutableMap.of(tp, 0L));
+      consumer.schedulePollTask(
+          new Runnable() {
+            @Override
+            public void run() {
+              long offset = consumer.position(tp);
+              byte[] key = ByteBuffer.wrap(new byte[4]).putInt((int) offset).array();
+              byte[] value = ByteBuffer.wrap(new byte[8]).putLong(offset).array();
+              consumer.addRecord(
+                  new ConsumerRecord<>(tp.topic(), tp.partition(), offset, key, value));
+              consumer.schedulePollTask(this);
+            }
+          });
+      return consumer;
+    }
+  }
+
+  @Test
+  public void testUnboundedReaderPollsAheadOfAdvance() throws Exception {
+    nonEmptyPolls.set(0);
+    UnboundedSource<KafkaRecord<Integer, Long>, KafkaCheckpointMark> source =
+        KafkaIO.<Integer, Long>read()
+            .withBootstrapServers("none")
+            .withTopic("topic_a")
+            .withConsumerFactoryFn(new EndlessConsumerFactoryFn())
+            .withKeyDeserializer(IntegerDeserializer.class)
+            .withValueDeserializer(LongDeserializer.class)
+            .makeSource()
+            .split(1, PipelineOptionsFactory.create())
+            .get(0);
+
+    UnboundedReader<KafkaRecord<Integer, Long>> reader = source.createReader(null, null);
+    boolean available = reader.start();
+
+    // The consumer thread fills the prefetch queue and holds one more batch while the reader is
+    // not advancing, and then stops polling.
+    Thread.sleep(1000);
+    int polls = nonEmptyPolls.get();
+    assertThat(polls, greaterThanOrEqualTo(5));
+    Thread.sleep(200);
+    assertEquals(polls, nonEmptyPolls.get());
+
+    // Records are read in order from the prefetched batches.
+    for (long i = 0; i < 4; i++) {
+      if (i > 0 || !available) {
+        advanceOnce(reader, true);
+      }
+      assertEquals(i, (long) reader.getCurrent().getKV().getValue());
+    }
+    reader.close();
+  }
+
   @Test
   public void testUnboundedSourceCheckpointMarkWithEmptyPartitions() throws Exception {
     // Similar to testUnboundedSourceCheckpointMark(), but verifies that source resumes
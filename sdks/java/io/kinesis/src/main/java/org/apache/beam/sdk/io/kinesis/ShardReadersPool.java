@@ -19,45 +19,68 @@ package org.apache.beam.sdk.io.kinesis;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.metrics.SourceMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Internal shard iterators pool. It maintains the thread pool for reading Kinesis shards in
- * separate threads. Read records are stored in a blocking queue of limited capacity.
+ * Internal shard iterators pool. It maintains a fixed size thread pool which fetches records from
+ * the Kinesis shards. Read records are stored in a bounded buffer per shard, and the buffers are
+ * drained in turn so that a busy shard can not starve the others.
+ *
+ * <p>Each shard is fetched by a task which reschedules itself. A shard which lags behind the tip
+ * of the stream is fetched again at once, while a shard which is up to date waits up to {@link
+ * #UP_TO_DATE_FETCH_DELAY_MILLIS} between {@code GetRecords} calls. A shard whose buffer is full is
+ * not fetched until the reader takes records from it.
  */
 class ShardReadersPool {
 
   private static final Logger LOG = LoggerFactory.getLogger(ShardReadersPool.class);
+  private static final String METRIC_NAMESPACE = "KinesisIOReader";
+  private static final String MILLIS_BEHIND_LATEST_METRIC = "millisBehindLatest_";
   private static final int DEFAULT_CAPACITY_PER_SHARD = 10_000;
+  private static final int DEFAULT_FETCH_THREADS = 8;
+  private static final long UP_TO_DATE_FETCH_DELAY_MILLIS = 1_000L;
+  private static final long FULL_BUFFER_RETRY_DELAY_MILLIS = 100L;
+  private static final long CLOSED_SHARD_CHECK_DELAY_MILLIS = 1_000L;
 
   /**
-   * Executor service for running the threads that read records from shards handled by this pool.
-   * Each thread runs the {@link ShardReadersPool#readLoop(ShardRecordsIterator)} method and handles
-   * exactly one shard.
+   * Executor service for fetching records from shards handled by this pool. Each shard is fetched
+   * by the {@link ShardReadersPool#readShard(ShardRecordsIterator)} task, which is scheduled again
+   * after every run.
    */
-  private final ExecutorService executorService;
+  private final ScheduledExecutorService executorService;
 
   /**
-   * A Bounded buffer for read records. Records are added to this buffer within {@link
-   * ShardReadersPool#readLoop(ShardRecordsIterator)} method and removed in {@link
+   * Bounded buffers of read records, one per shard. Records are added to these buffers within
+   * {@link ShardReadersPool#readShard(ShardRecordsIterator)} method and removed in {@link
    * ShardReadersPool#nextRecord()}.
    */
-  private BlockingQueue<KinesisRecord> recordsQueue;
+  private final ConcurrentMap<String, ShardRecordsBuffer> buffersByShard;
+
+  /** Holds a permit for every record stored in any of the {@link #buffersByShard}. */
+  private final Semaphore recordsAvailable = new Semaphore(0);
 
   /**
    * A reference to an immutable mapping of {@link ShardRecordsIterator} instances to shard ids.
@@ -65,14 +88,14 @@ class ShardReadersPool {
    */
   private final AtomicReference<ImmutableMap<String, ShardRecordsIterator>> shardIteratorsMap;
 
-  /** A map for keeping the current number of records stored in a buffer per shard. */
-  private final ConcurrentMap<String, AtomicInteger> numberOfRecordsInAQueueByShard;
-
   private final SimplifiedKinesisClient kinesis;
   private final KinesisReaderCheckpoint initialCheckpoint;
   private final int queueCapacityPerShard;
   private final AtomicBoolean poolOpened = new AtomicBoolean(true);
 
+  /** Position of the shard whose buffer {@link #nextRecord()} looks at first. */
+  private int nextShardToDrain;
+
   ShardReadersPool(SimplifiedKinesisClient kinesis, KinesisReaderCheckpoint initialCheckpoint) {
     this(kinesis, initialCheckpoint, DEFAULT_CAPACITY_PER_SHARD);
   }
@@ -81,11 +104,21 @@ class ShardReadersPool {
       SimplifiedKinesisClient kinesis,
       KinesisReaderCheckpoint initialCheckpoint,
       int queueCapacityPerShard) {
+    this(kinesis, initialCheckpoint, queueCapacityPerShard, DEFAULT_FETCH_THREADS);
+  }
+
+  ShardReadersPool(
+      SimplifiedKinesisClient kinesis,
+      KinesisReaderCheckpoint initialCheckpoint,
+      int queueCapacityPerShard,
+      int fetchThreads) {
+    checkArgument(queueCapacityPerShard > 0, "queueCapacityPerShard must be positive");
+    checkArgument(fetchThreads > 0, "fetchThreads must be positive");
     this.kinesis = kinesis;
     this.initialCheckpoint = initialCheckpoint;
     this.queueCapacityPerShard = queueCapacityPerShard;
-    this.executorService = Executors.newCachedThreadPool();
-    this.numberOfRecordsInAQueueByShard = new ConcurrentHashMap<>();
+    this.executorService = Executors.newScheduledThreadPool(fetchThreads);
+    this.buffersByShard = new ConcurrentHashMap<>();
     this.shardIteratorsMap = new AtomicReference<>();
   }
 
@@ -95,73 +128,122 @@ class ShardReadersPool {
       shardsMap.put(checkpoint.getShardId(), createShardIterator(kinesis, checkpoint));
     }
     shardIteratorsMap.set(shardsMap.build());
-    if (!shardIteratorsMap.get().isEmpty()) {
-      recordsQueue =
-          new ArrayBlockingQueue<>(queueCapacityPerShard * shardIteratorsMap.get().size());
-      startReadingShards(shardIteratorsMap.get().values());
-    } else {
-      // There are no shards to handle when restoring from an empty checkpoint. Empty checkpoints
-      // are generated when the last shard handled by this pool was closed
-      recordsQueue = new ArrayBlockingQueue<>(1);
-    }
+    // There are no shards to handle when restoring from an empty checkpoint. Empty checkpoints
+    // are generated when the last shard handled by this pool was closed
+    startReadingShards(shardIteratorsMap.get().values());
   }
 
-  // Note: readLoop() will log any Throwable raised so opt to ignore the future result
-  @SuppressWarnings("FutureReturnValueIgnored")
   void startReadingShards(Iterable<ShardRecordsIterator> shardRecordsIterators) {
     for (final ShardRecordsIterator recordsIterator : shardRecordsIterators) {
-      numberOfRecordsInAQueueByShard.put(recordsIterator.getShardId(), new AtomicInteger());
-      executorService.submit(() -> readLoop(recordsIterator));
+      buffersByShard.put(
+          recordsIterator.getShardId(),
+          new ShardRecordsBuffer(recordsIterator.getShardId(), queueCapacityPerShard));
+      scheduleRead(recordsIterator, 0L);
     }
   }
 
-  private void readLoop(ShardRecordsIterator shardRecordsIterator) {
-    while (poolOpened.get()) {
-      try {
-        List<KinesisRecord> kinesisRecords;
+  // Note: readShard() will log any Throwable raised so opt to ignore the future result
+  @SuppressWarnings("FutureReturnValueIgnored")
+  private void scheduleRead(ShardRecordsIterator shardRecordsIterator, long delayMillis) {
+    if (!poolOpened.get()) {
+      return;
+    }
+    try {
+      executorService.schedule(
+          () -> readShard(shardRecordsIterator), delayMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      LOG.info("Pool is stopped, finishing the read loop of {}", shardRecordsIterator.getShardId());
+    }
+  }
+
+  /**
+   * Reads a batch of records from a shard into its buffer, then schedules the next read of the
+   * shard. Records which did not fit into the buffer are kept back and no more records are read
+   * until they are all in the buffer.
+   */
+  private void readShard(ShardRecordsIterator shardRecordsIterator) {
+    if (!poolOpened.get()) {
+      return;
+    }
+    ShardRecordsBuffer buffer = buffersByShard.get(shardRecordsIterator.getShardId());
+    long delayMillis = 0L;
+    try {
+      if (buffer.addPendingRecords()) {
+        buffer.setPendingRecords(shardRecordsIterator.readNextBatch());
+        buffer.addPendingRecords();
+        delayMillis = nextFetchDelayMillis(shardRecordsIterator.getMillisBehindLatest());
+      } else {
+        delayMillis = FULL_BUFFER_RETRY_DELAY_MILLIS;
+      }
+    } catch (KinesisShardClosedException e) {
+      // Wait until all records from already closed shard are taken from the buffer and only
+      // then start reading successive shards. This guarantees that checkpoints will contain
+      // either parent or child shard and never both. Such approach allows for more
+      // straightforward checkpoint restoration than in a case when new shards are read
+      // immediately.
+      if (buffer.numberOfRecordsNotAcked.get() > 0) {
+        delayMillis = CLOSED_SHARD_CHECK_DELAY_MILLIS;
+      } else {
+        LOG.info(
+            "Shard iterator for {} shard is closed, finishing the read loop",
+            shardRecordsIterator.getShardId(),
+            e);
         try {
-          kinesisRecords = shardRecordsIterator.readNextBatch();
-        } catch (KinesisShardClosedException e) {
-          LOG.info(
-              "Shard iterator for {} shard is closed, finishing the read loop",
-              shardRecordsIterator.getShardId(),
-              e);
-          // Wait until all records from already closed shard are taken from the buffer and only
-          // then start reading successive shards. This guarantees that checkpoints will contain
-          // either parent or child shard and never both. Such approach allows for more
-          // straightforward checkpoint restoration than in a case when new shards are read
-          // immediately.
-          waitUntilAllShardRecordsRead(shardRecordsIterator);
           readFromSuccessiveShards(shardRecordsIterator);
-          break;
+          return;
+        } catch (TransientKinesisException transientException) {
+          LOG.warn("Transient exception occurred.", transientException);
         }
-        for (KinesisRecord kinesisRecord : kinesisRecords) {
-          recordsQueue.put(kinesisRecord);
-          numberOfRecordsInAQueueByShard.get(kinesisRecord.getShardId()).incrementAndGet();
-        }
-      } catch (TransientKinesisException e) {
-        LOG.warn("Transient exception occurred.", e);
-      } catch (InterruptedException e) {
-        LOG.warn("Thread was interrupted, finishing the read loop", e);
-        break;
-      } catch (Throwable e) {
-        LOG.error("Unexpected exception occurred", e);
       }
+    } catch (TransientKinesisException e) {
+      LOG.warn("Transient exception occurred.", e);
+    } catch (Throwable e) {
+      if (!poolOpened.get()) {
+        return;
+      }
+      LOG.error("Unexpected exception occurred", e);
     }
-    LOG.info("Kinesis Shard read loop has finished");
+    scheduleRead(shardRecordsIterator, delayMillis);
+  }
+
+  /**
+   * Returns how long to wait before fetching the next batch of a shard: not at all when the shard
+   * lags a second or more behind the tip of the stream, and up to {@link
+   * #UP_TO_DATE_FETCH_DELAY_MILLIS} the closer the shard is to the tip.
+   */
+  static long nextFetchDelayMillis(long millisBehindLatest) {
+    return Math.max(0L, UP_TO_DATE_FETCH_DELAY_MILLIS - Math.max(0L, millisBehindLatest));
   }
 
   CustomOptional<KinesisRecord> nextRecord() {
     try {
-      KinesisRecord record = recordsQueue.poll(1, TimeUnit.SECONDS);
-      if (record == null) {
+      if (!recordsAvailable.tryAcquire(1, TimeUnit.SECONDS)) {
         return CustomOptional.absent();
       }
-      shardIteratorsMap.get().get(record.getShardId()).ackRecord(record);
+      // a buffer holds the record of the acquired permit, and only this thread takes records
+      ImmutableList<String> shardIds = shardIteratorsMap.get().keySet().asList();
+      KinesisRecord record = null;
+      ShardRecordsBuffer buffer = null;
+      for (int i = 0; record == null; i++) {
+        nextShardToDrain = (nextShardToDrain + 1) % shardIds.size();
+        buffer = buffersByShard.get(shardIds.get(nextShardToDrain));
+        record = buffer == null ? null : buffer.records.poll();
+        if (record == null && i >= shardIds.size()) {
+          // the shards were changed in the meantime, look at the new ones
+          shardIds = shardIteratorsMap.get().keySet().asList();
+          i = 0;
+        }
+      }
+      ShardRecordsIterator shardRecordsIterator =
+          shardIteratorsMap.get().get(record.getShardId());
+      shardRecordsIterator.ackRecord(record);
 
-      // numberOfRecordsInAQueueByShard contains the counter for a given shard until the shard is
-      // closed and then it's counter reaches 0. Thus the access here is safe
-      numberOfRecordsInAQueueByShard.get(record.getShardId()).decrementAndGet();
+      // buffersByShard contains the buffer for a given shard until the shard is closed and all
+      // of its records are acked. Thus the access here is safe
+      buffer.numberOfRecordsNotAcked.decrementAndGet();
+      buffer.elementsRead.inc();
+      buffer.bytesRead.inc(record.getData().remaining());
+      buffer.millisBehindLatest.set(shardRecordsIterator.getMillisBehindLatest());
       return CustomOptional.of(record);
     } catch (InterruptedException e) {
       LOG.warn("Interrupted while waiting for KinesisRecord from the buffer");
@@ -220,22 +302,6 @@ class ShardReadersPool {
     return new ShardRecordsIterator(checkpoint, kinesis);
   }
 
-  /**
-   * Waits until all records read from given shardRecordsIterator are taken from {@link
-   * #recordsQueue} and acked. Uses {@link #numberOfRecordsInAQueueByShard} map to track the amount
-   * of remaining events.
-   */
-  private void waitUntilAllShardRecordsRead(ShardRecordsIterator shardRecordsIterator)
-      throws InterruptedException {
-    // Given shard is already closed so no more records will be read from it. Thus the counter for
-    // that shard will be strictly decreasing to 0.
-    AtomicInteger numberOfShardRecordsInAQueue =
-        numberOfRecordsInAQueueByShard.get(shardRecordsIterator.getShardId());
-    while (!(numberOfShardRecordsInAQueue.get() == 0)) {
-      Thread.sleep(TimeUnit.SECONDS.toMillis(1));
-    }
-  }
-
   /**
    * Tries to find successors of a given shard and start reading them. Each closed shard can have 0,
    * 1 or 2 successors
@@ -253,11 +319,11 @@ class ShardReadersPool {
    * with a new one holding references to {@link ShardRecordsIterator} instances for open shards
    * only. Potentially there might be more shard iterators closing at the same time so {@link
    * ShardReadersPool#shardIteratorsMap} is updated in a loop using CAS pattern to keep all the
-   * updates. Then, the counter for already closed shard is removed from {@link
-   * ShardReadersPool#numberOfRecordsInAQueueByShard} map.
+   * updates. Then, the buffer of already closed shard is removed from {@link
+   * ShardReadersPool#buffersByShard} map.
    *
-   * <p>Finally when update is finished, new threads are spawned for reading the successive shards.
-   * The thread that handled reading from already closed shard can finally complete.
+   * <p>Finally when update is finished, reading the successive shards is scheduled. The read task
+   * of already closed shard is not scheduled again.
    */
   private void readFromSuccessiveShards(final ShardRecordsIterator closedShardIterator)
       throws TransientKinesisException {
@@ -272,7 +338,7 @@ class ShardReadersPool {
           createMapWithSuccessiveShards(
               current, closedShardIterator, successiveShardRecordIterators);
     } while (!shardIteratorsMap.compareAndSet(current, updated));
-    numberOfRecordsInAQueueByShard.remove(closedShardIterator.getShardId());
+    buffersByShard.remove(closedShardIterator.getShardId());
     startReadingShards(successiveShardRecordIterators);
   }
 
@@ -291,4 +357,50 @@ class ShardReadersPool {
     }
     return shardsMap.build();
   }
+
+  /**
+   * Records read from a single shard and not yet taken by the reader, together with the metrics
+   * of the shard.
+   */
+  private class ShardRecordsBuffer {
+
+    private final BlockingQueue<KinesisRecord> records;
+
+    /** Records of the shard which were added to the buffer and not yet acked. */
+    private final AtomicInteger numberOfRecordsNotAcked = new AtomicInteger();
+
+    /** Read records which did not fit into the buffer yet. Only used by the read task. */
+    private List<KinesisRecord> pendingRecords = Collections.emptyList();
+
+    private final Counter elementsRead;
+    private final Counter bytesRead;
+    private final Gauge millisBehindLatest;
+
+    ShardRecordsBuffer(String shardId, int capacity) {
+      this.records = new ArrayBlockingQueue<>(capacity);
+      this.elementsRead = SourceMetrics.elementsReadBySplit(shardId);
+      this.bytesRead = SourceMetrics.bytesReadBySplit(shardId);
+      this.millisBehindLatest =
+          Metrics.gauge(METRIC_NAMESPACE, MILLIS_BEHIND_LATEST_METRIC + shardId);
+    }
+
+    void setPendingRecords(List<KinesisRecord> pendingRecords) {
+      this.pendingRecords = pendingRecords;
+    }
+
+    /**
+     * Moves as many pending records as fit into the buffer. Returns whether all of them were
+     * moved.
+     */
+    boolean addPendingRecords() {
+      int added = 0;
+      while (added < pendingRecords.size() && records.offer(pendingRecords.get(added))) {
+        added++;
+      }
+      pendingRecords = pendingRecords.subList(added, pendingRecords.size());
+      numberOfRecordsNotAcked.addAndGet(added);
+      recordsAvailable.release(added);
+      return pendingRecords.isEmpty();
+    }
+  }
 }
@@ -101,6 +101,10 @@ class ShardRecordsIterator {
     return millisBehindLatest.get() == 0L;
   }
 
+  long getMillisBehindLatest() {
+    return millisBehindLatest.get();
+  }
+
   void ackRecord(KinesisRecord record) {
     checkpoint.set(checkpoint.get().moveAfter(record));
   }
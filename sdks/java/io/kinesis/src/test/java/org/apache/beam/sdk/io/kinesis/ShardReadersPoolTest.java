@@ -23,11 +23,13 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -56,6 +58,9 @@ public class ShardReadersPoolTest {
 
   @Before
   public void setUp() throws TransientKinesisException {
+    for (KinesisRecord record : ImmutableList.of(a, b, c, d)) {
+      when(record.getData()).thenReturn(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+    }
     when(a.getShardId()).thenReturn("shard1");
     when(b.getShardId()).thenReturn("shard1");
     when(c.getShardId()).thenReturn("shard2");
@@ -172,6 +177,57 @@ public class ShardReadersPoolTest {
     assertThat(stopwatch.elapsed(TimeUnit.MILLISECONDS)).isLessThan(TIMEOUT_IN_MILLIS);
   }
 
+  @Test
+  public void shouldStopFetchingShardWhenItsBufferIsFull() throws Exception {
+    when(firstIterator.readNextBatch()).thenReturn(ImmutableList.of(a, b));
+    when(firstIterator.getMillisBehindLatest()).thenReturn(TimeUnit.HOURS.toMillis(1));
+    KinesisReaderCheckpoint checkpoint =
+        new KinesisReaderCheckpoint(ImmutableList.of(firstCheckpoint, secondCheckpoint));
+    shardReadersPool = Mockito.spy(new ShardReadersPool(kinesis, checkpoint, 3));
+    doReturn(firstIterator).when(shardReadersPool).createShardIterator(kinesis, firstCheckpoint);
+    doReturn(secondIterator).when(shardReadersPool).createShardIterator(kinesis, secondCheckpoint);
+
+    shardReadersPool.start();
+
+    // the second batch does not fit into the buffer, so the shard is not fetched again
+    Thread.sleep(1000);
+    verify(firstIterator, times(2)).readNextBatch();
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(shardReadersPool.nextRecord().isPresent()).isTrue();
+    }
+    verify(firstIterator, timeout(TIMEOUT_IN_MILLIS).atLeast(3)).readNextBatch();
+  }
+
+  @Test
+  public void shouldTakeRecordsFromShardsInTurn() throws Exception {
+    List<KinesisRecord> manyRecords = Collections.nCopies(100, a);
+    when(firstIterator.readNextBatch())
+        .thenReturn(manyRecords)
+        .thenReturn(Collections.emptyList());
+    when(secondIterator.readNextBatch())
+        .thenReturn(singletonList(c))
+        .thenReturn(Collections.emptyList());
+
+    shardReadersPool.start();
+    verify(firstIterator, timeout(TIMEOUT_IN_MILLIS).atLeast(2)).readNextBatch();
+    verify(secondIterator, timeout(TIMEOUT_IN_MILLIS).atLeast(2)).readNextBatch();
+
+    List<KinesisRecord> fetchedRecords = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      fetchedRecords.add(shardReadersPool.nextRecord().get());
+    }
+    assertThat(fetchedRecords).containsExactlyInAnyOrder(a, c);
+  }
+
+  @Test
+  public void shouldFetchLaggingShardsWithoutDelay() {
+    assertThat(ShardReadersPool.nextFetchDelayMillis(Long.MAX_VALUE)).isEqualTo(0L);
+    assertThat(ShardReadersPool.nextFetchDelayMillis(5_000L)).isEqualTo(0L);
+    assertThat(ShardReadersPool.nextFetchDelayMillis(400L)).isEqualTo(600L);
+    assertThat(ShardReadersPool.nextFetchDelayMillis(0L)).isEqualTo(1_000L);
+  }
+
   @Test
   public void shouldDetectThatNotAllShardsAreUpToDate() throws TransientKinesisException {
     when(firstIterator.isUpToDate()).thenReturn(true);
@@ -26,31 +26,54 @@ import java.io.OutputStream;
 import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
 import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.beam.sdk.annotations.Experimental;
 import org.apache.beam.sdk.coders.AvroCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.io.FileIO;
 import org.apache.beam.sdk.io.fs.ResourceId;
+import org.apache.beam.sdk.io.range.OffsetRange;
 import org.apache.beam.sdk.options.ValueProvider;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.transforms.splittabledofn.OffsetRangeTracker;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.HadoopReadOptions;
+import org.apache.parquet.ParquetReadOptions;
 import org.apache.parquet.avro.AvroParquetReader;
 import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.avro.AvroReadSupport;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.hadoop.ParquetFileReader;
 import org.apache.parquet.hadoop.ParquetReader;
 import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.InitContext;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.io.ColumnIOFactory;
 import org.apache.parquet.io.DelegatingSeekableInputStream;
 import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.MessageColumnIO;
 import org.apache.parquet.io.OutputFile;
 import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.RecordReader;
 import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
 
 /**
  * IO to read and write Parquet files.
@@ -85,6 +108,22 @@ import org.apache.parquet.io.SeekableInputStream;
  * PCollection<GenericRecord> output = files.apply(ParquetIO.readFiles(SCHEMA));
  * }</pre>
  *
+ * <p>Large files can be read in parallel with {@link Read#withSplit()}, which splits each file at
+ * its row groups. To read only some of the columns, give {@link Read#withProjection(Schema)} a
+ * schema with a subset of the fields of the file schema; only the column chunks of those fields are
+ * read and decoded, and the records have the projection schema. A Parquet {@link FilterPredicate}
+ * given to {@link Read#withFilter(FilterPredicate)} skips the row groups whose statistics do not
+ * match it, and drops the non-matching records of the others.
+ *
+ * <pre>{@code
+ * PCollection<GenericRecord> records = pipeline.apply(
+ *   ParquetIO.read(SCHEMA)
+ *     .from("/foo/bar")
+ *     .withSplit()
+ *     .withProjection(PROJECTION_SCHEMA)
+ *     .withFilter(FilterApi.gt(FilterApi.intColumn("age"), 21)));
+ * }</pre>
+ *
  * <h3>Writing Parquet files</h3>
  *
  * <p>{@link ParquetIO.Sink} allows you to write a {@link PCollection} of {@link GenericRecord} into
@@ -113,7 +152,7 @@ public class ParquetIO {
    * pattern).
    */
   public static Read read(Schema schema) {
-    return new AutoValue_ParquetIO_Read.Builder().setSchema(schema).build();
+    return new AutoValue_ParquetIO_Read.Builder().setSchema(schema).setSplittable(false).build();
   }
 
   /**
@@ -121,7 +160,10 @@ public class ParquetIO {
    * org.apache.beam.sdk.io.FileIO.ReadableFile}, which allows more flexible usage.
    */
   public static ReadFiles readFiles(Schema schema) {
-    return new AutoValue_ParquetIO_ReadFiles.Builder().setSchema(schema).build();
+    return new AutoValue_ParquetIO_ReadFiles.Builder()
+        .setSchema(schema)
+        .setSplittable(false)
+        .build();
   }
 
   /** Implementation of {@link #read(Schema)}. */
@@ -134,6 +176,14 @@ public class ParquetIO {
     @Nullable
     abstract Schema getSchema();
 
+    @Nullable
+    abstract Schema getProjection();
+
+    @Nullable
+    abstract FilterPredicate getFilter();
+
+    abstract boolean isSplittable();
+
     abstract Builder builder();
 
     @AutoValue.Builder
@@ -142,6 +192,12 @@ public class ParquetIO {
 
       abstract Builder setSchema(Schema schema);
 
+      abstract Builder setProjection(Schema projection);
+
+      abstract Builder setFilter(FilterPredicate filter);
+
+      abstract Builder setSplittable(boolean splittable);
+
       abstract Read build();
     }
 
@@ -155,15 +211,42 @@ public class ParquetIO {
       return from(ValueProvider.StaticValueProvider.of(filepattern));
     }
 
+    /** Like {@link ReadFiles#withProjection(Schema)}. */
+    public Read withProjection(Schema projection) {
+      checkNotNull(projection, "Projection can not be null");
+      return builder().setProjection(projection).build();
+    }
+
+    /** Like {@link ReadFiles#withFilter(FilterPredicate)}. */
+    public Read withFilter(FilterPredicate filter) {
+      checkNotNull(filter, "Filter can not be null");
+      return builder().setFilter(filter).build();
+    }
+
+    /** Like {@link ReadFiles#withSplit()}. */
+    public Read withSplit() {
+      return builder().setSplittable(true).build();
+    }
+
     @Override
     public PCollection<GenericRecord> expand(PBegin input) {
       checkNotNull(getFilepattern(), "Filepattern cannot be null.");
 
+      ReadFiles readFiles = readFiles(getSchema());
+      if (getProjection() != null) {
+        readFiles = readFiles.withProjection(getProjection());
+      }
+      if (getFilter() != null) {
+        readFiles = readFiles.withFilter(getFilter());
+      }
+      if (isSplittable()) {
+        readFiles = readFiles.withSplit();
+      }
       return input
           .apply("Create filepattern", Create.ofProvider(getFilepattern(), StringUtf8Coder.of()))
           .apply(FileIO.matchAll())
           .apply(FileIO.readMatches())
-          .apply(readFiles(getSchema()));
+          .apply(readFiles);
     }
 
     @Override
@@ -171,9 +254,24 @@ public class ParquetIO {
       super.populateDisplayData(builder);
       builder.add(
           DisplayData.item("filePattern", getFilepattern()).withLabel("Input File Pattern"));
+      populateReadDisplayData(builder, getProjection(), getFilter(), isSplittable());
     }
   }
 
+  private static void populateReadDisplayData(
+      DisplayData.Builder builder,
+      @Nullable Schema projection,
+      @Nullable FilterPredicate filter,
+      boolean splittable) {
+    if (projection != null) {
+      builder.add(DisplayData.item("projection", projection.toString()).withLabel("Projection"));
+    }
+    if (filter != null) {
+      builder.add(DisplayData.item("filter", filter.toString()).withLabel("Filter"));
+    }
+    builder.add(DisplayData.item("splittable", splittable).withLabel("Split by row group"));
+  }
+
   /** Implementation of {@link #readFiles(Schema)}. */
   @AutoValue
   public abstract static class ReadFiles
@@ -182,34 +280,121 @@ public class ParquetIO {
     @Nullable
     abstract Schema getSchema();
 
+    @Nullable
+    abstract Schema getProjection();
+
+    @Nullable
+    abstract FilterPredicate getFilter();
+
+    abstract boolean isSplittable();
+
+    abstract Builder toBuilder();
+
     @AutoValue.Builder
     abstract static class Builder {
       abstract Builder setSchema(Schema schema);
 
+      abstract Builder setProjection(Schema projection);
+
+      abstract Builder setFilter(FilterPredicate filter);
+
+      abstract Builder setSplittable(boolean splittable);
+
       abstract ReadFiles build();
     }
 
+    /**
+     * Reads only the fields of the given schema, which must be a subset of the fields of the file
+     * schema. The column chunks of the other fields are neither read nor decoded. The records have
+     * the projection schema.
+     */
+    public ReadFiles withProjection(Schema projection) {
+      checkNotNull(projection, "Projection can not be null");
+      return toBuilder().setProjection(projection).build();
+    }
+
+    /**
+     * Pushes the given predicate down into the Parquet reader. Row groups whose statistics or
+     * dictionaries do not match the predicate are skipped, and records which do not match it are
+     * dropped.
+     */
+    public ReadFiles withFilter(FilterPredicate filter) {
+      checkNotNull(filter, "Filter can not be null");
+      return toBuilder().setFilter(filter).build();
+    }
+
+    /**
+     * Splits each file at its row groups, so that the row groups of a file can be read in parallel
+     * and runners can split the remaining row groups of a file that is being read.
+     */
+    public ReadFiles withSplit() {
+      return toBuilder().setSplittable(true).build();
+    }
+
     @Override
     public PCollection<GenericRecord> expand(PCollection<FileIO.ReadableFile> input) {
       checkNotNull(getSchema(), "Schema can not be null");
-      return input.apply(ParDo.of(new ReadFn())).setCoder(AvroCoder.of(getSchema()));
+      String projectionJson = getProjection() == null ? null : getProjection().toString();
+      Schema outputSchema = getProjection() == null ? getSchema() : getProjection();
+      DoFn<FileIO.ReadableFile, GenericRecord> readFn =
+          isSplittable()
+              ? new SplitReadFn(projectionJson, getFilter())
+              : new ReadFn(projectionJson, getFilter());
+      return input.apply(ParDo.of(readFn)).setCoder(AvroCoder.of(outputSchema));
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      populateReadDisplayData(builder, getProjection(), getFilter(), isSplittable());
+    }
+
+    /**
+     * Builds the Hadoop configuration requesting the projection from Parquet. An Avro {@link
+     * Schema} is not serializable, so the DoFns keep the projection as JSON.
+     */
+    private static Configuration buildConfiguration(@Nullable String projectionJson) {
+      Configuration configuration = new Configuration();
+      if (projectionJson != null) {
+        Schema projection = new Schema.Parser().parse(projectionJson);
+        AvroReadSupport.setRequestedProjection(configuration, projection);
+        AvroReadSupport.setAvroReadSchema(configuration, projection);
+      }
+      return configuration;
+    }
+
+    private static FilterCompat.Filter toFilter(@Nullable FilterPredicate filter) {
+      return filter == null ? FilterCompat.NOOP : FilterCompat.get(filter);
+    }
+
+    private static FileIO.ReadableFile checkSeekable(FileIO.ReadableFile file) {
+      if (!file.getMetadata().isReadSeekEfficient()) {
+        ResourceId filename = file.getMetadata().resourceId();
+        throw new RuntimeException(String.format("File has to be seekable: %s", filename));
+      }
+      return file;
     }
 
     static class ReadFn extends DoFn<FileIO.ReadableFile, GenericRecord> {
 
+      @Nullable private final String projectionJson;
+      @Nullable private final FilterPredicate filter;
+
+      ReadFn(@Nullable String projectionJson, @Nullable FilterPredicate filter) {
+        this.projectionJson = projectionJson;
+        this.filter = filter;
+      }
+
       @ProcessElement
       public void processElement(ProcessContext processContext) throws Exception {
-        FileIO.ReadableFile file = processContext.element();
-
-        if (!file.getMetadata().isReadSeekEfficient()) {
-          ResourceId filename = file.getMetadata().resourceId();
-          throw new RuntimeException(String.format("File has to be seekable: %s", filename));
-        }
+        FileIO.ReadableFile file = checkSeekable(processContext.element());
 
         SeekableByteChannel seekableByteChannel = file.openSeekable();
 
         try (ParquetReader<GenericRecord> reader =
             AvroParquetReader.<GenericRecord>builder(new BeamParquetInputFile(seekableByteChannel))
+                .withConf(buildConfiguration(projectionJson))
+                .withFilter(toFilter(filter))
                 .build()) {
           GenericRecord read;
           while ((read = reader.read()) != null) {
@@ -219,6 +404,102 @@ public class ParquetIO {
       }
     }
 
+    /**
+     * A splittable {@link DoFn} reading a range of the row groups of a file. The row groups are
+     * numbered after the row groups excluded by the filter are dropped, which is deterministic for
+     * a given file and filter.
+     */
+    static class SplitReadFn extends DoFn<FileIO.ReadableFile, GenericRecord> {
+
+      @Nullable private final String projectionJson;
+      @Nullable private final FilterPredicate filter;
+
+      SplitReadFn(@Nullable String projectionJson, @Nullable FilterPredicate filter) {
+        this.projectionJson = projectionJson;
+        this.filter = filter;
+      }
+
+      private ParquetFileReader openReader(FileIO.ReadableFile file, Configuration configuration)
+          throws IOException {
+        ParquetReadOptions options =
+            HadoopReadOptions.builder(configuration).withRecordFilter(toFilter(filter)).build();
+        return ParquetFileReader.open(
+            new BeamParquetInputFile(checkSeekable(file).openSeekable()), options);
+      }
+
+      @ProcessElement
+      public void processElement(ProcessContext processContext, OffsetRangeTracker tracker)
+          throws Exception {
+        Configuration configuration = buildConfiguration(projectionJson);
+        try (ParquetFileReader reader = openReader(processContext.element(), configuration)) {
+          FileMetaData fileMetaData = reader.getFooter().getFileMetaData();
+          MessageType fileSchema = fileMetaData.getSchema();
+          Map<String, String> keyValueMetaData = fileMetaData.getKeyValueMetaData();
+          Map<String, Set<String>> initKeyValueMetaData = new HashMap<>();
+          for (Map.Entry<String, String> entry : keyValueMetaData.entrySet()) {
+            initKeyValueMetaData.put(entry.getKey(), Collections.singleton(entry.getValue()));
+          }
+
+          AvroReadSupport<GenericRecord> readSupport = new AvroReadSupport<>(GenericData.get());
+          ReadSupport.ReadContext readContext =
+              readSupport.init(new InitContext(configuration, initKeyValueMetaData, fileSchema));
+          // only the column chunks of the projection are read from the file.
+          reader.setRequestedSchema(readContext.getRequestedSchema());
+          RecordMaterializer<GenericRecord> recordMaterializer =
+              readSupport.prepareForRead(configuration, keyValueMetaData, fileSchema, readContext);
+          MessageColumnIO columnIO =
+              new ColumnIOFactory(fileMetaData.getCreatedBy())
+                  .getColumnIO(readContext.getRequestedSchema(), fileSchema, true);
+          FilterCompat.Filter recordFilter = toFilter(filter);
+
+          long rowGroup = tracker.currentRestriction().getFrom();
+          for (long i = 0; i < rowGroup; i++) {
+            reader.skipNextRowGroup();
+          }
+          while (tracker.tryClaim(rowGroup)) {
+            PageReadStore pages = reader.readNextRowGroup();
+            RecordReader<GenericRecord> recordReader =
+                columnIO.getRecordReader(pages, recordMaterializer, recordFilter);
+            for (long i = 0; i < pages.getRowCount(); i++) {
+              GenericRecord record = recordReader.read();
+              if (recordReader.shouldSkipCurrentRecord()) {
+                continue;
+              }
+              if (record == null) {
+                // a filtering record reader has no more records in this row group.
+                break;
+              }
+              processContext.output(record);
+            }
+            rowGroup++;
+          }
+        }
+      }
+
+      @GetInitialRestriction
+      public OffsetRange getInitialRestriction(FileIO.ReadableFile file) throws IOException {
+        try (ParquetFileReader reader = openReader(file, buildConfiguration(projectionJson))) {
+          return new OffsetRange(0, reader.getRowGroups().size());
+        }
+      }
+
+      @SplitRestriction
+      public void splitRestriction(
+          FileIO.ReadableFile file,
+          OffsetRange restriction,
+          OutputReceiver<OffsetRange> receiver) {
+        // a row group is the smallest unit Parquet can read on its own.
+        for (long rowGroup = restriction.getFrom(); rowGroup < restriction.getTo(); rowGroup++) {
+          receiver.output(new OffsetRange(rowGroup, rowGroup + 1));
+        }
+      }
+
+      @NewTracker
+      public OffsetRangeTracker newTracker(OffsetRange restriction) {
+        return new OffsetRangeTracker(restriction);
+      }
+    }
+
     private static class BeamParquetInputFile implements InputFile {
 
       private SeekableByteChannel seekableByteChannel;
@@ -33,6 +33,7 @@ import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.Values;
 import org.apache.beam.sdk.transforms.display.DisplayData;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.parquet.filter2.predicate.FilterApi;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -61,6 +62,30 @@ public class ParquetIOTest implements Serializable {
 
   private static final Schema SCHEMA = new Schema.Parser().parse(SCHEMA_STRING);
 
+  private static final Schema WIDE_SCHEMA =
+      new Schema.Parser()
+          .parse(
+              "{"
+                  + "\"type\":\"record\", "
+                  + "\"name\":\"testrecord\","
+                  + "\"fields\":["
+                  + "    {\"name\":\"id\",\"type\":\"int\"},"
+                  + "    {\"name\":\"name\",\"type\":\"string\"},"
+                  + "    {\"name\":\"description\",\"type\":\"string\"}"
+                  + "  ]"
+                  + "}");
+
+  private static final Schema PROJECTION_SCHEMA =
+      new Schema.Parser()
+          .parse(
+              "{"
+                  + "\"type\":\"record\", "
+                  + "\"name\":\"testrecord\","
+                  + "\"fields\":["
+                  + "    {\"name\":\"id\",\"type\":\"int\"}"
+                  + "  ]"
+                  + "}");
+
   private static final String[] SCIENTISTS =
       new String[] {
         "Einstein", "Darwin", "Copernicus", "Pasteur", "Curie",
@@ -109,6 +134,43 @@ public class ParquetIOTest implements Serializable {
     mainPipeline.run().waitUntilFinish();
   }
 
+  @Test
+  public void testWriteAndReadWithSplitProjectionAndFilter() {
+    List<GenericRecord> records = new ArrayList<>();
+    List<GenericRecord> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      String name = SCIENTISTS[i % SCIENTISTS.length];
+      records.add(
+          new GenericRecordBuilder(WIDE_SCHEMA)
+              .set("id", i)
+              .set("name", name)
+              .set("description", "description of " + name)
+              .build());
+      if (i >= 900) {
+        expected.add(new GenericRecordBuilder(PROJECTION_SCHEMA).set("id", i).build());
+      }
+    }
+
+    mainPipeline
+        .apply(Create.of(records).withCoder(AvroCoder.of(WIDE_SCHEMA)))
+        .apply(
+            FileIO.<GenericRecord>write()
+                .via(ParquetIO.sink(WIDE_SCHEMA))
+                .to(temporaryFolder.getRoot().getAbsolutePath()));
+    mainPipeline.run().waitUntilFinish();
+
+    PCollection<GenericRecord> readBack =
+        readPipeline.apply(
+            ParquetIO.read(WIDE_SCHEMA)
+                .from(temporaryFolder.getRoot().getAbsolutePath() + "/*")
+                .withSplit()
+                .withProjection(PROJECTION_SCHEMA)
+                .withFilter(FilterApi.gtEq(FilterApi.intColumn("id"), 900)));
+
+    PAssert.that(readBack).containsInAnyOrder(expected);
+    readPipeline.run().waitUntilFinish();
+  }
+
   private List<GenericRecord> generateGenericRecords(long count) {
     ArrayList<GenericRecord> data = new ArrayList<>();
     GenericRecordBuilder builder = new GenericRecordBuilder(SCHEMA);
@@ -125,5 +187,6 @@ public class ParquetIOTest implements Serializable {
     DisplayData displayData = DisplayData.from(ParquetIO.read(SCHEMA).from("foo.parquet"));
 
     Assert.assertThat(displayData, hasDisplayItem("filePattern", "foo.parquet"));
+    Assert.assertThat(displayData, hasDisplayItem("splittable", false));
   }
 }